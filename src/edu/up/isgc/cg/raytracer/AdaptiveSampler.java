@@ -0,0 +1,182 @@
+package edu.up.isgc.cg.raytracer;
+
+import edu.up.isgc.cg.raytracer.acceleration.SceneBVH;
+import edu.up.isgc.cg.raytracer.lights.Light;
+import edu.up.isgc.cg.raytracer.objects.Camera;
+import edu.up.isgc.cg.raytracer.tools.Radiance;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adaptive anti-aliasing. Every pixel starts with a stratified round of jittered samples spread over its area; more
+ * rounds are traced while the standard error of the mean luminance of the pixel stays above a threshold, up to a
+ * maximum number of samples. Flat regions keep the first round while edges, highlights and reflections get the
+ * extra samples.
+ * <p>
+ * The jitter of every pixel comes from a generator seeded with the pixel coordinates, so an image is the same no
+ * matter how many threads render it or in which order its tiles are traced.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class AdaptiveSampler {
+    public static final int DEFAULT_STRATA = 2;
+    public static final int DEFAULT_MAX_SAMPLES = 16;
+    public static final double DEFAULT_THRESHOLD = 0.01;
+    public static final long DEFAULT_SEED = 0x5DEECE66DL;
+    private final int strata;
+    private final int maxSamples;
+    private final double threshold;
+    private final long seed;
+    private final LongAdder sampleCount = new LongAdder();
+    private final LongAdder pixelCount = new LongAdder();
+
+    /**
+     * Constructs a new AdaptiveSampler with 2x2 samples per round, a cap of 16 samples per pixel and the default
+     * threshold and seed.
+     */
+    public AdaptiveSampler() {
+        this(DEFAULT_STRATA, DEFAULT_MAX_SAMPLES, DEFAULT_THRESHOLD, DEFAULT_SEED);
+    }
+
+    /**
+     * Constructs a new AdaptiveSampler.
+     *
+     * @param strata     The number of strata per axis of every round, which traces strata x strata samples.
+     * @param maxSamples The maximum number of samples of a pixel.
+     * @param threshold  The standard error of the mean luminance, in display units from 0 to 1, below which a
+     *                   pixel stops being refined.
+     * @param seed       The seed of the jitter.
+     */
+    public AdaptiveSampler(int strata, int maxSamples, double threshold, long seed) {
+        if (strata < 1 || maxSamples < strata * strata) {
+            throw new IllegalArgumentException("The first round must fit in the maximum number of samples");
+        }
+        this.strata = strata;
+        this.maxSamples = maxSamples;
+        this.threshold = threshold;
+        this.seed = seed;
+    }
+
+    /**
+     * Traces the samples of a pixel and averages them.
+     *
+     * @param camera         The camera for the scene.
+     * @param objects        The acceleration structure over the objects in the scene.
+     * @param lights         The list of lights in the scene.
+     * @param imagePlane     The layout of the image plane of the camera.
+     * @param clippingPlanes The clipping planes of the camera.
+     * @param x              The column of the pixel.
+     * @param y              The row of the pixel.
+     * @return The linear color of the pixel.
+     */
+    public Radiance samplePixel(Camera camera, SceneBVH objects, List<Light> lights, double[] imagePlane, double[] clippingPlanes, int x, int y) {
+        SplittableRandom random = new SplittableRandom(seed ^ (x * 0x9E3779B97F4A7C15L) ^ (y * 0xC2B2AE3D27D4EB4FL));
+        Radiance pixelColor = new Radiance();
+        double stratumSize = 1.0 / strata;
+        int samples = 0;
+        double mean = 0;
+        double squaredDeviations = 0;
+
+        do {
+            for (int i = 0; i < strata * strata && samples < maxSamples; i++) {
+                // The pixel spans half a pixel on every side of its position on the image plane
+                double offsetX = ((i % strata) + random.nextDouble()) * stratumSize - 0.5;
+                double offsetY = ((i / strata) + random.nextDouble()) * stratumSize - 0.5;
+                Radiance sample = Raytracer.traceSample(camera, objects, lights, imagePlane, clippingPlanes, x, y, offsetX, offsetY);
+                pixelColor.add(sample);
+
+                double luminance = luminance(sample);
+                samples++;
+                double delta = luminance - mean;
+                mean += delta / samples;
+                squaredDeviations += delta * (luminance - mean);
+            }
+        } while (samples < maxSamples && (samples < 2 || Math.sqrt(squaredDeviations / (samples - 1) / samples) > threshold));
+
+        sampleCount.add(samples);
+        pixelCount.increment();
+        pixelColor.scale(1.0 / samples);
+        return pixelColor;
+    }
+
+    /**
+     * Gets the average number of samples traced per pixel since the statistics were last reset.
+     *
+     * @return The average samples per pixel, or 0 if no pixel has been sampled.
+     */
+    public double getAverageSamplesPerPixel() {
+        long pixels = pixelCount.sum();
+        return pixels == 0 ? 0 : (double) sampleCount.sum() / pixels;
+    }
+
+    /**
+     * Gets the number of samples traced since the statistics were last reset.
+     *
+     * @return The number of samples.
+     */
+    public long getSampleCount() {
+        return sampleCount.sum();
+    }
+
+    /**
+     * Gets the number of pixels sampled since the statistics were last reset.
+     *
+     * @return The number of pixels.
+     */
+    public long getPixelCount() {
+        return pixelCount.sum();
+    }
+
+    /**
+     * Resets the sample and pixel counts.
+     */
+    public void resetStatistics() {
+        sampleCount.reset();
+        pixelCount.reset();
+    }
+
+    /**
+     * Gets the number of strata per axis of every round.
+     *
+     * @return The number of strata per axis.
+     */
+    public int getStrata() {
+        return strata;
+    }
+
+    /**
+     * Gets the maximum number of samples of a pixel.
+     *
+     * @return The maximum number of samples.
+     */
+    public int getMaxSamples() {
+        return maxSamples;
+    }
+
+    /**
+     * Gets the standard error below which a pixel stops being refined.
+     *
+     * @return The threshold.
+     */
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Gets the seed of the jitter.
+     *
+     * @return The seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Calculates the luminance of a color as it will be displayed.
+     */
+    private static double luminance(Radiance color) {
+        return 0.2126 * Math.min(color.getRed(), 1) + 0.7152 * Math.min(color.getGreen(), 1) + 0.0722 * Math.min(color.getBlue(), 1);
+    }
+}
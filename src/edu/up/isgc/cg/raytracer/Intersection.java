@@ -6,6 +6,9 @@ import edu.up.isgc.cg.raytracer.objects.Object3D;
  * The Intersection class represents the intersection point between a ray and an object in the scene.
  * It contains information about the distance from the ray's origin to the intersection point, the position
  * of the intersection, the normal at the intersection, and the object that was intersected.
+ * Intersections found by traversal only record the ray, distance, primitive and barycentric coordinates;
+ * the position and normal are then calculated the first time they are requested, so only the hit that is
+ * actually shaded pays for them.
  *
  * @author Jafet Rodriguez, José Salcedo
  */
@@ -14,6 +17,9 @@ public class Intersection {
     private Vector3D position;
     private Vector3D normal;
     private Object3D object;
+    private Ray ray;
+    private int primitive = -1;
+    private double u, v;
 
     /**
      * Constructs a new Intersection with the specified position, distance, normal, and object.
@@ -30,6 +36,25 @@ public class Intersection {
         setObject(object);
     }
 
+    /**
+     * Constructs a new Intersection whose position and normal are calculated on demand.
+     *
+     * @param ray The ray that found the intersection.
+     * @param distance The distance from the ray's origin to the intersection point.
+     * @param object The object that was intersected.
+     * @param primitive The id of the primitive that was hit inside the object, or -1 if it has none.
+     * @param u The barycentric weight of the third vertex of the primitive.
+     * @param v The barycentric weight of the second vertex of the primitive.
+     */
+    public Intersection(Ray ray, double distance, Object3D object, int primitive, double u, double v) {
+        this.ray = ray;
+        setDistance(distance);
+        setObject(object);
+        this.primitive = primitive;
+        this.u = u;
+        this.v = v;
+    }
+
     /**
      * Gets the distance from the ray's origin to the intersection point.
      *
@@ -54,6 +79,9 @@ public class Intersection {
      * @return The position of the intersection point.
      */
     public Vector3D getPosition() {
+        if (position == null && ray != null) {
+            position = Vector3D.add(ray.getOrigin(), Vector3D.scalarMultiplication(ray.getDirection(), distance));
+        }
         return position;
     }
 
@@ -72,6 +100,9 @@ public class Intersection {
      * @return The normal vector at the intersection point.
      */
     public Vector3D getNormal() {
+        if (normal == null && object != null) {
+            normal = object.calculateNormal(this);
+        }
         return normal;
     }
 
@@ -101,4 +132,31 @@ public class Intersection {
     public void setObject(Object3D object) {
         this.object = object;
     }
+
+    /**
+     * Gets the id of the primitive that was hit inside the object.
+     *
+     * @return The primitive id, or -1 if the object has no primitives.
+     */
+    public int getPrimitive() {
+        return primitive;
+    }
+
+    /**
+     * Gets the barycentric weight of the third vertex of the primitive that was hit.
+     *
+     * @return The u barycentric coordinate.
+     */
+    public double getU() {
+        return u;
+    }
+
+    /**
+     * Gets the barycentric weight of the second vertex of the primitive that was hit.
+     *
+     * @return The v barycentric coordinate.
+     */
+    public double getV() {
+        return v;
+    }
 }
@@ -0,0 +1,136 @@
+package edu.up.isgc.cg.raytracer;
+
+import edu.up.isgc.cg.raytracer.acceleration.RayPacket;
+import edu.up.isgc.cg.raytracer.acceleration.SceneBVH;
+import edu.up.isgc.cg.raytracer.lights.Light;
+import edu.up.isgc.cg.raytracer.objects.Camera;
+import edu.up.isgc.cg.raytracer.objects.Object3D;
+import edu.up.isgc.cg.raytracer.rendering.Tile;
+import edu.up.isgc.cg.raytracer.tools.Radiance;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Packet tracing of the coherent rays of a tile. The tile is split into blocks of 4x4 pixels, whose primary rays
+ * are traced through the scene as one packet; then, for every light, the shadow rays of the pixels of the block that
+ * hit something are traced toward it as one more packet. Reflection and refraction rays go in all directions, so
+ * they are still traced one at a time.
+ * <p>
+ * The rays and the operations on them are the same as in the scalar path, so the image is the same pixel for pixel.
+ * A tracer holds the buffers of its packets and must only be used by one thread.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+class PacketTracer {
+    static final int BLOCK_SIZE = 4;
+    private final Camera camera;
+    private final SceneBVH objects;
+    private final List<Light> lights;
+    private final double[] imagePlane;
+    private final double[] clippingPlanes;
+
+    private final Ray[] rays = new Ray[RayPacket.MAX_SIZE];
+    private final Intersection[] hits = new Intersection[RayPacket.MAX_SIZE];
+    private final long[] unshadowed = new long[RayPacket.MAX_SIZE];
+    private final Ray[] shadowRays = new Ray[RayPacket.MAX_SIZE];
+    private final double[] lightDistances = new double[RayPacket.MAX_SIZE];
+    private final Object3D[] casters = new Object3D[RayPacket.MAX_SIZE];
+    private final int[] shadowSources = new int[RayPacket.MAX_SIZE];
+
+    /**
+     * Constructs a new PacketTracer.
+     *
+     * @param camera         The camera for the scene.
+     * @param objects        The acceleration structure over the objects in the scene.
+     * @param lights         The list of lights in the scene, at most 64.
+     * @param imagePlane     The layout of the image plane of the camera.
+     * @param clippingPlanes The clipping planes of the camera.
+     */
+    PacketTracer(Camera camera, SceneBVH objects, List<Light> lights, double[] imagePlane, double[] clippingPlanes) {
+        if (lights.size() > Long.SIZE) {
+            throw new IllegalArgumentException("Packets trace the shadows of at most " + Long.SIZE + " lights");
+        }
+        this.camera = camera;
+        this.objects = objects;
+        this.lights = lights;
+        this.imagePlane = imagePlane;
+        this.clippingPlanes = clippingPlanes;
+    }
+
+    /**
+     * Traces the pixels of a tile block by block.
+     *
+     * @param tile   The tile to render.
+     * @param pixels The pixels of the image, as packed RGB.
+     * @param width  The width of the image.
+     */
+    void traceTile(Tile tile, int[] pixels, int width) {
+        for (int y = tile.getY(); y < tile.getY() + tile.getHeight(); y += BLOCK_SIZE) {
+            for (int x = tile.getX(); x < tile.getX() + tile.getWidth(); x += BLOCK_SIZE) {
+                int blockWidth = Math.min(BLOCK_SIZE, tile.getX() + tile.getWidth() - x);
+                int blockHeight = Math.min(BLOCK_SIZE, tile.getY() + tile.getHeight() - y);
+                traceBlock(x, y, blockWidth, blockHeight, pixels, width);
+            }
+        }
+        Arrays.fill(rays, null);
+        Arrays.fill(hits, null);
+        Arrays.fill(shadowRays, null);
+        Arrays.fill(casters, null);
+    }
+
+    /**
+     * Traces and shades the pixels of a block.
+     */
+    private void traceBlock(int blockX, int blockY, int blockWidth, int blockHeight, int[] pixels, int width) {
+        int count = 0;
+        for (int y = blockY; y < blockY + blockHeight; y++) {
+            for (int x = blockX; x < blockX + blockWidth; x++) {
+                rays[count++] = camera.generateRay(imagePlane, x, y, 0, 0);
+            }
+        }
+        objects.raycast(rays, count, camera, clippingPlanes, hits);
+        findUnshadowedLights(count);
+
+        int ray = 0;
+        for (int y = blockY; y < blockY + blockHeight; y++) {
+            for (int x = blockX; x < blockX + blockWidth; x++, ray++) {
+                Radiance color = hits[ray] == null
+                        ? new Radiance()
+                        : Raytracer.shadeWithUnshadowedLights(camera, objects, lights, rays[ray], hits[ray], clippingPlanes, unshadowed[ray]);
+                pixels[y * width + x] = color.toRGB();
+            }
+        }
+    }
+
+    /**
+     * Traces the shadow rays of the hits of the block toward every light, one packet per light, built as
+     * Raytracer.isShadowed builds them.
+     */
+    private void findUnshadowedLights(int count) {
+        Arrays.fill(unshadowed, 0, count, 0);
+        for (int light = 0; light < lights.size(); light++) {
+            Vector3D lightPosition = lights.get(light).getPosition();
+            int shadowCount = 0;
+            for (int i = 0; i < count; i++) {
+                Intersection hit = hits[i];
+                if (hit != null) {
+                    Vector3D toLight = Vector3D.substract(lightPosition, hit.getPosition());
+                    lightDistances[shadowCount] = Vector3D.magnitude(toLight);
+                    shadowRays[shadowCount] = new Ray(hit.getPosition(), Vector3D.normalize(toLight));
+                    casters[shadowCount] = hit.getObject();
+                    shadowSources[shadowCount++] = i;
+                }
+            }
+            if (shadowCount == 0) {
+                return;
+            }
+            int blocked = objects.isOccluded(shadowRays, lightDistances, casters, shadowCount);
+            for (int i = 0; i < shadowCount; i++) {
+                if ((blocked & 1 << i) == 0) {
+                    unshadowed[shadowSources[i]] |= 1L << light;
+                }
+            }
+        }
+    }
+}
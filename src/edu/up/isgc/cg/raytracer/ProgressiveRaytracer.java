@@ -0,0 +1,188 @@
+package edu.up.isgc.cg.raytracer;
+
+import edu.up.isgc.cg.raytracer.acceleration.SceneBVH;
+import edu.up.isgc.cg.raytracer.lights.Light;
+import edu.up.isgc.cg.raytracer.objects.Camera;
+import edu.up.isgc.cg.raytracer.rendering.FrameBuffer;
+import edu.up.isgc.cg.raytracer.rendering.Tile;
+import edu.up.isgc.cg.raytracer.rendering.TileScheduler;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coarse-to-fine progressive renderer for interactive previews. The first pass traces one pixel out of every
+ * stride x stride block and fills the rest by bilinear interpolation; every following pass traces only the pixels
+ * of its finer grid that no earlier pass traced, so no pixel is traced twice and the last pass (stride 1) gives the
+ * same image as a full render. Rendering stops after the pass in which the time budget expires; the first pass is
+ * always completed so there is always an image to show.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class ProgressiveRaytracer {
+    // 1 in 16 pixels, then 1 in 4, then all of them
+    public static final int[] DEFAULT_STRIDES = {4, 2, 1};
+    private final Scene scene;
+    private final TileScheduler scheduler;
+    private final int[] strides;
+
+    /**
+     * Receives the image of every finished pass.
+     */
+    public interface PassListener {
+        /**
+         * Called once a pass has been traced and interpolated.
+         *
+         * @param pass   The index of the pass, starting at 0.
+         * @param stride The distance between the pixels traced up to this pass.
+         * @param image  The image of the pass. It is not modified by later passes.
+         */
+        void passCompleted(int pass, int stride, BufferedImage image);
+    }
+
+    /**
+     * Constructs a new ProgressiveRaytracer with the default passes.
+     *
+     * @param scene     The scene to be rendered.
+     * @param scheduler The scheduler that distributes the tiles of every pass.
+     */
+    public ProgressiveRaytracer(Scene scene, TileScheduler scheduler) {
+        this(scene, scheduler, DEFAULT_STRIDES);
+    }
+
+    /**
+     * Constructs a new ProgressiveRaytracer.
+     *
+     * @param scene     The scene to be rendered.
+     * @param scheduler The scheduler that distributes the tiles of every pass.
+     * @param strides   The stride of every pass, from coarse to fine. Every stride must divide the previous one
+     *                  and the last one must be 1.
+     */
+    public ProgressiveRaytracer(Scene scene, TileScheduler scheduler, int... strides) {
+        if (strides.length == 0 || strides[strides.length - 1] != 1) {
+            throw new IllegalArgumentException("The last pass must have stride 1");
+        }
+        for (int i = 1; i < strides.length; i++) {
+            if (strides[i] < 1 || strides[i] >= strides[i - 1] || strides[i - 1] % strides[i] != 0) {
+                throw new IllegalArgumentException("Every stride must be a smaller divisor of the previous one");
+            }
+        }
+        this.scene = scene;
+        this.scheduler = scheduler;
+        this.strides = strides.clone();
+    }
+
+    /**
+     * Renders the scene pass by pass until the image is complete or the time budget expires.
+     *
+     * @param budgetNanos The time budget in nanoseconds, or Long.MAX_VALUE for no limit.
+     * @param listener    The listener of the finished passes, or null.
+     * @return The image of the last finished pass.
+     */
+    public BufferedImage render(long budgetNanos, PassListener listener) {
+        long start = System.nanoTime();
+        long deadline = budgetNanos > Long.MAX_VALUE - start ? Long.MAX_VALUE : start + budgetNanos;
+
+        Camera camera = scene.getCamera();
+        int width = camera.getResolutionWidth();
+        int height = camera.getResolutionHeight();
+        SceneBVH objects = scene.updateAccelerationStructure();
+        List<Light> lights = scene.getLights();
+        double[] imagePlane = camera.calculateImagePlane();
+        double[] planes = Raytracer.calculateClippingPlanes(camera);
+        int[] samples = new int[width * height];
+
+        BufferedImage image = null;
+        int previousStride = 0;
+        for (int pass = 0; pass < strides.length; pass++) {
+            int stride = strides[pass];
+            int skipStride = previousStride;
+            long passDeadline = pass == 0 ? Long.MAX_VALUE : deadline;
+            AtomicBoolean expired = new AtomicBoolean();
+
+            scheduler.render(width, height, tile -> {
+                for (int y = firstMultiple(tile.getY(), stride); y < tile.getY() + tile.getHeight(); y += stride) {
+                    for (int x = firstMultiple(tile.getX(), stride); x < tile.getX() + tile.getWidth(); x += stride) {
+                        if (skipStride > 0 && x % skipStride == 0 && y % skipStride == 0) {
+                            continue;
+                        }
+                        if (System.nanoTime() > passDeadline) {
+                            expired.set(true);
+                            return null;
+                        }
+                        samples[y * width + x] = Raytracer.tracePixel(camera, objects, lights, imagePlane, planes, x, y).toRGB();
+                    }
+                }
+                return null;
+            });
+            if (expired.get()) {
+                break;
+            }
+
+            FrameBuffer passBuffer = new FrameBuffer(width, height);
+            scheduler.render(width, height, tile -> fillTile(tile, passBuffer, samples, stride));
+            BufferedImage passImage = passBuffer.toImage();
+            image = passImage;
+            previousStride = stride;
+            if (listener != null) {
+                listener.passCompleted(pass, stride, passImage);
+            }
+            if (System.nanoTime() > deadline) {
+                break;
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Writes a tile of a pass image, interpolating the pixels that have not been traced from the four traced
+     * pixels around them.
+     *
+     * @param tile    The tile to fill.
+     * @param pass    The frame buffer of the pass.
+     * @param samples The traced pixels of the image.
+     * @param stride  The distance between the traced pixels.
+     * @return Null, the tiles of a pass are not published.
+     */
+    private static int[] fillTile(Tile tile, FrameBuffer pass, int[] samples, int stride) {
+        int width = pass.getWidth();
+        int lastX = ((width - 1) / stride) * stride;
+        int lastY = ((pass.getHeight() - 1) / stride) * stride;
+        int[] pixels = pass.getPixels();
+
+        for (int y = tile.getY(); y < tile.getY() + tile.getHeight(); y++) {
+            int y0 = (y / stride) * stride;
+            int y1 = Math.min(y0 + stride, lastY);
+            double fy = y1 == y0 ? 0 : (double) (y - y0) / (y1 - y0);
+            for (int x = tile.getX(); x < tile.getX() + tile.getWidth(); x++) {
+                int x0 = (x / stride) * stride;
+                int x1 = Math.min(x0 + stride, lastX);
+                double fx = x1 == x0 ? 0 : (double) (x - x0) / (x1 - x0);
+
+                pixels[y * width + x] = fx == 0 && fy == 0 ? samples[y0 * width + x0] : bilinear(
+                        samples[y0 * width + x0], samples[y0 * width + x1],
+                        samples[y1 * width + x0], samples[y1 * width + x1], fx, fy);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Interpolates four packed RGB values channel by channel.
+     */
+    private static int bilinear(int topLeft, int topRight, int bottomLeft, int bottomRight, double fx, double fy) {
+        int rgb = 0;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            double top = ((topLeft >> shift) & 0xFF) * (1 - fx) + ((topRight >> shift) & 0xFF) * fx;
+            double bottom = ((bottomLeft >> shift) & 0xFF) * (1 - fx) + ((bottomRight >> shift) & 0xFF) * fx;
+            rgb |= ((int) (top * (1 - fy) + bottom * fy + 0.5)) << shift;
+        }
+        return rgb;
+    }
+
+    private static int firstMultiple(int value, int stride) {
+        return ((value + stride - 1) / stride) * stride;
+    }
+}
@@ -40,20 +40,20 @@ public class Ray {
     }
 
     /**
-     * Gets the normalized direction of the ray.
+     * Gets the normalized direction of the ray. The returned vector is shared and must not be modified.
      *
      * @return The normalized direction of the ray.
      */
     public Vector3D getDirection() {
-        return Vector3D.normalize(direction);
+        return direction;
     }
 
     /**
-     * Sets the direction of the ray.
+     * Sets the direction of the ray. The direction is normalized once here so reading it is free.
      *
      * @param direction The new direction of the ray.
      */
     public void setDirection(Vector3D direction) {
-        this.direction = direction;
+        this.direction = Vector3D.normalize(direction);
     }
 }
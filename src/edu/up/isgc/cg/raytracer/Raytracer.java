@@ -1,22 +1,34 @@
 package edu.up.isgc.cg.raytracer;
 
+import edu.up.isgc.cg.raytracer.acceleration.SceneBVH;
+import edu.up.isgc.cg.raytracer.animation.Animation;
+import edu.up.isgc.cg.raytracer.animation.FrameTiming;
+import edu.up.isgc.cg.raytracer.animation.KeyframeTrack;
 import edu.up.isgc.cg.raytracer.lights.Light;
 import edu.up.isgc.cg.raytracer.lights.PointLight;
 import edu.up.isgc.cg.raytracer.objects.*;
-import edu.up.isgc.cg.raytracer.tools.ColorTools;
+import edu.up.isgc.cg.raytracer.rendering.BandWriter;
+import edu.up.isgc.cg.raytracer.rendering.FrameBuffer;
+import edu.up.isgc.cg.raytracer.rendering.RenderJob;
+import edu.up.isgc.cg.raytracer.rendering.RenderedTile;
+import edu.up.isgc.cg.raytracer.rendering.Tile;
+import edu.up.isgc.cg.raytracer.rendering.TileScheduler;
+import edu.up.isgc.cg.raytracer.rendering.TileStatistics;
+import edu.up.isgc.cg.raytracer.tools.AssetLoader;
 import edu.up.isgc.cg.raytracer.tools.Material;
-import edu.up.isgc.cg.raytracer.tools.OBJReader;
+import edu.up.isgc.cg.raytracer.tools.Radiance;
 
 import javax.imageio.ImageIO;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Entry point to the program. This class contains all the necessary methods to produce high fidelity raytraced images
@@ -26,12 +38,26 @@ public class Raytracer {
     private static final double AMBIENT_INTENSITY = 1e-2;
     private static final double EPSILON = 1e-3;
     private static final int MAX_RAY_DEPTH = 3;
+    private static final String ANIMATE = "--animate";
+    private static final String USAGE = "Usage: Raytracer [<image.png|image.pfm> [<width> <height>]]\n"
+            + "       Raytracer " + ANIMATE + " <frames> <directory> [<max reuse frames>]";
+    private static TileScheduler defaultScheduler;
+    private static boolean packetTracingEnabled = false;
 
     /**
      * Entry point for the program and scene setup
-     * @param args
+     * @param args Optionally, a .png or .pfm file to stream the image to band by band, followed by the width and
+     *             height of the image, for renders that do not fit in memory. Alternatively, --animate followed by
+     *             the number of frames and the directory renders a turntable of the scene as a PNG sequence, and
+     *             optionally the number of frames a pixel may reuse its color from the previous one.
      */
     public static void main(String[] args) {
+        boolean animate = args.length > 0 && args[0].equals(ANIMATE);
+        boolean validCount = animate ? args.length == 3 || args.length == 4 : args.length <= 1 || args.length == 3;
+        if (!validCount) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
         long startTime = System.nanoTime();
         System.out.println(new Date());
 
@@ -56,27 +82,46 @@ public class Raytracer {
         scene03.addLight(new PointLight(new Vector3D(-10, 7, 5.45), Material.NONE.colored(Color.RED), .2));
         scene03.addLight(new PointLight(new Vector3D(15, 15, -10), Material.NONE, .7));
 
-        Model3D base5 = OBJReader.getModel3D("Scene03/5base.obj", sceneOrigin, cera);
-        Model3D base = OBJReader.getModel3D("Scene03/base.obj", sceneOrigin, cera);
-        Model3D calaca = OBJReader.getModel3D("Scene03/calaca.obj", sceneOrigin, Material.GLASS);
-        Model3D cartas = OBJReader.getModel3D("Scene03/cartas.obj", sceneOrigin, Material.METAL.colored(Color.WHITE));
-        Model3D fuego = OBJReader.getModel3D("Scene03/fuego.obj", sceneOrigin, Material.MATTE.colored(Color.RED));
-        Model3D rosa = OBJReader.getModel3D("Scene03/rosa.obj", sceneOrigin, Material.MATTE.colored(Color.PINK));
-        Model3D verde = OBJReader.getModel3D("Scene03/verde.obj", sceneOrigin, Material.MATTE.colored(Color.GREEN));
-        scene03.addObject(base5);
-        scene03.addObject(base);
-        scene03.addObject(calaca);
-        scene03.addObject(cartas);
-        scene03.addObject(fuego);
-        scene03.addObject(rosa);
-        scene03.addObject(verde);
-
-        BufferedImage image = parallelImageRaytracing(scene03);
-        File outputImage = new File("image.png");
-        try {
-            ImageIO.write(image, "png", outputImage);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        List<Model3D> props = new ArrayList<>();
+        try (AssetLoader loader = new AssetLoader()) {
+            List<CompletableFuture<Model3D>> models = loader.loadAll(List.of(
+                    new AssetLoader.Request("Scene03/5base.obj", sceneOrigin, cera),
+                    new AssetLoader.Request("Scene03/base.obj", sceneOrigin, cera),
+                    new AssetLoader.Request("Scene03/calaca.obj", sceneOrigin, Material.GLASS),
+                    new AssetLoader.Request("Scene03/cartas.obj", sceneOrigin, Material.METAL.colored(Color.WHITE)),
+                    new AssetLoader.Request("Scene03/fuego.obj", sceneOrigin, Material.MATTE.colored(Color.RED)),
+                    new AssetLoader.Request("Scene03/rosa.obj", sceneOrigin, Material.MATTE.colored(Color.PINK)),
+                    new AssetLoader.Request("Scene03/verde.obj", sceneOrigin, Material.MATTE.colored(Color.GREEN))));
+            for (CompletableFuture<Model3D> model : models) {
+                scene03.addObject(model);
+                props.add(model.join());
+            }
+            loader.getTimings().forEach(System.out::println);
+        }
+
+        Camera camera = scene03.getCamera();
+        if (animate) {
+            int maxReuseFrames = args.length == 4 ? Integer.parseInt(args[3]) : 0;
+            renderTurntable(scene03, props, sceneOrigin, Integer.parseInt(args[1]), Path.of(args[2]), maxReuseFrames);
+        } else if (args.length > 0) {
+            if (args.length == 3) {
+                camera.setResolution(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            }
+            try (BandWriter writer = BandWriter.open(Path.of(args[0]), camera.getResolutionWidth(), camera.getResolutionHeight(), BandWriter.DEFAULT_BAND_HEIGHT)) {
+                renderBands(scene03, getDefaultScheduler(), writer, null);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            BufferedImage image = new BufferedImage(camera.getResolutionWidth(), camera.getResolutionHeight(), BufferedImage.TYPE_INT_RGB);
+            TileStatistics statistics = parallelImageRaytracing(scene03, getDefaultScheduler(), image);
+            System.out.println(statistics);
+            File outputImage = new File("image.png");
+            try {
+                ImageIO.write(image, "png", outputImage);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
         }
 
         long endTime = System.nanoTime();
@@ -85,103 +130,308 @@ public class Raytracer {
     }
 
     /**
-     * Generates the ray traced image in parallel.
+     * Renders the turntable of a scene created by {@link #createTurntable} as a PNG sequence.
+     *
+     * @param scene      The scene to animate.
+     * @param props      The models that spin.
+     * @param origin     The point the props spin around, which must be their position.
+     * @param frameCount The number of frames of the turn.
+     * @param directory  The directory of the PNG sequence.
+     * @param maxReuseFrames The number of frames a pixel may reuse its color from the previous one, 0 for none.
+     */
+    private static void renderTurntable(Scene scene, List<Model3D> props, Vector3D origin, int frameCount, Path directory, int maxReuseFrames) {
+        Animation animation = createTurntable(scene, props, origin, frameCount);
+        animation.setMaxReuseFrames(maxReuseFrames);
+        try {
+            List<FrameTiming> timings = animation.render(getDefaultScheduler(), directory, System.out::println);
+            long render = 0;
+            for (FrameTiming timing : timings) {
+                render += timing.getRenderNanos();
+            }
+            System.out.printf("%d frames, %.1f ms per frame%n", timings.size(), render / 1e6 / timings.size());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Creates the turntable of a scene: the props spin once around the vertical axis through their origin while the
+     * camera moves in halfway and back out.
+     *
+     * @param scene      The scene to animate.
+     * @param props      The models that spin, or none to only move the camera.
+     * @param origin     The point the props spin around, which must be their position.
+     * @param frameCount The number of frames of the turn.
+     * @return The animation, with no reuse between frames.
+     */
+    public static Animation createTurntable(Scene scene, List<Model3D> props, Vector3D origin, int frameCount) {
+        Vector3D up = new Vector3D(0, 1, 0);
+        KeyframeTrack<Quaternion> spin = KeyframeTrack.rotations();
+        // Keyframes every quarter turn, so the spherical interpolation never takes the short way back
+        for (int quarter = 0; quarter <= 4; quarter++) {
+            spin.add(quarter * frameCount / 4.0, Quaternion.fromAxisAngle(up, 90 * quarter));
+        }
+        Vector3D start = scene.getCamera().getPosition();
+        KeyframeTrack<Vector3D> dolly = KeyframeTrack.positions()
+                .add(0, start)
+                .add(frameCount / 2.0, Vector3D.add(start, Vector3D.scalarMultiplication(Vector3D.substract(origin, start), 0.3)))
+                .add(frameCount, start);
+
+        Animation animation = new Animation(scene, frameCount).animate(dolly, scene.getCamera()::setPosition);
+        for (Model3D prop : props) {
+            animation.animate(spin, prop::setRotation);
+        }
+        return animation;
+    }
+
+    /**
+     * Generates the ray traced image in parallel with the default scheduler.
      *
      * @param scene The scene to be rendered.
      * @return The rendered image.
      */
     public static BufferedImage parallelImageRaytracing(Scene scene) {
-        int nThreads = 16;
-        ExecutorService executorService = Executors.newFixedThreadPool(nThreads);
+        Camera mainCamera = scene.getCamera();
+        FrameBuffer frameBuffer = new FrameBuffer(mainCamera.getResolutionWidth(), mainCamera.getResolutionHeight());
+        renderAsync(scene, getDefaultScheduler(), frameBuffer, null, null).join();
+        return frameBuffer.toImage();
+    }
+
+    /**
+     * Renders the scene into an image, tile by tile, using the given scheduler.
+     *
+     * @param scene     The scene to be rendered.
+     * @param scheduler The scheduler that distributes the tiles among its workers.
+     * @param image     The image to render into, of type TYPE_INT_RGB, with the resolution of the camera.
+     * @return The time spent on every tile.
+     */
+    public static TileStatistics parallelImageRaytracing(Scene scene, TileScheduler scheduler, BufferedImage image) {
+        return renderAsync(scene, scheduler, image, null).join();
+    }
+
+    /**
+     * Renders the scene into an image with adaptive anti-aliasing, tile by tile, using the given scheduler.
+     *
+     * @param scene     The scene to be rendered.
+     * @param scheduler The scheduler that distributes the tiles among its workers.
+     * @param image     The image to render into, of type TYPE_INT_RGB, with the resolution of the camera.
+     * @param sampler   The sampler that decides how many rays every pixel gets.
+     * @return The time spent on every tile.
+     */
+    public static TileStatistics parallelImageRaytracing(Scene scene, TileScheduler scheduler, BufferedImage image, AdaptiveSampler sampler) {
+        return renderAsync(scene, scheduler, image, null, sampler).join();
+    }
+
+    /**
+     * Starts rendering the scene into an image without waiting for it. The workers write their tiles straight into
+     * the pixels of the image, and every finished tile is handed to the listener from the worker thread that
+     * rendered it.
+     *
+     * @param scene     The scene to be rendered.
+     * @param scheduler The scheduler that distributes the tiles among its workers.
+     * @param image     The image to render into, of type TYPE_INT_RGB, with the resolution of the camera.
+     * @param listener  The listener of the finished tiles, or null.
+     * @return The job tracking the render, which reports progress and can be cancelled.
+     */
+    public static RenderJob renderAsync(Scene scene, TileScheduler scheduler, BufferedImage image, Consumer<RenderedTile> listener) {
+        return renderAsync(scene, scheduler, image, listener, null);
+    }
 
+    /**
+     * Starts rendering the scene into an image without waiting for it, optionally with adaptive anti-aliasing.
+     * The workers write their tiles straight into the pixels of the image, and every finished tile is handed to
+     * the listener from the worker thread that rendered it.
+     *
+     * @param scene     The scene to be rendered.
+     * @param scheduler The scheduler that distributes the tiles among its workers.
+     * @param image     The image to render into, of type TYPE_INT_RGB, with the resolution of the camera.
+     * @param listener  The listener of the finished tiles, or null.
+     * @param sampler   The sampler that decides how many rays every pixel gets, or null for one ray per pixel.
+     * @return The job tracking the render, which reports progress and can be cancelled.
+     */
+    public static RenderJob renderAsync(Scene scene, TileScheduler scheduler, BufferedImage image, Consumer<RenderedTile> listener, AdaptiveSampler sampler) {
+        return renderAsync(scene, scheduler, FrameBuffer.wrap(image), listener, sampler);
+    }
+
+    /**
+     * Starts rendering the scene into a frame buffer without waiting for it, optionally with adaptive
+     * anti-aliasing. Every worker writes its tiles straight into the frame buffer, and every finished tile is
+     * handed to the listener from the worker thread that rendered it.
+     *
+     * @param scene       The scene to be rendered.
+     * @param scheduler   The scheduler that distributes the tiles among its workers.
+     * @param frameBuffer The frame buffer to render into, with the resolution of the camera.
+     * @param listener    The listener of the finished tiles, or null.
+     * @param sampler     The sampler that decides how many rays every pixel gets, or null for one ray per pixel.
+     * @return The job tracking the render, which reports progress and can be cancelled.
+     */
+    public static RenderJob renderAsync(Scene scene, TileScheduler scheduler, FrameBuffer frameBuffer, Consumer<RenderedTile> listener, AdaptiveSampler sampler) {
         Camera mainCamera = scene.getCamera();
-        BufferedImage image = new BufferedImage(mainCamera.getResolutionWidth(), mainCamera.getResolutionHeight(), BufferedImage.TYPE_INT_RGB);
-        List<Object3D> objects = scene.getObjects();
+        SceneBVH objects = scene.updateAccelerationStructure();
         List<Light> lights = scene.getLights();
-        Vector3D[][] posRaytrace = mainCamera.calculatePositionsToRay();
-
-        int stepX = posRaytrace[0].length / nThreads;
-        int stepY = posRaytrace.length / nThreads;
-
-        for (int i = 0; i < stepY; i++) {
-            for (int j = 0; j < stepX; j++) {
-                int startX = j * stepX;
-                int startY = i * stepY;
-
-                Runnable runnable = raytraceSection(
-                        startX,
-                        startX + stepX,
-                        startY,
-                        startY + stepY,
-                        image,
-                        mainCamera,
-                        objects,
-                        lights,
-                        posRaytrace
-                );
+        double[] imagePlane = mainCamera.calculateImagePlane();
 
-                executorService.execute(runnable);
-            }
-        }
+        return scheduler.submit(mainCamera.getResolutionWidth(), mainCamera.getResolutionHeight(),
+                tile -> raytraceTile(tile, frameBuffer, mainCamera, objects, lights, imagePlane, sampler, listener != null), listener);
+    }
 
-        executorService.shutdown();
+    /**
+     * Renders the scene in horizontal bands, handing every band to the writer as soon as it is finished, so only
+     * one band of pixels is in memory at any time.
+     *
+     * @param scene     The scene to be rendered.
+     * @param scheduler The scheduler that distributes the tiles of every band among its workers.
+     * @param writer    The writer of the bands, with the resolution of the camera.
+     * @param sampler   The sampler that decides how many rays every pixel gets, or null for one ray per pixel.
+     * @throws IOException If a band cannot be written.
+     */
+    public static void renderBands(Scene scene, TileScheduler scheduler, BandWriter writer, AdaptiveSampler sampler) throws IOException {
+        Camera mainCamera = scene.getCamera();
+        int width = mainCamera.getResolutionWidth();
+        int height = mainCamera.getResolutionHeight();
+        if (writer.getWidth() != width || writer.getHeight() != height) {
+            throw new IllegalArgumentException("The writer does not have the resolution of the camera");
+        }
+        SceneBVH objects = scene.updateAccelerationStructure();
+        List<Light> lights = scene.getLights();
+        double[] imagePlane = mainCamera.calculateImagePlane();
+
+        for (int bandY = 0; bandY < height; bandY += writer.getBandHeight()) {
+            int firstRow = bandY;
+            int rows = Math.min(writer.getBandHeight(), height - bandY);
+            scheduler.render(width, rows, tile -> {
+                double[] planes = calculateClippingPlanes(mainCamera);
+                for (int row = tile.getY(); row < tile.getY() + tile.getHeight(); row++) {
+                    for (int x = tile.getX(); x < tile.getX() + tile.getWidth(); x++) {
+                        writer.setPixel(x, row, shadePixel(mainCamera, objects, lights, imagePlane, planes, sampler, x, firstRow + row));
+                    }
+                }
+                return null;
+            });
+            writer.writeBand(bandY, rows);
+        }
+    }
 
-        try {
-            if (!executorService.awaitTermination(1000, TimeUnit.MINUTES)) {
-                executorService.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } finally {
-            if (!executorService.isShutdown()) {
-                System.err.println("Cancel non-finished");
-            }
+    /**
+     * Gets the scheduler shared by the renders that do not provide one, creating it on first use.
+     * It has one worker per available processor.
+     *
+     * @return The default scheduler.
+     */
+    public static synchronized TileScheduler getDefaultScheduler() {
+        if (defaultScheduler == null) {
+            defaultScheduler = new TileScheduler();
         }
-        executorService.shutdownNow();
+        return defaultScheduler;
+    }
 
-        return image;
+    /**
+     * Checks if renders with one ray per pixel trace their primary and shadow rays as packets.
+     *
+     * @return True if packets are used, false if every ray is traced on its own.
+     */
+    public static boolean isPacketTracingEnabled() {
+        return packetTracingEnabled;
+    }
+
+    /**
+     * Enables or disables packet tracing. With it, the primary rays of every block of 4x4 pixels of a tile are traced
+     * together, and so are their shadow rays toward each light; the image is the same either way, which is useful to
+     * compare both paths. Renders with adaptive anti-aliasing, and scenes of more than 64 lights, trace every ray on
+     * its own. It is disabled by default: without vector instructions the packets are about as fast as single rays,
+     * see PacketTracingReport.
+     *
+     * @param enabled True to trace packets, false to trace every ray on its own.
+     */
+    public static void setPacketTracingEnabled(boolean enabled) {
+        packetTracingEnabled = enabled;
     }
 
     /**
-     * Creates a runnable task to ray trace a section of the image.
+     * Ray traces the pixels of a tile of the image.
      *
-     * @param startX       The starting X coordinate.
-     * @param endX         The ending X coordinate.
-     * @param startY       The starting Y coordinate.
-     * @param endY         The ending Y coordinate.
-     * @param image        The image to be rendered.
+     * @param tile         The tile to render.
+     * @param frameBuffer  The frame buffer to be rendered.
      * @param mainCamera   The camera for the scene.
-     * @param objects      The list of objects in the scene.
+     * @param objects      The acceleration structure over the objects in the scene.
      * @param lights       The list of lights in the scene.
-     * @param posRaytrace  The ray trace positions.
-     * @return A runnable task for ray tracing the section.
+     * @param imagePlane   The layout of the image plane of the camera.
+     * @param sampler      The adaptive sampler, or null to trace one ray per pixel.
+     * @param publish      Whether the pixels of the tile are handed to a listener.
+     * @return A copy of the pixels of the tile as packed RGB, row by row, or null if the tile is not published.
      */
-    private static Runnable raytraceSection(int startX, int endX, int startY, int endY, BufferedImage image, Camera mainCamera, List<Object3D> objects, List<Light> lights, Vector3D[][] posRaytrace) {
-        return () -> {
-            Vector3D pos = mainCamera.getPosition();
-            double[] nearFarPlanes = mainCamera.getNearFarPlanes();
-            double cameraZ = pos.getZ();
+    private static int[] raytraceTile(Tile tile, FrameBuffer frameBuffer, Camera mainCamera, SceneBVH objects, List<Light> lights, double[] imagePlane, AdaptiveSampler sampler, boolean publish) {
+        double[] planes = calculateClippingPlanes(mainCamera);
+        int[] pixels = frameBuffer.getPixels();
+        int width = frameBuffer.getWidth();
 
-            for (int i = startY; i < endY; i++) {
-                for (int j = startX; j < endX; j++) {
+        if (sampler == null && isPacketTracingEnabled() && lights.size() <= Long.SIZE) {
+            new PacketTracer(mainCamera, objects, lights, imagePlane, planes).traceTile(tile, pixels, width);
+        } else {
+            for (int y = tile.getY(); y < tile.getY() + tile.getHeight(); y++) {
+                for (int x = tile.getX(); x < tile.getX() + tile.getWidth(); x++) {
+                    pixels[y * width + x] = shadePixel(mainCamera, objects, lights, imagePlane, planes, sampler, x, y).toRGB();
+                }
+            }
+        }
 
-                    // Bound check
-                    if (i >= posRaytrace.length || j >= posRaytrace[i].length) {
-                        continue;
-                    }
+        return publish ? frameBuffer.copyTile(tile) : null;
+    }
 
-                    double x = posRaytrace[i][j].getX() + pos.getX();
-                    double y = posRaytrace[i][j].getY() + pos.getY();
-                    double z = posRaytrace[i][j].getZ() + pos.getZ();
-                    double[] planes = new double[]{cameraZ + nearFarPlanes[0], cameraZ + nearFarPlanes[1]};
+    /**
+     * Calculates the color of a pixel with one ray or with the adaptive sampler.
+     */
+    private static Radiance shadePixel(Camera camera, SceneBVH objects, List<Light> lights, double[] imagePlane, double[] planes, AdaptiveSampler sampler, int x, int y) {
+        return sampler == null
+                ? tracePixel(camera, objects, lights, imagePlane, planes, x, y)
+                : sampler.samplePixel(camera, objects, lights, imagePlane, planes, x, y);
+    }
 
-                    Ray ray = new Ray(mainCamera.getPosition(), new Vector3D(x, y, z));
+    /**
+     * Calculates the clipping planes of a camera as world space z values.
+     *
+     * @param camera The camera.
+     * @return The near and far clipping planes.
+     */
+    public static double[] calculateClippingPlanes(Camera camera) {
+        double[] nearFarPlanes = camera.getNearFarPlanes();
+        double cameraZ = camera.getPosition().getZ();
+        return new double[]{cameraZ + nearFarPlanes[0], cameraZ + nearFarPlanes[1]};
+    }
 
-                    Color pixelColor = calculateColor(mainCamera, mainCamera, objects, lights, ray, planes, 0);
-                    image.setRGB(i, j, pixelColor.getRGB());
-                }
-            }
-        };
+    /**
+     * Traces the primary ray of a pixel.
+     *
+     * @param camera         The camera for the scene.
+     * @param objects        The acceleration structure over the objects in the scene.
+     * @param lights         The list of lights in the scene.
+     * @param imagePlane     The layout of the image plane of the camera.
+     * @param clippingPlanes The clipping planes of the camera.
+     * @param x              The column of the pixel.
+     * @param y              The row of the pixel.
+     * @return The linear color of the pixel.
+     */
+    public static Radiance tracePixel(Camera camera, SceneBVH objects, List<Light> lights, double[] imagePlane, double[] clippingPlanes, int x, int y) {
+        return traceSample(camera, objects, lights, imagePlane, clippingPlanes, x, y, 0, 0);
+    }
+
+    /**
+     * Traces a primary ray through any point of a pixel.
+     *
+     * @param camera         The camera for the scene.
+     * @param objects        The acceleration structure over the objects in the scene.
+     * @param lights         The list of lights in the scene.
+     * @param imagePlane     The layout of the image plane of the camera.
+     * @param clippingPlanes The clipping planes of the camera.
+     * @param x              The column of the pixel.
+     * @param y              The row of the pixel.
+     * @param offsetX        The horizontal offset from the pixel position, in pixels.
+     * @param offsetY        The vertical offset from the pixel position, in pixels.
+     * @return The linear color seen through the point.
+     */
+    public static Radiance traceSample(Camera camera, SceneBVH objects, List<Light> lights, double[] imagePlane, double[] clippingPlanes, int x, int y, double offsetX, double offsetY) {
+        Ray ray = camera.generateRay(imagePlane, x, y, offsetX, offsetY);
+        return calculateColor(camera, camera, objects, lights, ray, clippingPlanes, 0);
     }
 
     /**
@@ -189,83 +439,171 @@ public class Raytracer {
      *
      * @param camera         The camera.
      * @param caster         The object casting the ray.
-     * @param objects        The list of objects in the scene.
+     * @param objects        The acceleration structure over the objects in the scene.
      * @param lights         The list of lights in the scene.
      * @param ray            The ray being traced.
      * @param clippingPlanes The clipping planes.
      * @param depth          The depth of recursion.
-     * @return The color of the pixel.
+     * @return The linear color of the pixel.
      */
-    private static Color calculateColor(Camera camera, Object3D caster, List<Object3D> objects, List<Light> lights, Ray ray, double[] clippingPlanes, int depth) {
+    private static Radiance calculateColor(Camera camera, Object3D caster, SceneBVH objects, List<Light> lights, Ray ray, double[] clippingPlanes, int depth) {
         Intersection closestIntersection = raycast(ray, objects, caster, clippingPlanes);
-        Color pixelColor = Color.BLACK;
-
-        if (closestIntersection != null) {
-            Color objColor = closestIntersection.getObject().getMaterial().getColor();
-
-            for (Light light : lights) {
-                if (!isShadowed(closestIntersection, light, objects, clippingPlanes)) {
-                    Color diffuse = calculateDiffuseColor(closestIntersection, light, objColor);
-                    pixelColor = ColorTools.addColor(pixelColor, diffuse);
-                    if (closestIntersection.getObject().getMaterial().getShininess() < Material.MAX_SHININESS) {
-                        Color specular = calculateSpecularColor(closestIntersection, light, camera.getPosition());
-                        Color ambientColor = ColorTools.getAmbientColor(objColor, AMBIENT_INTENSITY);
-                        pixelColor = ColorTools.addColor(pixelColor, specular);
-                        pixelColor = ColorTools.addColor(pixelColor, ambientColor);
-                    }
-                }
-            }
+        if (closestIntersection == null) {
+            return new Radiance();
+        }
+        return shadeIntersection(camera, objects, lights, ray, closestIntersection, clippingPlanes, depth);
+    }
 
-            if (closestIntersection.getObject().getMaterial().getReflectivity() > 0.0 && depth <= MAX_RAY_DEPTH) {
-                Color reflectedColor = calculateReflectionColor(camera, ray, closestIntersection, objects, lights, clippingPlanes, depth);
-                reflectedColor = ColorTools.addWeightedColor(reflectedColor, pixelColor, closestIntersection.getObject().getMaterial().getReflectivity());
+    /**
+     * Calculates the color seen along a ray at the intersection it already found: the direct light, the
+     * reflections and the refractions.
+     *
+     * @param camera              The camera.
+     * @param objects             The acceleration structure over the objects in the scene.
+     * @param lights              The list of lights in the scene.
+     * @param ray                 The ray that was traced.
+     * @param closestIntersection The closest intersection of the ray.
+     * @param clippingPlanes      The clipping planes.
+     * @param depth               The depth of recursion, 0 for primary rays.
+     * @return The linear color of the intersection.
+     */
+    public static Radiance shadeIntersection(Camera camera, SceneBVH objects, List<Light> lights, Ray ray, Intersection closestIntersection, double[] clippingPlanes, int depth) {
+        Radiance pixelColor = new Radiance();
+        calculateDirectColor(closestIntersection, lights, objects, camera.getPosition(), pixelColor, null);
+        return addIndirectColor(camera, objects, lights, ray, closestIntersection, clippingPlanes, depth, pixelColor);
+    }
 
-                if (closestIntersection.getObject().getMaterial().getRefractivity() == 0) {
-                    pixelColor = reflectedColor;
-                } else {
-                    pixelColor = calculateRefractedColor(camera, ray, closestIntersection, objects, lights, clippingPlanes, depth, reflectedColor);
-                }
+    /**
+     * Calculates the color seen along a primary ray at the intersection it already found, with the shadow rays of
+     * the direct light already traced.
+     *
+     * @param camera              The camera.
+     * @param objects             The acceleration structure over the objects in the scene.
+     * @param lights              The list of lights in the scene, at most 64.
+     * @param ray                 The primary ray.
+     * @param closestIntersection The closest intersection of the ray.
+     * @param clippingPlanes      The clipping planes.
+     * @param unshadowed          A mask with bit i set if light i is not shadowed at the intersection.
+     * @return The linear color of the intersection.
+     */
+    static Radiance shadeWithUnshadowedLights(Camera camera, SceneBVH objects, List<Light> lights, Ray ray, Intersection closestIntersection, double[] clippingPlanes, long unshadowed) {
+        Radiance pixelColor = new Radiance();
+        for (int i = 0; i < lights.size(); i++) {
+            if ((unshadowed & 1L << i) != 0) {
+                addDirectColor(closestIntersection, lights.get(i), camera.getPosition(), pixelColor, null);
+            }
+        }
+        return addIndirectColor(camera, objects, lights, ray, closestIntersection, clippingPlanes, 0, pixelColor);
+    }
+
+    /**
+     * Blends the reflections and refractions of an intersection into the color of its direct light.
+     *
+     * @return The color with the reflections and refractions.
+     */
+    private static Radiance addIndirectColor(Camera camera, SceneBVH objects, List<Light> lights, Ray ray, Intersection closestIntersection, double[] clippingPlanes, int depth, Radiance pixelColor) {
+        Material material = closestIntersection.getObject().getMaterial();
+        if (material.getReflectivity() > 0.0 && depth <= MAX_RAY_DEPTH) {
+            Radiance reflectedColor = calculateReflectionColor(camera, ray, closestIntersection, objects, lights, clippingPlanes, depth);
+            pixelColor.lerp(reflectedColor, material.getReflectivity());
+
+            if (material.getRefractivity() != 0) {
+                pixelColor = calculateRefractedColor(camera, ray, closestIntersection, objects, lights, clippingPlanes, depth, pixelColor);
             }
         }
         return pixelColor;
     }
 
     /**
-     * Calculates the diffuse color of an intersection.
+     * Adds the diffuse color of an intersection to an accumulated color.
      *
      * @param closestIntersection The closest intersection.
      * @param light               The light source.
      * @param objColor            The object color.
-     * @return The diffuse color.
+     * @param pixelColor          The color the diffuse contribution is added to.
      */
-    public static Color calculateDiffuseColor(Intersection closestIntersection, Light light, Color objColor) {
+    public static void calculateDiffuseColor(Intersection closestIntersection, Light light, Radiance objColor, Radiance pixelColor) {
         double nDotL = light.getNDotL(closestIntersection);
-        Color lightColor = light.getMaterial().getColor();
         double intensity = light.getIntensity() * nDotL;
+        pixelColor.addProduct(objColor, light.getMaterial().getRadiance(), intensity);
+    }
 
-        double[] lightColors = new double[]{lightColor.getRed() / 255.0, lightColor.getGreen() / 255.0, lightColor.getBlue() / 255.0};
-        double[] objColors = new double[]{objColor.getRed() / 255.0, objColor.getGreen() / 255.0, objColor.getBlue() / 255.0};
+    /**
+     * Adds the light that reaches an intersection straight from every light source that is not shadowed, with its
+     * specular highlights and the ambient term.
+     *
+     * @param closestIntersection The closest intersection.
+     * @param lights              The lights of the scene.
+     * @param objects             The hierarchy of the scene objects, to cast the shadow rays.
+     * @param viewerPosition      The position of the viewer.
+     * @param pixelColor          The color the direct light is added to.
+     * @param diffuseColor        The color the direct light without the specular highlights, which does not depend
+     *                            on the viewer, is added to, or null.
+     * @return A mask with bit i set if light i is not shadowed, for the first 64 lights.
+     */
+    public static long calculateDirectColor(Intersection closestIntersection, List<Light> lights, SceneBVH objects, Vector3D viewerPosition, Radiance pixelColor, Radiance diffuseColor) {
+        long unshadowed = 0;
+        for (int i = 0; i < lights.size(); i++) {
+            Light light = lights.get(i);
+            if (!isShadowed(closestIntersection, light, objects)) {
+                if (i < Long.SIZE) {
+                    unshadowed |= 1L << i;
+                }
+                addDirectColor(closestIntersection, light, viewerPosition, pixelColor, diffuseColor);
+            }
+        }
+        return unshadowed;
+    }
 
-        for (int colorIndex = 0; colorIndex < objColors.length; colorIndex++) {
-            objColors[colorIndex] *= intensity * lightColors[colorIndex];
+    /**
+     * Adds the light of one light source that reaches an intersection, which must not be shadowed.
+     */
+    private static void addDirectColor(Intersection closestIntersection, Light light, Vector3D viewerPosition, Radiance pixelColor, Radiance diffuseColor) {
+        Material material = closestIntersection.getObject().getMaterial();
+        Radiance objColor = material.getRadiance();
+        calculateDiffuseColor(closestIntersection, light, objColor, pixelColor);
+        if (diffuseColor != null) {
+            calculateDiffuseColor(closestIntersection, light, objColor, diffuseColor);
+        }
+        if (material.getShininess() < Material.MAX_SHININESS) {
+            calculateSpecularColor(closestIntersection, light, viewerPosition, pixelColor);
+            pixelColor.addScaled(objColor, AMBIENT_INTENSITY);
+            if (diffuseColor != null) {
+                diffuseColor.addScaled(objColor, AMBIENT_INTENSITY);
+            }
         }
+    }
 
-        return new Color(
-                (float) Math.clamp(objColors[0], 0.0, 1.0),
-                (float) Math.clamp(objColors[1], 0.0, 1.0),
-                (float) Math.clamp(objColors[2], 0.0, 1.0)
-        );
+    /**
+     * Adds the specular highlights of the lights that reach an intersection, as found by calculateDirectColor, for
+     * a viewer that may have moved since.
+     *
+     * @param closestIntersection The closest intersection.
+     * @param lights              The lights of the scene.
+     * @param unshadowed          The mask of the lights that are not shadowed.
+     * @param viewerPosition      The position of the viewer.
+     * @param pixelColor          The color the specular highlights are added to.
+     */
+    public static void calculateSpecularColor(Intersection closestIntersection, List<Light> lights, long unshadowed, Vector3D viewerPosition, Radiance pixelColor) {
+        if (closestIntersection.getObject().getMaterial().getShininess() >= Material.MAX_SHININESS) {
+            return;
+        }
+        for (int i = 0; i < Math.min(lights.size(), Long.SIZE); i++) {
+            if ((unshadowed & 1L << i) != 0) {
+                calculateSpecularColor(closestIntersection, lights.get(i), viewerPosition, pixelColor);
+            }
+        }
     }
 
     /**
-     * Calculates the specular color of an intersection.
+     * Adds the specular color of an intersection to an accumulated color.
      *
      * @param closestIntersection The closest intersection.
      * @param light               The light source.
      * @param viewerPosition      The position of the viewer.
-     * @return The specular color.
+     * @param pixelColor          The color the specular contribution is added to.
      */
-    public static Color calculateSpecularColor(Intersection closestIntersection, Light light, Vector3D viewerPosition) {
+    public static void calculateSpecularColor(Intersection closestIntersection, Light light, Vector3D viewerPosition, Radiance pixelColor) {
         Vector3D L = Vector3D.normalize(Vector3D.substract(light.getPosition(), closestIntersection.getPosition()));
         Vector3D V = Vector3D.normalize(Vector3D.substract(viewerPosition, closestIntersection.getPosition()));
         Vector3D H = Vector3D.normalize(Vector3D.add(L, V));
@@ -273,11 +611,7 @@ public class Raytracer {
         double NdotH = Math.max(Vector3D.dotProduct(closestIntersection.getNormal(), H), 0);
         double specularIntensity = Math.pow(NdotH, closestIntersection.getObject().getMaterial().getShininess());
 
-        return new Color(
-                (float) (light.getMaterial().getColor().getRed() / 255.0 * specularIntensity),
-                (float) (light.getMaterial().getColor().getGreen() / 255.0 * specularIntensity),
-                (float) (light.getMaterial().getColor().getBlue() / 255.0 * specularIntensity)
-        );
+        pixelColor.addScaled(light.getMaterial().getRadiance(), specularIntensity);
     }
 
     /**
@@ -286,14 +620,14 @@ public class Raytracer {
      * @param camera          The camera.
      * @param ray             The ray being traced.
      * @param intersection    The intersection.
-     * @param objects         The list of objects in the scene.
+     * @param objects         The acceleration structure over the objects in the scene.
      * @param lights          The list of lights in the scene.
      * @param clippingPlanes  The clipping planes.
      * @param depth           The depth of recursion.
      * @param reflectedColor  The reflected color.
      * @return The refracted color.
      */
-    public static Color calculateRefractedColor(Camera camera, Ray ray, Intersection intersection, List<Object3D> objects, List<Light> lights, double[] clippingPlanes, int depth, Color reflectedColor) {
+    public static Radiance calculateRefractedColor(Camera camera, Ray ray, Intersection intersection, SceneBVH objects, List<Light> lights, double[] clippingPlanes, int depth, Radiance reflectedColor) {
         Vector3D offset = Vector3D.scalarMultiplication(intersection.getNormal(), -EPSILON);
         Vector3D refractedOrigin = Vector3D.add(intersection.getPosition(), offset);
 
@@ -321,10 +655,10 @@ public class Raytracer {
         Vector3D T = Vector3D.normalize(Vector3D.add(Vector3D.scalarMultiplication(ray.getDirection(), ratio), Vector3D.scalarMultiplication(normal, (ratio * cosI - c2))));
 
         Ray refractedRay = new Ray(refractedOrigin, T);
-        Color totalRefractedColor = Color.BLACK;
+        Radiance totalRefractedColor = new Radiance();
         double weight = 0.0;
 
-        Color refractedColor = calculateColor(
+        Radiance refractedColor = calculateColor(
                 camera,
                 intersection.getObject(),
                 objects,
@@ -336,18 +670,18 @@ public class Raytracer {
 
         for (Light light : lights) {
             double nDotL = light.getNDotL(intersection);
-            if (!isShadowed(intersection, light, objects, clippingPlanes)) {
+            if (!isShadowed(intersection, light, objects)) {
                 double r0 = Math.pow((n1 - n2) / (n1 + n2), 2);
                 double rTheta = r0 + (1 - r0) * Math.pow(1 - cosI, 5);
-                refractedColor = ColorTools.addWeightedColor(reflectedColor, refractedColor, rTheta);
-                refractedColor = ColorTools.scaleColor(refractedColor, nDotL);
-                totalRefractedColor = ColorTools.addColor(totalRefractedColor, refractedColor);
+                refractedColor.lerp(reflectedColor, rTheta);
+                refractedColor.scale(nDotL);
+                totalRefractedColor.add(refractedColor);
                 weight += nDotL;
             }
         }
 
         if (weight > 0) {
-            totalRefractedColor = ColorTools.scaleColor(totalRefractedColor, 1.0 / weight);
+            totalRefractedColor.scale(1.0 / weight);
         }
 
         return totalRefractedColor;
@@ -359,25 +693,25 @@ public class Raytracer {
      * @param camera              The camera.
      * @param ray                 The ray being traced.
      * @param closestIntersection The closest intersection.
-     * @param objects             The list of objects in the scene.
+     * @param objects             The acceleration structure over the objects in the scene.
      * @param lights              The list of lights in the scene.
      * @param clippingPlanes      The clipping planes.
      * @param depth               The depth of recursion.
      * @return The reflection color.
      */
-    public static Color calculateReflectionColor(Camera camera, Ray ray, Intersection closestIntersection, List<Object3D> objects, List<Light> lights, double[] clippingPlanes, int depth) {
+    public static Radiance calculateReflectionColor(Camera camera, Ray ray, Intersection closestIntersection, SceneBVH objects, List<Light> lights, double[] clippingPlanes, int depth) {
         Vector3D reflectedVector = reflect(ray.getDirection(), closestIntersection.getNormal());
         Vector3D offset = Vector3D.scalarMultiplication(closestIntersection.getNormal(), EPSILON);
         Vector3D reflectedOrigin = Vector3D.add(closestIntersection.getPosition(), offset);
         Ray reflectedRay = new Ray(reflectedOrigin, reflectedVector);
 
-        Color initialColor = Color.BLACK;
+        Radiance initialColor = new Radiance();
         double weight = 0.0;
 
         for (Light light : lights) {
             double nDotL = light.getNDotL(closestIntersection);
-            if (!isShadowed(closestIntersection, light, objects, clippingPlanes)) {
-                Color reflectedColor = calculateColor(
+            if (!isShadowed(closestIntersection, light, objects)) {
+                Radiance reflectedColor = calculateColor(
                         camera,
                         closestIntersection.getObject(),
                         objects,
@@ -386,50 +720,49 @@ public class Raytracer {
                         clippingPlanes,
                         depth + 1);
 
-                reflectedColor = ColorTools.scaleColor(reflectedColor, nDotL * 0.9);
-                initialColor = ColorTools.addColor(initialColor, reflectedColor);
+                initialColor.addScaled(reflectedColor, nDotL * 0.9);
                 weight += nDotL;
             }
         }
 
         if (weight > 0) {
-            initialColor = ColorTools.scaleColor(initialColor, 1.0 / weight);
+            initialColor.scale(1.0 / weight);
         }
 
         return initialColor;
     }
 
     /**
-     * Checks if a point is shadowed by any object.
+     * Checks if a point is shadowed by any opaque object. Refractive objects between the point and the light
+     * let the light through.
      *
      * @param origin        The origin intersection.
      * @param light         The light source.
-     * @param objects       The list of objects in the scene.
-     * @param clippingPlanes The clipping planes.
+     * @param objects       The acceleration structure over the objects in the scene.
      * @return True if the point is shadowed, false otherwise.
      */
-    public static boolean isShadowed(Intersection origin, Light light, List<Object3D> objects, double[] clippingPlanes) {
-        Vector3D lightDirection = Vector3D.normalize(Vector3D.substract(light.getPosition(), origin.getPosition()));
-        Ray ray = new Ray(origin.getPosition(), lightDirection);
-        Intersection obstacle = raycast(ray, objects, origin.getObject(), clippingPlanes);
-
-        double distanceToLight = Vector3D.magnitude(Vector3D.substract(light.getPosition(), origin.getPosition()));
-        if (obstacle == null)
-            return false;
-        else {
-            double distanceToObstacle = Vector3D.magnitude(Vector3D.substract(obstacle.getPosition(), origin.getPosition()));
-            if (distanceToLight < distanceToObstacle) {
-                return false;
-            } else if (obstacle.getObject().getMaterial().getRefractivity() > 0) {
-                return isShadowed(obstacle, light, objects, clippingPlanes);
-            } else {
-                return true;
-            }
-        }
+    public static boolean isShadowed(Intersection origin, Light light, SceneBVH objects) {
+        Vector3D toLight = Vector3D.substract(light.getPosition(), origin.getPosition());
+        double distanceToLight = Vector3D.magnitude(toLight);
+        Ray ray = new Ray(origin.getPosition(), Vector3D.normalize(toLight));
+        return objects.isOccluded(ray, distanceToLight, origin.getObject());
+    }
+
+    /**
+     * Performs a raycast to find the closest intersection using the acceleration structure of the scene.
+     *
+     * @param ray            The ray being cast.
+     * @param objects        The acceleration structure over the objects in the scene.
+     * @param caster         The object casting the ray.
+     * @param clippingPlanes The clipping planes.
+     * @return The closest intersection.
+     */
+    public static Intersection raycast(Ray ray, SceneBVH objects, Object3D caster, double[] clippingPlanes) {
+        return objects.raycast(ray, caster, clippingPlanes);
     }
 
     /**
-     * Performs a raycast to find the closest intersection.
+     * Performs a raycast to find the closest intersection by testing every object.
      *
      * @param ray            The ray being cast.
      * @param objects        The list of objects in the scene.
@@ -1,15 +1,19 @@
 package edu.up.isgc.cg.raytracer;
 
+import edu.up.isgc.cg.raytracer.acceleration.SceneBVH;
 import edu.up.isgc.cg.raytracer.lights.Light;
 import edu.up.isgc.cg.raytracer.objects.Object3D;
 import edu.up.isgc.cg.raytracer.objects.Camera;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * The Scene class represents a 3D scene containing a camera, objects, and lights.
  * It is used to manage and render all the components of a scene in ray tracing.
+ * Before rendering, a top level acceleration structure is built over the bounds of the objects.
  *
  * @author Jafet Rodriguez, José Salcedo
  */
@@ -17,6 +21,7 @@ public class Scene {
     private Camera camera;
     private List<Object3D> objects;
     private List<Light> lights;
+    private SceneBVH accelerationStructure;
 
     /**
      * Constructs a new Scene with empty lists of objects and lights.
@@ -51,6 +56,18 @@ public class Scene {
      */
     public void addObject(Object3D object) {
         getObjects().add(object);
+        accelerationStructure = null;
+    }
+
+    /**
+     * Waits for an object that is still being created, for example by an
+     * {@link edu.up.isgc.cg.raytracer.tools.AssetLoader}, and adds it to the scene.
+     *
+     * @param object The future object.
+     * @throws CompletionException If the object could not be created; its cause is the original error.
+     */
+    public void addObject(CompletableFuture<? extends Object3D> object) {
+        addObject(object.join());
     }
 
     /**
@@ -72,6 +89,46 @@ public class Scene {
      */
     public void setObjects(List<Object3D> objects) {
         this.objects = objects;
+        accelerationStructure = null;
+    }
+
+    /**
+     * Builds the top level acceleration structure over the current objects of the scene.
+     * Rendering keeps the structure up to date with {@link #updateAccelerationStructure()}; building it again is
+     * only worth it after objects moved far from where they were when it was built.
+     *
+     * @return The new acceleration structure.
+     */
+    public SceneBVH buildAccelerationStructure() {
+        accelerationStructure = new SceneBVH(getObjects());
+        return accelerationStructure;
+    }
+
+    /**
+     * Brings the top level acceleration structure up to date with the objects of the scene. It is built if it does
+     * not exist yet or objects were added or removed; otherwise only the bounds of the objects that moved are
+     * updated, which is what an animation needs between frames. After large movements
+     * {@link #buildAccelerationStructure()} gives a faster hierarchy.
+     *
+     * @return The up to date acceleration structure.
+     */
+    public SceneBVH updateAccelerationStructure() {
+        if (accelerationStructure == null || accelerationStructure.refit(getObjects()) < 0) {
+            buildAccelerationStructure();
+        }
+        return accelerationStructure;
+    }
+
+    /**
+     * Gets the top level acceleration structure, building it if it does not exist yet.
+     *
+     * @return The acceleration structure of the scene.
+     */
+    public SceneBVH getAccelerationStructure() {
+        if (accelerationStructure == null) {
+            buildAccelerationStructure();
+        }
+        return accelerationStructure;
     }
 
     /**
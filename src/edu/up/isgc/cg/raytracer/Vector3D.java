@@ -116,6 +116,21 @@ public class Vector3D {
         return (vectorA.getX() * vectorB.getX()) + (vectorA.getY() * vectorB.getY()) + (vectorA.getZ() * vectorB.getZ());
     }
 
+    /**
+     * Calculates the dot product of two vectors given by their components.
+     *
+     * @param ax The x-coordinate of the first vector.
+     * @param ay The y-coordinate of the first vector.
+     * @param az The z-coordinate of the first vector.
+     * @param bx The x-coordinate of the second vector.
+     * @param by The y-coordinate of the second vector.
+     * @param bz The z-coordinate of the second vector.
+     * @return The dot product.
+     */
+    public static double dotProduct(double ax, double ay, double az, double bx, double by, double bz) {
+        return (ax * bx) + (ay * by) + (az * bz);
+    }
+
     /**
      * Calculates the cross product of two vectors.
      *
@@ -139,6 +154,18 @@ public class Vector3D {
         return Math.sqrt(dotProduct(vectorA, vectorA));
     }
 
+    /**
+     * Calculates the magnitude of a vector given by its components.
+     *
+     * @param x The x-coordinate.
+     * @param y The y-coordinate.
+     * @param z The z-coordinate.
+     * @return The magnitude.
+     */
+    public static double magnitude(double x, double y, double z) {
+        return Math.sqrt(dotProduct(x, y, z, x, y, z));
+    }
+
     /**
      * Adds two vectors.
      *
@@ -0,0 +1,757 @@
+package edu.up.isgc.cg.raytracer.acceleration;
+
+import java.util.Arrays;
+
+/**
+ * The BVH class represents a bounding volume hierarchy built with the surface area heuristic (SAH).
+ * Nodes are stored in flattened primitive arrays in depth-first order, so the left child of an interior node
+ * is always the node right after it and only the index of the right child has to be stored.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class BVH {
+    public static final int MAX_DEPTH = 64;
+    private static final int MAX_LEAF_SIZE = 8;
+    private static final int BIN_COUNT = 16;
+    private static final double TRAVERSAL_COST = 0.125;
+    // Slightly enlarges the exit distance of the slab test so rounding never misses flat boxes
+    private static final double SLAB_TOLERANCE = 1 + 2 * (3 * Math.ulp(1.0) / 2) / (1 - 3 * Math.ulp(1.0) / 2);
+
+    // Traversal stacks are reused per thread; a traversal started from inside another one (scene then model)
+    // takes the slots above the outer one
+    private static final ThreadLocal<TraversalStack> STACKS = ThreadLocal.withInitial(TraversalStack::new);
+
+    // minX, minY, minZ, maxX, maxY, maxZ per node
+    private final double[] nodeBounds;
+    // Interior: [rightChild, -(axis + 1)] | Leaf: [firstPrimitive, primitiveCount]
+    private final int[] nodeInfo;
+    private final int[] primitiveIndices;
+    private final int nodeCount;
+
+    /**
+     * Callback used by the traversal to intersect a single primitive stored in a leaf.
+     */
+    public interface PrimitiveIntersector {
+        /**
+         * Intersects the primitive and returns the closest distance found so far.
+         *
+         * @param primitiveIndex  The index of the primitive to test.
+         * @param closestDistance The closest distance found so far.
+         * @return The new closest distance (the same value if the primitive was missed or farther away).
+         */
+        double intersect(int primitiveIndex, double closestDistance);
+
+        /**
+         * Intersects every primitive of a leaf in order and returns the closest distance found so far. Callbacks
+         * that can test several primitives at once override it, with the same result as this implementation.
+         *
+         * @param primitiveIndices The primitive indices of the hierarchy, in leaf order.
+         * @param first            The position of the first primitive of the leaf in primitiveIndices.
+         * @param count            The number of primitives of the leaf.
+         * @param closestDistance  The closest distance found so far.
+         * @return The new closest distance.
+         */
+        default double intersectLeaf(int[] primitiveIndices, int first, int count, double closestDistance) {
+            for (int i = first; i < first + count; i++) {
+                closestDistance = intersect(primitiveIndices[i], closestDistance);
+            }
+            return closestDistance;
+        }
+    }
+
+    /**
+     * Callback used by the occlusion traversal to test a single primitive stored in a leaf.
+     */
+    public interface PrimitiveOccluder {
+        /**
+         * Checks if the primitive blocks the ray before the maximum distance.
+         *
+         * @param primitiveIndex The index of the primitive to test.
+         * @param maxDistance    The maximum distance of the query.
+         * @return True if the primitive is hit before the maximum distance.
+         */
+        boolean occludes(int primitiveIndex, double maxDistance);
+
+        /**
+         * Checks if any primitive of a leaf blocks the ray before the maximum distance. Callbacks that can test
+         * several primitives at once override it, with the same result as this implementation.
+         *
+         * @param primitiveIndices The primitive indices of the hierarchy, in leaf order.
+         * @param first            The position of the first primitive of the leaf in primitiveIndices.
+         * @param count            The number of primitives of the leaf.
+         * @param maxDistance      The maximum distance of the query.
+         * @return True if a primitive of the leaf is hit before the maximum distance.
+         */
+        default boolean occludesLeaf(int[] primitiveIndices, int first, int count, double maxDistance) {
+            for (int i = first; i < first + count; i++) {
+                if (occludes(primitiveIndices[i], maxDistance)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Callback used by the packet traversal to intersect a single primitive with several rays of a packet.
+     */
+    public interface PacketIntersector {
+        /**
+         * Intersects the primitive with the rays of a mask, lowering the distance of every ray it hits closer than
+         * its current one.
+         *
+         * @param primitiveIndex The index of the primitive to test.
+         * @param packet         The packet of rays.
+         * @param mask           The rays whose box test reached the primitive.
+         */
+        void intersect(int primitiveIndex, RayPacket packet, int mask);
+    }
+
+    /**
+     * Callback used by the packet occlusion traversal to test a single primitive against several rays of a packet.
+     */
+    public interface PacketOccluder {
+        /**
+         * Checks which rays of a mask the primitive blocks before their maximum distance.
+         *
+         * @param primitiveIndex The index of the primitive to test.
+         * @param packet         The packet of rays.
+         * @param mask           The rays whose box test reached the primitive.
+         * @return The mask of the rays that are blocked.
+         */
+        int occludes(int primitiveIndex, RayPacket packet, int mask);
+    }
+
+    private BVH(double[] nodeBounds, int[] nodeInfo, int[] primitiveIndices, int nodeCount) {
+        this.nodeBounds = nodeBounds;
+        this.nodeInfo = nodeInfo;
+        this.primitiveIndices = primitiveIndices;
+        this.nodeCount = nodeCount;
+    }
+
+    /**
+     * Builds a BVH over a set of primitives given their axis aligned bounds.
+     *
+     * @param primitiveBounds The bounds of every primitive (minX, minY, minZ, maxX, maxY, maxZ per primitive).
+     * @return The BVH over the primitives.
+     */
+    public static BVH build(double[] primitiveBounds) {
+        int primitiveCount = primitiveBounds.length / 6;
+        Builder builder = new Builder(primitiveBounds, primitiveCount);
+        if (primitiveCount > 0) {
+            builder.build(0, primitiveCount, 0);
+        }
+        return builder.toBVH();
+    }
+
+    /**
+     * Gets the number of nodes of the hierarchy.
+     *
+     * @return The number of nodes.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Gets an upper bound of the bytes held by the arrays of a hierarchy over a number of primitives, which have
+     * at most 2n - 1 nodes.
+     *
+     * @param primitiveCount The number of primitives.
+     * @return The largest memory footprint in bytes.
+     */
+    public static long getMaxMemoryFootprint(int primitiveCount) {
+        long arrayHeader = 16;
+        long nodes = Math.max(2L * primitiveCount - 1, 1);
+        return 3 * arrayHeader + nodes * (6 * Double.BYTES + 2 * Integer.BYTES) + (long) primitiveCount * Integer.BYTES;
+    }
+
+    /**
+     * Gets the flattened node bounds (minX, minY, minZ, maxX, maxY, maxZ per node).
+     *
+     * @return The node bounds.
+     */
+    public double[] getNodeBounds() {
+        return nodeBounds;
+    }
+
+    /**
+     * Gets the flattened node information ([rightChild, -(axis + 1)] for interior nodes and
+     * [firstPrimitive, primitiveCount] for leaves).
+     *
+     * @return The node information.
+     */
+    public int[] getNodeInfo() {
+        return nodeInfo;
+    }
+
+    /**
+     * Gets the primitive indices referenced by the leaves, in leaf order.
+     *
+     * @return The primitive indices.
+     */
+    public int[] getPrimitiveIndices() {
+        return primitiveIndices;
+    }
+
+    /**
+     * Updates the bounds of every node for new bounds of the same primitives, keeping the tree as it was built.
+     * Children are stored after their parent, so the nodes are refitted from the last one to the root. The
+     * hierarchy stays correct however far the primitives move, but traversal gets slower as they move away from
+     * where it was built. It must not be called while the hierarchy is being traversed.
+     *
+     * @param primitiveBounds The new bounds of every primitive, laid out and indexed as when the hierarchy was built.
+     */
+    public void refit(double[] primitiveBounds) {
+        if (primitiveBounds.length != primitiveIndices.length * 6) {
+            throw new IllegalArgumentException("The hierarchy was built over " + primitiveIndices.length + " primitives");
+        }
+        for (int node = nodeCount - 1; node >= 0; node--) {
+            int offset = node * 6;
+            int first = nodeInfo[node * 2];
+            int second = nodeInfo[node * 2 + 1];
+            if (second >= 0) {
+                for (int axis = 0; axis < 3; axis++) {
+                    nodeBounds[offset + axis] = Double.POSITIVE_INFINITY;
+                    nodeBounds[offset + axis + 3] = Double.NEGATIVE_INFINITY;
+                }
+                for (int i = first; i < first + second; i++) {
+                    Builder.merge(nodeBounds, offset, primitiveBounds, primitiveIndices[i] * 6);
+                }
+            } else {
+                // The left child follows its parent, the right one is stored in the node
+                int left = (node + 1) * 6;
+                int right = first * 6;
+                for (int axis = 0; axis < 3; axis++) {
+                    nodeBounds[offset + axis] = Math.min(nodeBounds[left + axis], nodeBounds[right + axis]);
+                    nodeBounds[offset + axis + 3] = Math.max(nodeBounds[left + axis + 3], nodeBounds[right + axis + 3]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the closest primitive along a ray. Children are visited front to back and any node whose entry
+     * distance is farther than the closest hit found so far is skipped.
+     *
+     * @param originX     The x-coordinate of the ray origin.
+     * @param originY     The y-coordinate of the ray origin.
+     * @param originZ     The z-coordinate of the ray origin.
+     * @param dirX        The x-component of the ray direction.
+     * @param dirY        The y-component of the ray direction.
+     * @param dirZ        The z-component of the ray direction.
+     * @param maxDistance The maximum distance to search.
+     * @param intersector The callback that intersects the primitives.
+     * @return The closest distance found, or maxDistance if nothing closer was hit.
+     */
+    public double traverse(double originX, double originY, double originZ,
+                           double dirX, double dirY, double dirZ,
+                           double maxDistance, PrimitiveIntersector intersector) {
+        if (nodeCount == 0) {
+            return maxDistance;
+        }
+        double invX = 1.0 / dirX;
+        double invY = 1.0 / dirY;
+        double invZ = 1.0 / dirZ;
+        double closest = maxDistance;
+
+        int node = 0;
+        double entry = intersectNode(nodeBounds, 0, originX, originY, originZ, invX, invY, invZ, closest);
+        if (entry == Double.POSITIVE_INFINITY) {
+            return closest;
+        }
+
+        TraversalStack traversalStack = STACKS.get();
+        int base = traversalStack.push();
+        int[] stack = traversalStack.nodes;
+        double[] stackDistances = traversalStack.distances;
+        int stackSize = base;
+
+        while (true) {
+            int count = nodeInfo[node * 2 + 1];
+            if (count > 0) {
+                closest = intersector.intersectLeaf(primitiveIndices, nodeInfo[node * 2], count, closest);
+            } else {
+                int left = node + 1;
+                int right = nodeInfo[node * 2];
+                double leftEntry = intersectNode(nodeBounds, left, originX, originY, originZ, invX, invY, invZ, closest);
+                double rightEntry = intersectNode(nodeBounds, right, originX, originY, originZ, invX, invY, invZ, closest);
+
+                if (leftEntry != Double.POSITIVE_INFINITY && rightEntry != Double.POSITIVE_INFINITY) {
+                    if (leftEntry <= rightEntry) {
+                        stack[stackSize] = right;
+                        stackDistances[stackSize++] = rightEntry;
+                        node = left;
+                    } else {
+                        stack[stackSize] = left;
+                        stackDistances[stackSize++] = leftEntry;
+                        node = right;
+                    }
+                    continue;
+                } else if (leftEntry != Double.POSITIVE_INFINITY) {
+                    node = left;
+                    continue;
+                } else if (rightEntry != Double.POSITIVE_INFINITY) {
+                    node = right;
+                    continue;
+                }
+            }
+
+            // Pop the next node that can still contain a closer hit
+            node = -1;
+            while (stackSize > base) {
+                stackSize--;
+                if (stackDistances[stackSize] <= closest) {
+                    node = stack[stackSize];
+                    break;
+                }
+            }
+            if (node < 0) {
+                traversalStack.pop(base);
+                return closest;
+            }
+        }
+    }
+
+    /**
+     * Traverses the hierarchy looking for any primitive that blocks the ray before the maximum distance.
+     * Children are visited in storage order and the traversal stops at the first blocking primitive, which is
+     * all shadow rays need.
+     *
+     * @param originX     The x-coordinate of the ray origin.
+     * @param originY     The y-coordinate of the ray origin.
+     * @param originZ     The z-coordinate of the ray origin.
+     * @param dirX        The x-component of the ray direction.
+     * @param dirY        The y-component of the ray direction.
+     * @param dirZ        The z-component of the ray direction.
+     * @param maxDistance The maximum distance to search.
+     * @param occluder    The callback that tests the primitives.
+     * @return True if a primitive blocks the ray, false otherwise.
+     */
+    public boolean occluded(double originX, double originY, double originZ,
+                            double dirX, double dirY, double dirZ,
+                            double maxDistance, PrimitiveOccluder occluder) {
+        if (nodeCount == 0) {
+            return false;
+        }
+        double invX = 1.0 / dirX;
+        double invY = 1.0 / dirY;
+        double invZ = 1.0 / dirZ;
+
+        TraversalStack traversalStack = STACKS.get();
+        int base = traversalStack.push();
+        int[] stack = traversalStack.nodes;
+        int stackSize = base;
+        stack[stackSize++] = 0;
+
+        while (stackSize > base) {
+            int node = stack[--stackSize];
+            if (intersectNode(nodeBounds, node, originX, originY, originZ, invX, invY, invZ, maxDistance)
+                    == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            int count = nodeInfo[node * 2 + 1];
+            if (count > 0) {
+                if (occluder.occludesLeaf(primitiveIndices, nodeInfo[node * 2], count, maxDistance)) {
+                    traversalStack.pop(base);
+                    return true;
+                }
+            } else {
+                stack[stackSize++] = nodeInfo[node * 2];
+                stack[stackSize++] = node + 1;
+            }
+        }
+        traversalStack.pop(base);
+        return false;
+    }
+
+    /**
+     * Finds the closest primitive along every ray of a packet. Every node on the stack carries the mask of the rays
+     * that reached it: the node is skipped when the group test of the packet shows that none of them can hit it,
+     * otherwise the rays before the first one that hits its box are dropped. The boxes of the leaves are tested ray
+     * by ray, so primitives are only intersected with the rays that reach them. Children are visited front to back
+     * for the direction of the first active ray.
+     *
+     * @param packet      The packet, whose distances are the maximum distances to search and receive the closest
+     *                    distance found for every ray.
+     * @param mask        The rays of the packet to trace.
+     * @param intersector The callback that intersects the primitives.
+     */
+    public void traverse(RayPacket packet, int mask, PacketIntersector intersector) {
+        if (nodeCount == 0 || mask == 0) {
+            return;
+        }
+        packet.prepare(mask);
+
+        TraversalStack traversalStack = STACKS.get();
+        int base = traversalStack.push();
+        int[] stack = traversalStack.nodes;
+        int[] masks = traversalStack.masks;
+        int stackSize = base;
+        masks[stackSize] = mask;
+        stack[stackSize++] = 0;
+
+        while (stackSize > base) {
+            int node = stack[--stackSize];
+            int active = masks[stackSize];
+            if (Integer.bitCount(active) >= RayPacket.GROUP_TEST_SIZE && packet.missesNode(nodeBounds, node, active)) {
+                continue;
+            }
+            int count = nodeInfo[node * 2 + 1];
+            active = count > 0 ? packet.intersectNode(nodeBounds, node, active) : packet.firstHit(nodeBounds, node, active);
+            if (active == 0) {
+                continue;
+            }
+            if (count > 0) {
+                int first = nodeInfo[node * 2];
+                for (int i = first; i < first + count; i++) {
+                    intersector.intersect(primitiveIndices[i], packet, active);
+                }
+            } else {
+                // The left child holds the lower centroids along the split axis
+                int left = node + 1;
+                int right = nodeInfo[node * 2];
+                boolean rightFirst = packet.isNegative(-count - 1, active);
+                masks[stackSize] = active;
+                stack[stackSize++] = rightFirst ? left : right;
+                masks[stackSize] = active;
+                stack[stackSize++] = rightFirst ? right : left;
+            }
+        }
+        traversalStack.pop(base);
+    }
+
+    /**
+     * Checks which rays of a packet are blocked by a primitive before their maximum distance. As in
+     * {@link #traverse(RayPacket, int, PacketIntersector)} every node carries the rays that reached it; blocked rays
+     * leave the query, and the traversal stops as soon as every ray is blocked.
+     *
+     * @param packet   The packet, whose distances are the maximum distances of the query.
+     * @param mask     The rays of the packet to test.
+     * @param occluder The callback that tests the primitives.
+     * @return The mask of the rays that are blocked.
+     */
+    public int occluded(RayPacket packet, int mask, PacketOccluder occluder) {
+        if (nodeCount == 0 || mask == 0) {
+            return 0;
+        }
+        packet.prepare(mask);
+        int remaining = mask;
+
+        TraversalStack traversalStack = STACKS.get();
+        int base = traversalStack.push();
+        int[] stack = traversalStack.nodes;
+        int[] masks = traversalStack.masks;
+        int stackSize = base;
+        masks[stackSize] = mask;
+        stack[stackSize++] = 0;
+
+        while (stackSize > base && remaining != 0) {
+            int node = stack[--stackSize];
+            int active = masks[stackSize] & remaining;
+            if (active == 0 || Integer.bitCount(active) >= RayPacket.GROUP_TEST_SIZE && packet.missesNode(nodeBounds, node, active)) {
+                continue;
+            }
+            int count = nodeInfo[node * 2 + 1];
+            active = count > 0 ? packet.intersectNode(nodeBounds, node, active) : packet.firstHit(nodeBounds, node, active);
+            if (active == 0) {
+                continue;
+            }
+            if (count > 0) {
+                int first = nodeInfo[node * 2];
+                for (int i = first; i < first + count && active != 0; i++) {
+                    int blocked = occluder.occludes(primitiveIndices[i], packet, active);
+                    active &= ~blocked;
+                    remaining &= ~blocked;
+                }
+            } else {
+                masks[stackSize] = active;
+                stack[stackSize++] = nodeInfo[node * 2];
+                masks[stackSize] = active;
+                stack[stackSize++] = node + 1;
+            }
+        }
+        traversalStack.pop(base);
+        return mask & ~remaining;
+    }
+
+    /**
+     * Intersects a ray with the bounds of a node using the slab method.
+     *
+     * @param bounds      The flattened bounds array.
+     * @param node        The index of the node.
+     * @param originX     The x-coordinate of the ray origin.
+     * @param originY     The y-coordinate of the ray origin.
+     * @param originZ     The z-coordinate of the ray origin.
+     * @param invX        The inverse of the x-component of the ray direction.
+     * @param invY        The inverse of the y-component of the ray direction.
+     * @param invZ        The inverse of the z-component of the ray direction.
+     * @param maxDistance The maximum distance accepted.
+     * @return The entry distance (clamped to zero), or positive infinity if the box is missed.
+     */
+    public static double intersectNode(double[] bounds, int node,
+                                       double originX, double originY, double originZ,
+                                       double invX, double invY, double invZ, double maxDistance) {
+        int offset = node * 6;
+        double tNear = 0.0;
+        double tFar = maxDistance;
+
+        // Comparisons are written so that NaN slabs (ray on a flat box plane) are simply ignored
+        double t0 = (bounds[offset] - originX) * invX;
+        double t1 = (bounds[offset + 3] - originX) * invX;
+        if (t0 > t1) {
+            double swap = t0;
+            t0 = t1;
+            t1 = swap;
+        }
+        tNear = t0 > tNear ? t0 : tNear;
+        tFar = t1 < tFar ? t1 : tFar;
+
+        t0 = (bounds[offset + 1] - originY) * invY;
+        t1 = (bounds[offset + 4] - originY) * invY;
+        if (t0 > t1) {
+            double swap = t0;
+            t0 = t1;
+            t1 = swap;
+        }
+        tNear = t0 > tNear ? t0 : tNear;
+        tFar = t1 < tFar ? t1 : tFar;
+
+        t0 = (bounds[offset + 2] - originZ) * invZ;
+        t1 = (bounds[offset + 5] - originZ) * invZ;
+        if (t0 > t1) {
+            double swap = t0;
+            t0 = t1;
+            t1 = swap;
+        }
+        tNear = t0 > tNear ? t0 : tNear;
+        tFar = t1 < tFar ? t1 : tFar;
+
+        if (tNear <= tFar * SLAB_TOLERANCE) {
+            return tNear;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Recursive binned SAH builder that writes the nodes directly in depth-first order.
+     */
+    private static class Builder {
+        private final double[] primitiveBounds;
+        private final double[] centroids;
+        private final int[] primitiveIndices;
+        private final double[] nodeBounds;
+        private final int[] nodeInfo;
+        private int nodeCount;
+
+        private final int[] binCounts = new int[BIN_COUNT];
+        private final double[] binBounds = new double[BIN_COUNT * 6];
+        private final double[] rightAreas = new double[BIN_COUNT];
+        private final int[] rightCounts = new int[BIN_COUNT];
+
+        Builder(double[] primitiveBounds, int primitiveCount) {
+            this.primitiveBounds = primitiveBounds;
+            this.centroids = new double[primitiveCount * 3];
+            this.primitiveIndices = new int[primitiveCount];
+            int maxNodes = Math.max(1, 2 * primitiveCount - 1);
+            this.nodeBounds = new double[maxNodes * 6];
+            this.nodeInfo = new int[maxNodes * 2];
+
+            for (int i = 0; i < primitiveCount; i++) {
+                primitiveIndices[i] = i;
+                for (int axis = 0; axis < 3; axis++) {
+                    centroids[i * 3 + axis] = (primitiveBounds[i * 6 + axis] + primitiveBounds[i * 6 + axis + 3]) * 0.5;
+                }
+            }
+        }
+
+        BVH toBVH() {
+            double[] bounds = new double[nodeCount * 6];
+            int[] info = new int[nodeCount * 2];
+            System.arraycopy(nodeBounds, 0, bounds, 0, bounds.length);
+            System.arraycopy(nodeInfo, 0, info, 0, info.length);
+            return new BVH(bounds, info, primitiveIndices, nodeCount);
+        }
+
+        void build(int start, int end, int depth) {
+            int node = nodeCount++;
+            int count = end - start;
+
+            double[] centroidBounds = new double[]{
+                    Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                    Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+            int nodeOffset = node * 6;
+            for (int axis = 0; axis < 3; axis++) {
+                nodeBounds[nodeOffset + axis] = Double.POSITIVE_INFINITY;
+                nodeBounds[nodeOffset + axis + 3] = Double.NEGATIVE_INFINITY;
+            }
+            for (int i = start; i < end; i++) {
+                int primitive = primitiveIndices[i];
+                for (int axis = 0; axis < 3; axis++) {
+                    nodeBounds[nodeOffset + axis] = Math.min(nodeBounds[nodeOffset + axis], primitiveBounds[primitive * 6 + axis]);
+                    nodeBounds[nodeOffset + axis + 3] = Math.max(nodeBounds[nodeOffset + axis + 3], primitiveBounds[primitive * 6 + axis + 3]);
+                    double centroid = centroids[primitive * 3 + axis];
+                    centroidBounds[axis] = Math.min(centroidBounds[axis], centroid);
+                    centroidBounds[axis + 3] = Math.max(centroidBounds[axis + 3], centroid);
+                }
+            }
+
+            if (count <= 2 || depth >= MAX_DEPTH) {
+                makeLeaf(node, start, count);
+                return;
+            }
+
+            // Evaluate the SAH over binned split candidates on every axis
+            double leafCost = count;
+            double parentArea = surfaceArea(nodeBounds, nodeOffset);
+            double bestCost = Double.POSITIVE_INFINITY;
+            int bestAxis = -1;
+            int bestSplit = -1;
+
+            for (int axis = 0; axis < 3; axis++) {
+                double minCentroid = centroidBounds[axis];
+                double extent = centroidBounds[axis + 3] - minCentroid;
+                if (extent <= 0) {
+                    continue;
+                }
+                fillBins(start, end, axis, minCentroid, extent);
+
+                // Sweep from the right to accumulate the areas of the right partitions
+                double[] sweep = emptyBounds();
+                int sweepCount = 0;
+                for (int bin = BIN_COUNT - 1; bin > 0; bin--) {
+                    sweepCount += binCounts[bin];
+                    merge(sweep, binBounds, bin * 6);
+                    rightCounts[bin] = sweepCount;
+                    rightAreas[bin] = sweepCount > 0 ? surfaceArea(sweep, 0) : 0;
+                }
+
+                sweep = emptyBounds();
+                sweepCount = 0;
+                for (int split = 1; split < BIN_COUNT; split++) {
+                    sweepCount += binCounts[split - 1];
+                    merge(sweep, binBounds, (split - 1) * 6);
+                    if (sweepCount == 0 || rightCounts[split] == 0) {
+                        continue;
+                    }
+                    double cost = TRAVERSAL_COST +
+                            (surfaceArea(sweep, 0) * sweepCount + rightAreas[split] * rightCounts[split]) / parentArea;
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestAxis = axis;
+                        bestSplit = split;
+                    }
+                }
+            }
+
+            if (bestAxis < 0 || (bestCost >= leafCost && count <= MAX_LEAF_SIZE)) {
+                makeLeaf(node, start, count);
+                return;
+            }
+
+            // Partition the primitives in place around the chosen bin boundary
+            double minCentroid = centroidBounds[bestAxis];
+            double extent = centroidBounds[bestAxis + 3] - minCentroid;
+            int mid = start;
+            for (int i = start; i < end; i++) {
+                int primitive = primitiveIndices[i];
+                if (binIndex(centroids[primitive * 3 + bestAxis], minCentroid, extent) < bestSplit) {
+                    primitiveIndices[i] = primitiveIndices[mid];
+                    primitiveIndices[mid++] = primitive;
+                }
+            }
+
+            build(start, mid, depth + 1);
+            nodeInfo[node * 2] = nodeCount;
+            nodeInfo[node * 2 + 1] = -(bestAxis + 1);
+            build(mid, end, depth + 1);
+        }
+
+        private void makeLeaf(int node, int start, int count) {
+            nodeInfo[node * 2] = start;
+            nodeInfo[node * 2 + 1] = count;
+        }
+
+        private void fillBins(int start, int end, int axis, double minCentroid, double extent) {
+            for (int bin = 0; bin < BIN_COUNT; bin++) {
+                binCounts[bin] = 0;
+                for (int component = 0; component < 3; component++) {
+                    binBounds[bin * 6 + component] = Double.POSITIVE_INFINITY;
+                    binBounds[bin * 6 + component + 3] = Double.NEGATIVE_INFINITY;
+                }
+            }
+            for (int i = start; i < end; i++) {
+                int primitive = primitiveIndices[i];
+                int bin = binIndex(centroids[primitive * 3 + axis], minCentroid, extent);
+                binCounts[bin]++;
+                merge(binBounds, bin * 6, primitiveBounds, primitive * 6);
+            }
+        }
+
+        private static int binIndex(double centroid, double minCentroid, double extent) {
+            int bin = (int) (BIN_COUNT * ((centroid - minCentroid) / extent));
+            return Math.min(Math.max(bin, 0), BIN_COUNT - 1);
+        }
+
+        private static double[] emptyBounds() {
+            return new double[]{
+                    Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                    Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        }
+
+        private static void merge(double[] target, double[] source, int sourceOffset) {
+            merge(target, 0, source, sourceOffset);
+        }
+
+        private static void merge(double[] target, int targetOffset, double[] source, int sourceOffset) {
+            for (int axis = 0; axis < 3; axis++) {
+                target[targetOffset + axis] = Math.min(target[targetOffset + axis], source[sourceOffset + axis]);
+                target[targetOffset + axis + 3] = Math.max(target[targetOffset + axis + 3], source[sourceOffset + axis + 3]);
+            }
+        }
+
+        private static double surfaceArea(double[] bounds, int offset) {
+            double dx = bounds[offset + 3] - bounds[offset];
+            double dy = bounds[offset + 4] - bounds[offset + 1];
+            double dz = bounds[offset + 5] - bounds[offset + 2];
+            return 2.0 * (dx * dy + dy * dz + dz * dx);
+        }
+    }
+
+    /**
+     * Per thread storage for the traversal stacks. Every traversal reserves MAX_DEPTH + 1 slots on top of the
+     * ones in use; if the arrays have to grow, outer traversals keep working on the arrays they already hold.
+     */
+    private static final class TraversalStack {
+        private int[] nodes = new int[4 * (MAX_DEPTH + 1)];
+        private double[] distances = new double[4 * (MAX_DEPTH + 1)];
+        // Rays of a packet that reached each node, only used by the packet traversals
+        private int[] masks = new int[4 * (MAX_DEPTH + 1)];
+        private int top;
+
+        /**
+         * Reserves the slots of a new traversal.
+         *
+         * @return The first slot of the traversal.
+         */
+        private int push() {
+            int base = top;
+            top += MAX_DEPTH + 1;
+            if (top > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                distances = Arrays.copyOf(distances, distances.length * 2);
+                masks = Arrays.copyOf(masks, masks.length * 2);
+            }
+            return base;
+        }
+
+        /**
+         * Releases the slots of a finished traversal.
+         *
+         * @param base The first slot of the traversal.
+         */
+        private void pop(int base) {
+            top = base;
+        }
+    }
+}
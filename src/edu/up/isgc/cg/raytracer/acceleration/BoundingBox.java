@@ -0,0 +1,130 @@
+package edu.up.isgc.cg.raytracer.acceleration;
+
+import edu.up.isgc.cg.raytracer.Vector3D;
+
+/**
+ * The BoundingBox class represents an axis aligned bounding box in 3D space.
+ * An empty box (one that contains nothing and can never be hit) has its minimum above its maximum.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class BoundingBox {
+    public static final BoundingBox EMPTY = new BoundingBox(
+            Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
+
+    private final double minX, minY, minZ;
+    private final double maxX, maxY, maxZ;
+
+    /**
+     * Constructs a new BoundingBox with the specified minimum and maximum corners.
+     *
+     * @param minX The minimum x-coordinate.
+     * @param minY The minimum y-coordinate.
+     * @param minZ The minimum z-coordinate.
+     * @param maxX The maximum x-coordinate.
+     * @param maxY The maximum y-coordinate.
+     * @param maxZ The maximum z-coordinate.
+     */
+    public BoundingBox(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+    }
+
+    /**
+     * Constructs a new BoundingBox with the specified minimum and maximum corners.
+     *
+     * @param min The minimum corner.
+     * @param max The maximum corner.
+     */
+    public BoundingBox(Vector3D min, Vector3D max) {
+        this(min.getX(), min.getY(), min.getZ(), max.getX(), max.getY(), max.getZ());
+    }
+
+    /**
+     * Creates the smallest box containing all the given points.
+     *
+     * @param points The points to enclose.
+     * @return The bounding box of the points.
+     */
+    public static BoundingBox of(Vector3D... points) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (Vector3D point : points) {
+            minX = Math.min(minX, point.getX());
+            minY = Math.min(minY, point.getY());
+            minZ = Math.min(minZ, point.getZ());
+            maxX = Math.max(maxX, point.getX());
+            maxY = Math.max(maxY, point.getY());
+            maxZ = Math.max(maxZ, point.getZ());
+        }
+        return new BoundingBox(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * Creates the smallest box containing two boxes.
+     *
+     * @param boxA The first box.
+     * @param boxB The second box.
+     * @return The union of both boxes.
+     */
+    public static BoundingBox union(BoundingBox boxA, BoundingBox boxB) {
+        return new BoundingBox(
+                Math.min(boxA.minX, boxB.minX), Math.min(boxA.minY, boxB.minY), Math.min(boxA.minZ, boxB.minZ),
+                Math.max(boxA.maxX, boxB.maxX), Math.max(boxA.maxY, boxB.maxY), Math.max(boxA.maxZ, boxB.maxZ));
+    }
+
+    /**
+     * Checks if the box is empty.
+     *
+     * @return True if the box contains nothing, false otherwise.
+     */
+    public boolean isEmpty() {
+        return minX > maxX || minY > maxY || minZ > maxZ;
+    }
+
+    /**
+     * Gets the minimum corner of the box.
+     *
+     * @return The minimum corner.
+     */
+    public Vector3D getMin() {
+        return new Vector3D(minX, minY, minZ);
+    }
+
+    /**
+     * Gets the maximum corner of the box.
+     *
+     * @return The maximum corner.
+     */
+    public Vector3D getMax() {
+        return new Vector3D(maxX, maxY, maxZ);
+    }
+
+    /**
+     * Writes the box into a flattened bounds array (minX, minY, minZ, maxX, maxY, maxZ).
+     *
+     * @param bounds The array to write into.
+     * @param offset The offset of the first component.
+     */
+    public void writeTo(double[] bounds, int offset) {
+        bounds[offset] = minX;
+        bounds[offset + 1] = minY;
+        bounds[offset + 2] = minZ;
+        bounds[offset + 3] = maxX;
+        bounds[offset + 4] = maxY;
+        bounds[offset + 5] = maxZ;
+    }
+
+    @Override
+    public String toString() {
+        return "BoundingBox{" +
+                "min=" + getMin() +
+                ", max=" + getMax() +
+                "}";
+    }
+}
@@ -0,0 +1,370 @@
+package edu.up.isgc.cg.raytracer.acceleration;
+
+import edu.up.isgc.cg.raytracer.Ray;
+
+/**
+ * The RayPacket class holds a small group of rays that are traced together, such as the primary rays of a block of
+ * pixels or the shadow rays of those pixels toward the same light. The rays are kept as structures of arrays of
+ * primitive components, and every ray has a maximum distance that traversals lower as they find closer hits.
+ * Subsets of the packet are selected with bit masks, bit i standing for ray i.
+ * <p>
+ * When every ray points to the same side on an axis, the packet also keeps the ranges of its origins and inverse
+ * directions, and whole nodes are culled for the group with interval arithmetic: the nearest possible entry of any
+ * ray into a box is compared with the farthest possible exit, a single test however many rays the packet has.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class RayPacket {
+    public static final int MAX_SIZE = 16;
+    // Fewer active rays are cheaper to test one by one than with the group test
+    static final int GROUP_TEST_SIZE = 4;
+    // Slightly enlarges the exit distance of the group test, as the slab test of BVH does
+    private static final double SLAB_TOLERANCE = 1 + 2 * (3 * Math.ulp(1.0) / 2) / (1 - 3 * Math.ulp(1.0) / 2);
+
+    private final double[] originX = new double[MAX_SIZE];
+    private final double[] originY = new double[MAX_SIZE];
+    private final double[] originZ = new double[MAX_SIZE];
+    private final double[] dirX = new double[MAX_SIZE];
+    private final double[] dirY = new double[MAX_SIZE];
+    private final double[] dirZ = new double[MAX_SIZE];
+    private final double[] invX = new double[MAX_SIZE];
+    private final double[] invY = new double[MAX_SIZE];
+    private final double[] invZ = new double[MAX_SIZE];
+    private final double[] distances = new double[MAX_SIZE];
+    private final Ray[] rays = new Ray[MAX_SIZE];
+    private final double[][] origins = {originX, originY, originZ};
+    private final double[][] directions = {dirX, dirY, dirZ};
+    private final double[][] inverses = {invX, invY, invZ};
+    private int size;
+
+    // Per axis: minimum origin, maximum origin, minimum inverse, maximum inverse; only valid for coherent axes
+    private final double[] intervals = new double[12];
+    private final boolean[] coherentAxes = new boolean[3];
+    private boolean coherent;
+    private int preparedMask;
+    private boolean prepared;
+
+    /**
+     * Removes every ray from the packet.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            rays[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * Adds a ray to the packet.
+     *
+     * @param ray The ray, with a normalized direction.
+     * @param maxDistance The maximum distance of the ray.
+     * @return The index of the ray in the packet.
+     * @throws IllegalStateException If the packet is full.
+     */
+    public int add(Ray ray, double maxDistance) {
+        int index = add(ray.getOrigin().getX(), ray.getOrigin().getY(), ray.getOrigin().getZ(),
+                ray.getDirection().getX(), ray.getDirection().getY(), ray.getDirection().getZ(), maxDistance);
+        rays[index] = ray;
+        return index;
+    }
+
+    /**
+     * Adds a ray given by its components, for example a ray transformed into the space of an object.
+     *
+     * @param originX The x-coordinate of the ray origin.
+     * @param originY The y-coordinate of the ray origin.
+     * @param originZ The z-coordinate of the ray origin.
+     * @param dirX The x-component of the ray direction.
+     * @param dirY The y-component of the ray direction.
+     * @param dirZ The z-component of the ray direction.
+     * @param maxDistance The maximum distance of the ray.
+     * @return The index of the ray in the packet.
+     * @throws IllegalStateException If the packet is full.
+     */
+    public int add(double originX, double originY, double originZ, double dirX, double dirY, double dirZ, double maxDistance) {
+        if (size == MAX_SIZE) {
+            throw new IllegalStateException("A packet holds at most " + MAX_SIZE + " rays");
+        }
+        int index = size++;
+        this.originX[index] = originX;
+        this.originY[index] = originY;
+        this.originZ[index] = originZ;
+        this.dirX[index] = dirX;
+        this.dirY[index] = dirY;
+        this.dirZ[index] = dirZ;
+        this.invX[index] = 1.0 / dirX;
+        this.invY[index] = 1.0 / dirY;
+        this.invZ[index] = 1.0 / dirZ;
+        this.distances[index] = maxDistance;
+        rays[index] = null;
+        return index;
+    }
+
+    /**
+     * Gets the number of rays of the packet.
+     *
+     * @return The number of rays.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the mask that selects every ray of the packet.
+     *
+     * @return The mask with the lowest getSize() bits set.
+     */
+    public int getFullMask() {
+        return (1 << size) - 1;
+    }
+
+    /**
+     * Gets a ray that was added as a Ray.
+     *
+     * @param index The index of the ray.
+     * @return The ray, or null if it was added by its components.
+     */
+    public Ray getRay(int index) {
+        return rays[index];
+    }
+
+    /**
+     * Gets the x-coordinates of the origins. The array is shared, not copied, and only the first getSize() values
+     * are rays of the packet; the same holds for the other component getters.
+     *
+     * @return The x-coordinates of the origins.
+     */
+    public double[] getOriginX() {
+        return originX;
+    }
+
+    /**
+     * Gets the y-coordinates of the origins.
+     *
+     * @return The y-coordinates of the origins.
+     */
+    public double[] getOriginY() {
+        return originY;
+    }
+
+    /**
+     * Gets the z-coordinates of the origins.
+     *
+     * @return The z-coordinates of the origins.
+     */
+    public double[] getOriginZ() {
+        return originZ;
+    }
+
+    /**
+     * Gets the x-components of the directions.
+     *
+     * @return The x-components of the directions.
+     */
+    public double[] getDirX() {
+        return dirX;
+    }
+
+    /**
+     * Gets the y-components of the directions.
+     *
+     * @return The y-components of the directions.
+     */
+    public double[] getDirY() {
+        return dirY;
+    }
+
+    /**
+     * Gets the z-components of the directions.
+     *
+     * @return The z-components of the directions.
+     */
+    public double[] getDirZ() {
+        return dirZ;
+    }
+
+    /**
+     * Gets the maximum distance of every ray, which closest hit traversals lower to the closest hit found so far.
+     *
+     * @return The maximum distances.
+     */
+    public double[] getDistances() {
+        return distances;
+    }
+
+    /**
+     * Selects the rays whose ranges of origins and inverse directions bound the group test of {@link #missesNode}.
+     * The ranges are only found when the group test first needs them. It must be called again after the rays
+     * change.
+     *
+     * @param mask The rays that will be traversed.
+     */
+    void prepare(int mask) {
+        preparedMask = mask;
+        prepared = false;
+    }
+
+    /**
+     * Finds the ranges of the origins and inverse directions of the prepared rays on every axis where all of them
+     * point to the same side.
+     */
+    private void findIntervals() {
+        prepared = true;
+        coherent = false;
+        for (int axis = 0; axis < 3; axis++) {
+            double[] origin = origins[axis];
+            double[] inverse = inverses[axis];
+            double minOrigin = Double.POSITIVE_INFINITY, maxOrigin = Double.NEGATIVE_INFINITY;
+            double minInverse = Double.POSITIVE_INFINITY, maxInverse = Double.NEGATIVE_INFINITY;
+            // Plain comparisons skip NaN values, so they are caught by a sum that NaN propagates through
+            double sum = 0;
+            for (int rest = preparedMask; rest != 0; rest &= rest - 1) {
+                int i = Integer.numberOfTrailingZeros(rest);
+                minOrigin = origin[i] < minOrigin ? origin[i] : minOrigin;
+                maxOrigin = origin[i] > maxOrigin ? origin[i] : maxOrigin;
+                minInverse = inverse[i] < minInverse ? inverse[i] : minInverse;
+                maxInverse = inverse[i] > maxInverse ? inverse[i] : maxInverse;
+                sum += origin[i] + inverse[i];
+            }
+            // Every ray points to the same side with a finite inverse, and every origin is finite
+            boolean sameSide = minInverse > 0 ? maxInverse < Double.POSITIVE_INFINITY : maxInverse < 0 && minInverse > Double.NEGATIVE_INFINITY;
+            coherentAxes[axis] = preparedMask != 0 && sameSide && !Double.isNaN(sum)
+                    && minOrigin > Double.NEGATIVE_INFINITY && maxOrigin < Double.POSITIVE_INFINITY;
+            coherent |= coherentAxes[axis];
+            intervals[axis * 4] = minOrigin;
+            intervals[axis * 4 + 1] = maxOrigin;
+            intervals[axis * 4 + 2] = minInverse;
+            intervals[axis * 4 + 3] = maxInverse;
+        }
+    }
+
+    /**
+     * Checks if the direction of the first ray of a mask is negative on an axis, to order the children of a node.
+     *
+     * @param axis The axis, 0 for x, 1 for y and 2 for z.
+     * @param mask The rays of the query.
+     * @return True if the first ray of the mask points to the negative side.
+     */
+    boolean isNegative(int axis, int mask) {
+        return directions[axis][Integer.numberOfTrailingZeros(mask)] < 0;
+    }
+
+    /**
+     * Tests the bounds of a node against the whole packet at once. Every coherent axis bounds the entry and the exit
+     * distance of any of the rays, so if the latest entry possible along those axes is still past the earliest exit
+     * possible, no ray of the mask can hit the box. The test is conservative: it never culls a box a ray hits, but
+     * it may keep boxes that every ray misses.
+     *
+     * @param bounds The flattened bounds array.
+     * @param node The index of the node.
+     * @param mask The rays of the query, a subset of the prepared rays.
+     * @return True if every ray of the mask misses the box.
+     */
+    boolean missesNode(double[] bounds, int node, int mask) {
+        if (!prepared) {
+            findIntervals();
+        }
+        if (!coherent) {
+            return false;
+        }
+        double farthest = 0;
+        for (int rest = mask; rest != 0; rest &= rest - 1) {
+            double distance = distances[Integer.numberOfTrailingZeros(rest)];
+            farthest = distance > farthest ? distance : farthest;
+        }
+        int offset = node * 6;
+        double tNear = 0.0;
+        double tFar = farthest;
+        for (int axis = 0; axis < 3; axis++) {
+            if (!coherentAxes[axis]) {
+                continue;
+            }
+            double minOrigin = intervals[axis * 4], maxOrigin = intervals[axis * 4 + 1];
+            double minInverse = intervals[axis * 4 + 2], maxInverse = intervals[axis * 4 + 3];
+            boolean positive = minInverse > 0;
+            double nearPlane = positive ? bounds[offset + axis] : bounds[offset + axis + 3];
+            double farPlane = positive ? bounds[offset + axis + 3] : bounds[offset + axis];
+            // Lowest entry and highest exit over every origin and inverse in the ranges; rounding is monotonic, so
+            // the rounded products of the ends still bound the rounded products of every ray
+            tNear = Math.max(tNear, lowestProduct(nearPlane - maxOrigin, nearPlane - minOrigin, minInverse, maxInverse));
+            tFar = Math.min(tFar, highestProduct(farPlane - maxOrigin, farPlane - minOrigin, minInverse, maxInverse));
+        }
+        return !(tNear <= tFar * SLAB_TOLERANCE);
+    }
+
+    private static double lowestProduct(double a0, double a1, double b0, double b1) {
+        return Math.min(Math.min(a0 * b0, a0 * b1), Math.min(a1 * b0, a1 * b1));
+    }
+
+    private static double highestProduct(double a0, double a1, double b0, double b1) {
+        return Math.max(Math.max(a0 * b0, a0 * b1), Math.max(a1 * b0, a1 * b1));
+    }
+
+    /**
+     * Finds the first ray of a mask that hits the bounds of a node. The rays before it miss the box and leave the
+     * mask, while the rays after it are kept without testing them, as they most likely hit the box too; rays that
+     * do not are removed later, when a leaf is tested ray by ray with {@link #intersectNode}.
+     *
+     * @param bounds The flattened bounds array.
+     * @param node The index of the node.
+     * @param mask The rays to test.
+     * @return The mask without the rays before the first one that hits the box, 0 if none does.
+     */
+    int firstHit(double[] bounds, int node, int mask) {
+        for (int rest = mask; rest != 0; rest &= rest - 1) {
+            if (intersectNode(bounds, node, rest & -rest) != 0) {
+                return rest;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Tests the bounds of a node against every ray of a mask with the same slab test as
+     * {@link BVH#intersectNode(double[], int, double, double, double, double, double, double, double)}, loading the
+     * bounds once for all of them.
+     *
+     * @param bounds The flattened bounds array.
+     * @param node The index of the node.
+     * @param mask The rays to test.
+     * @return The mask of the rays that hit the box before their maximum distance.
+     */
+    int intersectNode(double[] bounds, int node, int mask) {
+        int offset = node * 6;
+        double minX = bounds[offset], minY = bounds[offset + 1], minZ = bounds[offset + 2];
+        double maxX = bounds[offset + 3], maxY = bounds[offset + 4], maxZ = bounds[offset + 5];
+        int hits = 0;
+        // Every ray up to the last one of the mask is tested without branches, which is faster than skipping the
+        // rays outside the mask; the mask is applied to the result
+        int end = Integer.SIZE - Integer.numberOfLeadingZeros(mask);
+        for (int i = Integer.numberOfTrailingZeros(mask); i < end; i++) {
+            // The same operations as the scalar test, so NaN slabs are ignored in the same way
+            double t0 = (minX - originX[i]) * invX[i];
+            double t1 = (maxX - originX[i]) * invX[i];
+            double near = t0 > t1 ? t1 : t0;
+            double far = t0 > t1 ? t0 : t1;
+            double tNear = near > 0.0 ? near : 0.0;
+            double tFar = far < distances[i] ? far : distances[i];
+
+            t0 = (minY - originY[i]) * invY[i];
+            t1 = (maxY - originY[i]) * invY[i];
+            near = t0 > t1 ? t1 : t0;
+            far = t0 > t1 ? t0 : t1;
+            tNear = near > tNear ? near : tNear;
+            tFar = far < tFar ? far : tFar;
+
+            t0 = (minZ - originZ[i]) * invZ[i];
+            t1 = (maxZ - originZ[i]) * invZ[i];
+            near = t0 > t1 ? t1 : t0;
+            far = t0 > t1 ? t0 : t1;
+            tNear = near > tNear ? near : tNear;
+            tFar = far < tFar ? far : tFar;
+
+            // An infinite entry is a miss for the scalar test as well
+            boolean hit = tNear <= tFar * SLAB_TOLERANCE && tNear != Double.POSITIVE_INFINITY;
+            hits |= (hit ? 1 : 0) << i;
+        }
+        return hits & mask;
+    }
+}
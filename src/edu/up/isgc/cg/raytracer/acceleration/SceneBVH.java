@@ -0,0 +1,388 @@
+package edu.up.isgc.cg.raytracer.acceleration;
+
+import edu.up.isgc.cg.raytracer.Intersection;
+import edu.up.isgc.cg.raytracer.Ray;
+import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.objects.Object3D;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The SceneBVH class is the top level acceleration structure of a scene. It builds a bounding volume hierarchy
+ * over the bounds of every object so rays skip whole objects whose boxes they miss.
+ * Objects without bounds are kept aside and tested against every ray.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class SceneBVH {
+    private static final ThreadLocal<SceneQuery> QUERIES = ThreadLocal.withInitial(SceneQuery::new);
+    private static final ThreadLocal<ScenePacketQuery> PACKET_QUERIES = ThreadLocal.withInitial(ScenePacketQuery::new);
+    private final Object3D[] objects;
+    private final Object3D[] unboundedObjects;
+    private final double[] primitiveBounds;
+    private final int sourceCount;
+    private final BVH bvh;
+
+    /**
+     * Constructs a new SceneBVH over the specified objects.
+     *
+     * @param sceneObjects The objects of the scene.
+     */
+    public SceneBVH(List<Object3D> sceneObjects) {
+        List<Object3D> bounded = new ArrayList<>();
+        List<Object3D> unbounded = new ArrayList<>();
+        List<BoundingBox> boxes = new ArrayList<>();
+        for (Object3D object : sceneObjects) {
+            BoundingBox bounds = object.getBounds();
+            if (bounds == null) {
+                unbounded.add(object);
+            } else if (!bounds.isEmpty()) {
+                bounded.add(object);
+                boxes.add(bounds);
+            }
+        }
+
+        double[] primitiveBounds = new double[boxes.size() * 6];
+        for (int i = 0; i < boxes.size(); i++) {
+            boxes.get(i).writeTo(primitiveBounds, i * 6);
+        }
+
+        this.objects = bounded.toArray(new Object3D[0]);
+        this.unboundedObjects = unbounded.toArray(new Object3D[0]);
+        this.primitiveBounds = primitiveBounds;
+        this.sourceCount = sceneObjects.size();
+        this.bvh = BVH.build(primitiveBounds);
+    }
+
+    /**
+     * Updates the hierarchy after objects were moved, rotated or scaled. The bounds of every object are compared
+     * with the ones the hierarchy holds, and if any of them changed the nodes are refitted without building the
+     * tree again. Objects whose bounds did not change cost one comparison.
+     *
+     * @param sceneObjects The objects of the scene, the same ones the hierarchy was built over.
+     * @return The number of objects whose bounds changed, or -1 if the hierarchy cannot be refitted because objects
+     * were added or removed, or an object gained, lost or emptied its bounds; it must then be built again.
+     */
+    public int refit(List<Object3D> sceneObjects) {
+        if (sceneObjects.size() != sourceCount) {
+            return -1;
+        }
+        double[] bounds = new double[6];
+        int changed = 0;
+        int unboundedCount = 0;
+        int index = 0;
+        for (Object3D object : sceneObjects) {
+            BoundingBox box = object.getBounds();
+            if (box == null) {
+                if (unboundedCount == unboundedObjects.length || unboundedObjects[unboundedCount++] != object) {
+                    return -1;
+                }
+                continue;
+            }
+            if (box.isEmpty()) {
+                continue;
+            }
+            if (index == objects.length || objects[index] != object) {
+                return -1;
+            }
+            box.writeTo(bounds, 0);
+            if (!Arrays.equals(bounds, 0, 6, primitiveBounds, index * 6, index * 6 + 6)) {
+                System.arraycopy(bounds, 0, primitiveBounds, index * 6, 6);
+                changed++;
+            }
+            index++;
+        }
+        if (index != objects.length || unboundedCount != unboundedObjects.length) {
+            return -1;
+        }
+        if (changed > 0) {
+            bvh.refit(primitiveBounds);
+        }
+        return changed;
+    }
+
+    /**
+     * Gets the hierarchy built over the bounded objects.
+     *
+     * @return The bounding volume hierarchy.
+     */
+    public BVH getBVH() {
+        return bvh;
+    }
+
+    /**
+     * Finds the closest intersection of a ray with the objects of the scene.
+     *
+     * @param ray            The ray being cast.
+     * @param caster         The object casting the ray, which is ignored.
+     * @param clippingPlanes The clipping planes (near and far z), or null to disable clipping.
+     * @return The closest intersection, or null if nothing was hit.
+     */
+    public Intersection raycast(Ray ray, Object3D caster, double[] clippingPlanes) {
+        SceneQuery query = QUERIES.get();
+        query.start(objects, ray, caster, clippingPlanes);
+        double closest = Double.POSITIVE_INFINITY;
+
+        for (Object3D object : unboundedObjects) {
+            closest = query.test(object, closest);
+        }
+
+        Vector3D origin = ray.getOrigin();
+        Vector3D direction = ray.getDirection();
+        bvh.traverse(origin.getX(), origin.getY(), origin.getZ(),
+                direction.getX(), direction.getY(), direction.getZ(), closest, query);
+
+        Intersection closestIntersection = query.closestIntersection;
+        query.clear();
+        return closestIntersection;
+    }
+
+    /**
+     * Checks if any opaque object blocks a ray before a maximum distance, stopping at the first one found.
+     * Refractive objects let the light through, so they are skipped within the same traversal.
+     *
+     * @param ray         The ray being cast.
+     * @param maxDistance The maximum distance of the query, usually the distance to the light.
+     * @param caster      The object casting the ray, which is ignored.
+     * @return True if an opaque object blocks the ray, false otherwise.
+     */
+    public boolean isOccluded(Ray ray, double maxDistance, Object3D caster) {
+        SceneQuery query = QUERIES.get();
+        query.start(objects, ray, caster, null);
+        boolean occluded = false;
+
+        for (int i = 0; i < unboundedObjects.length && !occluded; i++) {
+            occluded = query.occludes(unboundedObjects[i], maxDistance);
+        }
+
+        if (!occluded) {
+            Vector3D origin = ray.getOrigin();
+            Vector3D direction = ray.getDirection();
+            occluded = bvh.occluded(origin.getX(), origin.getY(), origin.getZ(),
+                    direction.getX(), direction.getY(), direction.getZ(), maxDistance, query);
+        }
+
+        query.clear();
+        return occluded;
+    }
+
+    /**
+     * Finds the closest intersection of every ray of a group with the objects of the scene, tracing them together
+     * as a packet. The results are the same as calling {@link #raycast(Ray, Object3D, double[])} for every ray.
+     *
+     * @param rays           The rays, usually close together such as the primary rays of a block of pixels.
+     * @param count          The number of rays, at most {@link RayPacket#MAX_SIZE}.
+     * @param caster         The object casting the rays, which is ignored.
+     * @param clippingPlanes The clipping planes (near and far z), or null to disable clipping.
+     * @param hits           Receives the closest intersection of every ray, or null where nothing was hit.
+     */
+    public void raycast(Ray[] rays, int count, Object3D caster, double[] clippingPlanes, Intersection[] hits) {
+        ScenePacketQuery query = PACKET_QUERIES.get();
+        RayPacket packet = query.packet;
+        packet.clear();
+        for (int i = 0; i < count; i++) {
+            packet.add(rays[i], Double.POSITIVE_INFINITY);
+            query.hits[i] = null;
+        }
+        query.start(objects, caster, null, clippingPlanes);
+        int mask = packet.getFullMask();
+
+        for (Object3D object : unboundedObjects) {
+            query.test(object, mask);
+        }
+        bvh.traverse(packet, mask, query);
+
+        System.arraycopy(query.hits, 0, hits, 0, count);
+        query.clear();
+    }
+
+    /**
+     * Checks which rays of a group are blocked by an opaque object before their maximum distance, tracing them
+     * together as a packet. The results are the same as calling {@link #isOccluded(Ray, double, Object3D)} for
+     * every ray.
+     *
+     * @param rays         The rays, usually close together such as the shadow rays of a block of pixels toward the
+     *                     same light.
+     * @param maxDistances The maximum distance of every ray, usually the distance to the light.
+     * @param casters      The object casting every ray, which is ignored by that ray.
+     * @param count        The number of rays, at most {@link RayPacket#MAX_SIZE}.
+     * @return A mask with bit i set if ray i is blocked.
+     */
+    public int isOccluded(Ray[] rays, double[] maxDistances, Object3D[] casters, int count) {
+        ScenePacketQuery query = PACKET_QUERIES.get();
+        RayPacket packet = query.packet;
+        packet.clear();
+        for (int i = 0; i < count; i++) {
+            packet.add(rays[i], maxDistances[i]);
+        }
+        query.start(objects, null, casters, null);
+        int remaining = packet.getFullMask();
+
+        for (int i = 0; i < unboundedObjects.length && remaining != 0; i++) {
+            remaining &= ~query.occludes(unboundedObjects[i], remaining);
+        }
+        int blocked = packet.getFullMask() & ~remaining;
+        blocked |= bvh.occluded(packet, remaining, query);
+
+        query.clear();
+        return blocked;
+    }
+
+    /**
+     * Per thread state of a ray query against the scene, reused so that casting a ray does not allocate
+     * anything besides the intersection that is returned.
+     */
+    private static final class SceneQuery implements BVH.PrimitiveIntersector, BVH.PrimitiveOccluder {
+        private Object3D[] objects;
+        private Ray ray;
+        private Object3D caster;
+        private double[] clippingPlanes;
+        private Intersection closestIntersection;
+
+        /**
+         * Prepares the query for a new ray.
+         *
+         * @param objects        The bounded objects of the scene, indexed as the primitives of the hierarchy.
+         * @param ray            The ray being cast.
+         * @param caster         The object casting the ray, which is ignored.
+         * @param clippingPlanes The clipping planes (near and far z), or null to disable clipping.
+         */
+        private void start(Object3D[] objects, Ray ray, Object3D caster, double[] clippingPlanes) {
+            this.objects = objects;
+            this.ray = ray;
+            this.caster = caster;
+            this.clippingPlanes = clippingPlanes;
+            this.closestIntersection = null;
+        }
+
+        /**
+         * Releases the references held by the query so they can be collected.
+         */
+        private void clear() {
+            start(null, null, null, null);
+        }
+
+        @Override
+        public double intersect(int primitiveIndex, double closestDistance) {
+            return test(objects[primitiveIndex], closestDistance);
+        }
+
+        @Override
+        public boolean occludes(int primitiveIndex, double maxDistance) {
+            return occludes(objects[primitiveIndex], maxDistance);
+        }
+
+        private double test(Object3D object, double closestDistance) {
+            if (object.equals(caster)) {
+                return closestDistance;
+            }
+            Intersection intersection = object.getIntersection(ray);
+            if (intersection != null) {
+                double distance = intersection.getDistance();
+                if (distance >= 0 && distance < closestDistance) {
+                    // Only the depth is needed here, the position is calculated when the hit is shaded
+                    double intersectionZ = ray.getOrigin().getZ() + ray.getDirection().getZ() * distance;
+                    if (clippingPlanes == null || (intersectionZ >= clippingPlanes[0] && intersectionZ <= clippingPlanes[1])) {
+                        closestIntersection = intersection;
+                        return distance;
+                    }
+                }
+            }
+            return closestDistance;
+        }
+
+        private boolean occludes(Object3D object, double maxDistance) {
+            if (object.equals(caster) || object.getMaterial().getRefractivity() > 0) {
+                return false;
+            }
+            return object.isOccluding(ray, maxDistance);
+        }
+    }
+
+    /**
+     * Per thread state of a packet query against the scene, with the same rules as {@link SceneQuery} applied to
+     * every ray of the packet.
+     */
+    private static final class ScenePacketQuery implements BVH.PacketIntersector, BVH.PacketOccluder {
+        private final RayPacket packet = new RayPacket();
+        private final Intersection[] hits = new Intersection[RayPacket.MAX_SIZE];
+        private final Intersection[] candidates = new Intersection[RayPacket.MAX_SIZE];
+        private Object3D[] objects;
+        private Object3D caster;
+        private Object3D[] casters;
+        private double[] clippingPlanes;
+
+        /**
+         * Prepares the query for the rays of the packet.
+         *
+         * @param objects        The bounded objects of the scene, indexed as the primitives of the hierarchy.
+         * @param caster         The object casting every ray, which is ignored, or null.
+         * @param casters        The object casting each ray, which is ignored by that ray, or null.
+         * @param clippingPlanes The clipping planes (near and far z), or null to disable clipping.
+         */
+        private void start(Object3D[] objects, Object3D caster, Object3D[] casters, double[] clippingPlanes) {
+            this.objects = objects;
+            this.caster = caster;
+            this.casters = casters;
+            this.clippingPlanes = clippingPlanes;
+        }
+
+        /**
+         * Releases the references held by the query so they can be collected.
+         */
+        private void clear() {
+            start(null, null, null, null);
+            packet.clear();
+            Arrays.fill(hits, null);
+        }
+
+        @Override
+        public void intersect(int primitiveIndex, RayPacket packet, int mask) {
+            test(objects[primitiveIndex], mask);
+        }
+
+        @Override
+        public int occludes(int primitiveIndex, RayPacket packet, int mask) {
+            return occludes(objects[primitiveIndex], mask);
+        }
+
+        private void test(Object3D object, int mask) {
+            if (object.equals(caster)) {
+                return;
+            }
+            object.getIntersections(packet, mask, candidates);
+            double[] distances = packet.getDistances();
+            for (int rest = mask; rest != 0; rest &= rest - 1) {
+                int i = Integer.numberOfTrailingZeros(rest);
+                if (candidates[i] == null) {
+                    continue;
+                }
+                Intersection intersection = candidates[i];
+                candidates[i] = null;
+                double distance = intersection.getDistance();
+                if (distance >= 0 && distance < distances[i]) {
+                    double intersectionZ = packet.getOriginZ()[i] + packet.getDirZ()[i] * distance;
+                    if (clippingPlanes == null || (intersectionZ >= clippingPlanes[0] && intersectionZ <= clippingPlanes[1])) {
+                        hits[i] = intersection;
+                        distances[i] = distance;
+                    }
+                }
+            }
+        }
+
+        private int occludes(Object3D object, int mask) {
+            if (object.getMaterial().getRefractivity() > 0) {
+                return 0;
+            }
+            for (int rest = mask; rest != 0; rest &= rest - 1) {
+                int i = Integer.numberOfTrailingZeros(rest);
+                if (object.equals(casters[i])) {
+                    mask &= ~(1 << i);
+                }
+            }
+            return mask == 0 ? 0 : object.getOccludedRays(packet, mask);
+        }
+    }
+}
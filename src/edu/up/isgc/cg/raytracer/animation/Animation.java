@@ -0,0 +1,255 @@
+package edu.up.isgc.cg.raytracer.animation;
+
+import edu.up.isgc.cg.raytracer.Raytracer;
+import edu.up.isgc.cg.raytracer.Scene;
+import edu.up.isgc.cg.raytracer.objects.Camera;
+import edu.up.isgc.cg.raytracer.rendering.TileScheduler;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * The Animation class renders a sequence of frames of a scene in one process. Keyframe tracks are bound to setters
+ * of the camera, the models or any other object, for example {@code camera::setPosition} or
+ * {@code model::setRotation}, and every frame only the tracks whose value changed call their setter.
+ * <p>
+ * Everything that does not depend on the frame is reused: the meshes and their hierarchies, which are kept in
+ * object space, the workers of the scheduler and the image buffers. Between frames the scene hierarchy is only
+ * refitted to the bounds of the objects that moved, and each image is encoded on a virtual thread while the next
+ * frame renders. The frames are written as a numbered PNG sequence. With {@link #setMaxReuseFrames} the shading of
+ * pixels that still see the same surface is reused from the previous frame through a {@link TemporalCache}.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class Animation {
+    private final Scene scene;
+    private final int frameCount;
+    private final List<Binding<?>> bindings = new ArrayList<>();
+    private int maxReuseFrames = 0;
+
+    /**
+     * A track bound to the setter it animates, with the last value it was given.
+     */
+    private static class Binding<T> {
+        private final KeyframeTrack<T> track;
+        private final Consumer<T> target;
+        private double[] current;
+
+        private Binding(KeyframeTrack<T> track, Consumer<T> target) {
+            this.track = track;
+            this.target = target;
+        }
+
+        /**
+         * Sets the value of the track at a frame if it is not the one already set.
+         *
+         * @return True if the setter was called.
+         */
+        private boolean apply(int frame) {
+            double[] components = track.sampleComponents(frame);
+            if (Arrays.equals(components, current)) {
+                return false;
+            }
+            current = components;
+            target.accept(track.decode(components));
+            return true;
+        }
+    }
+
+    /**
+     * Constructs a new Animation.
+     *
+     * @param scene The scene to animate. Its camera sets the resolution of the frames.
+     * @param frameCount The number of frames, numbered from 0.
+     */
+    public Animation(Scene scene, int frameCount) {
+        if (frameCount < 1) {
+            throw new IllegalArgumentException("An animation needs at least one frame");
+        }
+        this.scene = scene;
+        this.frameCount = frameCount;
+    }
+
+    /**
+     * Binds a track to the setter it animates.
+     *
+     * @param track The keyframes of the value.
+     * @param target The setter that receives the value of every frame.
+     * @param <T> The type of the animated value.
+     * @return This animation, to chain calls.
+     */
+    public <T> Animation animate(KeyframeTrack<T> track, Consumer<T> target) {
+        if (track.getKeyframeCount() == 0) {
+            throw new IllegalArgumentException("The track has no keyframes");
+        }
+        bindings.add(new Binding<>(track, target));
+        return this;
+    }
+
+    /**
+     * Gets the number of frames.
+     *
+     * @return The number of frames.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets the number of consecutive frames a pixel may reuse its color from the previous frame.
+     *
+     * @return The maximum number of reuses, 0 if temporal reuse is disabled.
+     */
+    public int getMaxReuseFrames() {
+        return maxReuseFrames;
+    }
+
+    /**
+     * Sets the number of consecutive frames a pixel may reuse its color from the previous frame before it is
+     * traced again. Larger values reuse more pixels but let changes such as moving shadows lag further behind.
+     * Reuse only skips shadow rays, so it saves no measurable time on the Scene03 turntable, see TemporalCacheReport.
+     *
+     * @param maxReuseFrames The maximum number of reuses, or 0 to trace every pixel of every frame.
+     */
+    public void setMaxReuseFrames(int maxReuseFrames) {
+        if (maxReuseFrames < 0) {
+            throw new IllegalArgumentException("The maximum number of reuses cannot be negative");
+        }
+        this.maxReuseFrames = maxReuseFrames;
+    }
+
+    /**
+     * Sets every animated value to its value at a frame, calling only the setters whose value changed.
+     *
+     * @param frame The frame.
+     * @return The number of tracks whose value changed.
+     */
+    public int applyFrame(int frame) {
+        int changed = 0;
+        for (Binding<?> binding : bindings) {
+            if (binding.apply(frame)) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Gets the path of the image of a frame.
+     *
+     * @param directory The directory of the sequence.
+     * @param frame The frame.
+     * @return The path, frame_0000.png for the first frame.
+     */
+    public static Path getFramePath(Path directory, int frame) {
+        return directory.resolve(String.format("frame_%04d.png", frame));
+    }
+
+    /**
+     * Renders every frame and writes it to a numbered PNG file.
+     *
+     * @param scheduler The scheduler that renders the frames, reused for all of them.
+     * @param directory The directory of the sequence. It is created if it does not exist.
+     * @param listener The listener of the timing of every frame, called once its image is written, or null.
+     * @return The timings of the frames, in frame order.
+     * @throws IOException If the directory cannot be created or a frame cannot be written.
+     */
+    public List<FrameTiming> render(TileScheduler scheduler, Path directory, Consumer<FrameTiming> listener) throws IOException {
+        Files.createDirectories(directory);
+        Camera camera = scene.getCamera();
+        List<FrameTiming> timings = Collections.synchronizedList(new ArrayList<>());
+        // Two buffers, so a frame renders while the previous one is being encoded
+        BufferedImage[] images = new BufferedImage[2];
+        List<CompletableFuture<Void>> writes = new ArrayList<>(Collections.nCopies(2, CompletableFuture.completedFuture(null)));
+        TemporalCache cache = maxReuseFrames > 0 ? new TemporalCache(maxReuseFrames) : null;
+
+        try (ExecutorService io = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int frame = 0; frame < frameCount; frame++) {
+                long updateStart = System.nanoTime();
+                int changedTracks = applyFrame(frame);
+                int changedBounds = scene.getAccelerationStructure().refit(scene.getObjects());
+                if (changedBounds < 0) {
+                    scene.buildAccelerationStructure();
+                }
+                long updateNanos = System.nanoTime() - updateStart;
+
+                int slot = frame % 2;
+                join(writes.get(slot));
+                BufferedImage image = images[slot];
+                if (image == null || image.getWidth() != camera.getResolutionWidth() || image.getHeight() != camera.getResolutionHeight()) {
+                    image = new BufferedImage(camera.getResolutionWidth(), camera.getResolutionHeight(), BufferedImage.TYPE_INT_RGB);
+                    images[slot] = image;
+                }
+                long renderStart = System.nanoTime();
+                double reuse = renderFrame(cache, scheduler, image);
+                long renderNanos = System.nanoTime() - renderStart;
+
+                BufferedImage finished = image;
+                Path path = getFramePath(directory, frame);
+                int number = frame;
+                writes.set(slot, CompletableFuture.runAsync(() -> {
+                    long writeStart = System.nanoTime();
+                    try {
+                        ImageIO.write(finished, "png", path.toFile());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    FrameTiming timing = new FrameTiming(number, changedTracks, changedBounds, updateNanos,
+                            renderNanos, System.nanoTime() - writeStart, reuse);
+                    timings.add(timing);
+                    if (listener != null) {
+                        listener.accept(timing);
+                    }
+                }, io));
+            }
+            for (CompletableFuture<Void> write : writes) {
+                join(write);
+            }
+        }
+
+        List<FrameTiming> ordered = new ArrayList<>(timings);
+        ordered.sort(Comparator.comparingInt(FrameTiming::getFrame));
+        return ordered;
+    }
+
+    /**
+     * Renders the current frame, through the temporal cache if there is one.
+     *
+     * @return The fraction of the pixels reused from the previous frame, or -1 without a cache.
+     */
+    private double renderFrame(TemporalCache cache, TileScheduler scheduler, BufferedImage image) {
+        if (cache == null) {
+            Raytracer.parallelImageRaytracing(scene, scheduler, image);
+            return -1;
+        }
+        return cache.render(scene, scheduler, image);
+    }
+
+    /**
+     * Waits for the write of a frame, reporting its failure as the IOException it was.
+     */
+    private static void join(CompletableFuture<Void> write) throws IOException {
+        try {
+            write.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException unchecked) {
+                throw unchecked.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package edu.up.isgc.cg.raytracer.animation;
+
+/**
+ * The FrameTiming class holds the time a frame of an {@link Animation} spent in every stage.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class FrameTiming {
+    private final int frame;
+    private final int changedTracks;
+    private final int changedBounds;
+    private final long updateNanos;
+    private final long renderNanos;
+    private final long writeNanos;
+    private final double reuse;
+
+    /**
+     * Constructs new FrameTiming.
+     *
+     * @param frame The number of the frame.
+     * @param changedTracks The number of tracks whose value changed since the previous frame.
+     * @param changedBounds The number of objects whose bounds were refitted, or -1 if the scene hierarchy was built
+     *                      again.
+     * @param updateNanos The time spent applying the tracks and updating the scene hierarchy.
+     * @param renderNanos The time spent rendering the frame.
+     * @param writeNanos The time spent encoding and writing the image, which overlaps the next frame.
+     * @param reuse The fraction of the pixels whose color was reused from the previous frame, or -1 if temporal
+     *              reuse is disabled.
+     */
+    FrameTiming(int frame, int changedTracks, int changedBounds, long updateNanos, long renderNanos, long writeNanos, double reuse) {
+        this.frame = frame;
+        this.changedTracks = changedTracks;
+        this.changedBounds = changedBounds;
+        this.updateNanos = updateNanos;
+        this.renderNanos = renderNanos;
+        this.writeNanos = writeNanos;
+        this.reuse = reuse;
+    }
+
+    /**
+     * Gets the number of the frame.
+     *
+     * @return The frame, starting at 0.
+     */
+    public int getFrame() {
+        return frame;
+    }
+
+    /**
+     * Gets the number of tracks whose value changed since the previous frame.
+     *
+     * @return The number of changed tracks.
+     */
+    public int getChangedTracks() {
+        return changedTracks;
+    }
+
+    /**
+     * Gets the number of objects whose bounds were refitted in the scene hierarchy.
+     *
+     * @return The number of refitted objects, or -1 if the hierarchy was built again.
+     */
+    public int getChangedBounds() {
+        return changedBounds;
+    }
+
+    /**
+     * Gets the time spent applying the tracks and updating the scene hierarchy.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getUpdateNanos() {
+        return updateNanos;
+    }
+
+    /**
+     * Gets the time spent rendering the frame.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getRenderNanos() {
+        return renderNanos;
+    }
+
+    /**
+     * Gets the time spent encoding and writing the image of the frame.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * Gets the fraction of the pixels whose color was reused from the previous frame.
+     *
+     * @return The fraction from 0 to 1, or -1 if temporal reuse is disabled.
+     */
+    public double getReuse() {
+        return reuse;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FrameTiming{frame=%d, tracks=%d, bounds=%s, update=%.2fms, render=%.1fms, write=%.1fms%s}",
+                frame, changedTracks, changedBounds < 0 ? "rebuilt" : String.valueOf(changedBounds),
+                updateNanos / 1e6, renderNanos / 1e6, writeNanos / 1e6,
+                reuse < 0 ? "" : String.format(", reused=%.1f%%", reuse * 100));
+    }
+}
@@ -0,0 +1,196 @@
+package edu.up.isgc.cg.raytracer.animation;
+
+import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.objects.Quaternion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The KeyframeTrack class holds the keyframes of one animated value, such as the position of a camera or the
+ * rotation of a model, and interpolates between them. Keyframes are placed at frame numbers, which may be
+ * fractional; before the first keyframe and after the last one the value holds still.
+ * <p>
+ * Values are kept as arrays of components, so positions and scales are interpolated linearly and rotations
+ * spherically, and a sampled value can be compared with the previous one to skip updates of values that did not
+ * change.
+ *
+ * @param <T> The type of the animated value.
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class KeyframeTrack<T> {
+    private final int components;
+    private final boolean spherical;
+    private final Function<T, double[]> encoder;
+    private final Function<double[], T> decoder;
+    private final List<Double> frames = new ArrayList<>();
+    private final List<double[]> values = new ArrayList<>();
+
+    private KeyframeTrack(int components, boolean spherical, Function<T, double[]> encoder, Function<double[], T> decoder) {
+        this.components = components;
+        this.spherical = spherical;
+        this.encoder = encoder;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Creates an empty track of positions, interpolated linearly.
+     *
+     * @return The new track.
+     */
+    public static KeyframeTrack<Vector3D> positions() {
+        return new KeyframeTrack<>(3, false,
+                vector -> new double[]{vector.getX(), vector.getY(), vector.getZ()},
+                values -> new Vector3D(values[0], values[1], values[2]));
+    }
+
+    /**
+     * Creates an empty track of rotations, interpolated spherically along the shortest arc. The keyframes should
+     * be normalized quaternions.
+     *
+     * @return The new track.
+     */
+    public static KeyframeTrack<Quaternion> rotations() {
+        return new KeyframeTrack<>(4, true,
+                rotation -> new double[]{rotation.w, rotation.x, rotation.y, rotation.z},
+                values -> new Quaternion(values[0], values[1], values[2], values[3]));
+    }
+
+    /**
+     * Creates an empty track of numbers, such as scales or fields of view, interpolated linearly.
+     *
+     * @return The new track.
+     */
+    public static KeyframeTrack<Double> values() {
+        return new KeyframeTrack<>(1, false, value -> new double[]{value}, values -> values[0]);
+    }
+
+    /**
+     * Adds a keyframe. Keyframes may be added in any order; one at the frame of an existing keyframe replaces it.
+     *
+     * @param frame The frame of the keyframe.
+     * @param value The value at that frame.
+     * @return This track, to chain calls.
+     */
+    public KeyframeTrack<T> add(double frame, T value) {
+        if (!Double.isFinite(frame)) {
+            throw new IllegalArgumentException("Keyframes must be at a finite frame");
+        }
+        double[] encoded = encoder.apply(value);
+        int index = 0;
+        while (index < frames.size() && frames.get(index) < frame) {
+            index++;
+        }
+        if (index < frames.size() && frames.get(index) == frame) {
+            values.set(index, encoded);
+        } else {
+            frames.add(index, frame);
+            values.add(index, encoded);
+        }
+        return this;
+    }
+
+    /**
+     * Gets the number of keyframes.
+     *
+     * @return The number of keyframes.
+     */
+    public int getKeyframeCount() {
+        return frames.size();
+    }
+
+    /**
+     * Gets the value of the track at a frame.
+     *
+     * @param frame The frame.
+     * @return The interpolated value.
+     * @throws IllegalStateException If the track has no keyframes.
+     */
+    public T sample(double frame) {
+        return decoder.apply(sampleComponents(frame));
+    }
+
+    /**
+     * Gets the components of the value at a frame.
+     *
+     * @param frame The frame.
+     * @return The interpolated components.
+     * @throws IllegalStateException If the track has no keyframes.
+     */
+    double[] sampleComponents(double frame) {
+        if (frames.isEmpty()) {
+            throw new IllegalStateException("The track has no keyframes");
+        }
+        int last = frames.size() - 1;
+        if (frame <= frames.get(0)) {
+            return values.get(0).clone();
+        }
+        if (frame >= frames.get(last)) {
+            return values.get(last).clone();
+        }
+        int next = 1;
+        while (frames.get(next) < frame) {
+            next++;
+        }
+        double start = frames.get(next - 1);
+        double t = (frame - start) / (frames.get(next) - start);
+        double[] from = values.get(next - 1);
+        double[] to = values.get(next);
+        return spherical ? slerp(from, to, t) : lerp(from, to, t);
+    }
+
+    /**
+     * Decodes the components of a value.
+     *
+     * @param components The components, as returned by sampleComponents.
+     * @return The value.
+     */
+    T decode(double[] components) {
+        return decoder.apply(components);
+    }
+
+    private double[] lerp(double[] from, double[] to, double t) {
+        double[] result = new double[components];
+        for (int i = 0; i < components; i++) {
+            result[i] = from[i] + (to[i] - from[i]) * t;
+        }
+        return result;
+    }
+
+    /**
+     * Interpolates two quaternions along the shortest arc between them.
+     */
+    private static double[] slerp(double[] from, double[] to, double t) {
+        double cosine = from[0] * to[0] + from[1] * to[1] + from[2] * to[2] + from[3] * to[3];
+        double sign = 1;
+        // q and -q are the same rotation; take the one closer to the start
+        if (cosine < 0) {
+            cosine = -cosine;
+            sign = -1;
+        }
+        double weightFrom;
+        double weightTo;
+        if (cosine > 0.9995) {
+            // Nearly the same rotation, where the sine below loses precision
+            weightFrom = 1 - t;
+            weightTo = t;
+        } else {
+            double angle = Math.acos(cosine);
+            double sine = Math.sin(angle);
+            weightFrom = Math.sin((1 - t) * angle) / sine;
+            weightTo = Math.sin(t * angle) / sine;
+        }
+        double[] result = new double[4];
+        double squaredNorm = 0;
+        for (int i = 0; i < 4; i++) {
+            result[i] = weightFrom * from[i] + sign * weightTo * to[i];
+            squaredNorm += result[i] * result[i];
+        }
+        double norm = Math.sqrt(squaredNorm);
+        for (int i = 0; i < 4; i++) {
+            result[i] /= norm;
+        }
+        return result;
+    }
+}
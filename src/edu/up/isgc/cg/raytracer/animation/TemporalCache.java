@@ -0,0 +1,370 @@
+package edu.up.isgc.cg.raytracer.animation;
+
+import edu.up.isgc.cg.raytracer.Intersection;
+import edu.up.isgc.cg.raytracer.Ray;
+import edu.up.isgc.cg.raytracer.Raytracer;
+import edu.up.isgc.cg.raytracer.Scene;
+import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.acceleration.SceneBVH;
+import edu.up.isgc.cg.raytracer.lights.DirectionalLight;
+import edu.up.isgc.cg.raytracer.lights.Light;
+import edu.up.isgc.cg.raytracer.objects.Camera;
+import edu.up.isgc.cg.raytracer.objects.Model3D;
+import edu.up.isgc.cg.raytracer.objects.Object3D;
+import edu.up.isgc.cg.raytracer.objects.Transform;
+import edu.up.isgc.cg.raytracer.rendering.FrameBuffer;
+import edu.up.isgc.cg.raytracer.rendering.TileScheduler;
+import edu.up.isgc.cg.raytracer.tools.Material;
+import edu.up.isgc.cg.raytracer.tools.Radiance;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The TemporalCache class reuses the shading of the previous frame of a sequence. It keeps the primary hit of every
+ * pixel of the previous frame: its object, normal and the point where it was shaded, the part of its color that does
+ * not depend on the viewer (diffuse and ambient light) and which lights were not shadowed. In the new frame the primary
+ * ray of every pixel is still traced, but its hit is projected into the view of the previous camera, and if the
+ * previous frame saw the same surface there the stored color is used instead of casting shadow rays; only the specular
+ * highlights of the unshadowed lights are added again for the new camera position.
+ * <p>
+ * A stored color is only reused if the object of the hit did not move or change its material, no light changed, the
+ * material is neither reflective nor refractive (what those show changes with the view), the normal agrees with the
+ * stored one, the hit is within one pixel of the point where the color was shaded (so reuses cannot drift across the
+ * surface frame after frame), and the color has not been reused for the maximum number of frames yet. Shading that
+ * changes for other reasons, such as a shadow cast by an object that moved, is only refreshed when the pixel reaches
+ * that maximum, so it bounds the error.
+ * <p>
+ * Since the primary rays are still traced, a reused pixel only saves its shadow rays. On Scene03 that saves nothing
+ * measurable: TemporalCacheReport finds the turntable and a camera move alone within a few percent of tracing every
+ * pixel, faster or slower from run to run. The mirror floor, the glass and the metal are never reused, the spinning
+ * props move every frame, and the matte wall that is reused for about a quarter of the pixels is cheap to shade.
+ * Skipping the primary rays by projecting the previous hits forward would miss surfaces the previous frame did not
+ * see, such as an object coming into view from the border.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class TemporalCache {
+    // Cosine of the largest angle allowed between the stored normal and the normal of the hit
+    private static final double NORMAL_TOLERANCE = 0.995;
+
+    private final int maxReuseFrames;
+    private HitBuffer previous;
+    private HitBuffer current;
+    private Vector3D previousCameraPosition;
+    private double previousDefaultZ;
+    private double[] previousImagePlane;
+    private Map<Object3D, Transform> previousPoses = Collections.emptyMap();
+    private Map<Object3D, Material> previousMaterials = Collections.emptyMap();
+    private double[] previousLights;
+
+    /**
+     * The primary hits of one frame, one entry per pixel.
+     */
+    private static class HitBuffer {
+        private final int width;
+        private final int height;
+        private final Object3D[] objects;
+        private final double[] points;
+        private final double[] normals;
+        private final double[] diffuseColors;
+        private final long[] unshadowed;
+        private final int[] ages;
+
+        private HitBuffer(int width, int height) {
+            this.width = width;
+            this.height = height;
+            int pixels = width * height;
+            objects = new Object3D[pixels];
+            points = new double[pixels * 3];
+            normals = new double[pixels * 3];
+            diffuseColors = new double[pixels * 3];
+            unshadowed = new long[pixels];
+            ages = new int[pixels];
+        }
+    }
+
+    /**
+     * Constructs a new TemporalCache.
+     *
+     * @param maxReuseFrames The number of consecutive frames a pixel may reuse its color before it is traced again.
+     */
+    public TemporalCache(int maxReuseFrames) {
+        if (maxReuseFrames < 1) {
+            throw new IllegalArgumentException("A pixel must be reusable for at least one frame");
+        }
+        this.maxReuseFrames = maxReuseFrames;
+    }
+
+    /**
+     * Gets the number of consecutive frames a pixel may reuse its color.
+     *
+     * @return The maximum number of reuses.
+     */
+    public int getMaxReuseFrames() {
+        return maxReuseFrames;
+    }
+
+    /**
+     * Forgets the previous frame, so the next one is traced completely, for example after a cut.
+     */
+    public void clear() {
+        previous = null;
+        previousPoses = Collections.emptyMap();
+        previousMaterials = Collections.emptyMap();
+        previousLights = null;
+    }
+
+    /**
+     * Renders the next frame of the sequence into an image, reusing what it can from the previous frame.
+     *
+     * @param scene The scene, as it is in the new frame.
+     * @param scheduler The scheduler that renders the tiles.
+     * @param image The image to render into, of type TYPE_INT_RGB, with the resolution of the camera.
+     * @return The fraction of the pixels whose color was reused, from 0 to 1.
+     */
+    public double render(Scene scene, TileScheduler scheduler, BufferedImage image) {
+        Camera camera = scene.getCamera();
+        int width = camera.getResolutionWidth();
+        int height = camera.getResolutionHeight();
+        FrameBuffer frameBuffer = FrameBuffer.wrap(image);
+        if (frameBuffer.getWidth() != width || frameBuffer.getHeight() != height) {
+            throw new IllegalArgumentException("The image does not have the resolution of the camera");
+        }
+        if (previous != null && (previous.width != width || previous.height != height)) {
+            // The resolution changed, nothing can be reprojected
+            previous = null;
+            current = null;
+        }
+        if (current == null) {
+            current = new HitBuffer(width, height);
+        }
+
+        SceneBVH objects = scene.updateAccelerationStructure();
+        List<Light> lights = scene.getLights();
+        double[] imagePlane = camera.calculateImagePlane();
+        Vector3D viewerPosition = camera.getPosition();
+        Map<Object3D, Transform> poses = new IdentityHashMap<>();
+        Map<Object3D, Material> materials = new IdentityHashMap<>();
+        Set<Object3D> moved = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Object3D object : scene.getObjects()) {
+            Transform pose = getPose(object);
+            poses.put(object, pose);
+            materials.put(object, object.getMaterial());
+            if (!pose.equals(previousPoses.get(object)) || object.getMaterial() != previousMaterials.get(object)) {
+                moved.add(object);
+            }
+        }
+        // A light that changed alters the stored shading of every pixel, and the mask holds at most 64 lights
+        double[] lightState = describeLights(lights);
+        if (!Arrays.equals(lightState, previousLights) || lights.size() > Long.SIZE) {
+            previous = null;
+        }
+
+        LongAdder reused = new LongAdder();
+        int[] pixels = frameBuffer.getPixels();
+        scheduler.render(width, height, tile -> {
+            double[] planes = Raytracer.calculateClippingPlanes(camera);
+            int reusedInTile = 0;
+            for (int y = tile.getY(); y < tile.getY() + tile.getHeight(); y++) {
+                for (int x = tile.getX(); x < tile.getX() + tile.getWidth(); x++) {
+                    int pixel = y * width + x;
+                    Ray ray = camera.generateRay(imagePlane, x, y, 0, 0);
+                    Intersection hit = Raytracer.raycast(ray, objects, camera, planes);
+                    Radiance color;
+                    if (hit == null) {
+                        color = new Radiance();
+                        current.objects[pixel] = null;
+                        current.ages[pixel] = 0;
+                    } else {
+                        // The side of the pixel at the distance of the hit
+                        double footprint = hit.getDistance() * Math.max(imagePlane[2], imagePlane[3])
+                                / planeDistance(camera, imagePlane, x, y);
+                        int source = findReusable(hit, moved, footprint);
+                        Radiance diffuseColor;
+                        long unshadowed;
+                        if (source >= 0) {
+                            diffuseColor = null;
+                            unshadowed = previous.unshadowed[source];
+                            System.arraycopy(previous.points, source * 3, current.points, pixel * 3, 3);
+                            System.arraycopy(previous.diffuseColors, source * 3, current.diffuseColors, pixel * 3, 3);
+                            color = new Radiance(previous.diffuseColors[source * 3],
+                                    previous.diffuseColors[source * 3 + 1], previous.diffuseColors[source * 3 + 2]);
+                            Raytracer.calculateSpecularColor(hit, lights, unshadowed, viewerPosition, color);
+                            current.ages[pixel] = previous.ages[source] + 1;
+                            reusedInTile++;
+                        } else if (isViewDependent(hit.getObject().getMaterial())) {
+                            diffuseColor = new Radiance();
+                            unshadowed = 0;
+                            color = Raytracer.shadeIntersection(camera, objects, lights, ray, hit, planes, 0);
+                            current.ages[pixel] = 0;
+                        } else {
+                            // The same shading as shadeIntersection for a material that neither reflects nor
+                            // refracts, keeping the diffuse part apart
+                            diffuseColor = new Radiance();
+                            color = new Radiance();
+                            unshadowed = Raytracer.calculateDirectColor(hit, lights, objects, viewerPosition, color, diffuseColor);
+                            current.ages[pixel] = 0;
+                        }
+                        if (source < 0) {
+                            Vector3D point = hit.getPosition();
+                            current.points[pixel * 3] = point.getX();
+                            current.points[pixel * 3 + 1] = point.getY();
+                            current.points[pixel * 3 + 2] = point.getZ();
+                        }
+                        store(pixel, hit, diffuseColor, unshadowed);
+                    }
+                    pixels[pixel] = color.toRGB();
+                }
+            }
+            reused.add(reusedInTile);
+            return null;
+        });
+
+        HitBuffer finished = current;
+        current = previous;
+        previous = finished;
+        previousPoses = poses;
+        previousMaterials = materials;
+        previousLights = lightState;
+        previousCameraPosition = viewerPosition;
+        previousDefaultZ = camera.getDefaultZ();
+        previousImagePlane = imagePlane;
+        return reused.doubleValue() / ((double) width * height);
+    }
+
+    /**
+     * Gets the transform that places an object in the scene, to tell if it moved between frames.
+     */
+    private static Transform getPose(Object3D object) {
+        return object instanceof Model3D model ? model.getTransform() : Transform.translation(object.getPosition());
+    }
+
+    /**
+     * Gets whether a material shows what is around it, which changes with the view, so its color is never reused.
+     */
+    private static boolean isViewDependent(Material material) {
+        return material.getReflectivity() > 0 || material.getRefractivity() > 0;
+    }
+
+    /**
+     * Lists the position, direction, color and intensity of every light, to tell if any changed between frames.
+     */
+    private static double[] describeLights(List<Light> lights) {
+        double[] state = new double[lights.size() * 10];
+        for (int i = 0; i < lights.size(); i++) {
+            Light light = lights.get(i);
+            Vector3D position = light.getPosition();
+            Vector3D direction = light instanceof DirectionalLight directional ? directional.getDirection() : Vector3D.ZERO();
+            Radiance color = light.getMaterial().getRadiance();
+            double[] values = {position.getX(), position.getY(), position.getZ(), direction.getX(), direction.getY(),
+                    direction.getZ(), color.getRed(), color.getGreen(), color.getBlue(), light.getIntensity()};
+            System.arraycopy(values, 0, state, i * values.length, values.length);
+        }
+        return state;
+    }
+
+    /**
+     * Gets the distance from the camera to the point of the image plane a pixel is traced through, the length of
+     * the direction Camera.generateRay builds before normalizing it.
+     */
+    private static double planeDistance(Camera camera, double[] imagePlane, int x, int y) {
+        Vector3D position = camera.getPosition();
+        double dx = imagePlane[0] + imagePlane[2] * x + position.getX();
+        double dy = imagePlane[1] - imagePlane[3] * y + position.getY();
+        double dz = camera.getDefaultZ() + position.getZ();
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Projects a hit into the previous frame and checks if the pixel it lands on saw the same surface, shaded
+     * within a footprint of the hit.
+     *
+     * @return The pixel of the previous frame whose color can be reused, or -1 if there is none.
+     */
+    private int findReusable(Intersection hit, Set<Object3D> moved, double footprint) {
+        Object3D object = hit.getObject();
+        Material material = object.getMaterial();
+        if (previous == null || moved.contains(object) || isViewDependent(material)) {
+            return -1;
+        }
+
+        // Inverse of Camera.generateRay for the previous camera, whose rays point from its position towards the
+        // point of the image plane offset by that same position
+        Vector3D position = hit.getPosition();
+        double cx = previousCameraPosition.getX(), cy = previousCameraPosition.getY(), cz = previousCameraPosition.getZ();
+        double dx = position.getX() - cx;
+        double dy = position.getY() - cy;
+        double dz = position.getZ() - cz;
+        double planeZ = previousDefaultZ + cz;
+        if (dz * planeZ <= 0) {
+            return -1;
+        }
+        double planeScale = planeZ / dz;
+        long x = Math.round((dx * planeScale - cx - previousImagePlane[0]) / previousImagePlane[2]);
+        long y = Math.round((previousImagePlane[1] - (dy * planeScale - cy)) / previousImagePlane[3]);
+        if (x < 0 || y < 0 || x >= previous.width || y >= previous.height) {
+            return -1;
+        }
+        int source = (int) (y * previous.width + x);
+        if (previous.objects[source] != object || previous.ages[source] >= maxReuseFrames
+                || isShadowEdge(source, (int) x, (int) y)) {
+            return -1;
+        }
+
+        double ex = previous.points[source * 3] - position.getX();
+        double ey = previous.points[source * 3 + 1] - position.getY();
+        double ez = previous.points[source * 3 + 2] - position.getZ();
+        if (ex * ex + ey * ey + ez * ez > footprint * footprint) {
+            return -1;
+        }
+        Vector3D normal = hit.getNormal();
+        double nx = previous.normals[source * 3], ny = previous.normals[source * 3 + 1], nz = previous.normals[source * 3 + 2];
+        double dot = nx * normal.getX() + ny * normal.getY() + nz * normal.getZ();
+        double lengths = Math.sqrt((nx * nx + ny * ny + nz * nz) * Vector3D.dotProduct(normal, normal));
+        return dot >= NORMAL_TOLERANCE * lengths && lengths > 0 ? source : -1;
+    }
+
+    /**
+     * Gets whether a pixel of the previous frame is next to one on the same object that different lights reached,
+     * where a shadow edge would move by the offset between the pixel and the hit.
+     */
+    private boolean isShadowEdge(int source, int x, int y) {
+        return (x > 0 && differsInShadow(source, source - 1))
+                || (x < previous.width - 1 && differsInShadow(source, source + 1))
+                || (y > 0 && differsInShadow(source, source - previous.width))
+                || (y < previous.height - 1 && differsInShadow(source, source + previous.width));
+    }
+
+    /**
+     * Gets whether two pixels of the previous frame saw the same object but different lights reached them.
+     */
+    private boolean differsInShadow(int source, int neighbor) {
+        return previous.objects[neighbor] == previous.objects[source] && previous.unshadowed[neighbor] != previous.unshadowed[source];
+    }
+
+    /**
+     * Stores the primary hit of a pixel of the current frame.
+     *
+     * @param diffuseColor The color that does not depend on the viewer, or null if it was already copied.
+     */
+    private void store(int pixel, Intersection hit, Radiance diffuseColor, long unshadowed) {
+        Vector3D normal = hit.getNormal();
+        current.objects[pixel] = hit.getObject();
+        current.normals[pixel * 3] = normal.getX();
+        current.normals[pixel * 3 + 1] = normal.getY();
+        current.normals[pixel * 3 + 2] = normal.getZ();
+        if (diffuseColor != null) {
+            current.diffuseColors[pixel * 3] = diffuseColor.getRed();
+            current.diffuseColors[pixel * 3 + 1] = diffuseColor.getGreen();
+            current.diffuseColors[pixel * 3 + 2] = diffuseColor.getBlue();
+        }
+        current.unshadowed[pixel] = unshadowed;
+    }
+}
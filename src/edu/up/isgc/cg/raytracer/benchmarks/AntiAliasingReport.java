@@ -0,0 +1,85 @@
+package edu.up.isgc.cg.raytracer.benchmarks;
+
+import edu.up.isgc.cg.raytracer.AdaptiveSampler;
+import edu.up.isgc.cg.raytracer.Raytracer;
+import edu.up.isgc.cg.raytracer.Scene;
+import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.lights.PointLight;
+import edu.up.isgc.cg.raytracer.objects.Camera;
+import edu.up.isgc.cg.raytracer.objects.Model3D;
+import edu.up.isgc.cg.raytracer.objects.Sphere;
+import edu.up.isgc.cg.raytracer.rendering.TileScheduler;
+import edu.up.isgc.cg.raytracer.tools.Material;
+import edu.up.isgc.cg.raytracer.tools.OBJReader;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Compares one ray per pixel, adaptive anti-aliasing and uniform supersampling at the adaptive cap on a scene made
+ * of a mesh and a sphere, reporting the time and the average samples per pixel of every mode. The adaptive render is
+ * repeated with a single worker and must match pixel for pixel; otherwise the process exits with status 1. Run from
+ * the project root so the relative asset path resolves.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class AntiAliasingReport {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    /**
+     * Entry point of the report.
+     *
+     * @param args The OBJ file to use as mesh, or none to use the bundled teapot.
+     */
+    public static void main(String[] args) {
+        Scene scene = new Scene();
+        scene.setCamera(new Camera(new Vector3D(0, 0, -5), 25, 19, WIDTH, HEIGHT, 0.6, 60.0));
+        Model3D model = OBJReader.getModel3D(args.length > 0 ? args[0] : "SmallTeapot.obj", new Vector3D(-0.5, -1, 3), Material.METAL);
+        if (model == null) {
+            System.exit(1);
+        }
+        scene.addObject(model);
+        scene.addObject(new Sphere(new Vector3D(1.8, 0, 4), 1, Material.MATTE));
+        scene.addLight(new PointLight(new Vector3D(5, 5, -5), Material.NONE, 1));
+
+        AdaptiveSampler adaptive = new AdaptiveSampler();
+        AdaptiveSampler uniform = new AdaptiveSampler(4, 16, 0, AdaptiveSampler.DEFAULT_SEED);
+        BufferedImage adaptiveImage;
+        try (TileScheduler scheduler = new TileScheduler(); TileScheduler serial = new TileScheduler(1, TileScheduler.DEFAULT_TILE_SIZE)) {
+            // Warms up the JIT so the first mode is not penalized
+            Raytracer.parallelImageRaytracing(scene, scheduler, new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB));
+            render(scene, scheduler, null, "1 spp");
+            adaptiveImage = render(scene, scheduler, adaptive, "adaptive");
+            render(scene, scheduler, uniform, "uniform");
+
+            adaptive.resetStatistics();
+            BufferedImage serialImage = render(scene, serial, adaptive, "adaptive, 1 worker");
+            if (countDifferences(adaptiveImage, serialImage) > 0) {
+                System.err.println("The adaptive render depends on the number of workers");
+                System.exit(1);
+            }
+        }
+    }
+
+    private static BufferedImage render(Scene scene, TileScheduler scheduler, AdaptiveSampler sampler, String name) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        long start = System.nanoTime();
+        Raytracer.parallelImageRaytracing(scene, scheduler, image, sampler);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double samplesPerPixel = sampler == null ? 1 : sampler.getAverageSamplesPerPixel();
+        System.out.printf("%-20s %8.3f s %8.2f samples/pixel%n", name, seconds, samplesPerPixel);
+        return image;
+    }
+
+    private static int countDifferences(BufferedImage a, BufferedImage b) {
+        int differences = 0;
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                if (a.getRGB(x, y) != b.getRGB(x, y)) {
+                    differences++;
+                }
+            }
+        }
+        return differences;
+    }
+}
@@ -0,0 +1,66 @@
+package edu.up.isgc.cg.raytracer.benchmarks;
+
+import edu.up.isgc.cg.raytracer.Scene;
+import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.lights.PointLight;
+import edu.up.isgc.cg.raytracer.objects.Camera;
+import edu.up.isgc.cg.raytracer.objects.Model3D;
+import edu.up.isgc.cg.raytracer.objects.Triangle;
+import edu.up.isgc.cg.raytracer.tools.Material;
+import edu.up.isgc.cg.raytracer.tools.MeshLibrary;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The BenchmarkScenes class builds the scenes the reports share, as Raytracer builds them.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+abstract class BenchmarkScenes {
+    /**
+     * The point the props of Scene03 are placed at.
+     */
+    static final Vector3D SCENE03_ORIGIN = new Vector3D(0, -0.5, 2);
+
+    /**
+     * Builds Scene03 as Raytracer renders it: a mirror floor and a matte wall behind the props, under two lights.
+     *
+     * @param props The list the props are added to, in the order they are added to the scene.
+     * @return The scene.
+     * @throws IOException If a prop cannot be loaded.
+     */
+    static Scene buildScene03(List<Model3D> props) throws IOException {
+        Scene scene = new Scene();
+        scene.setCamera(new Camera(new Vector3D(0, 0, -5), 60, 60, 400, 400, 0.6, 60.0));
+        scene.addObject(new Model3D(new Vector3D(0, -1, 0), new Triangle[]{
+                new Triangle(new Vector3D(-100, 0, -100), new Vector3D(100, 0, -100), new Vector3D(100, 0, 100)),
+                new Triangle(new Vector3D(-100, 0, -100), new Vector3D(100, 0, 100), new Vector3D(-100, 0, 100))},
+                Material.MIRROR.colored(Color.DARK_GRAY)));
+        scene.addObject(new Model3D(new Vector3D(0, -1, 0), new Triangle[]{
+                new Triangle(new Vector3D(-100, -50, 50), new Vector3D(100, -50, 50), new Vector3D(100, 50, 50)),
+                new Triangle(new Vector3D(-100, -50, 50), new Vector3D(100, 50, 50), new Vector3D(-100, 50, 50))},
+                Material.MATTE.colored(new Color(0, 0, 50))));
+        scene.addLight(new PointLight(new Vector3D(-10, 7, 5.45), Material.NONE.colored(Color.RED), .2));
+        scene.addLight(new PointLight(new Vector3D(15, 15, -10), Material.NONE, .7));
+
+        Material cera = new Material(Color.WHITE, 0.3, 0.0, 50, 0.0);
+        Map<String, Material> materials = new LinkedHashMap<>();
+        materials.put("Scene03/5base.obj", cera);
+        materials.put("Scene03/base.obj", cera);
+        materials.put("Scene03/calaca.obj", Material.GLASS);
+        materials.put("Scene03/cartas.obj", Material.METAL.colored(Color.WHITE));
+        materials.put("Scene03/fuego.obj", Material.MATTE.colored(Color.RED));
+        materials.put("Scene03/rosa.obj", Material.MATTE.colored(Color.PINK));
+        materials.put("Scene03/verde.obj", Material.MATTE.colored(Color.GREEN));
+        for (Map.Entry<String, Material> material : materials.entrySet()) {
+            Model3D prop = new Model3D(SCENE03_ORIGIN, MeshLibrary.getMesh(material.getKey()), material.getValue());
+            scene.addObject(prop);
+            props.add(prop);
+        }
+        return scene;
+    }
+}
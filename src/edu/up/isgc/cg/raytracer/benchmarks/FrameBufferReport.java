@@ -0,0 +1,96 @@
+package edu.up.isgc.cg.raytracer.benchmarks;
+
+import edu.up.isgc.cg.raytracer.rendering.FrameBuffer;
+import edu.up.isgc.cg.raytracer.rendering.Tile;
+import edu.up.isgc.cg.raytracer.rendering.TileScheduler;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Compares the ways a render can write its pixels at 4K, with a trivial shader so only the write path is measured:
+ * BufferedImage.setRGB for every pixel, BufferedImage.setRGB once per tile, and plain stores into the int array of
+ * a FrameBuffer that is then wrapped into an image without copying. The three images must be identical; otherwise
+ * the process exits with status 1.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class FrameBufferReport {
+    private static final int WIDTH = 3840;
+    private static final int HEIGHT = 2160;
+    private static final int ROUNDS = 10;
+
+    /**
+     * Entry point of the report.
+     *
+     * @param args The number of workers, or none to use one per available processor.
+     */
+    public static void main(String[] args) {
+        int parallelism = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        BufferedImage perPixel = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        BufferedImage perTile = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        FrameBuffer frameBuffer = new FrameBuffer(WIDTH, HEIGHT);
+
+        try (TileScheduler scheduler = new TileScheduler(parallelism, TileScheduler.DEFAULT_TILE_SIZE)) {
+            System.out.printf("%dx%d, %d workers, best of %d rounds%n", WIDTH, HEIGHT, parallelism, ROUNDS);
+            report("setRGB per pixel", scheduler, tile -> writePixels(tile, perPixel));
+            report("setRGB per tile", scheduler, tile -> writeTile(tile, perTile));
+            report("FrameBuffer", scheduler, tile -> writeFrameBuffer(tile, frameBuffer));
+        }
+
+        BufferedImage wrapped = frameBuffer.toImage();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int rgb = wrapped.getRGB(x, y);
+                if (rgb != perPixel.getRGB(x, y) || rgb != perTile.getRGB(x, y)) {
+                    System.err.println("The images differ at " + x + ", " + y);
+                    System.exit(1);
+                }
+            }
+        }
+    }
+
+    private static void report(String name, TileScheduler scheduler, TileScheduler.TileRenderer renderer) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            scheduler.render(WIDTH, HEIGHT, renderer);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-18s %8.2f ms %8.1f Mpixel/s%n", name, best / 1e6, (double) WIDTH * HEIGHT / best * 1e3);
+    }
+
+    private static int shade(int x, int y) {
+        return 0xFF000000 | (x & 0xFF) << 16 | (y & 0xFF) << 8 | ((x ^ y) & 0xFF);
+    }
+
+    private static int[] writePixels(Tile tile, BufferedImage image) {
+        for (int y = tile.getY(); y < tile.getY() + tile.getHeight(); y++) {
+            for (int x = tile.getX(); x < tile.getX() + tile.getWidth(); x++) {
+                image.setRGB(x, y, shade(x, y));
+            }
+        }
+        return null;
+    }
+
+    private static int[] writeTile(Tile tile, BufferedImage image) {
+        int[] pixels = new int[tile.getPixelCount()];
+        for (int y = 0; y < tile.getHeight(); y++) {
+            for (int x = 0; x < tile.getWidth(); x++) {
+                pixels[y * tile.getWidth() + x] = shade(tile.getX() + x, tile.getY() + y);
+            }
+        }
+        image.setRGB(tile.getX(), tile.getY(), tile.getWidth(), tile.getHeight(), pixels, 0, tile.getWidth());
+        return null;
+    }
+
+    private static int[] writeFrameBuffer(Tile tile, FrameBuffer frameBuffer) {
+        int[] pixels = frameBuffer.getPixels();
+        int width = frameBuffer.getWidth();
+        for (int y = tile.getY(); y < tile.getY() + tile.getHeight(); y++) {
+            for (int x = tile.getX(); x < tile.getX() + tile.getWidth(); x++) {
+                pixels[y * width + x] = shade(x, y);
+            }
+        }
+        return null;
+    }
+}
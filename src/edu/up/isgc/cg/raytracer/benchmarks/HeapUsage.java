@@ -0,0 +1,34 @@
+package edu.up.isgc.cg.raytracer.benchmarks;
+
+import java.lang.ref.Reference;
+import java.util.function.Supplier;
+
+/**
+ * The HeapUsage class measures the memory the reports retain, by collecting the garbage before and after building a
+ * structure and comparing the used heap.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+abstract class HeapUsage {
+    /**
+     * Measures the heap retained by the object returned by a supplier.
+     *
+     * @param supplier The supplier that builds the structure.
+     * @return The retained bytes.
+     */
+    static long measure(Supplier<Object> supplier) {
+        long baseline = usedHeap();
+        Object retained = supplier.get();
+        long used = usedHeap() - baseline;
+        Reference.reachabilityFence(retained);
+        return used;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,101 @@
+package edu.up.isgc.cg.raytracer.benchmarks;
+
+import edu.up.isgc.cg.raytracer.Intersection;
+import edu.up.isgc.cg.raytracer.Ray;
+import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.acceleration.BoundingBox;
+import edu.up.isgc.cg.raytracer.objects.Model3D;
+import edu.up.isgc.cg.raytracer.objects.Quaternion;
+import edu.up.isgc.cg.raytracer.objects.Transform;
+import edu.up.isgc.cg.raytracer.objects.TriangleMesh;
+import edu.up.isgc.cg.raytracer.tools.Material;
+import edu.up.isgc.cg.raytracer.tools.MeshLibrary;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Reports the heap used by a row of identical models (500 street lamps by default) when every model has its own
+ * copy of the mesh baked into world space and when all of them share the object space mesh of the MeshLibrary. It
+ * also checks that a scaled and rotated model gives the same hits and normals as a model built from a baked copy
+ * of the mesh; otherwise the process exits with status 1. Run from the project root so the relative asset path
+ * resolves.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class InstancingReport {
+    private static final int RAY_COUNT = 20_000;
+    private static final double TOLERANCE = 1e-9;
+
+    /**
+     * Entry point of the report.
+     *
+     * @param args The OBJ file and the number of copies, or none to use 500 bundled street lamps.
+     * @throws IOException If the OBJ file cannot be loaded.
+     */
+    public static void main(String[] args) throws IOException {
+        String asset = args.length > 0 ? args[0] : "Scene02/StreetLamp.obj";
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        TriangleMesh mesh = MeshLibrary.getMesh(asset);
+        mesh.getBVH();
+
+        long copies = HeapUsage.measure(() -> {
+            Model3D[] models = new Model3D[count];
+            for (int i = 0; i < count; i++) {
+                TriangleMesh baked = mesh.transformed(Transform.translation(new Vector3D(i * 3, 0, 0)));
+                models[i] = new Model3D(Vector3D.ZERO(), baked, Material.MATTE);
+            }
+            return models;
+        });
+        long instances = HeapUsage.measure(() -> {
+            Model3D[] models = new Model3D[count];
+            for (int i = 0; i < count; i++) {
+                models[i] = new Model3D(new Vector3D(i * 3, 0, 0), mesh, Material.MATTE);
+            }
+            return models;
+        });
+        System.out.printf("%-24s %8s %10s %14s %14s %14s%n", "asset", "copies", "triangles", "copies KB", "instances KB", "per instance B");
+        System.out.printf("%-24s %8d %10d %14.1f %14.1f %14.1f%n", asset, count, mesh.getTriangleCount(),
+                copies / 1024.0, instances / 1024.0, (double) instances / count);
+
+        int mismatches = compare(mesh);
+        System.out.println("Mismatched hits: " + mismatches + " of " + RAY_COUNT);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Shoots random rays at a scaled and rotated model and at a model built from the mesh baked with the same
+     * transformation.
+     *
+     * @return The number of rays whose hit distance or normal differ.
+     */
+    private static int compare(TriangleMesh mesh) {
+        Vector3D position = new Vector3D(1, -2, 8);
+        Quaternion rotation = Quaternion.fromAxisAngle(new Vector3D(1, 1, 0), 35);
+        Model3D copy = new Model3D(Vector3D.ZERO(), mesh.transformed(Transform.fromTranslationRotationScale(position, rotation, 0.7)), Material.MATTE);
+        Model3D instance = new Model3D(position, mesh, Material.MATTE);
+        instance.setScale(0.7);
+        instance.setRotation(rotation);
+
+        Random random = new Random(7);
+        BoundingBox bounds = copy.getBounds();
+        Vector3D target = Vector3D.scalarMultiplication(Vector3D.add(bounds.getMin(), bounds.getMax()), 0.5);
+        int mismatches = 0;
+        for (int i = 0; i < RAY_COUNT; i++) {
+            Vector3D direction = Vector3D.normalize(new Vector3D(target.getX() + random.nextGaussian(),
+                    target.getY() + random.nextGaussian() * 2, target.getZ()));
+            Ray ray = new Ray(Vector3D.ZERO(), direction);
+            Intersection expected = copy.getIntersection(ray);
+            Intersection actual = instance.getIntersection(ray);
+            if (expected == null || actual == null) {
+                mismatches += expected == actual ? 0 : 1;
+            } else if (Math.abs(expected.getDistance() - actual.getDistance()) > TOLERANCE * expected.getDistance()
+                    || Vector3D.magnitude(Vector3D.substract(copy.calculateNormal(expected), instance.calculateNormal(actual))) > TOLERANCE) {
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+}
@@ -0,0 +1,88 @@
+package edu.up.isgc.cg.raytracer.benchmarks;
+
+import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.objects.Model3D;
+import edu.up.isgc.cg.raytracer.objects.TriangleMesh;
+import edu.up.isgc.cg.raytracer.tools.Material;
+import edu.up.isgc.cg.raytracer.tools.MeshCache;
+import edu.up.isgc.cg.raytracer.tools.OBJReader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Reports the time to load the bundled OBJ assets as models by parsing the text and from their binary mesh cache,
+ * both including the construction of the model and its hierarchy, and the time of the cache read alone. Both paths
+ * must give the same vertices, normals and indices; otherwise the process exits with status 1. The caches are written
+ * next to the assets. Run from the project root so the relative asset paths resolve.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class MeshLoadReport {
+    private static final int ROUNDS = 5;
+    private static final String[] DEFAULT_ASSETS = {
+            "Cars.obj", "FireStuffobj.obj", "UFO.obj", "SmallTeapot.obj", "Saturn.obj", "Scene03/5base.obj"
+    };
+
+    /**
+     * Entry point of the report.
+     *
+     * @param args The OBJ files to load, or none to use the bundled assets.
+     * @throws IOException If a cache file cannot be removed or read.
+     */
+    public static void main(String[] args) throws IOException {
+        String[] assets = args.length > 0 ? args : DEFAULT_ASSETS;
+        System.out.printf("%-20s %10s %10s %12s %12s %8s %12s%n", "asset", "size", "triangles", "parse ms", "cache ms", "speedup", "read ms");
+        for (String asset : assets) {
+            Files.deleteIfExists(MeshCache.getCachePath(Path.of(asset)));
+
+            OBJReader.setMeshCacheEnabled(false);
+            double parse = bestMillis(asset);
+            TriangleMesh parsed = load(asset);
+
+            OBJReader.setMeshCacheEnabled(true);
+            load(asset);  // Writes the cache
+            double cached = bestMillis(asset);
+            TriangleMesh loaded = load(asset);
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                MeshCache.load(Path.of(asset), OBJReader.getWeldTolerance());
+                best = Math.min(best, System.nanoTime() - start);
+            }
+
+            if (!Arrays.equals(parsed.getPositions(), loaded.getPositions()) || !Arrays.equals(parsed.getNormals(), loaded.getNormals())
+                    || !Arrays.equals(parsed.getPositionIndices(), loaded.getPositionIndices())
+                    || !Arrays.equals(parsed.getNormalIndices(), loaded.getNormalIndices())) {
+                System.err.println("The cached mesh of " + asset + " differs from the parsed one");
+                System.exit(1);
+            }
+            System.out.printf("%-20s %9dK %10d %12.2f %12.2f %7.1fx %12.2f%n", asset, Files.size(Path.of(asset)) / 1024,
+                    parsed.getTriangleCount(), parse, cached, parse / cached, best / 1e6);
+        }
+    }
+
+    private static double bestMillis(String asset) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            load(asset);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+
+    private static TriangleMesh load(String asset) {
+        try {
+            // Bypasses the MeshLibrary, which would return the mesh of the first load
+            TriangleMesh mesh = OBJReader.loadMesh(asset, OBJReader.getWeldTolerance());
+            return new Model3D(Vector3D.ZERO(), mesh, Material.MATTE).getMesh();
+        } catch (IOException e) {
+            System.err.println(e);
+            System.exit(1);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package edu.up.isgc.cg.raytracer.benchmarks;
+
+import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.objects.Model3D;
+import edu.up.isgc.cg.raytracer.objects.Quaternion;
+import edu.up.isgc.cg.raytracer.objects.Transform;
+import edu.up.isgc.cg.raytracer.objects.Triangle;
+import edu.up.isgc.cg.raytracer.objects.TriangleMesh;
+import edu.up.isgc.cg.raytracer.tools.Material;
+import edu.up.isgc.cg.raytracer.tools.OBJParser;
+import edu.up.isgc.cg.raytracer.tools.OBJReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reports the heap used per triangle by the bundled OBJ assets, comparing the previous object graph
+ * (original Triangle list plus a transformed copy, both made of Vector3D objects) and the previous per-corner arrays
+ * against the indexed mesh used by Model3D, with and without a rotation (rotated meshes cannot share the original
+ * normals). It also reports the distinct vertices of every asset, as loaded and welded with a small tolerance, and
+ * the TriangleBatch a mesh adds on top of the indexed mesh once a triangle kernel is set.
+ * Run from the project root so the relative asset paths resolve.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class MeshMemoryReport {
+    private static final double WELD_TOLERANCE = 1e-6;
+    private static final Quaternion ROTATION = Quaternion.fromAxisAngle(new Vector3D(0, 1, 0), 30);
+    private static final String[] DEFAULT_ASSETS = {
+            "Cars.obj", "FireStuffobj.obj", "Steve.obj", "SmallTeapot.obj", "UFO.obj", "Saturn.obj",
+            "Scene02/Car.obj", "Scene02/StreetLamp.obj", "Scene03/5base.obj", "Scene03/verde.obj"
+    };
+
+    /**
+     * Entry point of the report.
+     *
+     * @param args The OBJ files to measure, or none to use the bundled assets.
+     * @throws IOException If an asset cannot be parsed with welding.
+     */
+    public static void main(String[] args) throws IOException {
+        String[] assets = args.length > 0 ? args : DEFAULT_ASSETS;
+        System.out.printf("%-24s %10s %10s %10s %14s %14s %14s %16s %10s %12s %18s%n", "asset", "triangles",
+                "vertices", "welded", "objects B/tri", "corners B/tri", "indexed B/tri", "rotated B/tri", "ratio",
+                "batch B/tri", "indexed+batch B/tri");
+
+        for (String asset : assets) {
+            Model3D model = OBJReader.getModel3D(asset, Vector3D.ZERO(), Material.MATTE);
+            if (model == null) {
+                continue;
+            }
+            TriangleMesh mesh = model.getMesh();
+            int triangleCount = mesh.getTriangleCount();
+
+            int welded = OBJParser.parse(Path.of(asset), 1, WELD_TOLERANCE).getVertexCount();
+
+            long before = HeapUsage.measure(() -> buildLegacyGraph(mesh));
+            long corners = HeapUsage.measure(() -> buildCornerArrays(mesh));
+            long after = HeapUsage.measure(() -> buildIndexedMeshes(mesh, null));
+            long afterRotated = HeapUsage.measure(() -> buildIndexedMeshes(mesh, ROTATION));
+            TriangleMesh copy = copyMesh(mesh);
+            copy.getBVH();
+            long batch = HeapUsage.measure(copy::getTriangleBatch);
+
+            double beforePerTriangle = (double) before / triangleCount;
+            double afterPerTriangle = (double) after / triangleCount;
+            System.out.printf("%-24s %10d %10d %10d %14.1f %14.1f %14.1f %16.1f %9.2fx %12.1f %18.1f%n", asset,
+                    triangleCount, mesh.getVertexCount(), welded, beforePerTriangle, (double) corners / triangleCount,
+                    afterPerTriangle, (double) afterRotated / triangleCount, beforePerTriangle / afterPerTriangle,
+                    (double) batch / triangleCount, (double) (after + batch) / triangleCount);
+        }
+    }
+
+    /**
+     * Builds what Model3D retains now: a copy of the original mesh plus its transformed mesh.
+     *
+     * @param mesh The mesh to copy.
+     * @param rotation The rotation of the transformed mesh, or null for none.
+     * @return The retained meshes.
+     */
+    private static Object buildIndexedMeshes(TriangleMesh mesh, Quaternion rotation) {
+        TriangleMesh original = copyMesh(mesh);
+        return new TriangleMesh[]{original, original.transformed(Transform.rotation(rotation))};
+    }
+
+    private static TriangleMesh copyMesh(TriangleMesh mesh) {
+        return new TriangleMesh(mesh.getPositions().clone(), mesh.getNormals().clone(),
+                mesh.getPositionIndices().clone(), mesh.getNormalIndices().clone());
+    }
+
+    /**
+     * Rebuilds the arrays Model3D used to keep before meshes were indexed: the positions and normals of every
+     * triangle corner, plus the transformed positions sharing the normals.
+     *
+     * @param mesh The mesh to convert.
+     * @return The retained arrays.
+     */
+    private static Object buildCornerArrays(TriangleMesh mesh) {
+        return new double[][]{mesh.getCornerPositions(), mesh.getCornerNormals(), mesh.getCornerPositions()};
+    }
+
+    /**
+     * Rebuilds the object graph Model3D used to keep: the triangles read from the file, with vertices and normals
+     * shared between faces, plus a transformed copy with new vertex objects for every corner.
+     *
+     * @param mesh The mesh to convert.
+     * @return The retained object graph.
+     */
+    private static Object buildLegacyGraph(TriangleMesh mesh) {
+        Map<List<Double>, Vector3D> shared = new HashMap<>();
+        Triangle[] originals = new Triangle[mesh.getTriangleCount()];
+        double[] positions = mesh.getCornerPositions();
+        double[] normals = mesh.getCornerNormals();
+        for (int i = 0; i < originals.length; i++) {
+            Vector3D[] vertices = new Vector3D[3];
+            Vector3D[] vertexNormals = new Vector3D[3];
+            for (int j = 0; j < 3; j++) {
+                int offset = i * 9 + j * 3;
+                vertices[j] = shared.computeIfAbsent(
+                        Arrays.asList(positions[offset], positions[offset + 1], positions[offset + 2]),
+                        key -> new Vector3D(key.get(0), key.get(1), key.get(2)));
+                vertexNormals[j] = shared.computeIfAbsent(
+                        Arrays.asList(normals[offset], normals[offset + 1], normals[offset + 2], 0.0),
+                        key -> new Vector3D(key.get(0), key.get(1), key.get(2)));
+            }
+            originals[i] = new Triangle(vertices, vertexNormals);
+        }
+
+        List<Triangle> transformed = new ArrayList<>(Arrays.asList(originals.clone()));
+        for (int i = 0; i < originals.length; i++) {
+            Vector3D[] vertices = new Vector3D[3];
+            Vector3D[] vertexNormals = new Vector3D[3];
+            for (int j = 0; j < 3; j++) {
+                vertices[j] = originals[i].getVertices()[j].clone();
+                vertexNormals[j] = originals[i].getNormals()[j];
+            }
+            transformed.set(i, new Triangle(vertices, vertexNormals));
+        }
+        return new Object[]{Arrays.asList(originals), transformed};
+    }
+}
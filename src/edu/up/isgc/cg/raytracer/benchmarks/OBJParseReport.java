@@ -0,0 +1,63 @@
+package edu.up.isgc.cg.raytracer.benchmarks;
+
+import edu.up.isgc.cg.raytracer.objects.TriangleMesh;
+import edu.up.isgc.cg.raytracer.tools.OBJParser;
+import edu.up.isgc.cg.raytracer.tools.OBJReader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reports the throughput in MB/s of the line-by-line OBJ reader and of the chunked OBJ parser, on one thread and on
+ * every worker of the common pool, and checks that the parser gives the same positions and normals as the reader;
+ * otherwise the process exits with status 1. Run from the project root so the relative asset paths resolve.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class OBJParseReport {
+    private static final int ROUNDS = 5;
+    private static final String[] DEFAULT_ASSETS = {"Cars.obj", "FireStuffobj.obj", "UFO.obj", "SmallTeapot.obj"};
+
+    /**
+     * Entry point of the report.
+     *
+     * @param args The OBJ files to parse, or none to use the bundled assets.
+     * @throws Exception If a file cannot be read.
+     */
+    public static void main(String[] args) throws Exception {
+        String[] assets = args.length > 0 ? args : DEFAULT_ASSETS;
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        System.out.printf("%-20s %10s %14s %14s %14s%n", "asset", "size", "reader MB/s", "parser MB/s", "parser x" + parallelism);
+        for (String asset : assets) {
+            Path path = Path.of(asset);
+            double megabytes = Files.size(path) / 1e6;
+            TriangleMesh reference = TriangleMesh.fromTriangles(OBJReader.readTriangles(asset));
+            for (int workers : new int[]{1, parallelism}) {
+                TriangleMesh parsed = OBJParser.parse(path, workers);
+                if (!Arrays.equals(reference.getCornerPositions(), parsed.getCornerPositions())
+                        || !Arrays.equals(reference.getCornerNormals(), parsed.getCornerNormals())) {
+                    System.err.println("The parsed mesh of " + asset + " differs from the reader's");
+                    System.exit(1);
+                }
+            }
+
+            double reader = megabytes / bestSeconds(() -> TriangleMesh.fromTriangles(OBJReader.readTriangles(asset)));
+            double serial = megabytes / bestSeconds(() -> OBJParser.parse(path, 1));
+            double parallel = megabytes / bestSeconds(() -> OBJParser.parse(path, parallelism));
+            System.out.printf("%-20s %9.2fM %14.1f %14.1f %14.1f%n", asset, megabytes, reader, serial, parallel);
+        }
+    }
+
+    private static double bestSeconds(Callable<TriangleMesh> load) throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            load.call();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e9;
+    }
+}
@@ -0,0 +1,217 @@
+package edu.up.isgc.cg.raytracer.benchmarks;
+
+import edu.up.isgc.cg.raytracer.Intersection;
+import edu.up.isgc.cg.raytracer.Ray;
+import edu.up.isgc.cg.raytracer.Raytracer;
+import edu.up.isgc.cg.raytracer.Scene;
+import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.acceleration.RayPacket;
+import edu.up.isgc.cg.raytracer.acceleration.SceneBVH;
+import edu.up.isgc.cg.raytracer.lights.PointLight;
+import edu.up.isgc.cg.raytracer.objects.Camera;
+import edu.up.isgc.cg.raytracer.objects.Model3D;
+import edu.up.isgc.cg.raytracer.objects.Object3D;
+import edu.up.isgc.cg.raytracer.objects.Sphere;
+import edu.up.isgc.cg.raytracer.rendering.TileScheduler;
+import edu.up.isgc.cg.raytracer.tools.Material;
+import edu.up.isgc.cg.raytracer.tools.MeshLibrary;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reports the rays per second of the scalar path and of packet tracing on the bundled scenes: the teapot with a
+ * sphere and Scene03. The primary rays of every pixel are traced in blocks of 4x4, and then the shadow rays of their
+ * hits toward the first light; every scene is also rendered with both paths. The packets must find the same hits,
+ * the same shadows and the same image as the scalar path; otherwise the process exits with status 1. Run from the
+ * project root so the relative asset paths resolve.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class PacketTracingReport {
+    private static final int REPEATS = 10;
+    private static final int BLOCK_SIZE = 4;
+
+    /**
+     * Entry point of the report.
+     *
+     * @param args Not used.
+     * @throws IOException If an asset cannot be loaded.
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, Scene> scenes = new LinkedHashMap<>();
+        scenes.put("teapot", buildTeapotScene());
+        scenes.put("Scene03", BenchmarkScenes.buildScene03(new ArrayList<>()));
+
+        int mismatches = 0;
+        System.out.printf("%-10s %-8s %12s %14s %14s %9s%n", "scene", "rays", "count", "scalar Mray/s", "packet Mray/s", "speedup");
+        try (TileScheduler scheduler = new TileScheduler()) {
+            for (Map.Entry<String, Scene> entry : scenes.entrySet()) {
+                mismatches += report(entry.getKey(), entry.getValue(), scheduler);
+            }
+        }
+        System.out.println("Mismatches: " + mismatches);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Times and compares both paths on a scene.
+     *
+     * @return The number of rays and pixels whose result differs between the paths.
+     */
+    private static int report(String name, Scene scene, TileScheduler scheduler) {
+        Camera camera = scene.getCamera();
+        SceneBVH objects = scene.updateAccelerationStructure();
+        double[] planes = Raytracer.calculateClippingPlanes(camera);
+        Ray[] primary = generateBlockRays(camera);
+
+        Intersection[] scalarHits = new Intersection[primary.length];
+        Intersection[] packetHits = new Intersection[primary.length];
+        long scalar = Long.MAX_VALUE;
+        long packet = Long.MAX_VALUE;
+        for (int i = 0; i < REPEATS; i++) {
+            long start = System.nanoTime();
+            for (int ray = 0; ray < primary.length; ray++) {
+                scalarHits[ray] = objects.raycast(primary[ray], camera, planes);
+            }
+            scalar = Math.min(scalar, System.nanoTime() - start);
+            start = System.nanoTime();
+            Intersection[] hits = new Intersection[RayPacket.MAX_SIZE];
+            for (int first = 0; first < primary.length; first += RayPacket.MAX_SIZE) {
+                int count = Math.min(RayPacket.MAX_SIZE, primary.length - first);
+                Ray[] block = Arrays.copyOfRange(primary, first, first + count);
+                objects.raycast(block, count, camera, planes, hits);
+                System.arraycopy(hits, 0, packetHits, first, count);
+            }
+            packet = Math.min(packet, System.nanoTime() - start);
+        }
+        print(name, "primary", primary.length, scalar, packet);
+        int mismatches = 0;
+        for (int ray = 0; ray < primary.length; ray++) {
+            if (!sameHit(scalarHits[ray], packetHits[ray])) {
+                mismatches++;
+            }
+        }
+
+        // Shadow rays of the hits toward the first light, built as Raytracer.isShadowed builds them
+        Vector3D light = scene.getLights().get(0).getPosition();
+        int shadowCount = 0;
+        Ray[] shadows = new Ray[primary.length];
+        double[] distances = new double[primary.length];
+        Object3D[] casters = new Object3D[primary.length];
+        for (Intersection hit : scalarHits) {
+            if (hit != null) {
+                Vector3D toLight = Vector3D.substract(light, hit.getPosition());
+                distances[shadowCount] = Vector3D.magnitude(toLight);
+                casters[shadowCount] = hit.getObject();
+                shadows[shadowCount++] = new Ray(hit.getPosition(), Vector3D.normalize(toLight));
+            }
+        }
+        boolean[] scalarBlocked = new boolean[shadowCount];
+        boolean[] packetBlocked = new boolean[shadowCount];
+        scalar = Long.MAX_VALUE;
+        packet = Long.MAX_VALUE;
+        for (int i = 0; i < REPEATS; i++) {
+            long start = System.nanoTime();
+            for (int ray = 0; ray < shadowCount; ray++) {
+                scalarBlocked[ray] = objects.isOccluded(shadows[ray], distances[ray], casters[ray]);
+            }
+            scalar = Math.min(scalar, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int first = 0; first < shadowCount; first += RayPacket.MAX_SIZE) {
+                int count = Math.min(RayPacket.MAX_SIZE, shadowCount - first);
+                int blocked = objects.isOccluded(Arrays.copyOfRange(shadows, first, first + count),
+                        Arrays.copyOfRange(distances, first, first + count),
+                        Arrays.copyOfRange(casters, first, first + count), count);
+                for (int ray = 0; ray < count; ray++) {
+                    packetBlocked[first + ray] = (blocked & 1 << ray) != 0;
+                }
+            }
+            packet = Math.min(packet, System.nanoTime() - start);
+        }
+        print(name, "shadow", shadowCount, scalar, packet);
+        for (int ray = 0; ray < shadowCount; ray++) {
+            if (scalarBlocked[ray] != packetBlocked[ray]) {
+                mismatches++;
+            }
+        }
+
+        BufferedImage scalarImage = new BufferedImage(camera.getResolutionWidth(), camera.getResolutionHeight(), BufferedImage.TYPE_INT_RGB);
+        BufferedImage packetImage = new BufferedImage(camera.getResolutionWidth(), camera.getResolutionHeight(), BufferedImage.TYPE_INT_RGB);
+        scalar = Long.MAX_VALUE;
+        packet = Long.MAX_VALUE;
+        for (int i = 0; i < REPEATS; i++) {
+            Raytracer.setPacketTracingEnabled(false);
+            long start = System.nanoTime();
+            Raytracer.parallelImageRaytracing(scene, scheduler, scalarImage);
+            scalar = Math.min(scalar, System.nanoTime() - start);
+            Raytracer.setPacketTracingEnabled(true);
+            start = System.nanoTime();
+            Raytracer.parallelImageRaytracing(scene, scheduler, packetImage);
+            packet = Math.min(packet, System.nanoTime() - start);
+        }
+        Raytracer.setPacketTracingEnabled(false);
+        System.out.printf("%-10s %-8s %12d %12.1f ms %12.1f ms %8.2fx%n", name, "render", primary.length,
+                scalar / 1e6, packet / 1e6, (double) scalar / packet);
+        for (int y = 0; y < scalarImage.getHeight(); y++) {
+            for (int x = 0; x < scalarImage.getWidth(); x++) {
+                if (scalarImage.getRGB(x, y) != packetImage.getRGB(x, y)) {
+                    mismatches++;
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * Generates the primary ray of every pixel, ordered block by block so that every 16 consecutive rays are the
+     * block of 4x4 pixels a packet traces.
+     */
+    private static Ray[] generateBlockRays(Camera camera) {
+        int width = camera.getResolutionWidth();
+        int height = camera.getResolutionHeight();
+        double[] imagePlane = camera.calculateImagePlane();
+        Ray[] rays = new Ray[width * height];
+        int index = 0;
+        for (int blockY = 0; blockY < height; blockY += BLOCK_SIZE) {
+            for (int blockX = 0; blockX < width; blockX += BLOCK_SIZE) {
+                for (int y = blockY; y < Math.min(blockY + BLOCK_SIZE, height); y++) {
+                    for (int x = blockX; x < Math.min(blockX + BLOCK_SIZE, width); x++) {
+                        rays[index++] = camera.generateRay(imagePlane, x, y, 0, 0);
+                    }
+                }
+            }
+        }
+        return rays;
+    }
+
+    private static boolean sameHit(Intersection a, Intersection b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getObject() == b.getObject() && a.getDistance() == b.getDistance() && a.getPrimitive() == b.getPrimitive();
+    }
+
+    private static void print(String scene, String rays, int count, long scalarNanos, long packetNanos) {
+        System.out.printf("%-10s %-8s %12d %14.2f %14.2f %8.2fx%n", scene, rays, count,
+                count / (scalarNanos / 1e3), count / (packetNanos / 1e3), (double) scalarNanos / packetNanos);
+    }
+
+    /**
+     * Builds the scene of the other reports: the teapot and a sphere under one light.
+     */
+    private static Scene buildTeapotScene() throws IOException {
+        Scene scene = new Scene();
+        scene.setCamera(new Camera(new Vector3D(0, 0, -5), 25, 19, 320, 240, 0.6, 60.0));
+        scene.addObject(new Model3D(new Vector3D(-0.5, -1, 3), MeshLibrary.getMesh("SmallTeapot.obj"), Material.METAL));
+        scene.addObject(new Sphere(new Vector3D(1.8, 0, 4), 1, Material.MATTE));
+        scene.addLight(new PointLight(new Vector3D(5, 5, -5), Material.NONE, 1));
+        return scene;
+    }
+}
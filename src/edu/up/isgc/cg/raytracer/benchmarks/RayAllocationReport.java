@@ -0,0 +1,99 @@
+package edu.up.isgc.cg.raytracer.benchmarks;
+
+import edu.up.isgc.cg.raytracer.Intersection;
+import edu.up.isgc.cg.raytracer.Ray;
+import edu.up.isgc.cg.raytracer.Scene;
+import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.acceleration.SceneBVH;
+import edu.up.isgc.cg.raytracer.lights.PointLight;
+import edu.up.isgc.cg.raytracer.objects.Model3D;
+import edu.up.isgc.cg.raytracer.objects.Sphere;
+import edu.up.isgc.cg.raytracer.tools.Material;
+import edu.up.isgc.cg.raytracer.tools.OBJReader;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Measures the bytes allocated per ray by the intersection hot path after warmup: closest-hit queries, occlusion
+ * queries and light evaluation over a scene made of a mesh and a sphere. Closest-hit queries may only allocate the
+ * intersection they return; occlusion queries must not allocate at all. The process exits with status 1 if a limit
+ * is exceeded. Run from the project root so the relative asset path resolves.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class RayAllocationReport {
+    private static final int RAY_COUNT = 100_000;
+    private static final int WARMUP_ROUNDS = 20;
+    // Room for the returned Intersection, its lazily calculated position and normal, and measurement noise
+    private static final double MAX_CLOSEST_HIT_BYTES = 192;
+    private static final double MAX_OCCLUSION_BYTES = 1;
+
+    /**
+     * Entry point of the report.
+     *
+     * @param args The OBJ file to use as mesh, or none to use the bundled teapot.
+     */
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        Scene scene = new Scene();
+        Model3D model = OBJReader.getModel3D(args.length > 0 ? args[0] : "SmallTeapot.obj", new Vector3D(0, -1, 4), Material.MATTE);
+        if (model == null) {
+            System.exit(1);
+        }
+        scene.addObject(model);
+        scene.addObject(new Sphere(new Vector3D(1.5, 0, 6), 1, Material.MATTE));
+        PointLight light = new PointLight(new Vector3D(5, 5, -5), Material.NONE, 1);
+        SceneBVH objects = scene.buildAccelerationStructure();
+
+        Ray[] rays = new Ray[RAY_COUNT];
+        Random random = new Random(42);
+        for (int i = 0; i < rays.length; i++) {
+            rays[i] = new Ray(Vector3D.ZERO(), new Vector3D(random.nextGaussian() * 0.3, random.nextGaussian() * 0.3, 1));
+        }
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            closestHits(rays, objects, light);
+            occlusions(rays, objects);
+        }
+
+        long start = threads.getCurrentThreadAllocatedBytes();
+        double sink = closestHits(rays, objects, light);
+        double closestHitBytes = (double) (threads.getCurrentThreadAllocatedBytes() - start) / RAY_COUNT;
+
+        start = threads.getCurrentThreadAllocatedBytes();
+        int blocked = occlusions(rays, objects);
+        double occlusionBytes = (double) (threads.getCurrentThreadAllocatedBytes() - start) / RAY_COUNT;
+
+        System.out.printf("closest hit + light: %8.2f B/ray (limit %.0f)%n", closestHitBytes, MAX_CLOSEST_HIT_BYTES);
+        System.out.printf("occlusion:           %8.2f B/ray (limit %.0f)%n", occlusionBytes, MAX_OCCLUSION_BYTES);
+        System.out.printf("(%d blocked, checksum %.3f)%n", blocked, sink);
+
+        if (closestHitBytes > MAX_CLOSEST_HIT_BYTES || occlusionBytes > MAX_OCCLUSION_BYTES) {
+            System.err.println("Allocation limit exceeded");
+            System.exit(1);
+        }
+    }
+
+    private static double closestHits(Ray[] rays, SceneBVH objects, PointLight light) {
+        double sum = 0;
+        for (Ray ray : rays) {
+            Intersection intersection = objects.raycast(ray, null, null);
+            if (intersection != null) {
+                sum += light.getNDotL(intersection);
+            }
+        }
+        return sum;
+    }
+
+    private static int occlusions(Ray[] rays, SceneBVH objects) {
+        int blocked = 0;
+        for (Ray ray : rays) {
+            if (objects.isOccluded(ray, 10, null)) {
+                blocked++;
+            }
+        }
+        return blocked;
+    }
+}
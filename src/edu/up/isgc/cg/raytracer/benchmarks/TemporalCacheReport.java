@@ -0,0 +1,142 @@
+package edu.up.isgc.cg.raytracer.benchmarks;
+
+import edu.up.isgc.cg.raytracer.Raytracer;
+import edu.up.isgc.cg.raytracer.Scene;
+import edu.up.isgc.cg.raytracer.animation.Animation;
+import edu.up.isgc.cg.raytracer.animation.TemporalCache;
+import edu.up.isgc.cg.raytracer.objects.Camera;
+import edu.up.isgc.cg.raytracer.objects.Model3D;
+import edu.up.isgc.cg.raytracer.rendering.TileScheduler;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reports the time per frame of Scene03 rendered with and without a {@link TemporalCache}, in two animations: the
+ * turntable of Raytracer, where the props spin while the camera moves in and out, and the same camera move with the
+ * props still. Every frame is rendered in memory, so only the time of the render is measured; the sequences are
+ * rendered in turns, in alternating order, and the best of the repeats is kept, which keeps most of the noise of a
+ * busy machine out of the speedup.
+ * The pixels that differ from the frame traced completely are counted, as the error of the reuse. Run from the
+ * project root so the relative asset paths resolve.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class TemporalCacheReport {
+    private static final int DEFAULT_FRAMES = 12;
+    private static final int REPEATS = 5;
+    private static final int[] MAX_REUSE_FRAMES = {0, 4};
+    // A channel must differ by more than this for a pixel to count as different from the frame traced completely
+    private static final int TOLERANCE = 2;
+
+    /**
+     * Entry point of the report.
+     *
+     * @param args Optionally, the number of frames of the animations.
+     * @throws IOException If an asset cannot be loaded.
+     */
+    public static void main(String[] args) throws IOException {
+        int frameCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_FRAMES;
+        System.out.printf("%-10s %7s %12s %8s %8s %11s%n", "animation", "reuse", "ms/frame", "reused", "speedup", "differing");
+        try (TileScheduler scheduler = new TileScheduler()) {
+            for (boolean spin : new boolean[]{true, false}) {
+                List<Model3D> props = new ArrayList<>();
+                Scene scene = BenchmarkScenes.buildScene03(props);
+                Animation animation = Raytracer.createTurntable(scene, spin ? props : List.of(),
+                        BenchmarkScenes.SCENE03_ORIGIN, frameCount);
+                report(spin ? "turntable" : "dolly", scene, animation, frameCount, scheduler);
+            }
+        }
+    }
+
+    /**
+     * Prints a row per maximum number of reuses, comparing its frames with the ones traced completely.
+     */
+    private static void report(String name, Scene scene, Animation animation, int frameCount, TileScheduler scheduler) {
+        Camera camera = scene.getCamera();
+        BufferedImage[] reference = new BufferedImage[frameCount];
+        BufferedImage[] images = new BufferedImage[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            reference[i] = new BufferedImage(camera.getResolutionWidth(), camera.getResolutionHeight(), BufferedImage.TYPE_INT_RGB);
+            images[i] = new BufferedImage(camera.getResolutionWidth(), camera.getResolutionHeight(), BufferedImage.TYPE_INT_RGB);
+        }
+        // Warms up both paths before anything is measured
+        for (int maxReuseFrames : MAX_REUSE_FRAMES) {
+            renderSequence(animation, scene, maxReuseFrames, frameCount, scheduler, images, new double[1]);
+        }
+
+        long[] best = new long[MAX_REUSE_FRAMES.length];
+        double[] reuse = new double[MAX_REUSE_FRAMES.length];
+        long[] differing = new long[MAX_REUSE_FRAMES.length];
+        Arrays.fill(best, Long.MAX_VALUE);
+        for (int repeat = 0; repeat < REPEATS; repeat++) {
+            for (int turn = 0; turn < MAX_REUSE_FRAMES.length; turn++) {
+                // Every other repeat goes the other way, so neither setting always runs right after the other
+                int i = repeat % 2 == 0 ? turn : MAX_REUSE_FRAMES.length - 1 - turn;
+                BufferedImage[] target = MAX_REUSE_FRAMES[i] == 0 ? reference : images;
+                double[] reused = new double[1];
+                best[i] = Math.min(best[i], renderSequence(animation, scene, MAX_REUSE_FRAMES[i], frameCount, scheduler, target, reused));
+                reuse[i] = reused[0] / frameCount;
+                if (MAX_REUSE_FRAMES[i] > 0) {
+                    differing[i] = 0;
+                    for (int frame = 0; frame < frameCount; frame++) {
+                        differing[i] += countDiffering(reference[frame], images[frame]);
+                    }
+                }
+            }
+        }
+
+        long pixels = (long) camera.getResolutionWidth() * camera.getResolutionHeight() * frameCount;
+        for (int i = 0; i < MAX_REUSE_FRAMES.length; i++) {
+            System.out.printf("%-10s %7d %12.1f %7.1f%% %7.2fx %10.2f%%%n", name, MAX_REUSE_FRAMES[i],
+                    best[i] / 1e6 / frameCount, reuse[i] * 100, (double) best[0] / best[i], differing[i] * 100.0 / pixels);
+        }
+    }
+
+    /**
+     * Renders every frame of an animation into its image, with a new cache if colors may be reused.
+     *
+     * @param reused Receives the sum over the frames of the fraction of the pixels whose color was reused.
+     * @return The nanoseconds spent rendering, without updating the scene between frames.
+     */
+    private static long renderSequence(Animation animation, Scene scene, int maxReuseFrames, int frameCount,
+                                       TileScheduler scheduler, BufferedImage[] images, double[] reused) {
+        TemporalCache cache = maxReuseFrames > 0 ? new TemporalCache(maxReuseFrames) : null;
+        long total = 0;
+        for (int frame = 0; frame < frameCount; frame++) {
+            animation.applyFrame(frame);
+            scene.updateAccelerationStructure();
+            long start = System.nanoTime();
+            if (cache == null) {
+                Raytracer.parallelImageRaytracing(scene, scheduler, images[frame]);
+            } else {
+                reused[0] += cache.render(scene, scheduler, images[frame]);
+            }
+            total += System.nanoTime() - start;
+        }
+        return total;
+    }
+
+    /**
+     * Counts the pixels where a channel of two images differs by more than the tolerance.
+     */
+    private static long countDiffering(BufferedImage expected, BufferedImage actual) {
+        long count = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int a = expected.getRGB(x, y);
+                int b = actual.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    if (Math.abs((a >> shift & 0xFF) - (b >> shift & 0xFF)) > TOLERANCE) {
+                        count++;
+                        break;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,145 @@
+package edu.up.isgc.cg.raytracer.benchmarks;
+
+import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.objects.Quaternion;
+import edu.up.isgc.cg.raytracer.objects.Transform;
+import edu.up.isgc.cg.raytracer.objects.TriangleMesh;
+
+import java.util.Random;
+
+/**
+ * Reports the time taken to re-pose a large mesh (a grid of one million vertices by default) by rotating every
+ * vertex and normal with quaternions, as models used to, and with a {@link Transform} applied to the whole buffers
+ * in parallel batches. It also checks the transforms themselves: they must agree with the quaternion rotation, undo
+ * each other when inverted, and keep normals perpendicular under non-uniform scales; otherwise the process exits
+ * with status 1.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class TransformReport {
+    private static final int REPEATS = 5;
+    private static final int CHECKS = 10_000;
+    private static final double TOLERANCE = 1e-9;
+    // Keeps the results reachable so the timed work cannot be optimized away
+    private static volatile Object sink;
+
+    /**
+     * Entry point of the report.
+     *
+     * @param args The side of the vertex grid, or none for 1000.
+     */
+    public static void main(String[] args) {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        TriangleMesh mesh = buildGrid(side);
+        Vector3D position = new Vector3D(3, -1, 12);
+        Quaternion rotation = Quaternion.normalize(Quaternion.fromAxisAngle(new Vector3D(1, 2, 0), 40));
+        Transform transform = Transform.fromTranslationRotationScale(position, rotation, 1.5);
+
+        long quaternions = Long.MAX_VALUE;
+        long batched = Long.MAX_VALUE;
+        for (int i = 0; i < REPEATS; i++) {
+            long start = System.nanoTime();
+            sink = rotateWithQuaternions(mesh, position, rotation, 1.5);
+            quaternions = Math.min(quaternions, System.nanoTime() - start);
+            start = System.nanoTime();
+            sink = mesh.transformed(transform);
+            batched = Math.min(batched, System.nanoTime() - start);
+        }
+        System.out.printf("%10s %10s %16s %16s %9s%n", "vertices", "normals", "quaternions ms", "transform ms", "speedup");
+        System.out.printf("%10d %10d %16.1f %16.1f %8.1fx%n", mesh.getVertexCount(), mesh.getNormalCount(),
+                quaternions / 1e6, batched / 1e6, (double) quaternions / batched);
+
+        int failures = check(rotation);
+        System.out.println("Failed checks: " + failures + " of " + CHECKS);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Builds a flat grid of side x side vertices with a normal per vertex.
+     */
+    private static TriangleMesh buildGrid(int side) {
+        double[] positions = new double[side * side * 3];
+        double[] normals = new double[side * side * 3];
+        for (int i = 0; i < side * side; i++) {
+            positions[i * 3] = i % side;
+            positions[i * 3 + 1] = Math.sin(i * 0.01);
+            positions[i * 3 + 2] = i / side;
+            normals[i * 3 + 1] = 1;
+        }
+        int quads = (side - 1) * (side - 1);
+        int[] indices = new int[quads * 6];
+        for (int q = 0; q < quads; q++) {
+            int corner = q / (side - 1) * side + q % (side - 1);
+            int[] quad = {corner, corner + 1, corner + side, corner + 1, corner + side + 1, corner + side};
+            System.arraycopy(quad, 0, indices, q * 6, 6);
+        }
+        return new TriangleMesh(positions, normals, indices, indices.clone());
+    }
+
+    /**
+     * Rotates every vertex and normal of a mesh through Quaternion.rotate, creating the intermediate vectors and
+     * quaternions for each of them.
+     */
+    private static double[][] rotateWithQuaternions(TriangleMesh mesh, Vector3D position, Quaternion rotation, double scale) {
+        double[] positions = mesh.getPositions();
+        double[] normals = mesh.getNormals();
+        double[] rotatedPositions = new double[positions.length];
+        double[] rotatedNormals = new double[normals.length];
+        for (int i = 0; i < positions.length; i += 3) {
+            Vector3D rotated = Quaternion.rotate(new Vector3D(positions[i] * scale, positions[i + 1] * scale,
+                    positions[i + 2] * scale), rotation);
+            rotatedPositions[i] = rotated.getX() + position.getX();
+            rotatedPositions[i + 1] = rotated.getY() + position.getY();
+            rotatedPositions[i + 2] = rotated.getZ() + position.getZ();
+        }
+        for (int i = 0; i < normals.length; i += 3) {
+            Vector3D rotated = Quaternion.rotate(new Vector3D(normals[i], normals[i + 1], normals[i + 2]), rotation);
+            rotatedNormals[i] = rotated.getX();
+            rotatedNormals[i + 1] = rotated.getY();
+            rotatedNormals[i + 2] = rotated.getZ();
+        }
+        return new double[][]{rotatedPositions, rotatedNormals};
+    }
+
+    /**
+     * Checks random points against the quaternion rotation and the inverse, and random surfaces against the
+     * normal matrix.
+     *
+     * @return The number of failed checks.
+     */
+    private static int check(Quaternion rotation) {
+        Random random = new Random(11);
+        Transform rotate = Transform.rotation(rotation);
+        Transform stretch = Transform.multiply(Transform.translation(new Vector3D(2, 0, -4)),
+                Transform.multiply(rotate, Transform.scale(0.5, 3, 1.25)));
+        Transform inverse = stretch.inverse();
+        int failures = 0;
+        for (int i = 0; i < CHECKS; i++) {
+            Vector3D point = new Vector3D(random.nextGaussian(), random.nextGaussian(), random.nextGaussian());
+            Vector3D expected = Quaternion.rotate(point, rotation);
+            boolean rotates = distance(rotate.transformPoint(point), expected) < TOLERANCE;
+            boolean inverts = distance(inverse.transformPoint(stretch.transformPoint(point)), point) < TOLERANCE;
+
+            // The normal of the plane spanned by two tangents must stay perpendicular to the transformed tangents
+            Vector3D tangentA = new Vector3D(random.nextGaussian(), random.nextGaussian(), random.nextGaussian());
+            Vector3D tangentB = new Vector3D(random.nextGaussian(), random.nextGaussian(), random.nextGaussian());
+            Vector3D normal = Vector3D.normalize(Vector3D.crossProduct(tangentA, tangentB));
+            Vector3D transformedNormal = stretch.transformNormal(normal);
+            boolean perpendicular = Math.abs(Vector3D.dotProduct(transformedNormal,
+                    Vector3D.normalize(stretch.transformDirection(tangentA)))) < TOLERANCE
+                    && Math.abs(Vector3D.dotProduct(transformedNormal,
+                    Vector3D.normalize(stretch.transformDirection(tangentB)))) < TOLERANCE
+                    && Math.abs(Vector3D.magnitude(transformedNormal) - 1) < TOLERANCE;
+            if (!rotates || !inverts || !perpendicular) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    private static double distance(Vector3D a, Vector3D b) {
+        return Vector3D.magnitude(Vector3D.substract(a, b));
+    }
+}
@@ -0,0 +1,252 @@
+package edu.up.isgc.cg.raytracer.benchmarks;
+
+import edu.up.isgc.cg.raytracer.Intersection;
+import edu.up.isgc.cg.raytracer.Ray;
+import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.acceleration.BoundingBox;
+import edu.up.isgc.cg.raytracer.objects.Model3D;
+import edu.up.isgc.cg.raytracer.objects.ScalarTriangleKernel;
+import edu.up.isgc.cg.raytracer.objects.TriangleBatch;
+import edu.up.isgc.cg.raytracer.objects.TriangleKernel;
+import edu.up.isgc.cg.raytracer.objects.TriangleMesh;
+import edu.up.isgc.cg.raytracer.objects.VectorTriangleKernel;
+import edu.up.isgc.cg.raytracer.tools.Material;
+import edu.up.isgc.cg.raytracer.tools.MeshLibrary;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reports the speed of every triangle kernel on bundled meshes: the triangles tested per second by the kernel alone
+ * over runs of 8 triangles, the size of the largest leaves, and the closest hit and occlusion queries per second of
+ * a model whose leaves are tested with the kernel. The reference is the model testing its triangles one by one.
+ * Every kernel must find the same triangle at the same distance and coordinates, bit for bit, and the same
+ * occlusions; otherwise the process exits with status 1. The vector kernel is only reported when the program is
+ * started with {@code --add-modules jdk.incubator.vector}, at the widest vector size of the processor and then at
+ * every narrower size down to 128 bits, each in its own process. Run from the project root so the relative asset
+ * paths resolve.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class TriangleKernelReport {
+    private static final int RAY_COUNT = 20_000;
+    private static final int KERNEL_RAY_COUNT = 200;
+    private static final int RUN_LENGTH = 8;
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int REPEATS = 10;
+    private static final String VECTOR_ONLY = "--vector-only";
+    private static final String[] ASSETS = {"SmallTeapot.obj", "Scene03/calaca.obj", "Cars.obj"};
+
+    /**
+     * Entry point of the report.
+     *
+     * @param args The OBJ files to use, or none to use three bundled meshes. The option {@value #VECTOR_ONLY} only
+     *             reports the vector kernel; it is given to the processes started for narrower vectors.
+     * @throws IOException If an OBJ file cannot be loaded.
+     * @throws InterruptedException If interrupted while waiting for a process of a narrower vector size.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean vectorOnly = args.length > 0 && args[0].equals(VECTOR_ONLY);
+        String[] assets = Arrays.copyOfRange(args, vectorOnly ? 1 : 0, args.length);
+        if (assets.length == 0) {
+            assets = ASSETS;
+        }
+        boolean vectorAvailable = TriangleKernel.isVectorAvailable();
+        if (!vectorOnly) {
+            if (!vectorAvailable) {
+                System.out.println("The Vector API is not available, start with --add-modules jdk.incubator.vector to compare it");
+            }
+            System.out.printf("%-20s %10s %-12s %6s %13s %14s %14s%n", "asset", "triangles", "kernel", "lanes",
+                    "kernel Mtri/s", "closest Mray/s", "occlude Mray/s");
+        }
+
+        int mismatches = report(assets, vectorOnly, vectorAvailable);
+        boolean failed = mismatches > 0;
+        if (!vectorOnly) {
+            System.out.println("Mismatches: " + mismatches);
+            if (vectorAvailable) {
+                failed |= reportNarrowerVectors(assets);
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Prints a row per asset and kernel, comparing every kernel with the model testing its triangles one by one.
+     *
+     * @return The number of rays for which a kernel gave a different result.
+     */
+    private static int report(String[] assets, boolean vectorOnly, boolean vectorAvailable) throws IOException {
+        TriangleKernel defaultKernel = Model3D.getTriangleKernel();
+        int mismatches = 0;
+        for (String asset : assets) {
+            TriangleMesh mesh = MeshLibrary.getMesh(asset);
+            Model3D model = new Model3D(Vector3D.ZERO(), mesh, Material.MATTE);
+            Ray[] rays = generateRays(model.getBounds(), new Random(42));
+            double[] maxDistances = new double[rays.length];
+            Random random = new Random(7);
+            for (int i = 0; i < rays.length; i++) {
+                maxDistances[i] = 1 + random.nextDouble() * 10;
+            }
+
+            List<TriangleKernel> kernels = new ArrayList<>();
+            kernels.add(null);
+            if (!vectorOnly) {
+                kernels.add(ScalarTriangleKernel.INSTANCE);
+            }
+            if (vectorAvailable) {
+                kernels.add(VectorTriangleKernel.INSTANCE);
+            }
+            Intersection[] reference = null;
+            boolean[] referenceOccluded = null;
+            for (TriangleKernel kernel : kernels) {
+                Model3D.setTriangleKernel(kernel);
+                Intersection[] hits = new Intersection[rays.length];
+                boolean[] occluded = new boolean[rays.length];
+                for (int round = 0; round < WARMUP_ROUNDS; round++) {
+                    closestHits(model, rays, hits);
+                    occlusions(model, rays, maxDistances, occluded);
+                }
+                long closest = Long.MAX_VALUE;
+                long occlusion = Long.MAX_VALUE;
+                for (int i = 0; i < REPEATS; i++) {
+                    long start = System.nanoTime();
+                    closestHits(model, rays, hits);
+                    closest = Math.min(closest, System.nanoTime() - start);
+                    start = System.nanoTime();
+                    occlusions(model, rays, maxDistances, occluded);
+                    occlusion = Math.min(occlusion, System.nanoTime() - start);
+                }
+
+                if (reference == null) {
+                    reference = hits;
+                    referenceOccluded = occluded;
+                } else {
+                    for (int i = 0; i < rays.length; i++) {
+                        if (!sameHit(reference[i], hits[i]) || referenceOccluded[i] != occluded[i]) {
+                            mismatches++;
+                        }
+                    }
+                }
+
+                if (kernel == null && vectorOnly) {
+                    continue;
+                }
+                String throughput = kernel == null ? "-" : String.format("%.1f", measureKernel(kernel, mesh.getTriangleBatch(), rays));
+                System.out.printf("%-20s %10d %-12s %6s %13s %14.2f %14.2f%n", asset, mesh.getTriangleCount(),
+                        kernel == null ? "per triangle" : kernel, kernel == null ? "-" : kernel.getLaneCount(), throughput,
+                        rays.length / (closest / 1e3), rays.length / (occlusion / 1e3));
+            }
+        }
+        Model3D.setTriangleKernel(defaultKernel);
+        return mismatches;
+    }
+
+    /**
+     * Runs the report of the vector kernel again in a new process for every vector size narrower than the widest of
+     * the processor. The vector size is fixed when the kernel is compiled, so it can only be narrowed by starting
+     * the virtual machine with a smaller {@code -XX:MaxVectorSize}.
+     *
+     * @return True if any of the processes found a mismatch.
+     */
+    private static boolean reportNarrowerVectors(String[] assets) throws IOException, InterruptedException {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        boolean failed = false;
+        for (int bytes = 16; bytes < VectorTriangleKernel.INSTANCE.getLaneCount() * Double.BYTES; bytes *= 2) {
+            List<String> command = new ArrayList<>(List.of(java, "-XX:MaxVectorSize=" + bytes,
+                    "--add-modules", TriangleKernel.VECTOR_MODULE, "-cp", System.getProperty("java.class.path"),
+                    TriangleKernelReport.class.getName(), VECTOR_ONLY));
+            command.addAll(Arrays.asList(assets));
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.startsWith("WARNING")) {
+                        System.out.println(line);
+                    }
+                }
+            }
+            if (process.waitFor() != 0) {
+                System.out.println("Mismatches with " + bytes * 8 + "-bit vectors");
+                failed = true;
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Generates rays from around the bounds of a model toward random points inside them.
+     */
+    private static Ray[] generateRays(BoundingBox bounds, Random random) {
+        Vector3D min = bounds.getMin();
+        Vector3D max = bounds.getMax();
+        Vector3D size = Vector3D.substract(max, min);
+        Vector3D center = Vector3D.add(min, Vector3D.scalarMultiplication(size, 0.5));
+        double radius = Vector3D.magnitude(size);
+        Ray[] rays = new Ray[RAY_COUNT];
+        for (int i = 0; i < rays.length; i++) {
+            Vector3D origin = Vector3D.add(center, Vector3D.scalarMultiplication(Vector3D.normalize(
+                    new Vector3D(random.nextGaussian(), random.nextGaussian(), random.nextGaussian())), radius));
+            Vector3D target = new Vector3D(min.getX() + random.nextDouble() * size.getX(),
+                    min.getY() + random.nextDouble() * size.getY(), min.getZ() + random.nextDouble() * size.getZ());
+            rays[i] = new Ray(origin, Vector3D.substract(target, origin));
+        }
+        return rays;
+    }
+
+    /**
+     * Measures the triangles per second of a kernel alone, testing rays against every triangle of a batch in runs
+     * of 8, the size of the largest leaves.
+     */
+    private static double measureKernel(TriangleKernel kernel, TriangleBatch batch, Ray[] rays) {
+        double[] hit = new double[3];
+        long best = Long.MAX_VALUE;
+        int sink = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + REPEATS; round++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < KERNEL_RAY_COUNT; r++) {
+                Vector3D origin = rays[r].getOrigin();
+                Vector3D direction = rays[r].getDirection();
+                for (int first = 0; first < batch.getSize(); first += RUN_LENGTH) {
+                    sink += kernel.intersect(batch, first, Math.min(RUN_LENGTH, batch.getSize() - first),
+                            origin.getX(), origin.getY(), origin.getZ(),
+                            direction.getX(), direction.getY(), direction.getZ(), Double.POSITIVE_INFINITY, hit);
+                }
+            }
+            if (round >= WARMUP_ROUNDS) {
+                best = Math.min(best, System.nanoTime() - start);
+            }
+        }
+        if (sink == Integer.MIN_VALUE) {
+            System.out.println(sink);
+        }
+        return (double) KERNEL_RAY_COUNT * batch.getSize() / (best / 1e3);
+    }
+
+    private static void closestHits(Model3D model, Ray[] rays, Intersection[] hits) {
+        for (int i = 0; i < rays.length; i++) {
+            hits[i] = model.getIntersection(rays[i]);
+        }
+    }
+
+    private static void occlusions(Model3D model, Ray[] rays, double[] maxDistances, boolean[] occluded) {
+        for (int i = 0; i < rays.length; i++) {
+            occluded[i] = model.isOccluding(rays[i], maxDistances[i]);
+        }
+    }
+
+    private static boolean sameHit(Intersection a, Intersection b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getPrimitive() == b.getPrimitive() && Double.compare(a.getDistance(), b.getDistance()) == 0
+                && Double.compare(a.getU(), b.getU()) == 0 && Double.compare(a.getV(), b.getV()) == 0;
+    }
+}
@@ -45,6 +45,6 @@ public class DirectionalLight extends Light {
 
     @Override
     public double getNDotL(Intersection intersection) {
-        return Math.max(Vector3D.dotProduct(intersection.getNormal(), Vector3D.scalarMultiplication(getDirection(), -1.0)), 0.0);
+        return Math.max(-Vector3D.dotProduct(intersection.getNormal(), getDirection()), 0.0);
     }
 }
@@ -3,6 +3,7 @@ package edu.up.isgc.cg.raytracer.lights;
 import edu.up.isgc.cg.raytracer.Intersection;
 import edu.up.isgc.cg.raytracer.Ray;
 import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.acceleration.BoundingBox;
 import edu.up.isgc.cg.raytracer.objects.Object3D;
 import edu.up.isgc.cg.raytracer.tools.Material;
 
@@ -57,4 +58,19 @@ public abstract class Light extends Object3D {
     public Intersection getIntersection(Ray ray) {
         return new Intersection(Vector3D.ZERO(), -1, Vector3D.ZERO(), null);
     }
+
+    @Override
+    public boolean isOccluding(Ray ray, double maxDistance) {
+        return false;
+    }
+
+    @Override
+    public Vector3D calculateNormal(Intersection intersection) {
+        return Vector3D.ZERO();
+    }
+
+    @Override
+    public BoundingBox getBounds() {
+        return BoundingBox.EMPTY;
+    }
 }
@@ -24,9 +24,15 @@ public class PointLight extends Light {
 
     @Override
     public double getNDotL(Intersection intersection) {
+        Vector3D normal = intersection.getNormal();
+        Vector3D position = intersection.getPosition();
+        Vector3D lightPosition = getPosition();
+        double lx = lightPosition.getX() - position.getX();
+        double ly = lightPosition.getY() - position.getY();
+        double lz = lightPosition.getZ() - position.getZ();
+        double length = Vector3D.magnitude(lx, ly, lz);
         return Math.max(
-                Vector3D.dotProduct(intersection.getNormal(),
-                        Vector3D.normalize(Vector3D.substract(getPosition(), intersection.getPosition()))),
+                Vector3D.dotProduct(normal.getX(), normal.getY(), normal.getZ(), lx, ly, lz) / length,
                 0.0);
     }
 }
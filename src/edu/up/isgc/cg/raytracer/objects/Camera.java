@@ -3,6 +3,7 @@ package edu.up.isgc.cg.raytracer.objects;
 import edu.up.isgc.cg.raytracer.Intersection;
 import edu.up.isgc.cg.raytracer.Ray;
 import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.acceleration.BoundingBox;
 import edu.up.isgc.cg.raytracer.tools.Material;
 
 import java.awt.*;
@@ -10,7 +11,7 @@ import java.awt.*;
 /**
  * The Camera class represents a camera in a 3D scene.
  * It contains properties such as field of view, resolution, and near and far clipping planes.
- * The camera is used to calculate the positions of rays to be traced in the scene.
+ * The camera is used to generate the rays to be traced in the scene.
  *
  * @author Jafet Rodriguez, José Salcedo
  */
@@ -192,11 +193,11 @@ public class Camera extends Object3D {
     }
 
     /**
-     * Calculates the positions to ray trace based on the field of view and resolution.
+     * Calculates the layout of the image plane based on the field of view and resolution.
      *
-     * @return A 2D array of Vector3D positions.
+     * @return The left edge, the top edge, the width of a pixel and the height of a pixel.
      */
-    public Vector3D[][] calculatePositionsToRay() {
+    public double[] calculateImagePlane() {
         double angleMaxX = getFOVHorizontal() / 2.0;
         double radiusMaxX = getDefaultZ() / Math.cos(Math.toRadians(angleMaxX));
 
@@ -209,23 +210,46 @@ public class Camera extends Object3D {
         double maxY = Math.sin(Math.toRadians(angleMaxY)) * radiusMaxY;
         double minY = -maxY;
 
-        Vector3D[][] positions = new Vector3D[getResolutionWidth()][getResolutionHeight()];
-        double posZ = defaultZ;
-
         double stepX = (maxX - minX) / getResolutionWidth();
         double stepY = (maxY - minY) / getResolutionHeight();
-        for (int x = 0; x < positions.length; x++) {
-            for (int y = 0; y < positions[x].length; y++) {
-                double posX = minX + (stepX * x);
-                double posY = maxY - (stepY * y);
-                positions[x][y] = new Vector3D(posX, posY, posZ);
-            }
-        }
-        return positions;
+        return new double[]{minX, maxY, stepX, stepY};
+    }
+
+    /**
+     * Generates the primary ray through a point of a pixel. The ray only depends on its arguments, so rays can be
+     * generated on demand while rendering instead of being precomputed for the whole image.
+     *
+     * @param imagePlane The layout of the image plane, as returned by calculateImagePlane.
+     * @param x          The column of the pixel.
+     * @param y          The row of the pixel.
+     * @param offsetX    The horizontal offset from the pixel position, in pixels.
+     * @param offsetY    The vertical offset from the pixel position, in pixels.
+     * @return The primary ray.
+     */
+    public Ray generateRay(double[] imagePlane, int x, int y, double offsetX, double offsetY) {
+        Vector3D pos = getPosition();
+        double posX = imagePlane[0] + (imagePlane[2] * (x + offsetX));
+        double posY = imagePlane[1] - (imagePlane[3] * (y + offsetY));
+        return new Ray(pos, new Vector3D(posX + pos.getX(), posY + pos.getY(), defaultZ + pos.getZ()));
     }
 
     @Override
     public Intersection getIntersection(Ray ray) {
         return new Intersection(Vector3D.ZERO(), -1, Vector3D.ZERO(), null);
     }
+
+    @Override
+    public boolean isOccluding(Ray ray, double maxDistance) {
+        return false;
+    }
+
+    @Override
+    public Vector3D calculateNormal(Intersection intersection) {
+        return Vector3D.ZERO();
+    }
+
+    @Override
+    public BoundingBox getBounds() {
+        return BoundingBox.EMPTY;
+    }
 }
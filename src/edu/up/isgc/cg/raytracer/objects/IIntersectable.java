@@ -2,10 +2,13 @@ package edu.up.isgc.cg.raytracer.objects;
 
 import edu.up.isgc.cg.raytracer.Intersection;
 import edu.up.isgc.cg.raytracer.Ray;
+import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.acceleration.BoundingBox;
 
 /**
  * The IIntersectable interface represents objects that can be intersected by a ray.
- * It defines a method for calculating the intersection point between the object and a ray.
+ * It defines methods for calculating the intersection point between the object and a ray, the normal at that
+ * point, whether the object blocks a ray, and for getting the bounds used by the acceleration structures.
  *
  * @author Jafet Rodriguez, José Salcedo
  */
@@ -18,4 +21,29 @@ public interface IIntersectable {
      * @return The intersection point, or null if there is no intersection.
      */
     public abstract Intersection getIntersection(Ray ray);
+
+    /**
+     * Checks if the object blocks a ray before a maximum distance. Unlike {@link #getIntersection(Ray)} it may
+     * stop at the first hit it finds instead of looking for the closest one.
+     *
+     * @param ray The ray to test.
+     * @param maxDistance The maximum distance of the query.
+     * @return True if the object is hit before the maximum distance.
+     */
+    public abstract boolean isOccluding(Ray ray, double maxDistance);
+
+    /**
+     * Calculates the surface normal at an intersection previously returned by this object.
+     *
+     * @param intersection The intersection found with {@link #getIntersection(Ray)}.
+     * @return The normal at the intersection point.
+     */
+    public abstract Vector3D calculateNormal(Intersection intersection);
+
+    /**
+     * Gets the axis aligned bounds of the object in world space.
+     *
+     * @return The bounds of the object, an empty box if it can never be hit, or null if it is unbounded.
+     */
+    public abstract BoundingBox getBounds();
 }
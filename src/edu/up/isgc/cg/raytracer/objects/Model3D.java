@@ -3,24 +3,39 @@ package edu.up.isgc.cg.raytracer.objects;
 import edu.up.isgc.cg.raytracer.Intersection;
 import edu.up.isgc.cg.raytracer.Ray;
 import edu.up.isgc.cg.raytracer.Vector3D;
-import edu.up.isgc.cg.raytracer.tools.Barycentric;
+import edu.up.isgc.cg.raytracer.acceleration.BVH;
+import edu.up.isgc.cg.raytracer.acceleration.BoundingBox;
+import edu.up.isgc.cg.raytracer.acceleration.RayPacket;
 import edu.up.isgc.cg.raytracer.tools.Material;
 
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 /**
  * The Model3D class represents a 3D model composed of triangles.
  * It includes functionality for scaling, rotating, and transforming the model.
+ * The triangles are kept in object space in a packed, immutable {@link TriangleMesh}, which can be shared by any
+ * number of models, and ray intersections are accelerated with the SAH bounding volume hierarchy of the mesh.
+ * The position, scale and rotation of the model form an affine {@link Transform}: the model is scaled and rotated
+ * about its own origin and then moved to its position. Every ray is transformed into object space once per test
+ * against the model and the normal of the hit is transformed back, so moving, scaling or rotating a model takes the
+ * same time whatever the size of its mesh.
  *
  * @author  Jafet Rodriguez, José Salcedo
  */
 public class Model3D extends Object3D {
-    private List<Triangle> triangles;
+    private static final ThreadLocal<MeshQuery> QUERIES = ThreadLocal.withInitial(MeshQuery::new);
+    private static final ThreadLocal<MeshPacketQuery> PACKET_QUERIES = ThreadLocal.withInitial(MeshPacketQuery::new);
+    private static boolean bvhEnabled = true;
+    private static TriangleKernel triangleKernel = null;
+    private final TriangleMesh mesh;
+    private final BVH bvh;
     private double scale = 1;
     private Quaternion rotation = null;
-    public final List<Triangle> originalTriangles; // Store the original triangles
+    private Transform transform = Transform.IDENTITY;
+    private Transform inverse = Transform.IDENTITY;
 
     /**
      * Constructs a new Model3D with the specified position, triangles, and material.
@@ -30,57 +45,267 @@ public class Model3D extends Object3D {
      * @param material The material of the model.
      */
     public Model3D(Vector3D position, Triangle[] triangles, Material material) {
+        this(position, TriangleMesh.fromTriangles(Arrays.asList(triangles)), material);
+    }
+
+    /**
+     * Constructs a new Model3D with the specified position, mesh, and material.
+     *
+     * @param position The position of the model.
+     * @param mesh The mesh composing the model, before any transformation.
+     * @param material The material of the model.
+     */
+    public Model3D(Vector3D position, TriangleMesh mesh, Material material) {
         super(position, material);
-        originalTriangles = Arrays.asList(triangles);
-        setTriangles(triangles);
+        this.mesh = mesh;
+        bvh = mesh.getBVH();
+        updateTransformation();
     }
 
     /**
-     * Sets the triangles of the model and applies transformations.
+     * Gets the mesh of the model in object space, before scaling, translation and rotation. It is shared with every
+     * model created from the same mesh.
      *
-     * @param triangles The array of triangles to set.
+     * @return The mesh.
      */
-    private void setTriangles(Triangle[] triangles) {
-        this.triangles = Arrays.asList(triangles.clone());
-        updateTrianglesWithTransformation();
+    public TriangleMesh getMesh() {
+        return mesh;
     }
 
     /**
-     * Gets the list of triangles composing the model.
+     * Gets the list of triangles composing the model, in world space. The triangles are created from the packed
+     * mesh on every call, so this should not be used in the rendering hot path.
      *
      * @return The list of triangles.
      */
     public List<Triangle> getTriangles() {
+        TriangleMesh transformed = mesh.transformed(transform);
+        List<Triangle> triangles = new ArrayList<>(transformed.getTriangleCount());
+        for (int i = 0; i < transformed.getTriangleCount(); i++) {
+            triangles.add(transformed.getTriangle(i));
+        }
         return triangles;
     }
 
+    /**
+     * Gets the bounding volume hierarchy of the mesh, in object space.
+     *
+     * @return The bounding volume hierarchy of the model.
+     */
+    public BVH getBVH() {
+        return bvh;
+    }
+
+    /**
+     * Checks if the models use their bounding volume hierarchy to find intersections.
+     *
+     * @return True if the hierarchy is used, false if every triangle is tested.
+     */
+    public static boolean isBVHEnabled() {
+        return bvhEnabled;
+    }
+
+    /**
+     * Enables or disables the bounding volume hierarchy for every model. When disabled every triangle is tested
+     * against every ray, which is useful to compare results against the accelerated path.
+     *
+     * @param enabled True to use the hierarchy, false to fall back to the linear scan.
+     */
+    public static void setBVHEnabled(boolean enabled) {
+        bvhEnabled = enabled;
+    }
+
+    /**
+     * Gets the kernel that intersects rays with the triangles of the leaves of the hierarchies.
+     *
+     * @return The kernel, or null if the triangles are tested one by one.
+     */
+    public static TriangleKernel getTriangleKernel() {
+        return triangleKernel;
+    }
+
+    /**
+     * Sets the kernel that intersects rays with the triangles of the leaves of the hierarchies, for every model. By
+     * default there is none and the triangles are tested one by one over the indexed mesh: the kernels need a
+     * {@link TriangleBatch} with a second copy of the triangles of every mesh, the {@link ScalarTriangleKernel} is
+     * not faster than testing the triangles one by one, and the {@link VectorTriangleKernel} allocates on every leaf
+     * it tests. Every kernel gives the same results.
+     *
+     * @param kernel The kernel, or null to test every triangle one by one over the indexed mesh.
+     */
+    public static void setTriangleKernel(TriangleKernel kernel) {
+        triangleKernel = kernel;
+    }
+
     @Override
     public Intersection getIntersection(Ray ray) {
-        double distance = -1;
-        Vector3D position = Vector3D.ZERO();
-        Vector3D normal = Vector3D.ZERO();
-
-        for (Triangle triangle : getTriangles()) {
-            Intersection intersection = triangle.getIntersection(ray);
-            double intersectionDistance = intersection.getDistance();
-            if (intersectionDistance > 0 &&
-                    (intersectionDistance < distance || distance < 0)) {
-                distance = intersectionDistance;
-                position = Vector3D.add(ray.getOrigin(), Vector3D.scalarMultiplication(ray.getDirection(), distance));
-                normal = Vector3D.ZERO();
-                double[] uVw = Barycentric.CalculateBarycentricCoordinates(position, triangle);
-                Vector3D[] normals = triangle.getNormals();
-                for (int i = 0; i < uVw.length; i++) {
-                    normal = Vector3D.add(normal, Vector3D.scalarMultiplication(normals[i], uVw[i]));
-                }
+        MeshQuery query = QUERIES.get();
+        startQuery(query, ray);
+        double distance;
+
+        if (isBVHEnabled() && bvh != null) {
+            distance = bvh.traverse(query.originX, query.originY, query.originZ,
+                    query.dirX, query.dirY, query.dirZ, Double.POSITIVE_INFINITY, query);
+        } else {
+            distance = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < query.mesh.getTriangleCount(); i++) {
+                distance = query.intersect(i, distance);
             }
         }
 
-        if (distance == -1) {
+        int closestTriangle = query.closestTriangle;
+        query.mesh = null;
+        query.batch = null;
+        if (closestTriangle < 0) {
             return null;
         }
 
-        return new Intersection(position, distance, normal, this);
+        return new Intersection(ray, distance, this, closestTriangle, query.closestU, query.closestV);
+    }
+
+    @Override
+    public boolean isOccluding(Ray ray, double maxDistance) {
+        MeshQuery query = QUERIES.get();
+        startQuery(query, ray);
+        boolean occluded = false;
+
+        if (isBVHEnabled() && bvh != null) {
+            occluded = bvh.occluded(query.originX, query.originY, query.originZ,
+                    query.dirX, query.dirY, query.dirZ, maxDistance, query);
+        } else {
+            for (int i = 0; i < query.mesh.getTriangleCount() && !occluded; i++) {
+                occluded = query.occludes(i, maxDistance);
+            }
+        }
+
+        query.mesh = null;
+        query.batch = null;
+        return occluded;
+    }
+
+    /**
+     * Intersects several rays of a packet with the model, traversing the hierarchy of the mesh with all of them at
+     * once and testing every triangle they reach against all of them together.
+     *
+     * @param packet The packet, whose rays were added as Ray objects. Hits farther than the distance of a ray in
+     *               the packet are left out.
+     * @param mask The rays to test.
+     * @param hits Receives the intersection of every ray of the mask, or null where the model is missed.
+     */
+    @Override
+    public void getIntersections(RayPacket packet, int mask, Intersection[] hits) {
+        if (!isBVHEnabled() || bvh == null) {
+            super.getIntersections(packet, mask, hits);
+            return;
+        }
+        MeshPacketQuery query = PACKET_QUERIES.get();
+        startQuery(query, packet, mask);
+        bvh.traverse(query.objectPacket, query.objectPacket.getFullMask(), query);
+
+        double[] distances = query.objectPacket.getDistances();
+        for (int i = 0; i < query.objectPacket.getSize(); i++) {
+            int source = query.sources[i];
+            hits[source] = query.closestTriangles[i] < 0 ? null : new Intersection(packet.getRay(source),
+                    distances[i], this, query.closestTriangles[i], query.closestU[i], query.closestV[i]);
+        }
+        query.mesh = null;
+    }
+
+    @Override
+    public int getOccludedRays(RayPacket packet, int mask) {
+        if (!isBVHEnabled() || bvh == null) {
+            return super.getOccludedRays(packet, mask);
+        }
+        MeshPacketQuery query = PACKET_QUERIES.get();
+        startQuery(query, packet, mask);
+        int occluded = bvh.occluded(query.objectPacket, query.objectPacket.getFullMask(), query);
+
+        int blocked = 0;
+        for (int i = 0; i < query.objectPacket.getSize(); i++) {
+            if ((occluded & 1 << i) != 0) {
+                blocked |= 1 << query.sources[i];
+            }
+        }
+        query.mesh = null;
+        return blocked;
+    }
+
+    /**
+     * Starts a packet query with the rays of a mask transformed into object space and packed together.
+     */
+    private void startQuery(MeshPacketQuery query, RayPacket packet, int mask) {
+        double[] r = query.objectRay;
+        RayPacket objectPacket = query.objectPacket;
+        objectPacket.clear();
+        query.mesh = mesh;
+        for (int rest = mask; rest != 0; rest &= rest - 1) {
+            int i = Integer.numberOfTrailingZeros(rest);
+            inverse.transformRay(packet.getOriginX()[i], packet.getOriginY()[i], packet.getOriginZ()[i],
+                    packet.getDirX()[i], packet.getDirY()[i], packet.getDirZ()[i], r);
+            int index = objectPacket.add(r[0], r[1], r[2], r[3], r[4], r[5], packet.getDistances()[i]);
+            query.sources[index] = i;
+            query.closestTriangles[index] = -1;
+        }
+    }
+
+    /**
+     * Starts a query with the ray transformed into object space. The direction is not normalized again, so the
+     * distances along it are the same as in world space.
+     */
+    private void startQuery(MeshQuery query, Ray ray) {
+        double[] r = query.objectRay;
+        inverse.transformRay(ray, r);
+        TriangleKernel kernel = triangleKernel;
+        // The batch is only built once a kernel is set, otherwise the mesh is not copied
+        query.start(mesh, kernel == null ? null : mesh.getTriangleBatch(), kernel, r[0], r[1], r[2], r[3], r[4], r[5]);
+    }
+
+    @Override
+    public Vector3D calculateNormal(Intersection intersection) {
+        Vector3D normal = mesh.interpolateNormal(intersection.getPrimitive(), intersection.getU(), intersection.getV());
+        return transform.transformNormal(normal);
+    }
+
+    /**
+     * Gets the bounds of the model in world space: the bounds of the eight transformed corners of the bounds of
+     * the mesh.
+     *
+     * @return The bounds of the model.
+     */
+    @Override
+    public BoundingBox getBounds() {
+        if (bvh.getNodeCount() == 0) {
+            return BoundingBox.EMPTY;
+        }
+        double[] rootBounds = bvh.getNodeBounds();
+        double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int corner = 0; corner < 8; corner++) {
+            Vector3D point = transform.transformPoint(new Vector3D(
+                    rootBounds[(corner & 1) * 3],
+                    rootBounds[((corner >> 1) & 1) * 3 + 1],
+                    rootBounds[((corner >> 2) & 1) * 3 + 2]));
+            double[] values = {point.getX(), point.getY(), point.getZ()};
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[axis] = Math.min(bounds[axis], values[axis]);
+                bounds[axis + 3] = Math.max(bounds[axis + 3], values[axis]);
+            }
+        }
+        return new BoundingBox(bounds[0], bounds[1], bounds[2], bounds[3], bounds[4], bounds[5]);
+    }
+
+    /**
+     * Sets the position of the model and updates the transformation.
+     *
+     * @param position The new position of the model.
+     */
+    @Override
+    public void setPosition(Vector3D position) {
+        // Called by the constructor of Object3D before the mesh is set
+        if (mesh != null) {
+            updateTransformation(position, rotation, scale);
+        }
+        super.setPosition(position);
     }
 
     /**
@@ -93,13 +318,13 @@ public class Model3D extends Object3D {
     }
 
     /**
-     * Sets the scale of the model and updates the transformations.
+     * Sets the scale of the model and updates the transformation.
      *
      * @param scale The new scale of the model.
+     * @throws IllegalStateException If the scale is 0, which has no inverse.
      */
     public void setScale(double scale) {
-        this.scale = scale;
-        updateTrianglesWithTransformation();
+        updateTransformation(getPosition(), rotation, scale);
     }
 
     /**
@@ -112,36 +337,169 @@ public class Model3D extends Object3D {
     }
 
     /**
-     * Sets the rotation of the model and updates the transformations.
+     * Sets the rotation of the model and updates the transformation.
      *
      * @param rotation The new rotation of the model.
+     * @throws IllegalStateException If the rotation collapses space, which has no inverse.
      */
     public void setRotation(Quaternion rotation) {
+        updateTransformation(getPosition(), rotation, scale);
+    }
+
+    /**
+     * Gets the transformation of the model, from object space to world space.
+     *
+     * @return The transform.
+     */
+    public Transform getTransform() {
+        return transform;
+    }
+
+    /**
+     * Updates the transformation from the position, rotation and scale, and its inverse.
+     *
+     * @throws IllegalStateException If the transformation has no inverse, for example with a scale of 0.
+     */
+    private void updateTransformation() {
+        updateTransformation(getPosition(), rotation, scale);
+    }
+
+    /**
+     * Sets the rotation and scale of the model and updates the transformation and its inverse. Both are calculated
+     * before any field is changed, so the model keeps its previous state if the new transformation has no inverse.
+     *
+     * @throws IllegalStateException If the transformation has no inverse, for example with a scale of 0.
+     */
+    private void updateTransformation(Vector3D position, Quaternion rotation, double scale) {
+        Transform updated = Transform.fromTranslationRotationScale(position, rotation, scale);
+        Transform updatedInverse = updated.inverse();
         this.rotation = rotation;
-        updateTrianglesWithTransformation();
+        this.scale = scale;
+        inverse = updatedInverse;
+        transform = updated;
     }
 
     /**
-     * Updates the triangles with the current transformations (scale and rotation).
+     * Per thread state of a ray query against a mesh. It is reused by every query of the thread so that
+     * traversing the hierarchy does not allocate.
      */
-    private void updateTrianglesWithTransformation() {
-        Vector3D position = getPosition();
-        for (int i = 0; i < originalTriangles.size(); i++) {
-            Triangle originalTriangle = originalTriangles.get(i).clone();
-            Vector3D[] transformedVertices = new Vector3D[]{Vector3D.ZERO(), Vector3D.ZERO(), Vector3D.ZERO()};
-            Vector3D[] transformedNormals = new Vector3D[]{Vector3D.ZERO(), Vector3D.ZERO(), Vector3D.ZERO()};
+    private static final class MeshQuery implements BVH.PrimitiveIntersector, BVH.PrimitiveOccluder {
+        private final double[] barycentric = new double[2];
+        private final double[] objectRay = new double[6];
+        private TriangleMesh mesh;
+        private double originX, originY, originZ;
+        private double dirX, dirY, dirZ;
+        private final double[] hit = new double[3];
+        private TriangleBatch batch;
+        private TriangleKernel kernel;
+        private int closestTriangle;
+        private double closestU, closestV;
+
+        /**
+         * Prepares the query for a new ray given by its components.
+         */
+        private void start(TriangleMesh mesh, TriangleBatch batch, TriangleKernel kernel,
+                           double originX, double originY, double originZ, double dirX, double dirY, double dirZ) {
+            this.mesh = mesh;
+            this.batch = batch;
+            this.kernel = kernel;
+            this.originX = originX;
+            this.originY = originY;
+            this.originZ = originZ;
+            this.dirX = dirX;
+            this.dirY = dirY;
+            this.dirZ = dirZ;
+            closestTriangle = -1;
+        }
+
+        @Override
+        public double intersect(int primitiveIndex, double closestDistance) {
+            double intersectionDistance = mesh.intersect(primitiveIndex, originX, originY, originZ,
+                    dirX, dirY, dirZ, barycentric);
+            if (intersectionDistance > 0 && intersectionDistance < closestDistance) {
+                closestTriangle = primitiveIndex;
+                closestU = barycentric[0];
+                closestV = barycentric[1];
+                return intersectionDistance;
+            }
+            return closestDistance;
+        }
 
-            for (int j = 0; j < 3; j++) {
-                transformedVertices[j] = Vector3D.add(Vector3D.scalarMultiplication(originalTriangle.getVertices()[j], scale), position);
-                transformedNormals[j] = originalTriangle.getNormals()[j];
+        @Override
+        public boolean occludes(int primitiveIndex, double maxDistance) {
+            double intersectionDistance = mesh.intersect(primitiveIndex, originX, originY, originZ,
+                    dirX, dirY, dirZ, null);
+            return intersectionDistance > 0 && intersectionDistance < maxDistance;
+        }
+
+        @Override
+        public double intersectLeaf(int[] primitiveIndices, int first, int count, double closestDistance) {
+            if (kernel == null) {
+                return BVH.PrimitiveIntersector.super.intersectLeaf(primitiveIndices, first, count, closestDistance);
+            }
+            // The batch is packed in the leaf order of the hierarchy, so the leaf is the run at the same positions
+            int closest = kernel.intersect(batch, first, count, originX, originY, originZ, dirX, dirY, dirZ, closestDistance, hit);
+            if (closest < 0) {
+                return closestDistance;
+            }
+            closestTriangle = batch.getTriangle(closest);
+            closestU = hit[1];
+            closestV = hit[2];
+            return hit[0];
+        }
 
-                if (rotation != null && !rotation.equals(Quaternion.IDENTITY)) {
-                    transformedVertices[j] = Vector3D.rotate(transformedVertices[j], rotation);
-                    transformedNormals[j] = Vector3D.rotate(transformedNormals[j], rotation);
+        @Override
+        public boolean occludesLeaf(int[] primitiveIndices, int first, int count, double maxDistance) {
+            if (kernel == null) {
+                return BVH.PrimitiveOccluder.super.occludesLeaf(primitiveIndices, first, count, maxDistance);
+            }
+            return kernel.occludes(batch, first, count, originX, originY, originZ, dirX, dirY, dirZ, maxDistance);
+        }
+    }
+
+    /**
+     * Per thread state of a packet query against a mesh: the rays in object space, the packet ray each of them
+     * came from and the closest triangle found for each of them.
+     */
+    private static final class MeshPacketQuery implements BVH.PacketIntersector, BVH.PacketOccluder {
+        private final RayPacket objectPacket = new RayPacket();
+        private final double[] objectRay = new double[6];
+        private final int[] sources = new int[RayPacket.MAX_SIZE];
+        private final int[] closestTriangles = new int[RayPacket.MAX_SIZE];
+        private final double[] closestU = new double[RayPacket.MAX_SIZE];
+        private final double[] closestV = new double[RayPacket.MAX_SIZE];
+        private final double[] hitDistances = new double[RayPacket.MAX_SIZE];
+        private final double[] hitU = new double[RayPacket.MAX_SIZE];
+        private final double[] hitV = new double[RayPacket.MAX_SIZE];
+        private TriangleMesh mesh;
+
+        @Override
+        public void intersect(int primitiveIndex, RayPacket packet, int mask) {
+            mesh.intersect(primitiveIndex, packet, mask, hitDistances, hitU, hitV);
+            double[] distances = packet.getDistances();
+            for (int rest = mask; rest != 0; rest &= rest - 1) {
+                int i = Integer.numberOfTrailingZeros(rest);
+                if (hitDistances[i] > 0 && hitDistances[i] < distances[i]) {
+                    distances[i] = hitDistances[i];
+                    closestTriangles[i] = primitiveIndex;
+                    closestU[i] = hitU[i];
+                    closestV[i] = hitV[i];
                 }
             }
+        }
 
-            triangles.set(i, new Triangle(transformedVertices, transformedNormals));
+        @Override
+        public int occludes(int primitiveIndex, RayPacket packet, int mask) {
+            mesh.intersect(primitiveIndex, packet, mask, hitDistances, null, null);
+            double[] distances = packet.getDistances();
+            int blocked = 0;
+            for (int rest = mask; rest != 0; rest &= rest - 1) {
+                int i = Integer.numberOfTrailingZeros(rest);
+                if (hitDistances[i] > 0 && hitDistances[i] < distances[i]) {
+                    blocked |= 1 << i;
+                }
+            }
+            return blocked;
         }
     }
 }
@@ -1,6 +1,8 @@
 package edu.up.isgc.cg.raytracer.objects;
 
+import edu.up.isgc.cg.raytracer.Intersection;
 import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.acceleration.RayPacket;
 import edu.up.isgc.cg.raytracer.tools.Material;
 
 /**
@@ -60,4 +62,39 @@ public abstract class Object3D implements IIntersectable {
     public void setPosition(Vector3D position) {
         this.position = position;
     }
+
+    /**
+     * Intersects several rays of a packet with the object. This implementation calls {@link #getIntersection} for
+     * every ray on its own; objects that can test rays together override it.
+     *
+     * @param packet The packet, whose rays were added as Ray objects. Hits farther than the distance of a ray in
+     *               the packet may be left out.
+     * @param mask The rays to test.
+     * @param hits Receives the intersection of every ray of the mask, or null where the object is missed.
+     */
+    public void getIntersections(RayPacket packet, int mask, Intersection[] hits) {
+        for (int i = 0; i < packet.getSize(); i++) {
+            if ((mask & 1 << i) != 0) {
+                hits[i] = getIntersection(packet.getRay(i));
+            }
+        }
+    }
+
+    /**
+     * Checks which rays of a packet the object blocks before their distance in the packet. This implementation
+     * calls {@link #isOccluding} for every ray on its own; objects that can test rays together override it.
+     *
+     * @param packet The packet, whose rays were added as Ray objects.
+     * @param mask The rays to test.
+     * @return The mask of the rays that are blocked.
+     */
+    public int getOccludedRays(RayPacket packet, int mask) {
+        int blocked = 0;
+        for (int i = 0; i < packet.getSize(); i++) {
+            if ((mask & 1 << i) != 0 && isOccluding(packet.getRay(i), packet.getDistances()[i])) {
+                blocked |= 1 << i;
+            }
+        }
+        return blocked;
+    }
 }
@@ -0,0 +1,91 @@
+package edu.up.isgc.cg.raytracer.objects;
+
+/**
+ * The ScalarTriangleKernel class tests the triangles of a run one at a time. It can be used when the Vector API is
+ * not available, and it is the reference the vector kernel is compared with.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public final class ScalarTriangleKernel implements TriangleKernel {
+    public static final ScalarTriangleKernel INSTANCE = new ScalarTriangleKernel();
+
+    private ScalarTriangleKernel() {
+    }
+
+    @Override
+    public int intersect(TriangleBatch batch, int first, int count, double originX, double originY, double originZ,
+                         double dirX, double dirY, double dirZ, double closestDistance, double[] hit) {
+        int closest = -1;
+        for (int i = first; i < first + count; i++) {
+            if (intersect(batch, i, originX, originY, originZ, dirX, dirY, dirZ, closestDistance, hit)) {
+                closestDistance = hit[0];
+                closest = i;
+            }
+        }
+        return closest;
+    }
+
+    @Override
+    public boolean occludes(TriangleBatch batch, int first, int count, double originX, double originY, double originZ,
+                            double dirX, double dirY, double dirZ, double maxDistance) {
+        for (int i = first; i < first + count; i++) {
+            if (intersect(batch, i, originX, originY, originZ, dirX, dirY, dirZ, maxDistance, null)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getLaneCount() {
+        return 1;
+    }
+
+    @Override
+    public String toString() {
+        return "scalar";
+    }
+
+    /**
+     * Intersects a ray with one triangle of the batch.
+     *
+     * @param maxDistance The distance the hit must be closer than.
+     * @param hit Receives the distance and the u and v coordinates of the hit if it is accepted, or null.
+     * @return True if the triangle is hit at a positive distance smaller than maxDistance.
+     */
+    private static boolean intersect(TriangleBatch batch, int i, double originX, double originY, double originZ,
+                                     double dirX, double dirY, double dirZ, double maxDistance, double[] hit) {
+        double e1x = batch.getE1X()[i], e1y = batch.getE1Y()[i], e1z = batch.getE1Z()[i];
+        double e2x = batch.getE2X()[i], e2y = batch.getE2Y()[i], e2z = batch.getE2Z()[i];
+
+        double px = dirY * e1z - dirZ * e1y;
+        double py = dirZ * e1x - dirX * e1z;
+        double pz = dirX * e1y - dirY * e1x;
+        double det = e2x * px + e2y * py + e2z * pz;
+        double invDet = 1.0 / det;
+
+        double tx = originX - batch.getV0X()[i];
+        double ty = originY - batch.getV0Y()[i];
+        double tz = originZ - batch.getV0Z()[i];
+        double u = invDet * (tx * px + ty * py + tz * pz);
+
+        if (!(u < 0 || u > 1)) {
+            double qx = ty * e2z - tz * e2y;
+            double qy = tz * e2x - tx * e2z;
+            double qz = tx * e2y - ty * e2x;
+            double v = invDet * (dirX * qx + dirY * qy + dirZ * qz);
+            if (!(v < 0 || (u + v) > (1.0 + Triangle.EPSILON))) {
+                double distance = invDet * (qx * e1x + qy * e1y + qz * e1z);
+                if (distance > 0 && distance < maxDistance) {
+                    if (hit != null) {
+                        hit[0] = distance;
+                        hit[1] = u;
+                        hit[2] = v;
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
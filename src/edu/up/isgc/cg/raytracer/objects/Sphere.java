@@ -3,6 +3,7 @@ package edu.up.isgc.cg.raytracer.objects;
 import edu.up.isgc.cg.raytracer.Intersection;
 import edu.up.isgc.cg.raytracer.Ray;
 import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.acceleration.BoundingBox;
 import edu.up.isgc.cg.raytracer.tools.Material;
 
 /**
@@ -46,21 +47,54 @@ public class Sphere extends Object3D {
 
     @Override
     public Intersection getIntersection(Ray ray) {
-        Vector3D L = Vector3D.substract(getPosition(), ray.getOrigin());
-        double tca = Vector3D.dotProduct(L, ray.getDirection());
-        double L2 = Math.pow(Vector3D.magnitude(L), 2);
-        double d2 = L2 - Math.pow(tca, 2);
-        if (d2 >= 0) {
-            double d = Math.sqrt(d2);
-            double t0 = tca - Math.sqrt(Math.pow(getRadius(), 2) - Math.pow(d, 2));
-            double t1 = tca + Math.sqrt(Math.pow(getRadius(), 2) - Math.pow(d, 2));
+        double distance = intersect(ray);
+        if (Double.isNaN(distance)) {
+            return null;
+        }
+        return new Intersection(ray, distance, this, -1, 0, 0);
+    }
+
+    @Override
+    public boolean isOccluding(Ray ray, double maxDistance) {
+        double distance = intersect(ray);
+        return distance >= 0 && distance < maxDistance;
+    }
 
-            double distance = Math.min(t0, t1);
-            Vector3D position = Vector3D.add(ray.getOrigin(), Vector3D.scalarMultiplication(ray.getDirection(), distance));
-            Vector3D normal = Vector3D.normalize(Vector3D.substract(position, getPosition()));
-            return new Intersection(position, distance, normal, this);
+    /**
+     * Intersects a ray with the sphere using only local variables.
+     *
+     * @param ray The ray to test.
+     * @return The distance to the nearest of the two intersections (negative if it is behind the origin),
+     * or NaN if the sphere is missed.
+     */
+    private double intersect(Ray ray) {
+        Vector3D center = getPosition();
+        Vector3D origin = ray.getOrigin();
+        Vector3D direction = ray.getDirection();
+        double lx = center.getX() - origin.getX();
+        double ly = center.getY() - origin.getY();
+        double lz = center.getZ() - origin.getZ();
+        double tca = Vector3D.dotProduct(lx, ly, lz, direction.getX(), direction.getY(), direction.getZ());
+        double d2 = Vector3D.dotProduct(lx, ly, lz, lx, ly, lz) - tca * tca;
+        if (d2 >= 0) {
+            double radius = getRadius();
+            double thc = Math.sqrt(radius * radius - d2);
+            return Math.min(tca - thc, tca + thc);
         }
+        return Double.NaN;
+    }
 
-        return null;
+    @Override
+    public Vector3D calculateNormal(Intersection intersection) {
+        return Vector3D.normalize(Vector3D.substract(intersection.getPosition(), getPosition()));
+    }
+
+    @Override
+    public BoundingBox getBounds() {
+        Vector3D center = getPosition();
+        double radius = Math.abs(getRadius());
+        return new BoundingBox(
+                center.getX() - radius, center.getY() - radius, center.getZ() - radius,
+                center.getX() + radius, center.getY() + radius, center.getZ() + radius);
     }
 }
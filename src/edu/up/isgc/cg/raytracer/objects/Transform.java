@@ -0,0 +1,424 @@
+package edu.up.isgc.cg.raytracer.objects;
+
+import edu.up.isgc.cg.raytracer.Ray;
+import edu.up.isgc.cg.raytracer.Vector3D;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The Transform class represents an affine transformation as a 4x4 matrix whose last row is always (0, 0, 0, 1), so
+ * only the upper 3x4 part is stored. Transforms are immutable; they are built from translations, rotations and
+ * scales, combined with {@link #multiply} and inverted with {@link #inverse}.
+ * <p>
+ * Besides single points, directions, normals and rays, a transform can be applied to whole vertex and normal
+ * buffers at once. Large buffers are split into batches that are transformed in parallel on the common pool,
+ * without creating any object per vertex.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class Transform {
+    public static final Transform IDENTITY = new Transform(
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0);
+    private static final int BATCH_VERTICES = 16_384;
+
+    private final double m00, m01, m02, m03;
+    private final double m10, m11, m12, m13;
+    private final double m20, m21, m22, m23;
+    private volatile double[] normalMatrix;
+
+    private Transform(double m00, double m01, double m02, double m03,
+                      double m10, double m11, double m12, double m13,
+                      double m20, double m21, double m22, double m23) {
+        this.m00 = m00;
+        this.m01 = m01;
+        this.m02 = m02;
+        this.m03 = m03;
+        this.m10 = m10;
+        this.m11 = m11;
+        this.m12 = m12;
+        this.m13 = m13;
+        this.m20 = m20;
+        this.m21 = m21;
+        this.m22 = m22;
+        this.m23 = m23;
+    }
+
+    /**
+     * Creates a translation.
+     *
+     * @param translation The translation.
+     * @return The transform.
+     */
+    public static Transform translation(Vector3D translation) {
+        return new Transform(
+                1, 0, 0, translation.getX(),
+                0, 1, 0, translation.getY(),
+                0, 0, 1, translation.getZ());
+    }
+
+    /**
+     * Creates a rotation. The matrix rotates vectors exactly as {@link Quaternion#rotate(Vector3D, Quaternion)} does,
+     * so a quaternion that is not normalized also scales by its squared norm.
+     *
+     * @param rotation The rotation, or null for none.
+     * @return The transform.
+     */
+    public static Transform rotation(Quaternion rotation) {
+        if (rotation == null) {
+            return IDENTITY;
+        }
+        double w = rotation.w, x = rotation.x, y = rotation.y, z = rotation.z;
+        return new Transform(
+                w * w + x * x - y * y - z * z, 2 * (x * y - w * z), 2 * (x * z + w * y), 0,
+                2 * (x * y + w * z), w * w - x * x + y * y - z * z, 2 * (y * z - w * x), 0,
+                2 * (x * z - w * y), 2 * (y * z + w * x), w * w - x * x - y * y + z * z, 0);
+    }
+
+    /**
+     * Creates a uniform scale about the origin.
+     *
+     * @param scale The scale factor.
+     * @return The transform.
+     */
+    public static Transform scale(double scale) {
+        return scale(scale, scale, scale);
+    }
+
+    /**
+     * Creates a scale about the origin with a factor per axis.
+     *
+     * @param x The scale factor along x.
+     * @param y The scale factor along y.
+     * @param z The scale factor along z.
+     * @return The transform.
+     */
+    public static Transform scale(double x, double y, double z) {
+        return new Transform(
+                x, 0, 0, 0,
+                0, y, 0, 0,
+                0, 0, z, 0);
+    }
+
+    /**
+     * Creates the transform of an object placed in a scene: it is scaled and rotated about its own origin and then
+     * moved to its position.
+     *
+     * @param translation The position of the object.
+     * @param rotation The rotation of the object, or null for none.
+     * @param scale The uniform scale of the object.
+     * @return The transform, translation * rotation * scale.
+     */
+    public static Transform fromTranslationRotationScale(Vector3D translation, Quaternion rotation, double scale) {
+        return multiply(translation(translation), multiply(rotation(rotation), scale(scale)));
+    }
+
+    /**
+     * Multiplies two transforms. The result applies b first and then a.
+     *
+     * @param a The transform applied last.
+     * @param b The transform applied first.
+     * @return The combined transform, a * b.
+     */
+    public static Transform multiply(Transform a, Transform b) {
+        return new Transform(
+                a.m00 * b.m00 + a.m01 * b.m10 + a.m02 * b.m20,
+                a.m00 * b.m01 + a.m01 * b.m11 + a.m02 * b.m21,
+                a.m00 * b.m02 + a.m01 * b.m12 + a.m02 * b.m22,
+                a.m00 * b.m03 + a.m01 * b.m13 + a.m02 * b.m23 + a.m03,
+                a.m10 * b.m00 + a.m11 * b.m10 + a.m12 * b.m20,
+                a.m10 * b.m01 + a.m11 * b.m11 + a.m12 * b.m21,
+                a.m10 * b.m02 + a.m11 * b.m12 + a.m12 * b.m22,
+                a.m10 * b.m03 + a.m11 * b.m13 + a.m12 * b.m23 + a.m13,
+                a.m20 * b.m00 + a.m21 * b.m10 + a.m22 * b.m20,
+                a.m20 * b.m01 + a.m21 * b.m11 + a.m22 * b.m21,
+                a.m20 * b.m02 + a.m21 * b.m12 + a.m22 * b.m22,
+                a.m20 * b.m03 + a.m21 * b.m13 + a.m22 * b.m23 + a.m23);
+    }
+
+    /**
+     * Calculates the inverse transform.
+     *
+     * @return The transform that undoes this one.
+     * @throws IllegalStateException If the transform collapses space (for example a scale of 0) and has no inverse.
+     */
+    public Transform inverse() {
+        // Inverse of the linear part from its cofactors, then the translation moved back through it
+        double c00 = m11 * m22 - m12 * m21;
+        double c01 = m12 * m20 - m10 * m22;
+        double c02 = m10 * m21 - m11 * m20;
+        double determinant = m00 * c00 + m01 * c01 + m02 * c02;
+        if (determinant == 0 || !Double.isFinite(determinant)) {
+            throw new IllegalStateException("Transform is not invertible");
+        }
+        double inverseDeterminant = 1 / determinant;
+        double i00 = c00 * inverseDeterminant;
+        double i01 = (m02 * m21 - m01 * m22) * inverseDeterminant;
+        double i02 = (m01 * m12 - m02 * m11) * inverseDeterminant;
+        double i10 = c01 * inverseDeterminant;
+        double i11 = (m00 * m22 - m02 * m20) * inverseDeterminant;
+        double i12 = (m02 * m10 - m00 * m12) * inverseDeterminant;
+        double i20 = c02 * inverseDeterminant;
+        double i21 = (m01 * m20 - m00 * m21) * inverseDeterminant;
+        double i22 = (m00 * m11 - m01 * m10) * inverseDeterminant;
+        return new Transform(
+                i00, i01, i02, -(i00 * m03 + i01 * m13 + i02 * m23),
+                i10, i11, i12, -(i10 * m03 + i11 * m13 + i12 * m23),
+                i20, i21, i22, -(i20 * m03 + i21 * m13 + i22 * m23));
+    }
+
+    /**
+     * Gets the matrix that transforms normals: the inverse transpose of the linear part. Unlike the linear part
+     * itself, it keeps normals perpendicular to their surface under non-uniform scales.
+     *
+     * @return The 3x3 normal matrix, row-major.
+     * @throws IllegalStateException If the transform has no inverse.
+     */
+    public double[] getNormalMatrix() {
+        return normalMatrix().clone();
+    }
+
+    /**
+     * Gets the normal matrix, calculating it on the first call.
+     */
+    private double[] normalMatrix() {
+        double[] result = normalMatrix;
+        if (result == null) {
+            Transform inverse = inverse();
+            result = new double[]{
+                    inverse.m00, inverse.m10, inverse.m20,
+                    inverse.m01, inverse.m11, inverse.m21,
+                    inverse.m02, inverse.m12, inverse.m22};
+            normalMatrix = result;
+        }
+        return result;
+    }
+
+    /**
+     * Gets an element of the matrix.
+     *
+     * @param row The row, from 0 to 3.
+     * @param column The column, from 0 to 3.
+     * @return The element.
+     */
+    public double get(int row, int column) {
+        if (row < 0 || row > 3 || column < 0 || column > 3) {
+            throw new IndexOutOfBoundsException("Row and column must be between 0 and 3");
+        }
+        return switch (row * 4 + column) {
+            case 0 -> m00;
+            case 1 -> m01;
+            case 2 -> m02;
+            case 3 -> m03;
+            case 4 -> m10;
+            case 5 -> m11;
+            case 6 -> m12;
+            case 7 -> m13;
+            case 8 -> m20;
+            case 9 -> m21;
+            case 10 -> m22;
+            case 11 -> m23;
+            case 15 -> 1;
+            default -> 0;
+        };
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        Transform that = (Transform) obj;
+        return Arrays.equals(toArray(), that.toArray());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toArray());
+    }
+
+    private double[] toArray() {
+        return new double[]{m00, m01, m02, m03, m10, m11, m12, m13, m20, m21, m22, m23};
+    }
+
+    /**
+     * Checks if the transform only translates and scales uniformly by a positive factor, which leaves every
+     * direction unchanged.
+     *
+     * @return True if directions and normals are not changed by the transform.
+     */
+    public boolean preservesDirections() {
+        return m01 == 0 && m02 == 0 && m10 == 0 && m12 == 0 && m20 == 0 && m21 == 0
+                && m00 > 0 && m00 == m11 && m11 == m22;
+    }
+
+    /**
+     * Transforms a point.
+     *
+     * @param point The point.
+     * @return The transformed point.
+     */
+    public Vector3D transformPoint(Vector3D point) {
+        double x = point.getX(), y = point.getY(), z = point.getZ();
+        return new Vector3D(
+                m00 * x + m01 * y + m02 * z + m03,
+                m10 * x + m11 * y + m12 * z + m13,
+                m20 * x + m21 * y + m22 * z + m23);
+    }
+
+    /**
+     * Transforms a direction, ignoring the translation. The result is not normalized.
+     *
+     * @param direction The direction.
+     * @return The transformed direction.
+     */
+    public Vector3D transformDirection(Vector3D direction) {
+        double x = direction.getX(), y = direction.getY(), z = direction.getZ();
+        return new Vector3D(
+                m00 * x + m01 * y + m02 * z,
+                m10 * x + m11 * y + m12 * z,
+                m20 * x + m21 * y + m22 * z);
+    }
+
+    /**
+     * Transforms a normal with the normal matrix. The result keeps the length of the given normal, so unit normals
+     * stay unit and interpolated normals keep their shading.
+     *
+     * @param normal The normal.
+     * @return The transformed normal.
+     * @throws IllegalStateException If the transform has no inverse.
+     */
+    public Vector3D transformNormal(Vector3D normal) {
+        double[] n = normalMatrix();
+        double x = normal.getX(), y = normal.getY(), z = normal.getZ();
+        double tx = n[0] * x + n[1] * y + n[2] * z;
+        double ty = n[3] * x + n[4] * y + n[5] * z;
+        double tz = n[6] * x + n[7] * y + n[8] * z;
+        double factor = lengthFactor(x, y, z, tx, ty, tz);
+        return new Vector3D(tx * factor, ty * factor, tz * factor);
+    }
+
+    /**
+     * Transforms a ray. The direction of the new ray is normalized by {@link Ray}, so distances along it are
+     * measured in the transformed space. Use {@link #transformRay(Ray, double[])} to keep distances.
+     *
+     * @param ray The ray.
+     * @return The transformed ray.
+     */
+    public Ray transformRay(Ray ray) {
+        return new Ray(transformPoint(ray.getOrigin()), transformDirection(ray.getDirection()));
+    }
+
+    /**
+     * Transforms a ray without creating any object. The direction is not normalized again, so a distance along the
+     * transformed ray is the same distance along the given one.
+     *
+     * @param ray The ray.
+     * @param target The array receiving the origin and then the direction (6 values).
+     */
+    public void transformRay(Ray ray, double[] target) {
+        Vector3D origin = ray.getOrigin();
+        Vector3D direction = ray.getDirection();
+        transformRay(origin.getX(), origin.getY(), origin.getZ(), direction.getX(), direction.getY(), direction.getZ(), target);
+    }
+
+    /**
+     * Transforms a ray given by its components without creating any object, as {@link #transformRay(Ray, double[])}.
+     *
+     * @param ox The x-coordinate of the origin.
+     * @param oy The y-coordinate of the origin.
+     * @param oz The z-coordinate of the origin.
+     * @param dx The x-component of the direction.
+     * @param dy The y-component of the direction.
+     * @param dz The z-component of the direction.
+     * @param target The array receiving the origin and then the direction (6 values).
+     */
+    public void transformRay(double ox, double oy, double oz, double dx, double dy, double dz, double[] target) {
+        target[0] = m00 * ox + m01 * oy + m02 * oz + m03;
+        target[1] = m10 * ox + m11 * oy + m12 * oz + m13;
+        target[2] = m20 * ox + m21 * oy + m22 * oz + m23;
+        target[3] = m00 * dx + m01 * dy + m02 * dz;
+        target[4] = m10 * dx + m11 * dy + m12 * dz;
+        target[5] = m20 * dx + m21 * dy + m22 * dz;
+    }
+
+    /**
+     * Transforms a buffer of points. Buffers of more than one batch are transformed in parallel.
+     *
+     * @param source The points (x, y, z per point).
+     * @param target The array receiving the transformed points. It may be the source itself.
+     */
+    public void transformPoints(double[] source, double[] target) {
+        int count = checkBuffers(source, target);
+        forEachBatch(count, (start, end) -> transformPoints(source, target, start, end));
+    }
+
+    /**
+     * Transforms a buffer of normals with the normal matrix, keeping the length of every normal. Buffers of more
+     * than one batch are transformed in parallel.
+     *
+     * @param source The normals (x, y, z per normal).
+     * @param target The array receiving the transformed normals. It may be the source itself.
+     * @throws IllegalStateException If the transform has no inverse.
+     */
+    public void transformNormals(double[] source, double[] target) {
+        int count = checkBuffers(source, target);
+        double[] n = normalMatrix();
+        forEachBatch(count, (start, end) -> transformNormals(n, source, target, start, end));
+    }
+
+    private static int checkBuffers(double[] source, double[] target) {
+        if (source.length % 3 != 0 || target.length != source.length) {
+            throw new IllegalArgumentException("Buffers must have the same length and hold 3 values per vertex");
+        }
+        return source.length / 3;
+    }
+
+    private interface Batch {
+        void run(int start, int end);
+    }
+
+    /**
+     * Runs a batch over every range of BATCH_VERTICES vertices, in parallel if there is more than one.
+     */
+    private static void forEachBatch(int count, Batch batch) {
+        int batches = (count + BATCH_VERTICES - 1) / BATCH_VERTICES;
+        if (batches <= 1) {
+            batch.run(0, count);
+            return;
+        }
+        IntStream.range(0, batches).parallel()
+                .forEach(i -> batch.run(i * BATCH_VERTICES, Math.min(count, (i + 1) * BATCH_VERTICES)));
+    }
+
+    private void transformPoints(double[] source, double[] target, int start, int end) {
+        for (int i = start * 3; i < end * 3; i += 3) {
+            double x = source[i], y = source[i + 1], z = source[i + 2];
+            target[i] = m00 * x + m01 * y + m02 * z + m03;
+            target[i + 1] = m10 * x + m11 * y + m12 * z + m13;
+            target[i + 2] = m20 * x + m21 * y + m22 * z + m23;
+        }
+    }
+
+    private static void transformNormals(double[] n, double[] source, double[] target, int start, int end) {
+        for (int i = start * 3; i < end * 3; i += 3) {
+            double x = source[i], y = source[i + 1], z = source[i + 2];
+            double tx = n[0] * x + n[1] * y + n[2] * z;
+            double ty = n[3] * x + n[4] * y + n[5] * z;
+            double tz = n[6] * x + n[7] * y + n[8] * z;
+            double factor = lengthFactor(x, y, z, tx, ty, tz);
+            target[i] = tx * factor;
+            target[i + 1] = ty * factor;
+            target[i + 2] = tz * factor;
+        }
+    }
+
+    /**
+     * Calculates the factor that gives a transformed normal the length of the original one.
+     */
+    private static double lengthFactor(double x, double y, double z, double tx, double ty, double tz) {
+        double squaredLength = tx * tx + ty * ty + tz * tz;
+        return squaredLength == 0 ? 0 : Math.sqrt((x * x + y * y + z * z) / squaredLength);
+    }
+}
@@ -3,6 +3,7 @@ package edu.up.isgc.cg.raytracer.objects;
 import edu.up.isgc.cg.raytracer.Intersection;
 import edu.up.isgc.cg.raytracer.Ray;
 import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.acceleration.BoundingBox;
 
 import java.util.Arrays;
 
@@ -137,27 +138,57 @@ public class Triangle implements IIntersectable {
 
     @Override
     public Intersection getIntersection(Ray ray) {
-        Intersection intersection = new Intersection(null, -1, null, null);
-
         Vector3D[] vert = getVertices();
-        Vector3D v2v0 = Vector3D.substract(vert[2], vert[0]);
-        Vector3D v1v0 = Vector3D.substract(vert[1], vert[0]);
-        Vector3D vectorP = Vector3D.crossProduct(ray.getDirection(), v1v0);
-        double det = Vector3D.dotProduct(v2v0, vectorP);
+        Vector3D v0 = vert[0];
+        Vector3D origin = ray.getOrigin();
+        Vector3D direction = ray.getDirection();
+        double dirX = direction.getX(), dirY = direction.getY(), dirZ = direction.getZ();
+        double e1x = vert[1].getX() - v0.getX(), e1y = vert[1].getY() - v0.getY(), e1z = vert[1].getZ() - v0.getZ();
+        double e2x = vert[2].getX() - v0.getX(), e2y = vert[2].getY() - v0.getY(), e2z = vert[2].getZ() - v0.getZ();
+
+        double px = dirY * e1z - dirZ * e1y;
+        double py = dirZ * e1x - dirX * e1z;
+        double pz = dirX * e1y - dirY * e1x;
+        double det = Vector3D.dotProduct(e2x, e2y, e2z, px, py, pz);
         double invDet = 1.0 / det;
-        Vector3D vectorT = Vector3D.substract(ray.getOrigin(), vert[0]);
-        double u = invDet * Vector3D.dotProduct(vectorT, vectorP);
+        double tx = origin.getX() - v0.getX();
+        double ty = origin.getY() - v0.getY();
+        double tz = origin.getZ() - v0.getZ();
+        double u = invDet * Vector3D.dotProduct(tx, ty, tz, px, py, pz);
 
         if (!(u < 0 || u > 1)) {
-            Vector3D vectorQ = Vector3D.crossProduct(vectorT, v2v0);
-            double v = invDet * Vector3D.dotProduct(ray.getDirection(), vectorQ);
+            double qx = ty * e2z - tz * e2y;
+            double qy = tz * e2x - tx * e2z;
+            double qz = tx * e2y - ty * e2x;
+            double v = invDet * Vector3D.dotProduct(dirX, dirY, dirZ, qx, qy, qz);
             if (!(v < 0 || (u + v) > (1.0 + EPSILON))) {
-                double t = invDet * Vector3D.dotProduct(vectorQ, v1v0);
-                intersection.setDistance(t);
+                double t = invDet * Vector3D.dotProduct(qx, qy, qz, e1x, e1y, e1z);
+                return new Intersection(ray, t, null, -1, u, v);
             }
         }
 
-        return intersection;
+        return null;
+    }
+
+    @Override
+    public boolean isOccluding(Ray ray, double maxDistance) {
+        Intersection intersection = getIntersection(ray);
+        return intersection != null && intersection.getDistance() > 0 && intersection.getDistance() < maxDistance;
+    }
+
+    @Override
+    public Vector3D calculateNormal(Intersection intersection) {
+        Vector3D[] normals = getNormals();
+        double u = intersection.getU();
+        double v = intersection.getV();
+        Vector3D normal = Vector3D.scalarMultiplication(normals[0], 1.0 - u - v);
+        normal = Vector3D.add(normal, Vector3D.scalarMultiplication(normals[1], v));
+        return Vector3D.add(normal, Vector3D.scalarMultiplication(normals[2], u));
+    }
+
+    @Override
+    public BoundingBox getBounds() {
+        return BoundingBox.of(getVertices());
     }
 
     @Override
@@ -0,0 +1,173 @@
+package edu.up.isgc.cg.raytracer.objects;
+
+/**
+ * The TriangleBatch class holds the triangles of a {@link TriangleMesh} packed for batch intersection tests. Every
+ * triangle is stored as its first vertex and its two edges from that vertex, one primitive array per component, in
+ * the leaf order of the hierarchy of the mesh: the triangles of a leaf are contiguous, so a {@link TriangleKernel}
+ * can load several of them into the lanes of a vector at once. The edges are the same differences
+ * {@link TriangleMesh#intersect} calculates, so tests over the batch give the same results.
+ * <p>
+ * The arrays are padded with {@link #PADDING} zeroed triangles after the last one, so a kernel may load full vectors
+ * at the end of the batch and discard the lanes past it.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class TriangleBatch {
+    // Enough lanes of doubles for the widest vectors, 2048 bits
+    public static final int PADDING = 32;
+    private final int size;
+    private final int[] triangles;
+    private final double[] v0x, v0y, v0z;
+    private final double[] e1x, e1y, e1z;
+    private final double[] e2x, e2y, e2z;
+
+    /**
+     * Constructs a new TriangleBatch.
+     *
+     * @param mesh The mesh of the triangles.
+     * @param order The ids of the triangles in the order they are packed, the primitive indices of the hierarchy
+     *              of the mesh.
+     */
+    TriangleBatch(TriangleMesh mesh, int[] order) {
+        size = order.length;
+        triangles = order.clone();
+        int length = size + PADDING;
+        v0x = new double[length];
+        v0y = new double[length];
+        v0z = new double[length];
+        e1x = new double[length];
+        e1y = new double[length];
+        e1z = new double[length];
+        e2x = new double[length];
+        e2y = new double[length];
+        e2z = new double[length];
+
+        double[] positions = mesh.getPositions();
+        int[] positionIndices = mesh.getPositionIndices();
+        for (int i = 0; i < size; i++) {
+            int triangle = order[i] * 3;
+            int a = positionIndices[triangle] * 3, b = positionIndices[triangle + 1] * 3, c = positionIndices[triangle + 2] * 3;
+            v0x[i] = positions[a];
+            v0y[i] = positions[a + 1];
+            v0z[i] = positions[a + 2];
+            e1x[i] = positions[b] - v0x[i];
+            e1y[i] = positions[b + 1] - v0y[i];
+            e1z[i] = positions[b + 2] - v0z[i];
+            e2x[i] = positions[c] - v0x[i];
+            e2y[i] = positions[c + 1] - v0y[i];
+            e2z[i] = positions[c + 2] - v0z[i];
+        }
+    }
+
+    /**
+     * Gets the number of bytes held by the arrays of a batch of a number of triangles.
+     *
+     * @param triangleCount The number of triangles.
+     * @return The memory footprint in bytes.
+     */
+    public static long getMemoryFootprint(int triangleCount) {
+        long arrayHeader = 16;
+        return 10 * arrayHeader + 9L * Double.BYTES * (triangleCount + PADDING) + (long) Integer.BYTES * triangleCount;
+    }
+
+    /**
+     * Gets the number of triangles of the batch, without the padding.
+     *
+     * @return The number of triangles.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the id of the triangle of the mesh stored at a position of the batch.
+     *
+     * @param index The position in the batch.
+     * @return The id of the triangle in the mesh.
+     */
+    public int getTriangle(int index) {
+        return triangles[index];
+    }
+
+    /**
+     * Gets the x-coordinates of the first vertices. The array is shared, not copied; the same holds for the other
+     * component getters.
+     *
+     * @return The x-coordinates of the first vertices.
+     */
+    public double[] getV0X() {
+        return v0x;
+    }
+
+    /**
+     * Gets the y-coordinates of the first vertices.
+     *
+     * @return The y-coordinates of the first vertices.
+     */
+    public double[] getV0Y() {
+        return v0y;
+    }
+
+    /**
+     * Gets the z-coordinates of the first vertices.
+     *
+     * @return The z-coordinates of the first vertices.
+     */
+    public double[] getV0Z() {
+        return v0z;
+    }
+
+    /**
+     * Gets the x-components of the edges from the first to the second vertices.
+     *
+     * @return The x-components of the first edges.
+     */
+    public double[] getE1X() {
+        return e1x;
+    }
+
+    /**
+     * Gets the y-components of the edges from the first to the second vertices.
+     *
+     * @return The y-components of the first edges.
+     */
+    public double[] getE1Y() {
+        return e1y;
+    }
+
+    /**
+     * Gets the z-components of the edges from the first to the second vertices.
+     *
+     * @return The z-components of the first edges.
+     */
+    public double[] getE1Z() {
+        return e1z;
+    }
+
+    /**
+     * Gets the x-components of the edges from the first to the third vertices.
+     *
+     * @return The x-components of the second edges.
+     */
+    public double[] getE2X() {
+        return e2x;
+    }
+
+    /**
+     * Gets the y-components of the edges from the first to the third vertices.
+     *
+     * @return The y-components of the second edges.
+     */
+    public double[] getE2Y() {
+        return e2y;
+    }
+
+    /**
+     * Gets the z-components of the edges from the first to the third vertices.
+     *
+     * @return The z-components of the second edges.
+     */
+    public double[] getE2Z() {
+        return e2z;
+    }
+}
@@ -0,0 +1,71 @@
+package edu.up.isgc.cg.raytracer.objects;
+
+/**
+ * A TriangleKernel intersects one ray with a run of consecutive triangles of a {@link TriangleBatch}, such as the
+ * triangles of a leaf of the hierarchy of a mesh. Every kernel performs the Möller–Trumbore test of
+ * {@link TriangleMesh#intersect} with the same operations in the same order, including the
+ * {@link Triangle#EPSILON} tolerance on the edges, so all of them give exactly the same results; they only differ
+ * in how many triangles they test at once.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public interface TriangleKernel {
+    String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /**
+     * Finds the closest triangle of a run hit by a ray. As when the triangles are tested one by one in order, a hit
+     * is only accepted if its distance is positive and smaller than the closest one so far, so between hits at the
+     * same distance the first triangle wins.
+     *
+     * @param batch The packed triangles.
+     * @param first The position of the first triangle of the run in the batch.
+     * @param count The number of triangles of the run.
+     * @param originX The x-coordinate of the ray origin.
+     * @param originY The y-coordinate of the ray origin.
+     * @param originZ The z-coordinate of the ray origin.
+     * @param dirX The x-component of the ray direction.
+     * @param dirY The y-component of the ray direction.
+     * @param dirZ The z-component of the ray direction.
+     * @param closestDistance The closest distance found so far.
+     * @param hit Receives the distance and the u and v coordinates of the closest hit, if there is one.
+     * @return The position in the batch of the closest triangle hit, or -1 if none is hit closer than
+     * closestDistance.
+     */
+    int intersect(TriangleBatch batch, int first, int count, double originX, double originY, double originZ,
+                  double dirX, double dirY, double dirZ, double closestDistance, double[] hit);
+
+    /**
+     * Checks if any triangle of a run is hit by a ray before a maximum distance.
+     *
+     * @param batch The packed triangles.
+     * @param first The position of the first triangle of the run in the batch.
+     * @param count The number of triangles of the run.
+     * @param originX The x-coordinate of the ray origin.
+     * @param originY The y-coordinate of the ray origin.
+     * @param originZ The z-coordinate of the ray origin.
+     * @param dirX The x-component of the ray direction.
+     * @param dirY The y-component of the ray direction.
+     * @param dirZ The z-component of the ray direction.
+     * @param maxDistance The maximum distance of the query.
+     * @return True if a triangle is hit at a positive distance smaller than maxDistance.
+     */
+    boolean occludes(TriangleBatch batch, int first, int count, double originX, double originY, double originZ,
+                     double dirX, double dirY, double dirZ, double maxDistance);
+
+    /**
+     * Gets the number of triangles the kernel tests at once.
+     *
+     * @return The number of lanes, 1 for scalar kernels.
+     */
+    int getLaneCount();
+
+    /**
+     * Checks if the Vector API can be used, which needs the incubator module to be added when the program is
+     * started, with {@code --add-modules jdk.incubator.vector}.
+     *
+     * @return True if {@link VectorTriangleKernel} can be used.
+     */
+    static boolean isVectorAvailable() {
+        return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+    }
+}
@@ -0,0 +1,450 @@
+package edu.up.isgc.cg.raytracer.objects;
+
+import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.acceleration.BVH;
+import edu.up.isgc.cg.raytracer.acceleration.BoundingBox;
+import edu.up.isgc.cg.raytracer.acceleration.RayPacket;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The TriangleMesh class stores a set of triangles as an indexed mesh in flat primitive arrays. Every distinct vertex
+ * position and every distinct normal is stored once in a pool of 3 doubles each, and every triangle holds 3 position
+ * indices and 3 normal indices into those pools. Vertices shared between faces are therefore stored, and transformed,
+ * only once, and no objects are involved in the hot path. A mesh is never modified once built, so it can be shared
+ * by any number of models, together with its bounding volume hierarchy.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class TriangleMesh {
+    private final int triangleCount;
+    private final double[] positions;
+    private final double[] normals;
+    private final int[] positionIndices;
+    private final int[] normalIndices;
+    private volatile BVH bvh;
+    private volatile TriangleBatch batch;
+
+    /**
+     * Constructs a new indexed TriangleMesh. The arrays are used as they are, not copied.
+     *
+     * @param positions The vertex positions (x, y, z per vertex).
+     * @param normals The vertex normals (x, y, z per normal).
+     * @param positionIndices The position of every triangle corner (v0, v1, v2 per triangle).
+     * @param normalIndices The normal of every triangle corner, laid out as the position indices.
+     * @throws IllegalArgumentException If the arrays have the wrong length or an index is out of range.
+     */
+    public TriangleMesh(double[] positions, double[] normals, int[] positionIndices, int[] normalIndices) {
+        this(validate(positions, normals, positionIndices, normalIndices), positions, normals, positionIndices, normalIndices);
+    }
+
+    private TriangleMesh(int triangleCount, double[] positions, double[] normals, int[] positionIndices, int[] normalIndices) {
+        this.triangleCount = triangleCount;
+        this.positions = positions;
+        this.normals = normals;
+        this.positionIndices = positionIndices;
+        this.normalIndices = normalIndices;
+    }
+
+    /**
+     * Checks the layout of the arrays of an indexed mesh.
+     *
+     * @return The number of triangles.
+     */
+    private static int validate(double[] positions, double[] normals, int[] positionIndices, int[] normalIndices) {
+        if (positions.length % 3 != 0 || normals.length % 3 != 0 || positionIndices.length % 3 != 0
+                || normalIndices.length != positionIndices.length) {
+            throw new IllegalArgumentException("Pools must hold 3 values per vertex and indices 3 per triangle");
+        }
+        checkIndices(positionIndices, positions.length / 3);
+        checkIndices(normalIndices, normals.length / 3);
+        return positionIndices.length / 3;
+    }
+
+    private static void checkIndices(int[] indices, int count) {
+        for (int index : indices) {
+            if (index < 0 || index >= count) {
+                throw new IllegalArgumentException("Index " + index + " is out of range for " + count + " elements");
+            }
+        }
+    }
+
+    /**
+     * Packs a set of triangles into a mesh. Vertices and normals shared by several triangles (the same Vector3D
+     * instance) are stored once. Triangles without normals get their flat normal.
+     *
+     * @param triangles The triangles to pack.
+     * @return The packed mesh.
+     */
+    public static TriangleMesh fromTriangles(List<Triangle> triangles) {
+        Map<Vector3D, Integer> vertexIds = new IdentityHashMap<>();
+        Map<Vector3D, Integer> normalIds = new IdentityHashMap<>();
+        int[] positionIndices = new int[triangles.size() * 3];
+        int[] normalIndices = new int[triangles.size() * 3];
+        for (int i = 0; i < triangles.size(); i++) {
+            Triangle triangle = triangles.get(i);
+            Vector3D[] vertices = triangle.getVertices();
+            Vector3D[] triangleNormals = triangle.getNormals();
+            for (int j = 0; j < 3; j++) {
+                positionIndices[i * 3 + j] = vertexIds.computeIfAbsent(vertices[j], key -> vertexIds.size());
+                normalIndices[i * 3 + j] = normalIds.computeIfAbsent(triangleNormals[j], key -> normalIds.size());
+            }
+        }
+        return new TriangleMesh(toPool(vertexIds), toPool(normalIds), positionIndices, normalIndices);
+    }
+
+    private static double[] toPool(Map<Vector3D, Integer> ids) {
+        double[] pool = new double[ids.size() * 3];
+        for (Map.Entry<Vector3D, Integer> entry : ids.entrySet()) {
+            int offset = entry.getValue() * 3;
+            pool[offset] = entry.getKey().getX();
+            pool[offset + 1] = entry.getKey().getY();
+            pool[offset + 2] = entry.getKey().getZ();
+        }
+        return pool;
+    }
+
+    /**
+     * Gets the number of triangles of the mesh.
+     *
+     * @return The number of triangles.
+     */
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    /**
+     * Gets the number of distinct vertex positions of the mesh.
+     *
+     * @return The size of the position pool.
+     */
+    public int getVertexCount() {
+        return positions.length / 3;
+    }
+
+    /**
+     * Gets the number of distinct normals of the mesh.
+     *
+     * @return The size of the normal pool.
+     */
+    public int getNormalCount() {
+        return normals.length / 3;
+    }
+
+    /**
+     * Gets the position pool (x, y, z per vertex). The array is shared, not copied.
+     *
+     * @return The vertex positions.
+     */
+    public double[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * Gets the normal pool (x, y, z per normal). The array is shared, not copied.
+     *
+     * @return The vertex normals.
+     */
+    public double[] getNormals() {
+        return normals;
+    }
+
+    /**
+     * Gets the position index of every triangle corner (3 per triangle). The array is shared, not copied.
+     *
+     * @return The position indices.
+     */
+    public int[] getPositionIndices() {
+        return positionIndices;
+    }
+
+    /**
+     * Gets the normal index of every triangle corner (3 per triangle). The array is shared, not copied.
+     *
+     * @return The normal indices.
+     */
+    public int[] getNormalIndices() {
+        return normalIndices;
+    }
+
+    /**
+     * Expands the positions to one entry per triangle corner (v0, v1, v2 as x, y, z for every triangle).
+     *
+     * @return A new array of 9 values per triangle.
+     */
+    public double[] getCornerPositions() {
+        return expand(positions, positionIndices);
+    }
+
+    /**
+     * Expands the normals to one entry per triangle corner, laid out as {@link #getCornerPositions()}.
+     *
+     * @return A new array of 9 values per triangle.
+     */
+    public double[] getCornerNormals() {
+        return expand(normals, normalIndices);
+    }
+
+    private static double[] expand(double[] pool, int[] indices) {
+        double[] corners = new double[indices.length * 3];
+        for (int i = 0; i < indices.length; i++) {
+            System.arraycopy(pool, indices[i] * 3, corners, i * 3, 3);
+        }
+        return corners;
+    }
+
+    /**
+     * Creates a Triangle object with the data of one triangle of the mesh.
+     *
+     * @param triangle The id of the triangle.
+     * @return A new Triangle.
+     */
+    public Triangle getTriangle(int triangle) {
+        Vector3D[] vertices = new Vector3D[3];
+        Vector3D[] vertexNormals = new Vector3D[3];
+        for (int j = 0; j < 3; j++) {
+            int p = positionIndices[triangle * 3 + j] * 3;
+            int n = normalIndices[triangle * 3 + j] * 3;
+            vertices[j] = new Vector3D(positions[p], positions[p + 1], positions[p + 2]);
+            vertexNormals[j] = new Vector3D(normals[n], normals[n + 1], normals[n + 2]);
+        }
+        return new Triangle(vertices, vertexNormals);
+    }
+
+    /**
+     * Intersects a ray with one triangle of the mesh. This is the same Möller–Trumbore test as
+     * {@link Triangle#getIntersection}, performed directly over the indexed arrays.
+     *
+     * @param triangle The id of the triangle.
+     * @param originX The x-coordinate of the ray origin.
+     * @param originY The y-coordinate of the ray origin.
+     * @param originZ The z-coordinate of the ray origin.
+     * @param dirX The x-component of the normalized ray direction.
+     * @param dirY The y-component of the normalized ray direction.
+     * @param dirZ The z-component of the normalized ray direction.
+     * @param barycentric Receives the u and v coordinates of the hit (weights of v2 and v1), or null.
+     * @return The distance to the intersection, or -1 if the triangle is missed.
+     */
+    public double intersect(int triangle, double originX, double originY, double originZ,
+                            double dirX, double dirY, double dirZ, double[] barycentric) {
+        int i = triangle * 3;
+        int a = positionIndices[i] * 3, b = positionIndices[i + 1] * 3, c = positionIndices[i + 2] * 3;
+        double v0x = positions[a], v0y = positions[a + 1], v0z = positions[a + 2];
+        double e1x = positions[b] - v0x, e1y = positions[b + 1] - v0y, e1z = positions[b + 2] - v0z;
+        double e2x = positions[c] - v0x, e2y = positions[c + 1] - v0y, e2z = positions[c + 2] - v0z;
+
+        double px = dirY * e1z - dirZ * e1y;
+        double py = dirZ * e1x - dirX * e1z;
+        double pz = dirX * e1y - dirY * e1x;
+        double det = e2x * px + e2y * py + e2z * pz;
+        double invDet = 1.0 / det;
+
+        double tx = originX - v0x;
+        double ty = originY - v0y;
+        double tz = originZ - v0z;
+        double u = invDet * (tx * px + ty * py + tz * pz);
+
+        if (!(u < 0 || u > 1)) {
+            double qx = ty * e2z - tz * e2y;
+            double qy = tz * e2x - tx * e2z;
+            double qz = tx * e2y - ty * e2x;
+            double v = invDet * (dirX * qx + dirY * qy + dirZ * qz);
+            if (!(v < 0 || (u + v) > (1.0 + Triangle.EPSILON))) {
+                if (barycentric != null) {
+                    barycentric[0] = u;
+                    barycentric[1] = v;
+                }
+                return invDet * (qx * e1x + qy * e1y + qz * e1z);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Intersects one triangle with several rays of a packet, loading the triangle and its edges once for all of
+     * them. Every ray gets the same test as {@link #intersect(int, double, double, double, double, double, double,
+     * double[])}, with the same operations in the same order, so the results are the same.
+     *
+     * @param triangle The id of the triangle.
+     * @param packet The packet of rays.
+     * @param mask The rays to test.
+     * @param distances Receives the distance to the intersection of every ray of the mask, or -1 where the triangle
+     *                  is missed.
+     * @param us Receives the u coordinate of every hit, or null.
+     * @param vs Receives the v coordinate of every hit, or null.
+     */
+    public void intersect(int triangle, RayPacket packet, int mask, double[] distances, double[] us, double[] vs) {
+        int i = triangle * 3;
+        int a = positionIndices[i] * 3, b = positionIndices[i + 1] * 3, c = positionIndices[i + 2] * 3;
+        double v0x = positions[a], v0y = positions[a + 1], v0z = positions[a + 2];
+        double e1x = positions[b] - v0x, e1y = positions[b + 1] - v0y, e1z = positions[b + 2] - v0z;
+        double e2x = positions[c] - v0x, e2y = positions[c + 1] - v0y, e2z = positions[c + 2] - v0z;
+        double[] originX = packet.getOriginX(), originY = packet.getOriginY(), originZ = packet.getOriginZ();
+        double[] dirX = packet.getDirX(), dirY = packet.getDirY(), dirZ = packet.getDirZ();
+
+        for (int rest = mask; rest != 0; rest &= rest - 1) {
+            int ray = Integer.numberOfTrailingZeros(rest);
+            distances[ray] = -1;
+            double px = dirY[ray] * e1z - dirZ[ray] * e1y;
+            double py = dirZ[ray] * e1x - dirX[ray] * e1z;
+            double pz = dirX[ray] * e1y - dirY[ray] * e1x;
+            double det = e2x * px + e2y * py + e2z * pz;
+            double invDet = 1.0 / det;
+
+            double tx = originX[ray] - v0x;
+            double ty = originY[ray] - v0y;
+            double tz = originZ[ray] - v0z;
+            double u = invDet * (tx * px + ty * py + tz * pz);
+            if (u < 0 || u > 1) {
+                continue;
+            }
+            double qx = ty * e2z - tz * e2y;
+            double qy = tz * e2x - tx * e2z;
+            double qz = tx * e2y - ty * e2x;
+            double v = invDet * (dirX[ray] * qx + dirY[ray] * qy + dirZ[ray] * qz);
+            if (!(v < 0 || (u + v) > (1.0 + Triangle.EPSILON))) {
+                if (us != null) {
+                    us[ray] = u;
+                    vs[ray] = v;
+                }
+                distances[ray] = invDet * (qx * e1x + qy * e1y + qz * e1z);
+            }
+        }
+    }
+
+    /**
+     * Interpolates the vertex normals of a triangle at a point given by the barycentric coordinates returned by
+     * {@link #intersect}.
+     *
+     * @param triangle The id of the triangle.
+     * @param u The weight of the third vertex.
+     * @param v The weight of the second vertex.
+     * @return The interpolated normal.
+     */
+    public Vector3D interpolateNormal(int triangle, double u, double v) {
+        int i = triangle * 3;
+        int a = normalIndices[i] * 3, b = normalIndices[i + 1] * 3, c = normalIndices[i + 2] * 3;
+        double w = 1.0 - u - v;
+        return new Vector3D(
+                w * normals[a] + v * normals[b] + u * normals[c],
+                w * normals[a + 1] + v * normals[b + 1] + u * normals[c + 1],
+                w * normals[a + 2] + v * normals[b + 2] + u * normals[c + 2]);
+    }
+
+    /**
+     * Gets the bounding volume hierarchy over the triangles of the mesh, building it on the first call.
+     *
+     * @return The hierarchy, shared by every caller.
+     */
+    public BVH getBVH() {
+        BVH result = bvh;
+        if (result == null) {
+            synchronized (this) {
+                result = bvh;
+                if (result == null) {
+                    result = BVH.build(getTriangleBounds());
+                    bvh = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the triangles of the mesh packed in the leaf order of its hierarchy, building them on the first call.
+     * Models only ask for the batch once a {@link TriangleKernel} is set, so meshes whose triangles are tested one
+     * by one never keep this second copy of their triangles.
+     *
+     * @return The batch, shared by every caller.
+     */
+    public TriangleBatch getTriangleBatch() {
+        TriangleBatch result = batch;
+        if (result == null) {
+            synchronized (this) {
+                result = batch;
+                if (result == null) {
+                    result = new TriangleBatch(this, getBVH().getPrimitiveIndices());
+                    batch = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the bounds of every triangle into a flattened bounds array (6 values per triangle).
+     *
+     * @return The bounds of every triangle.
+     */
+    public double[] getTriangleBounds() {
+        double[] bounds = new double[triangleCount * 6];
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            int a = positionIndices[triangle * 3] * 3;
+            int b = positionIndices[triangle * 3 + 1] * 3;
+            int c = positionIndices[triangle * 3 + 2] * 3;
+            int offset = triangle * 6;
+            for (int axis = 0; axis < 3; axis++) {
+                double x = positions[a + axis], y = positions[b + axis], z = positions[c + axis];
+                bounds[offset + axis] = Math.min(x, Math.min(y, z));
+                bounds[offset + 3 + axis] = Math.max(x, Math.max(y, z));
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Gets the bounds of the whole mesh.
+     *
+     * @return The bounds of the mesh.
+     */
+    public BoundingBox getBounds() {
+        double[] bounds = new double[]{
+                Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        boolean[] used = new boolean[getVertexCount()];
+        for (int index : positionIndices) {
+            if (!used[index]) {
+                used[index] = true;
+                for (int axis = 0; axis < 3; axis++) {
+                    bounds[axis] = Math.min(bounds[axis], positions[index * 3 + axis]);
+                    bounds[axis + 3] = Math.max(bounds[axis + 3], positions[index * 3 + axis]);
+                }
+            }
+        }
+        return new BoundingBox(bounds[0], bounds[1], bounds[2], bounds[3], bounds[4], bounds[5]);
+    }
+
+    /**
+     * Creates a new mesh with every vertex and normal transformed. Each pooled vertex and normal is transformed once
+     * however many triangles share it, in parallel batches for large meshes, and the index arrays are shared with
+     * this mesh. If the transform leaves directions unchanged the normal pool is shared too instead of copied.
+     *
+     * @param transform The transform applied to the mesh.
+     * @return The transformed mesh.
+     * @throws IllegalStateException If the transform has no inverse, so normals cannot be transformed.
+     */
+    public TriangleMesh transformed(Transform transform) {
+        double[] transformedPositions = new double[positions.length];
+        transform.transformPoints(positions, transformedPositions);
+
+        double[] transformedNormals = normals;
+        if (!transform.preservesDirections()) {
+            transformedNormals = new double[normals.length];
+            transform.transformNormals(normals, transformedNormals);
+        }
+        return new TriangleMesh(triangleCount, transformedPositions, transformedNormals, positionIndices, normalIndices);
+    }
+
+    /**
+     * Gets the number of bytes held by the arrays of the mesh.
+     *
+     * @return The approximate memory footprint in bytes.
+     */
+    public long getMemoryFootprint() {
+        long arrayHeader = 16;
+        return 4 * arrayHeader + 8L * (positions.length + normals.length)
+                + 4L * (positionIndices.length + normalIndices.length);
+    }
+}
@@ -0,0 +1,126 @@
+package edu.up.isgc.cg.raytracer.objects;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The VectorTriangleKernel class tests the triangles of a run several at a time with the incubating Vector API, one
+ * triangle per lane: 2 triangles per 128-bit vector, 4 per 256-bit vector and 8 per 512-bit vector. Every lane
+ * performs the scalar operations in the same order, without fused multiply-adds, so the distances and coordinates
+ * are the same bit for bit; the closest hit of a vector is then the smallest accepted distance, and the lowest lane
+ * among equal ones, as if the triangles had been tested one by one.
+ * <p>
+ * The vectors are the widest of the processor. Their size is a constant, so that the just-in-time compiler turns
+ * the vector operations into vector instructions; it can only be narrowed by starting the virtual machine with a
+ * smaller {@code -XX:MaxVectorSize}, 16 bytes for 128-bit vectors or 32 for 256-bit vectors.
+ * <p>
+ * The just-in-time compiler does not always keep the vectors and masks of a test in registers, so the kernel
+ * allocates on the heap, about 160 bytes per occlusion ray in RayAllocationReport, where occlusion queries must not
+ * allocate at all. It is not faster than testing the triangles one by one either, as the leaves only hold a few
+ * triangles, so it is only used when set with {@link Model3D#setTriangleKernel}.
+ * <p>
+ * The class may only be loaded when {@link TriangleKernel#isVectorAvailable()} is true, that is, when the program
+ * was started with {@code --add-modules jdk.incubator.vector}.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public final class VectorTriangleKernel implements TriangleKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    public static final VectorTriangleKernel INSTANCE = new VectorTriangleKernel();
+
+    private VectorTriangleKernel() {
+    }
+
+    @Override
+    public int intersect(TriangleBatch batch, int first, int count, double originX, double originY, double originZ,
+                         double dirX, double dirY, double dirZ, double closestDistance, double[] hit) {
+        return test(batch, first, count, originX, originY, originZ, dirX, dirY, dirZ, closestDistance, hit);
+    }
+
+    @Override
+    public boolean occludes(TriangleBatch batch, int first, int count, double originX, double originY, double originZ,
+                            double dirX, double dirY, double dirZ, double maxDistance) {
+        return test(batch, first, count, originX, originY, originZ, dirX, dirY, dirZ, maxDistance, null) >= 0;
+    }
+
+    /**
+     * Tests the triangles of a run a vector at a time.
+     *
+     * @param hit Receives the closest hit, or null to return as soon as any triangle is hit.
+     * @return The position of the closest triangle hit, or of any triangle hit if hit is null; -1 if none is.
+     */
+    private static int test(TriangleBatch batch, int first, int count, double originX, double originY, double originZ,
+                            double dirX, double dirY, double dirZ, double maxDistance, double[] hit) {
+        int closest = -1;
+        int end = first + count;
+        for (int i = first; i < end; i += SPECIES.length()) {
+            DoubleVector e1x = DoubleVector.fromArray(SPECIES, batch.getE1X(), i);
+            DoubleVector e1y = DoubleVector.fromArray(SPECIES, batch.getE1Y(), i);
+            DoubleVector e1z = DoubleVector.fromArray(SPECIES, batch.getE1Z(), i);
+            DoubleVector e2x = DoubleVector.fromArray(SPECIES, batch.getE2X(), i);
+            DoubleVector e2y = DoubleVector.fromArray(SPECIES, batch.getE2Y(), i);
+            DoubleVector e2z = DoubleVector.fromArray(SPECIES, batch.getE2Z(), i);
+
+            DoubleVector px = e1z.mul(dirY).sub(e1y.mul(dirZ));
+            DoubleVector py = e1x.mul(dirZ).sub(e1z.mul(dirX));
+            DoubleVector pz = e1y.mul(dirX).sub(e1x.mul(dirY));
+            DoubleVector det = e2x.mul(px).add(e2y.mul(py)).add(e2z.mul(pz));
+            DoubleVector invDet = DoubleVector.broadcast(SPECIES, 1.0).div(det);
+
+            DoubleVector tx = DoubleVector.broadcast(SPECIES, originX).sub(DoubleVector.fromArray(SPECIES, batch.getV0X(), i));
+            DoubleVector ty = DoubleVector.broadcast(SPECIES, originY).sub(DoubleVector.fromArray(SPECIES, batch.getV0Y(), i));
+            DoubleVector tz = DoubleVector.broadcast(SPECIES, originZ).sub(DoubleVector.fromArray(SPECIES, batch.getV0Z(), i));
+            DoubleVector u = invDet.mul(tx.mul(px).add(ty.mul(py)).add(tz.mul(pz)));
+
+            DoubleVector qx = ty.mul(e2z).sub(tz.mul(e2y));
+            DoubleVector qy = tz.mul(e2x).sub(tx.mul(e2z));
+            DoubleVector qz = tx.mul(e2y).sub(ty.mul(e2x));
+            DoubleVector v = invDet.mul(qx.mul(dirX).add(qy.mul(dirY)).add(qz.mul(dirZ)));
+            DoubleVector distance = invDet.mul(qx.mul(e1x).add(qy.mul(e1y)).add(qz.mul(e1z)));
+
+            VectorMask<Double> accepted = accept(i, end, u, v, distance, maxDistance);
+            if (!accepted.anyTrue()) {
+                continue;
+            }
+            if (hit == null) {
+                return i + accepted.firstTrue();
+            }
+            double nearest = distance.reduceLanes(VectorOperators.MIN, accepted);
+            int lane = distance.compare(VectorOperators.EQ, nearest).and(accepted).firstTrue();
+            maxDistance = nearest;
+            closest = i + lane;
+            hit[0] = nearest;
+            hit[1] = u.lane(lane);
+            hit[2] = v.lane(lane);
+        }
+        return closest;
+    }
+
+    /**
+     * Selects the lanes of the run whose hit passes the edge tests of the scalar kernel and lies at a positive
+     * distance smaller than maxDistance. Comparisons with NaN are false in both, so degenerate triangles are
+     * rejected in the same way; lanes past the end of the run are rejected by their index.
+     */
+    private static VectorMask<Double> accept(int i, int end, DoubleVector u, DoubleVector v, DoubleVector distance, double maxDistance) {
+        VectorMask<Double> outside = u.compare(VectorOperators.LT, 0)
+                .or(u.compare(VectorOperators.GT, 1))
+                .or(v.compare(VectorOperators.LT, 0))
+                .or(u.add(v).compare(VectorOperators.GT, 1.0 + Triangle.EPSILON));
+        return SPECIES.indexInRange(i, end)
+                .andNot(outside)
+                .and(distance.compare(VectorOperators.GT, 0))
+                .and(distance.compare(VectorOperators.LT, maxDistance));
+    }
+
+    @Override
+    public int getLaneCount() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public String toString() {
+        return "vector-" + SPECIES.vectorBitSize();
+    }
+}
@@ -0,0 +1,102 @@
+package edu.up.isgc.cg.raytracer.rendering;
+
+import edu.up.isgc.cg.raytracer.tools.Radiance;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The BandWriter class streams an image to disk in horizontal bands, so images larger than the heap can be rendered.
+ * Only the pixels of the current band are kept in memory: workers store the pixels of a band concurrently, one
+ * pixel each, then the band is encoded and written before the next one is rendered. Bands must be written from
+ * top to bottom.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public abstract class BandWriter implements Closeable {
+    public static final int DEFAULT_BAND_HEIGHT = 64;
+    private final int width, height, bandHeight;
+
+    /**
+     * Constructs a new BandWriter.
+     *
+     * @param width The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     * @param bandHeight The maximum number of rows of a band.
+     */
+    protected BandWriter(int width, int height, int bandHeight) {
+        if (width < 1 || height < 1 || bandHeight < 1) {
+            throw new IllegalArgumentException("The image and its bands must have at least one pixel");
+        }
+        this.width = width;
+        this.height = height;
+        this.bandHeight = Math.min(bandHeight, height);
+    }
+
+    /**
+     * Opens a writer for the format given by the extension of the file: .png for 8-bit PNG or .pfm for linear
+     * 32-bit floating point PFM.
+     *
+     * @param path The file to write.
+     * @param width The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     * @param bandHeight The maximum number of rows of a band.
+     * @return The writer.
+     * @throws IOException If the file cannot be created.
+     */
+    public static BandWriter open(Path path, int width, int height, int bandHeight) throws IOException {
+        String name = path.getFileName().toString().toLowerCase();
+        if (name.endsWith(".png")) {
+            return new PngBandWriter(path, width, height, bandHeight);
+        } else if (name.endsWith(".pfm")) {
+            return new PfmBandWriter(path, width, height, bandHeight);
+        }
+        throw new IllegalArgumentException("Unsupported image format: " + path);
+    }
+
+    /**
+     * Gets the width of the image.
+     *
+     * @return The width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the image.
+     *
+     * @return The height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the maximum number of rows of a band.
+     *
+     * @return The band height in pixels.
+     */
+    public int getBandHeight() {
+        return bandHeight;
+    }
+
+    /**
+     * Stores a pixel of the current band. It is called concurrently for different pixels.
+     *
+     * @param x The column of the pixel.
+     * @param row The row of the pixel relative to the band.
+     * @param color The linear color of the pixel.
+     */
+    public abstract void setPixel(int x, int row, Radiance color);
+
+    /**
+     * Encodes and writes the current band once all its pixels have been stored.
+     *
+     * @param y The row of the image where the band starts.
+     * @param rows The number of rows of the band.
+     * @throws IOException If the band cannot be written.
+     */
+    public abstract void writeBand(int y, int rows) throws IOException;
+}
@@ -0,0 +1,140 @@
+package edu.up.isgc.cg.raytracer.rendering;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * The FrameBuffer class holds the pixels of an image as packed RGB in a plain int array, row by row. Workers write
+ * their tiles straight into the array without synchronization; tiles never overlap, and the completion of the render
+ * publishes the writes to the thread that reads the image. The array is shared with a BufferedImage through its
+ * DataBufferInt, so turning the frame buffer into an image does not copy any pixel.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class FrameBuffer {
+    private static final int[] RGB_MASKS = {0xFF0000, 0xFF00, 0xFF};
+    private final int width, height;
+    private final int[] pixels;
+    private BufferedImage image;
+
+    /**
+     * Constructs a new black FrameBuffer.
+     *
+     * @param width The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     */
+    public FrameBuffer(int width, int height) {
+        this(width, height, new int[Math.multiplyExact(width, height)], null);
+    }
+
+    private FrameBuffer(int width, int height, int[] pixels, BufferedImage image) {
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+        this.image = image;
+    }
+
+    /**
+     * Creates a frame buffer that writes straight into the pixels of an image.
+     *
+     * @param image An image of type TYPE_INT_RGB that is not a subimage. Images with an alpha channel are not
+     *              accepted, as the packed RGB values written by the renderers would leave every pixel transparent.
+     * @return The frame buffer sharing the pixels of the image.
+     * @throws IllegalArgumentException If the pixels of the image are not stored as one packed RGB int per pixel.
+     */
+    public static FrameBuffer wrap(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        boolean packed = image.getType() == BufferedImage.TYPE_INT_RGB
+                && raster.getParent() == null
+                && raster.getDataBuffer() instanceof DataBufferInt
+                && raster.getDataBuffer().getOffset() == 0
+                && ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() == image.getWidth();
+        if (!packed) {
+            throw new IllegalArgumentException("Only whole TYPE_INT_RGB images can be rendered into");
+        }
+        int[] pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+        return new FrameBuffer(image.getWidth(), image.getHeight(), pixels, image);
+    }
+
+    /**
+     * Gets the width of the image.
+     *
+     * @return The width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the image.
+     *
+     * @return The height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the backing array, with the pixel (x, y) at index y * width + x.
+     *
+     * @return The pixels as packed RGB.
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Gets the packed RGB value of a pixel.
+     *
+     * @param x The column of the pixel.
+     * @param y The row of the pixel.
+     * @return The packed RGB value.
+     */
+    public int getRGB(int x, int y) {
+        return pixels[y * width + x];
+    }
+
+    /**
+     * Sets the packed RGB value of a pixel.
+     *
+     * @param x The column of the pixel.
+     * @param y The row of the pixel.
+     * @param rgb The packed RGB value.
+     */
+    public void setRGB(int x, int y, int rgb) {
+        pixels[y * width + x] = rgb;
+    }
+
+    /**
+     * Copies the pixels of a tile out of the frame buffer.
+     *
+     * @param tile The tile to copy.
+     * @return The pixels of the tile as packed RGB, row by row.
+     */
+    public int[] copyTile(Tile tile) {
+        int[] tilePixels = new int[tile.getPixelCount()];
+        for (int y = 0; y < tile.getHeight(); y++) {
+            System.arraycopy(pixels, (tile.getY() + y) * width + tile.getX(), tilePixels, y * tile.getWidth(), tile.getWidth());
+        }
+        return tilePixels;
+    }
+
+    /**
+     * Gets an image that shares the pixels of the frame buffer. Later writes to the frame buffer show up in it.
+     *
+     * @return The image, of type TYPE_INT_RGB unless the frame buffer wraps an existing image.
+     */
+    public synchronized BufferedImage toImage() {
+        if (image == null) {
+            DataBuffer buffer = new DataBufferInt(pixels, pixels.length);
+            WritableRaster raster = Raster.createPackedRaster(buffer, width, height, width, RGB_MASKS, null);
+            image = new BufferedImage(new DirectColorModel(24, RGB_MASKS[0], RGB_MASKS[1], RGB_MASKS[2]), raster, false, null);
+        }
+        return image;
+    }
+}
@@ -0,0 +1,78 @@
+package edu.up.isgc.cg.raytracer.rendering;
+
+import edu.up.isgc.cg.raytracer.tools.Radiance;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams a PFM image: uncompressed little-endian 32-bit floats holding the linear color of every pixel, without
+ * clamping, for compositing and tone mapping. PFM stores its rows from bottom to top, so every band is written at
+ * its final position in the file.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class PfmBandWriter extends BandWriter {
+    private final FileChannel channel;
+    private final long headerLength;
+    private final float[] band;
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates the file and writes the PFM header.
+     *
+     * @param path The file to write.
+     * @param width The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     * @param bandHeight The maximum number of rows of a band.
+     * @throws IOException If the file cannot be created.
+     */
+    public PfmBandWriter(Path path, int width, int height, int bandHeight) throws IOException {
+        super(width, height, bandHeight);
+        int bandValues = Math.multiplyExact(Math.multiplyExact(width, getBandHeight()), 3);
+        this.band = new float[bandValues];
+        this.buffer = ByteBuffer.allocate(Math.multiplyExact(bandValues, Float.BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        // A negative scale marks little-endian data
+        ByteBuffer header = ByteBuffer.wrap(("PF\n" + width + " " + height + "\n-1.0\n").getBytes(StandardCharsets.US_ASCII));
+        this.headerLength = header.remaining();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    @Override
+    public void setPixel(int x, int row, Radiance color) {
+        int index = (row * getWidth() + x) * 3;
+        band[index] = (float) color.getRed();
+        band[index + 1] = (float) color.getGreen();
+        band[index + 2] = (float) color.getBlue();
+    }
+
+    @Override
+    public void writeBand(int y, int rows) throws IOException {
+        int rowValues = getWidth() * 3;
+        buffer.clear();
+        for (int r = rows - 1; r >= 0; r--) {
+            buffer.asFloatBuffer().put(band, r * rowValues, rowValues);
+            buffer.position(buffer.position() + rowValues * Float.BYTES);
+        }
+        buffer.flip();
+
+        long position = headerLength + (long) (getHeight() - y - rows) * rowValues * Float.BYTES;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,160 @@
+package edu.up.isgc.cg.raytracer.rendering;
+
+import edu.up.isgc.cg.raytracer.tools.Radiance;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Streams an 8-bit RGB PNG. Every row is filtered and deflated as soon as its band is written, and the compressed
+ * data leaves in IDAT chunks of bounded size, so memory does not grow with the image.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class PngBandWriter extends BandWriter {
+    private static final byte[] SIGNATURE = {(byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int FILTER_SUB = 1;
+    private final DataOutputStream file;
+    private final ChunkOutputStream chunks;
+    private final DeflaterOutputStream data;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final int[] band;
+    private final byte[] row;
+    private int nextRow;
+
+    /**
+     * Creates the file and writes the PNG header.
+     *
+     * @param path The file to write.
+     * @param width The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     * @param bandHeight The maximum number of rows of a band.
+     * @throws IOException If the file cannot be created.
+     */
+    public PngBandWriter(Path path, int width, int height, int bandHeight) throws IOException {
+        super(width, height, bandHeight);
+        this.band = new int[Math.multiplyExact(width, getBandHeight())];
+        this.row = new byte[1 + 3 * width];
+        this.file = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+        file.write(SIGNATURE);
+
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8;  // Bits per channel
+        header[9] = 2;  // RGB
+        writeChunk("IHDR", header, header.length);
+        this.chunks = new ChunkOutputStream();
+        this.data = new DeflaterOutputStream(chunks, deflater, CHUNK_SIZE);
+    }
+
+    @Override
+    public void setPixel(int x, int row, Radiance color) {
+        band[row * getWidth() + x] = color.toRGB();
+    }
+
+    @Override
+    public void writeBand(int y, int rows) throws IOException {
+        if (y != nextRow) {
+            throw new IllegalStateException("Bands must be written from top to bottom");
+        }
+        int width = getWidth();
+        row[0] = FILTER_SUB;
+        for (int r = 0; r < rows; r++) {
+            int previous = 0;
+            for (int x = 0; x < width; x++) {
+                int rgb = band[r * width + x];
+                row[1 + 3 * x] = (byte) ((rgb >> 16) - (previous >> 16));
+                row[2 + 3 * x] = (byte) ((rgb >> 8) - (previous >> 8));
+                row[3 + 3 * x] = (byte) (rgb - previous);
+                previous = rgb;
+            }
+            data.write(row);
+        }
+        nextRow += rows;
+    }
+
+    /**
+     * Finishes the compressed data and closes the file. The image is only valid if every band was written.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            data.finish();
+            chunks.flush();
+            writeChunk("IEND", new byte[0], 0);
+        } finally {
+            deflater.end();
+            file.close();
+        }
+    }
+
+    private void writeChunk(String type, byte[] bytes, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(bytes, 0, length);
+        file.writeInt(length);
+        file.write(typeBytes);
+        file.write(bytes, 0, length);
+        file.writeInt((int) crc.getValue());
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Collects the compressed data and writes it as IDAT chunks.
+     */
+    private class ChunkOutputStream extends OutputStream {
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int length;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            while (count > 0) {
+                int copied = Math.min(count, buffer.length - length);
+                System.arraycopy(bytes, offset, buffer, length, copied);
+                length += copied;
+                offset += copied;
+                count -= copied;
+                if (length == buffer.length) {
+                    flush();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (length > 0) {
+                writeChunk("IDAT", buffer, length);
+                length = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
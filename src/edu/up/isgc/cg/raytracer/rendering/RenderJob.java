@@ -0,0 +1,163 @@
+package edu.up.isgc.cg.raytracer.rendering;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * The RenderJob class tracks a render running on a {@link TileScheduler}. It reports progress and an estimated
+ * time of arrival, hands every finished tile to a listener, and can be cancelled: tiles that have not started
+ * when {@link #cancel()} is called are skipped.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class RenderJob {
+    private final List<Tile> tiles;
+    private final long totalPixels;
+    private final Consumer<RenderedTile> listener;
+    private final long[] tileNanos;
+    private final String[] tileWorkers;
+    private final AtomicInteger completedTiles = new AtomicInteger();
+    private final AtomicLong completedPixels = new AtomicLong();
+    private final CompletableFuture<TileStatistics> completion = new CompletableFuture<>();
+    private final long startNanos = System.nanoTime();
+    private volatile boolean cancelled;
+
+    /**
+     * Constructs a new RenderJob.
+     *
+     * @param tiles The tiles of the render in scheduling order.
+     * @param listener The listener of the finished tiles, or null.
+     */
+    RenderJob(List<Tile> tiles, Consumer<RenderedTile> listener) {
+        this.tiles = tiles;
+        this.listener = listener;
+        this.tileNanos = new long[tiles.size()];
+        this.tileWorkers = new String[tiles.size()];
+        long pixels = 0;
+        for (Tile tile : tiles) {
+            pixels += tile.getPixelCount();
+        }
+        this.totalPixels = pixels;
+    }
+
+    /**
+     * Renders a tile of the job unless the job was cancelled, then records its time and publishes it.
+     *
+     * @param tile The tile to render.
+     * @param renderer The renderer of the tiles.
+     */
+    void renderTile(Tile tile, TileScheduler.TileRenderer renderer) {
+        if (cancelled) {
+            return;
+        }
+        long start = System.nanoTime();
+        int[] pixels = renderer.render(tile);
+        tileNanos[tile.getIndex()] = System.nanoTime() - start;
+        tileWorkers[tile.getIndex()] = Thread.currentThread().getName();
+        completedPixels.addAndGet(tile.getPixelCount());
+        completedTiles.incrementAndGet();
+        if (listener != null && pixels != null && !cancelled) {
+            listener.accept(new RenderedTile(tile, pixels));
+        }
+    }
+
+    /**
+     * Marks the job as finished once every tile was rendered or skipped.
+     *
+     * @param error The error that stopped the render, or null if it finished normally.
+     */
+    void finish(Throwable error) {
+        if (error != null) {
+            completion.completeExceptionally(error);
+        } else {
+            completion.complete(new TileStatistics(tiles, tileNanos, tileWorkers, System.nanoTime() - startNanos));
+        }
+    }
+
+    /**
+     * Requests the render to stop. Tiles being rendered are finished, the rest are skipped.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Checks if the render was cancelled.
+     *
+     * @return True if {@link #cancel()} was called.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Checks if every tile was rendered or skipped.
+     *
+     * @return True if the job finished.
+     */
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    /**
+     * Gets the number of tiles of the render.
+     *
+     * @return The total tile count.
+     */
+    public int getTotalTiles() {
+        return tiles.size();
+    }
+
+    /**
+     * Gets the number of tiles already rendered.
+     *
+     * @return The completed tile count.
+     */
+    public int getCompletedTiles() {
+        return completedTiles.get();
+    }
+
+    /**
+     * Gets the percentage of pixels already rendered.
+     *
+     * @return The progress, from 0 to 100.
+     */
+    public double getProgress() {
+        return totalPixels == 0 ? 100.0 : 100.0 * completedPixels.get() / totalPixels;
+    }
+
+    /**
+     * Estimates the time left from the pixels rendered so far and the elapsed time.
+     *
+     * @return The estimated remaining time in nanoseconds, or -1 if nothing has been rendered yet.
+     */
+    public long getEstimatedRemainingNanos() {
+        long done = completedPixels.get();
+        if (done == 0) {
+            return -1;
+        }
+        long elapsed = System.nanoTime() - startNanos;
+        return (long) (elapsed * ((double) (totalPixels - done) / done));
+    }
+
+    /**
+     * Gets the future completed with the statistics of the render when every tile was rendered or skipped.
+     *
+     * @return The completion of the job.
+     */
+    public CompletableFuture<TileStatistics> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * Waits for the render to finish.
+     *
+     * @return The time spent on every tile.
+     */
+    public TileStatistics join() {
+        return completion.join();
+    }
+}
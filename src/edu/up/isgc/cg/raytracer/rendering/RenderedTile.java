@@ -0,0 +1,52 @@
+package edu.up.isgc.cg.raytracer.rendering;
+
+/**
+ * The RenderedTile class holds the pixels of a tile once it has been rendered, so they can be consumed while the
+ * rest of the image is still being rendered.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class RenderedTile {
+    private final Tile tile;
+    private final int[] pixels;
+
+    /**
+     * Constructs a new RenderedTile.
+     *
+     * @param tile The tile that was rendered.
+     * @param pixels The pixels of the tile as packed RGB, row by row.
+     */
+    public RenderedTile(Tile tile, int[] pixels) {
+        this.tile = tile;
+        this.pixels = pixels;
+    }
+
+    /**
+     * Gets the tile that was rendered, which holds the coordinates of the pixels.
+     *
+     * @return The tile.
+     */
+    public Tile getTile() {
+        return tile;
+    }
+
+    /**
+     * Gets the pixels of the tile as packed RGB, row by row (tile width pixels per row).
+     *
+     * @return The pixels of the tile.
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Gets the packed RGB value of a pixel of the tile.
+     *
+     * @param x The x-coordinate relative to the tile.
+     * @param y The y-coordinate relative to the tile.
+     * @return The packed RGB value.
+     */
+    public int getRGB(int x, int y) {
+        return pixels[y * tile.getWidth() + x];
+    }
+}
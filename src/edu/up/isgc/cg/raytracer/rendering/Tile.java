@@ -0,0 +1,94 @@
+package edu.up.isgc.cg.raytracer.rendering;
+
+/**
+ * The Tile class represents a rectangular region of the image that is rendered as a single unit of work.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class Tile {
+    private final int index;
+    private final int x, y;
+    private final int width, height;
+
+    /**
+     * Constructs a new Tile.
+     *
+     * @param index The position of the tile in the scheduling order.
+     * @param x The x-coordinate of the first pixel of the tile.
+     * @param y The y-coordinate of the first pixel of the tile.
+     * @param width The width of the tile in pixels.
+     * @param height The height of the tile in pixels.
+     */
+    public Tile(int index, int x, int y, int width, int height) {
+        this.index = index;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Gets the position of the tile in the scheduling order.
+     *
+     * @return The index of the tile.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the x-coordinate of the first pixel of the tile.
+     *
+     * @return The first column of the tile.
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Gets the y-coordinate of the first pixel of the tile.
+     *
+     * @return The first row of the tile.
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Gets the width of the tile. Tiles on the right edge of the image may be narrower than the tile size.
+     *
+     * @return The width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the tile. Tiles on the bottom edge of the image may be shorter than the tile size.
+     *
+     * @return The height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the number of pixels of the tile.
+     *
+     * @return The pixel count.
+     */
+    public int getPixelCount() {
+        return width * height;
+    }
+
+    @Override
+    public String toString() {
+        return "Tile{" +
+                "index=" + index +
+                ", x=" + x +
+                ", y=" + y +
+                ", width=" + width +
+                ", height=" + height +
+                '}';
+    }
+}
@@ -0,0 +1,208 @@
+package edu.up.isgc.cg.raytracer.rendering;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * The TileScheduler class splits images into tiles and renders them on a reusable fork-join pool.
+ * Tiles are ordered along a Morton (Z-order) curve so neighbouring tiles, which touch the same geometry, are
+ * close in the work queue, and the ordered list is split recursively so idle workers steal the largest pending
+ * ranges from busy ones. This keeps every core working when a few tiles (glass, mirrors) are much more expensive
+ * than the rest.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class TileScheduler implements AutoCloseable {
+    public static final int DEFAULT_TILE_SIZE = 32;
+    private final ForkJoinPool pool;
+    private final int tileSize;
+
+    /**
+     * Renders the pixels of a single tile.
+     */
+    public interface TileRenderer {
+        /**
+         * Renders a tile. It is called concurrently for different tiles.
+         *
+         * @param tile The tile to render.
+         * @return The pixels of the tile as packed RGB, row by row, or null if the tile is not published.
+         */
+        int[] render(Tile tile);
+    }
+
+    /**
+     * Constructs a new TileScheduler with one worker per available processor and the default tile size.
+     */
+    public TileScheduler() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Constructs a new TileScheduler.
+     *
+     * @param parallelism The number of worker threads.
+     * @param tileSize The width and height of the tiles in pixels.
+     */
+    public TileScheduler(int parallelism, int tileSize) {
+        if (parallelism < 1 || tileSize < 1) {
+            throw new IllegalArgumentException("Parallelism and tile size must be positive");
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Gets the number of worker threads.
+     *
+     * @return The parallelism of the scheduler.
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Gets the width and height of the tiles.
+     *
+     * @return The tile size in pixels.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Splits an image into tiles ordered along a Morton curve. Tiles on the right and bottom edges are clipped to
+     * the image, so every pixel belongs to exactly one tile.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return The tiles in scheduling order.
+     */
+    public List<Tile> createTiles(int width, int height) {
+        int tilesX = (width + tileSize - 1) / tileSize;
+        int tilesY = (height + tileSize - 1) / tileSize;
+        List<long[]> codes = new ArrayList<>(tilesX * tilesY);
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                codes.add(new long[]{mortonCode(tx, ty), tx, ty});
+            }
+        }
+        codes.sort((a, b) -> Long.compare(a[0], b[0]));
+
+        List<Tile> tiles = new ArrayList<>(codes.size());
+        for (long[] code : codes) {
+            int x = (int) code[1] * tileSize;
+            int y = (int) code[2] * tileSize;
+            tiles.add(new Tile(tiles.size(), x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y)));
+        }
+        return Collections.unmodifiableList(tiles);
+    }
+
+    /**
+     * Renders every tile of an image and waits for all of them to finish.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param renderer The renderer called for every tile.
+     * @return The time spent on every tile.
+     */
+    public TileStatistics render(int width, int height, TileRenderer renderer) {
+        return submit(width, height, renderer, null).join();
+    }
+
+    /**
+     * Starts rendering every tile of an image without waiting for them. The listener is called from the worker
+     * threads as soon as each tile is finished, so it must be thread safe; passing
+     * {@link java.util.concurrent.SubmissionPublisher#submit} exposes the tiles as a
+     * {@link java.util.concurrent.Flow.Publisher}.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param renderer The renderer called for every tile.
+     * @param listener The listener of the finished tiles, or null.
+     * @return The job tracking the render.
+     */
+    public RenderJob submit(int width, int height, TileRenderer renderer, Consumer<RenderedTile> listener) {
+        List<Tile> tiles = createTiles(width, height);
+        RenderJob job = new RenderJob(tiles, listener);
+        TileRange root = new TileRange(job, tiles, 0, tiles.size(), renderer);
+        pool.execute(() -> {
+            Throwable error = null;
+            try {
+                root.invoke();
+            } catch (Throwable t) {
+                error = t;
+            }
+            job.finish(error);
+        });
+        return job;
+    }
+
+    /**
+     * Stops the worker threads. Renders already running are completed.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Interleaves the bits of two coordinates.
+     *
+     * @param x The first coordinate.
+     * @param y The second coordinate.
+     * @return The Morton code of the coordinates.
+     */
+    private static long mortonCode(int x, int y) {
+        return spreadBits(x) | (spreadBits(y) << 1);
+    }
+
+    private static long spreadBits(int value) {
+        long bits = value & 0xFFFFFFFFL;
+        bits = (bits | (bits << 16)) & 0x0000FFFF0000FFFFL;
+        bits = (bits | (bits << 8)) & 0x00FF00FF00FF00FFL;
+        bits = (bits | (bits << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        bits = (bits | (bits << 2)) & 0x3333333333333333L;
+        bits = (bits | (bits << 1)) & 0x5555555555555555L;
+        return bits;
+    }
+
+    /**
+     * A range of tiles that is split in halves until a single tile is left.
+     */
+    private static class TileRange extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        // Tasks are never serialized, the fields only live as long as the render
+        private final transient RenderJob job;
+        private final transient List<Tile> tiles;
+        private final int from, to;
+        private final transient TileRenderer renderer;
+
+        private TileRange(RenderJob job, List<Tile> tiles, int from, int to, TileRenderer renderer) {
+            this.job = job;
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+            this.renderer = renderer;
+        }
+
+        @Override
+        protected void compute() {
+            if (job.isCancelled()) {
+                return;
+            }
+            if (to - from == 1) {
+                job.renderTile(tiles.get(from), renderer);
+            } else if (to > from) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileRange(job, tiles, from, middle, renderer),
+                        new TileRange(job, tiles, middle, to, renderer));
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package edu.up.isgc.cg.raytracer.rendering;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The TileStatistics class holds the time spent on every tile of a render and the worker that rendered it,
+ * so the load balance of the scheduler can be checked.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class TileStatistics {
+    private final List<Tile> tiles;
+    private final long[] tileNanos;
+    private final String[] tileWorkers;
+    private final long wallNanos;
+
+    /**
+     * Constructs new TileStatistics.
+     *
+     * @param tiles The tiles of the render in scheduling order.
+     * @param tileNanos The time spent on every tile, indexed as the tiles.
+     * @param tileWorkers The name of the thread that rendered every tile, indexed as the tiles.
+     * @param wallNanos The elapsed time of the whole render.
+     */
+    TileStatistics(List<Tile> tiles, long[] tileNanos, String[] tileWorkers, long wallNanos) {
+        this.tiles = tiles;
+        this.tileNanos = tileNanos;
+        this.tileWorkers = tileWorkers;
+        this.wallNanos = wallNanos;
+    }
+
+    /**
+     * Gets the tiles of the render in scheduling order.
+     *
+     * @return The tiles.
+     */
+    public List<Tile> getTiles() {
+        return tiles;
+    }
+
+    /**
+     * Gets the time spent rendering a tile.
+     *
+     * @param tile The tile.
+     * @return The time in nanoseconds, or 0 if the tile was not rendered.
+     */
+    public long getTileNanos(Tile tile) {
+        return tileNanos[tile.getIndex()];
+    }
+
+    /**
+     * Gets the name of the thread that rendered a tile.
+     *
+     * @param tile The tile.
+     * @return The name of the worker, or null if the tile was not rendered.
+     */
+    public String getTileWorker(Tile tile) {
+        return tileWorkers[tile.getIndex()];
+    }
+
+    /**
+     * Gets the elapsed time of the whole render.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * Gets the total time every worker spent rendering tiles.
+     *
+     * @return The busy time in nanoseconds of every worker, by thread name.
+     */
+    public Map<String, Long> getWorkerNanos() {
+        Map<String, Long> workerNanos = new LinkedHashMap<>();
+        for (int i = 0; i < tileNanos.length; i++) {
+            if (tileWorkers[i] != null) {
+                workerNanos.merge(tileWorkers[i], tileNanos[i], Long::sum);
+            }
+        }
+        return workerNanos;
+    }
+
+    /**
+     * Gets the ratio between the busiest worker and the average worker. A value of 1 means the work was perfectly
+     * balanced.
+     *
+     * @return The load imbalance of the render.
+     */
+    public double getImbalance() {
+        Map<String, Long> workerNanos = getWorkerNanos();
+        if (workerNanos.isEmpty()) {
+            return 1.0;
+        }
+        long max = 0;
+        long total = 0;
+        for (long nanos : workerNanos.values()) {
+            max = Math.max(max, nanos);
+            total += nanos;
+        }
+        return total == 0 ? 1.0 : max / ((double) total / workerNanos.size());
+    }
+
+    /**
+     * Gets the time spent on the slowest tile.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getMaxTileNanos() {
+        long max = 0;
+        for (long nanos : tileNanos) {
+            max = Math.max(max, nanos);
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TileStatistics{tiles=%d, workers=%d, wall=%.3fs, slowestTile=%.3fs, imbalance=%.2f}",
+                tiles.size(), getWorkerNanos().size(), wallNanos / 1e9, getMaxTileNanos() / 1e9, getImbalance());
+    }
+}
@@ -0,0 +1,266 @@
+package edu.up.isgc.cg.raytracer.tools;
+
+import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.objects.Model3D;
+import edu.up.isgc.cg.raytracer.objects.TriangleMesh;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The AssetLoader class loads batches of .obj models concurrently. Meshes are resolved through the
+ * {@link MeshLibrary}, so a file already loaded by the process is not read again, and requests for the same file
+ * share a single load while it is in flight; every model is then an instance of the shared mesh. A mesh that is
+ * not in the library goes through two stages: its mesh cache or its text is read on a virtual thread and the text is
+ * parsed on a bounded pool of CPU workers. The models and the bounding volume hierarchies of their meshes are built
+ * on the same pool. Reads of different assets overlap with each other and with parsing, while the CPU work never
+ * runs on more threads than the pool has. New mesh caches are written on virtual threads in the background.
+ * <p>
+ * Unlike {@link OBJReader#getModel3D}, a failed asset is reported through its future, which completes exceptionally
+ * with an IOException naming the asset. The mesh cache and weld settings of {@link OBJReader} are used.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class AssetLoader implements AutoCloseable {
+    private final ExecutorService io = Executors.newVirtualThreadPerTaskExecutor();
+    private final ForkJoinPool cpu;
+    private final List<AssetTiming> timings = Collections.synchronizedList(new ArrayList<>());
+    private final List<CompletableFuture<?>> pending = Collections.synchronizedList(new ArrayList<>());
+    private final Map<Path, CompletableFuture<LoadedMesh>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * A mesh resolved through the library, with the time its own load spent in every stage.
+     */
+    private static final class LoadedMesh {
+        private TriangleMesh mesh;
+        private long bytes;
+        private boolean parsed;
+        private long readNanos;
+        private long parseNanos;
+    }
+
+    /**
+     * A request to load one model.
+     */
+    public static class Request {
+        private final String path;
+        private final Vector3D origin;
+        private final Material material;
+
+        /**
+         * Constructs a new Request.
+         *
+         * @param path The path to the .obj file.
+         * @param origin The origin position of the model.
+         * @param material The material of the model.
+         */
+        public Request(String path, Vector3D origin, Material material) {
+            this.path = path;
+            this.origin = origin;
+            this.material = material;
+        }
+
+        /**
+         * Gets the path to the .obj file.
+         *
+         * @return The path.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Gets the origin position of the model.
+         *
+         * @return The origin.
+         */
+        public Vector3D getOrigin() {
+            return origin;
+        }
+
+        /**
+         * Gets the material of the model.
+         *
+         * @return The material.
+         */
+        public Material getMaterial() {
+            return material;
+        }
+    }
+
+    /**
+     * Constructs a new AssetLoader with one CPU worker per available processor.
+     */
+    public AssetLoader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new AssetLoader.
+     *
+     * @param parallelism The number of CPU workers that parse files and build models.
+     */
+    public AssetLoader(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.cpu = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Starts loading a batch of models.
+     *
+     * @param requests The models to load.
+     * @return The future of every model, in the order of the requests.
+     */
+    public List<CompletableFuture<Model3D>> loadAll(List<Request> requests) {
+        List<CompletableFuture<Model3D>> models = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            models.add(load(request));
+        }
+        return models;
+    }
+
+    /**
+     * Starts loading a model.
+     *
+     * @param request The model to load.
+     * @return The future model. It completes exceptionally with an IOException if the asset cannot be loaded.
+     */
+    public CompletableFuture<Model3D> load(Request request) {
+        long start = System.nanoTime();
+        CompletableFuture<Model3D> model = new CompletableFuture<>();
+        pending.add(model);
+
+        Path key = Path.of(request.getPath()).toAbsolutePath().normalize();
+        CompletableFuture<LoadedMesh> created = new CompletableFuture<>();
+        CompletableFuture<LoadedMesh> mesh = inFlight.putIfAbsent(key, created);
+        boolean owner = mesh == null;
+        if (owner) {
+            mesh = created;
+            io.execute(() -> {
+                try {
+                    LoadedMesh loaded = resolve(request.getPath());
+                    inFlight.remove(key, created);
+                    created.complete(loaded);
+                } catch (IOException | RuntimeException e) {
+                    inFlight.remove(key, created);
+                    created.completeExceptionally(e);
+                }
+            });
+        }
+
+        mesh.whenCompleteAsync((loaded, error) -> {
+            if (error != null) {
+                fail(model, request, error);
+                return;
+            }
+            try {
+                long buildStart = System.nanoTime();
+                Model3D result = new Model3D(request.getOrigin(), loaded.mesh, request.getMaterial());
+                long end = System.nanoTime();
+                // Requests that shared the load of another one did not read nor parse anything themselves
+                timings.add(new AssetTiming(request.getPath(), loaded.bytes, !owner || !loaded.parsed,
+                        owner ? loaded.readNanos : 0, owner ? loaded.parseNanos : 0, end - buildStart, end - start));
+                model.complete(result);
+            } catch (RuntimeException e) {
+                fail(model, request, e);
+            }
+        }, cpu);
+        return model;
+    }
+
+    /**
+     * Gets the mesh of an asset from the library, loading it if the library does not have it. Runs on a virtual
+     * thread, which waits for the CPU workers while the file is parsed.
+     */
+    private LoadedMesh resolve(String path) throws IOException {
+        LoadedMesh loaded = new LoadedMesh();
+        loaded.bytes = Files.size(Path.of(path));
+        loaded.mesh = MeshLibrary.getMesh(path, (file, weldTolerance) -> {
+            Path source = Path.of(file);
+            long readStart = System.nanoTime();
+            TriangleMesh cached = OBJReader.loadCachedMesh(source, weldTolerance);
+            ByteBuffer content = cached == null ? ByteBuffer.wrap(Files.readAllBytes(source)) : null;
+            loaded.readNanos = System.nanoTime() - readStart;
+            if (cached != null) {
+                return cached;
+            }
+
+            long parseStart = System.nanoTime();
+            TriangleMesh parsed = parse(content, weldTolerance);
+            loaded.parseNanos = System.nanoTime() - parseStart;
+            loaded.parsed = true;
+            pending.add(CompletableFuture.runAsync(() -> OBJReader.storeCachedMesh(source, weldTolerance, parsed), io));
+            return parsed;
+        });
+        return loaded;
+    }
+
+    /**
+     * Parses the contents of a .obj file on the CPU workers.
+     */
+    private TriangleMesh parse(ByteBuffer content, double weldTolerance) throws IOException {
+        try {
+            return cpu.submit(() -> OBJParser.parse(content, cpu.getParallelism(), weldTolerance)).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing");
+        }
+    }
+
+    private static void fail(CompletableFuture<Model3D> model, Request request, Throwable cause) {
+        model.completeExceptionally(new IOException("Could not load " + request.getPath(), cause));
+    }
+
+    /**
+     * Gets the timings of the models loaded so far.
+     *
+     * @return The timings, in the order the models were finished.
+     */
+    public List<AssetTiming> getTimings() {
+        synchronized (timings) {
+            return new ArrayList<>(timings);
+        }
+    }
+
+    /**
+     * Waits for every pending load and cache write, then stops the threads of the loader.
+     */
+    @Override
+    public void close() {
+        CompletableFuture<?>[] futures;
+        synchronized (pending) {
+            futures = pending.toArray(new CompletableFuture<?>[0]);
+        }
+        CompletableFuture.allOf(futures).exceptionally(e -> null).join();
+        // Cache writes are registered before the model they belong to is completed
+        synchronized (pending) {
+            futures = pending.toArray(new CompletableFuture<?>[0]);
+        }
+        CompletableFuture.allOf(futures).exceptionally(e -> null).join();
+        io.close();
+        cpu.close();
+    }
+}
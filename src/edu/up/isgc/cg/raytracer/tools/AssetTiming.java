@@ -0,0 +1,109 @@
+package edu.up.isgc.cg.raytracer.tools;
+
+/**
+ * The AssetTiming class holds the time an asset spent in every stage of an {@link AssetLoader}.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class AssetTiming {
+    private final String path;
+    private final long bytes;
+    private final boolean cached;
+    private final long readNanos;
+    private final long parseNanos;
+    private final long buildNanos;
+    private final long totalNanos;
+
+    /**
+     * Constructs new AssetTiming.
+     *
+     * @param path The path of the asset.
+     * @param bytes The size of the .obj file.
+     * @param cached True if the mesh was not parsed: it was in the {@link MeshLibrary}, shared with another request
+     *               of the batch or loaded from its mesh cache.
+     * @param readNanos The time spent reading the mesh cache or the file, 0 if the mesh was not read for this asset.
+     * @param parseNanos The time spent parsing the file, 0 if it was cached.
+     * @param buildNanos The time spent building the model and its hierarchy.
+     * @param totalNanos The time from the request to the model being ready, including the time spent waiting for
+     *                   a thread.
+     */
+    AssetTiming(String path, long bytes, boolean cached, long readNanos, long parseNanos, long buildNanos, long totalNanos) {
+        this.path = path;
+        this.bytes = bytes;
+        this.cached = cached;
+        this.readNanos = readNanos;
+        this.parseNanos = parseNanos;
+        this.buildNanos = buildNanos;
+        this.totalNanos = totalNanos;
+    }
+
+    /**
+     * Gets the path of the asset.
+     *
+     * @return The path as it was requested.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Gets the size of the .obj file.
+     *
+     * @return The size in bytes.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Checks if the mesh was taken from the mesh library, shared with another request or loaded from its mesh cache.
+     *
+     * @return True if the file was not parsed.
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * Gets the time spent reading the mesh cache or the file.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    /**
+     * Gets the time spent parsing the file.
+     *
+     * @return The time in nanoseconds, 0 if the mesh was cached.
+     */
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * Gets the time spent building the model and its bounding volume hierarchy.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+
+    /**
+     * Gets the time from the request to the model being ready.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AssetTiming{path=%s, size=%dK, %s, read=%.1fms, parse=%.1fms, build=%.1fms, total=%.1fms}",
+                path, bytes / 1024, cached ? "cached" : "parsed", readNanos / 1e6, parseNanos / 1e6,
+                buildNanos / 1e6, totalNanos / 1e6);
+    }
+}
@@ -12,6 +12,7 @@ public class Material {
     public static final double MAX_SHININESS = 100.0;
 
     private Color color = Color.WHITE;
+    private Radiance radiance = Radiance.fromColor(color);
     private double reflectivity;
     private double refractivity;
     private double shininess;
@@ -33,7 +34,7 @@ public class Material {
      * @param absorption The absorption of the material.
      */
     public Material(Color color, double reflectivity, double refractivity, double shininess, double absorption) {
-        this.color = color;
+        setColor(color);
         this.reflectivity = reflectivity;
         this.refractivity = refractivity;
         this.shininess = shininess;
@@ -81,6 +82,16 @@ public class Material {
      */
     public void setColor(Color color) {
         this.color = color;
+        this.radiance = Radiance.fromColor(color);
+    }
+
+    /**
+     * Gets the color of the material as linear radiance. The returned instance is shared and must not be modified.
+     *
+     * @return The radiance of the material color.
+     */
+    public Radiance getRadiance() {
+        return radiance;
     }
 
     /**
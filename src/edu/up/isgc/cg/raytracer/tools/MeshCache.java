@@ -0,0 +1,154 @@
+package edu.up.isgc.cg.raytracer.tools;
+
+import edu.up.isgc.cg.raytracer.objects.TriangleMesh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * The MeshCache class keeps a binary copy of every parsed OBJ file next to it, holding the final indexed mesh after
+ * welding and smoothing. Later loads map the binary file into memory and copy the arrays in bulk instead of parsing
+ * text. A cache file is only used if it was written from a source of the same size and checksum with the same weld
+ * tolerance, so edited OBJ files are parsed again and their cache is replaced.
+ * <p>
+ * Layout, little-endian: magic, version, source size, source checksum, weld tolerance, triangle count, vertex count,
+ * normal count, then the position and normal pools as doubles and the position and normal indices as ints.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public abstract class MeshCache {
+    public static final String EXTENSION = ".meshcache";
+    private static final int MAGIC = 0x48534D52; // "RMSH"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 8 + 4 + 4 + 4;
+    private static final long CHECKSUM_REGION = 1L << 30;
+
+    /**
+     * Gets the cache file of an OBJ file.
+     *
+     * @param source The OBJ file.
+     * @return The path of its cache, in the same directory.
+     */
+    public static Path getCachePath(Path source) {
+        return source.resolveSibling(source.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Loads the cached mesh of an OBJ file.
+     *
+     * @param source The OBJ file.
+     * @param weldTolerance The weld tolerance the mesh must have been parsed with.
+     * @return The cached mesh, or null if there is no cache or it was written for another version of the file.
+     * @throws IOException If the source or the cache cannot be read.
+     */
+    public static TriangleMesh load(Path source, double weldTolerance) throws IOException {
+        Path cache = getCachePath(source);
+        if (!Files.isRegularFile(cache)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                return null;
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION
+                    || header.getLong() != Files.size(source) || header.getLong() != checksum(source)
+                    || Double.compare(header.getDouble(), weldTolerance) != 0) {
+                return null;
+            }
+            int triangleCount = header.getInt();
+            int vertexCount = header.getInt();
+            int normalCount = header.getInt();
+            if (triangleCount < 0 || vertexCount < 0 || normalCount < 0) {
+                return null;
+            }
+            long positionBytes = (long) vertexCount * 3 * Double.BYTES;
+            long normalBytes = (long) normalCount * 3 * Double.BYTES;
+            long indexBytes = (long) triangleCount * 3 * Integer.BYTES;
+            if (channel.size() != HEADER_BYTES + positionBytes + normalBytes + indexBytes * 2) {
+                return null;
+            }
+
+            double[] positions = new double[vertexCount * 3];
+            double[] normals = new double[normalCount * 3];
+            int[] positionIndices = new int[triangleCount * 3];
+            int[] normalIndices = new int[triangleCount * 3];
+            // Each array is mapped on its own, as a single mapping cannot exceed 2 GB
+            long offset = HEADER_BYTES;
+            map(channel, offset, positionBytes).asDoubleBuffer().get(positions);
+            offset += positionBytes;
+            map(channel, offset, normalBytes).asDoubleBuffer().get(normals);
+            offset += normalBytes;
+            map(channel, offset, indexBytes).asIntBuffer().get(positionIndices);
+            offset += indexBytes;
+            map(channel, offset, indexBytes).asIntBuffer().get(normalIndices);
+            return new TriangleMesh(positions, normals, positionIndices, normalIndices);
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Writes the cache of an OBJ file. The cache is written to a temporary file and then moved into place, so
+     * concurrent readers never see a partial cache.
+     *
+     * @param source The OBJ file the mesh was parsed from.
+     * @param weldTolerance The weld tolerance the mesh was parsed with.
+     * @param mesh The parsed mesh.
+     * @throws IOException If the cache cannot be written.
+     */
+    public static void store(Path source, double weldTolerance, TriangleMesh mesh) throws IOException {
+        Path cache = getCachePath(source);
+        double[] positions = mesh.getPositions();
+        double[] normals = mesh.getNormals();
+        int[] positionIndices = mesh.getPositionIndices();
+        int[] normalIndices = mesh.getNormalIndices();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + (positions.length + normals.length) * Double.BYTES
+                        + (positionIndices.length + normalIndices.length) * Integer.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(Files.size(source)).putLong(checksum(source))
+                .putDouble(weldTolerance).putInt(mesh.getTriangleCount()).putInt(mesh.getVertexCount())
+                .putInt(mesh.getNormalCount());
+        buffer.asDoubleBuffer().put(positions).put(normals);
+        buffer.position(buffer.position() + (positions.length + normals.length) * Double.BYTES);
+        buffer.asIntBuffer().put(positionIndices).put(normalIndices);
+        buffer.rewind();
+
+        Path temporary = Files.createTempFile(cache.toAbsolutePath().getParent(), source.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Calculates the CRC-32C of a file, reading it through a memory map.
+     */
+    private static long checksum(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            CRC32C crc = new CRC32C();
+            long size = channel.size();
+            for (long position = 0; position < size; position += CHECKSUM_REGION) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHECKSUM_REGION, size - position)));
+            }
+            return crc.getValue();
+        }
+    }
+}
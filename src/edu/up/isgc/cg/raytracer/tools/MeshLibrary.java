@@ -0,0 +1,209 @@
+package edu.up.isgc.cg.raytracer.tools;
+
+import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.acceleration.BVH;
+import edu.up.isgc.cg.raytracer.objects.Model3D;
+import edu.up.isgc.cg.raytracer.objects.TriangleBatch;
+import edu.up.isgc.cg.raytracer.objects.TriangleMesh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The MeshLibrary class keeps the meshes of the .obj files loaded by the process, keyed by their path, so a file used
+ * by many models is loaded once and its mesh, which is immutable, is shared by all of them. The library holds up to a
+ * number of bytes of meshes, with their hierarchies and triangle batches, and evicts the least recently used meshes
+ * beyond that; evicted meshes stay alive as long as a model references them, they are just loaded again by the next
+ * request. A mesh is loaded again too if its file changed or the weld tolerance of {@link OBJReader} is different.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public abstract class MeshLibrary {
+    public static final long DEFAULT_CAPACITY = 256L << 20;
+    private static final Map<Path, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+    private static long capacity = DEFAULT_CAPACITY;
+    private static long size;
+
+    /**
+     * A mesh of the library and the version of the file it was loaded from.
+     */
+    private static final class Entry {
+        private final TriangleMesh mesh;
+        private final double weldTolerance;
+        private final long fileSize;
+        private final long lastModified;
+        private final long bytes;
+
+        private Entry(TriangleMesh mesh, double weldTolerance, BasicFileAttributes attributes) {
+            this.mesh = mesh;
+            this.weldTolerance = weldTolerance;
+            this.fileSize = attributes.size();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+            this.bytes = mesh.getMemoryFootprint() + BVH.getMaxMemoryFootprint(mesh.getTriangleCount())
+                    + TriangleBatch.getMemoryFootprint(mesh.getTriangleCount());
+        }
+
+        private boolean matches(double weldTolerance, BasicFileAttributes attributes) {
+            return Double.compare(this.weldTolerance, weldTolerance) == 0 && fileSize == attributes.size()
+                    && lastModified == attributes.lastModifiedTime().toMillis();
+        }
+    }
+
+    /**
+     * A Loader loads the mesh of a .obj file that is not in the library.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        /**
+         * Loads the mesh of a .obj file.
+         *
+         * @param path The path to the .obj file.
+         * @param weldTolerance The weld tolerance of {@link OBJReader}.
+         * @return The mesh of the file.
+         * @throws IOException If the file cannot be read or parsed.
+         */
+        TriangleMesh load(String path, double weldTolerance) throws IOException;
+    }
+
+    /**
+     * Gets the mesh of a .obj file, loading it with {@link OBJReader#loadMesh} if it is not in the library.
+     *
+     * @param path The path to the .obj file.
+     * @return The shared mesh of the file. It must not be modified.
+     * @throws IOException If the file cannot be read or parsed.
+     */
+    public static TriangleMesh getMesh(String path) throws IOException {
+        return getMesh(path, OBJReader::loadMesh);
+    }
+
+    /**
+     * Gets the mesh of a .obj file, loading it with a given loader if it is not in the library. The loaded mesh is
+     * added to the library as if it had been loaded by {@link #getMesh(String)}.
+     *
+     * @param path The path to the .obj file.
+     * @param loader The loader of the mesh, only called if the library has no current mesh of the file.
+     * @return The shared mesh of the file. It must not be modified.
+     * @throws IOException If the file cannot be read or parsed.
+     */
+    public static TriangleMesh getMesh(String path, Loader loader) throws IOException {
+        Path key = Path.of(path).toAbsolutePath().normalize();
+        double weldTolerance = OBJReader.getWeldTolerance();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(key);
+            if (entry != null && entry.matches(weldTolerance, attributes)) {
+                return entry.mesh;
+            }
+        }
+
+        // Loaded without holding the lock, so different files load concurrently
+        Entry loaded = new Entry(loader.load(path, weldTolerance), weldTolerance, attributes);
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(key);
+            if (entry != null && entry.matches(weldTolerance, attributes)) {
+                return entry.mesh;
+            }
+            remove(key);
+            if (loaded.bytes <= capacity) {
+                ENTRIES.put(key, loaded);
+                size += loaded.bytes;
+                evict();
+            }
+        }
+        return loaded.mesh;
+    }
+
+    /**
+     * Creates a model that is an instance of the shared mesh of a .obj file, with its own transformation and
+     * material but no copy of the mesh. Every model keeps its mesh in object space, so this is the same as
+     * constructing a {@link Model3D} with the mesh from {@link #getMesh}.
+     *
+     * @param path The path to the .obj file.
+     * @param origin The origin position of the instance.
+     * @param material The material of the instance.
+     * @return The new instance.
+     * @throws IOException If the file cannot be read or parsed.
+     */
+    public static Model3D createInstance(String path, Vector3D origin, Material material) throws IOException {
+        return new Model3D(origin, getMesh(path), material);
+    }
+
+    /**
+     * Gets the number of bytes the library may hold.
+     *
+     * @return The capacity in bytes.
+     */
+    public static long getCapacity() {
+        synchronized (ENTRIES) {
+            return capacity;
+        }
+    }
+
+    /**
+     * Sets the number of bytes the library may hold, evicting the least recently used meshes beyond it.
+     *
+     * @param bytes The capacity in bytes.
+     */
+    public static void setCapacity(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("The capacity cannot be negative");
+        }
+        synchronized (ENTRIES) {
+            capacity = bytes;
+            evict();
+        }
+    }
+
+    /**
+     * Gets the number of bytes held by the library, counting the largest hierarchy every mesh can have and its
+     * triangle batch, which is only built once a triangle kernel is set.
+     *
+     * @return The size in bytes.
+     */
+    public static long getSize() {
+        synchronized (ENTRIES) {
+            return size;
+        }
+    }
+
+    /**
+     * Gets the number of meshes in the library.
+     *
+     * @return The number of meshes.
+     */
+    public static int getMeshCount() {
+        synchronized (ENTRIES) {
+            return ENTRIES.size();
+        }
+    }
+
+    /**
+     * Removes every mesh from the library.
+     */
+    public static void clear() {
+        synchronized (ENTRIES) {
+            ENTRIES.clear();
+            size = 0;
+        }
+    }
+
+    private static void remove(Path key) {
+        Entry removed = ENTRIES.remove(key);
+        if (removed != null) {
+            size -= removed.bytes;
+        }
+    }
+
+    private static void evict() {
+        Iterator<Entry> eldest = ENTRIES.values().iterator();
+        while (size > capacity && eldest.hasNext()) {
+            size -= eldest.next().bytes;
+            eldest.remove();
+        }
+    }
+}
@@ -0,0 +1,843 @@
+package edu.up.isgc.cg.raytracer.tools;
+
+import edu.up.isgc.cg.raytracer.Vector3D;
+import edu.up.isgc.cg.raytracer.objects.TriangleMesh;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The OBJParser class parses .obj files straight from a memory-mapped file. The file is split into chunks at line
+ * boundaries that are parsed in parallel into primitive arrays, without regular expressions, per-line strings or
+ * boxed indices; numbers are read by a hand-written scanner that only falls back to the JDK for the rare values it
+ * cannot convert exactly. The chunks are then merged, resolving relative indices and smoothing groups that cross
+ * chunk boundaries.
+ * <p>
+ * The result is an indexed mesh: every vertex of the file is stored once and referenced by index, normals are
+ * pooled the same way, and vertices or normals that no face references are dropped. Its triangles are identical to
+ * the ones of {@link OBJReader#readTriangles(String)}: quads are split into the same two triangles, vertices are
+ * reordered the same way, faces with more than four vertices keep their first triangle only, and smoothing groups
+ * average the corner normals of every vertex in the same order, in one pass over the indices.
+ * <p>
+ * Optionally, vertices closer than a tolerance are welded into the first of them before the normals are calculated,
+ * which joins faces that an exporter split into separate vertices so they are smoothed together; triangles that
+ * collapse in the process are dropped.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public abstract class OBJParser {
+    /**
+     * The weld tolerance that keeps every vertex of the file as it is.
+     */
+    public static final double NO_WELDING = -1;
+    private static final int MIN_CHUNK_BYTES = 1 << 18;
+    private static final long MAX_CHUNK_BYTES = 1L << 30;
+    private static final int CHUNKS_PER_WORKER = 4;
+    private static final int NO_SMOOTHING = -1;
+    private static final int INHERITED_SMOOTHING = Integer.MIN_VALUE;
+    private static final int NO_NORMAL = Integer.MIN_VALUE;
+    private static final int MISSING_NORMAL = Integer.MIN_VALUE + 1;
+    // v0, v1, v2, n0, n1, n2, smoothing group
+    private static final int TRIANGLE_INTS = 7;
+    // Every power of ten up to 1e22 is exact, so one multiplication or division of an exact mantissa rounds correctly
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * Parses a .obj file using every worker of the common pool.
+     *
+     * @param path The path to the .obj file.
+     * @return The mesh of the file.
+     * @throws IOException If the file cannot be read or references vertices that do not exist.
+     */
+    public static TriangleMesh parse(Path path) throws IOException {
+        return parse(path, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Parses a .obj file.
+     *
+     * @param path The path to the .obj file.
+     * @param parallelism The number of workers to split the file for; 1 parses it on the calling thread.
+     * @return The mesh of the file.
+     * @throws IOException If the file cannot be read or references vertices that do not exist.
+     */
+    public static TriangleMesh parse(Path path, int parallelism) throws IOException {
+        return parse(path, parallelism, NO_WELDING);
+    }
+
+    /**
+     * Parses a .obj file, welding the vertices that are closer than a tolerance.
+     *
+     * @param path The path to the .obj file.
+     * @param parallelism The number of workers to split the file for; 1 parses it on the calling thread.
+     * @param weldTolerance The largest distance between two vertices that are welded, 0 to weld only vertices at
+     *                      the same position, or {@link #NO_WELDING}.
+     * @return The mesh of the file.
+     * @throws IOException If the file cannot be read or references vertices that do not exist.
+     */
+    public static TriangleMesh parse(Path path, int parallelism, double weldTolerance) throws IOException {
+        return parse(split(path, parallelism), parallelism, weldTolerance);
+    }
+
+    /**
+     * Parses the contents of a .obj file that were already read into memory, welding the vertices that are closer
+     * than a tolerance.
+     *
+     * @param content The bytes of the file, from its position to its limit. The buffer itself is not modified.
+     * @param parallelism The number of workers to split the content for; 1 parses it on the calling thread.
+     * @param weldTolerance The largest distance between two vertices that are welded, 0 to weld only vertices at
+     *                      the same position, or {@link #NO_WELDING}.
+     * @return The mesh of the file.
+     * @throws IOException If the content references vertices that do not exist.
+     */
+    public static TriangleMesh parse(ByteBuffer content, int parallelism, double weldTolerance) throws IOException {
+        return parse(split(content, parallelism), parallelism, weldTolerance);
+    }
+
+    private static TriangleMesh parse(List<ByteBuffer> buffers, int parallelism, double weldTolerance) throws IOException {
+        if (Double.isNaN(weldTolerance) || Double.isInfinite(weldTolerance)) {
+            throw new IllegalArgumentException("The weld tolerance must be finite");
+        }
+        try {
+            List<Chunk> chunks = (parallelism > 1 ? buffers.parallelStream() : buffers.stream()).map(Chunk::parse).toList();
+            return assemble(chunks, weldTolerance);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Maps the file as chunks that start at the beginning of a line.
+     */
+    private static List<ByteBuffer> split(Path path, int parallelism) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long count = parallelism > 1 ? Math.min((long) parallelism * CHUNKS_PER_WORKER, size / MIN_CHUNK_BYTES) : 1;
+            count = Math.max(Math.max(count, 1), (size + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+
+            List<ByteBuffer> buffers = new ArrayList<>();
+            long start = 0;
+            for (long k = 1; k <= count; k++) {
+                long end = k == count ? size : nextLine(channel, Math.max(size * k / count, start), size);
+                if (end > start) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                    buffers.add(buffer);
+                }
+                start = end;
+            }
+            return buffers;
+        }
+    }
+
+    /**
+     * Slices the content as chunks that start at the beginning of a line.
+     */
+    private static List<ByteBuffer> split(ByteBuffer content, int parallelism) {
+        int offset = content.position();
+        int size = content.remaining();
+        int count = parallelism > 1 ? Math.max(Math.min(parallelism * CHUNKS_PER_WORKER, size / MIN_CHUNK_BYTES), 1) : 1;
+
+        List<ByteBuffer> buffers = new ArrayList<>();
+        int start = 0;
+        for (int k = 1; k <= count; k++) {
+            int end = k == count ? size : nextLine(content, offset, Math.max((int) ((long) size * k / count), start), size);
+            if (end > start) {
+                buffers.add(content.slice(offset + start, end - start));
+            }
+            start = end;
+        }
+        return buffers;
+    }
+
+    /**
+     * Finds the first position after a line terminator at or after the given position of the content.
+     */
+    private static int nextLine(ByteBuffer content, int offset, int position, int size) {
+        while (position < size) {
+            byte b = content.get(offset + position++);
+            if (b == '\n' || b == '\r') {
+                return position;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Finds the first position after a line terminator at or after the given position.
+     */
+    private static long nextLine(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        while (position < size) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = window.get(i);
+                if (b == '\n' || b == '\r') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Merges the chunks and builds the mesh: resolves the indices, welds the vertices, calculates the flat normals of
+     * the faces without normals and averages the normals of every smoothing group.
+     */
+    private static TriangleMesh assemble(List<Chunk> chunks, double weldTolerance) throws IOException {
+        int vertexCount = 0, normalCount = 0, triangleCount = 0;
+        for (Chunk chunk : chunks) {
+            vertexCount += chunk.vertices.size / 3;
+            normalCount += chunk.normals.size / 3;
+            triangleCount += chunk.triangles.size / TRIANGLE_INTS;
+        }
+        double[] vertices = new double[vertexCount * 3];
+        double[] fileNormals = new double[normalCount * 3];
+        int[] triangles = new int[triangleCount * TRIANGLE_INTS];
+
+        int vertexOffset = 0, normalOffset = 0, triangleOffset = 0;
+        int smoothingGroup = NO_SMOOTHING;
+        for (Chunk chunk : chunks) {
+            int[] chunkTriangles = chunk.triangles.values;
+            for (int i = 0; i < chunk.relativeVertices.size; i++) {
+                chunkTriangles[chunk.relativeVertices.values[i]] += vertexOffset;
+            }
+            for (int i = 0; i < chunk.relativeNormals.size; i++) {
+                chunkTriangles[chunk.relativeNormals.values[i]] += normalOffset;
+            }
+            for (int t = TRIANGLE_INTS - 1; t < chunk.triangles.size; t += TRIANGLE_INTS) {
+                if (chunkTriangles[t] == INHERITED_SMOOTHING) {
+                    chunkTriangles[t] = smoothingGroup;
+                }
+            }
+            if (normalOffset == 0) {
+                // Faces read before the first normal of the file get flat normals even if they reference normals
+                for (int t = 0; t < chunk.trianglesBeforeNormals; t += TRIANGLE_INTS) {
+                    Arrays.fill(chunkTriangles, t + 3, t + 6, NO_NORMAL);
+                }
+            }
+            if (chunk.smoothingGroup != INHERITED_SMOOTHING) {
+                smoothingGroup = chunk.smoothingGroup;
+            }
+
+            System.arraycopy(chunk.vertices.values, 0, vertices, vertexOffset * 3, chunk.vertices.size);
+            System.arraycopy(chunk.normals.values, 0, fileNormals, normalOffset * 3, chunk.normals.size);
+            System.arraycopy(chunkTriangles, 0, triangles, triangleOffset, chunk.triangles.size);
+            vertexOffset += chunk.vertices.size / 3;
+            normalOffset += chunk.normals.size / 3;
+            triangleOffset += chunk.triangles.size;
+        }
+
+        for (int t = 0; t < triangles.length; t += TRIANGLE_INTS) {
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = triangles[t + corner];
+                if (vertex < 0 || vertex >= vertexCount) {
+                    throw new IOException("A face references vertex " + (vertex + 1) + " but there are " + vertexCount);
+                }
+                int normal = triangles[t + 3 + corner];
+                if (normal == MISSING_NORMAL) {
+                    throw new IOException("A face has fewer normals than vertices");
+                } else if (normal != NO_NORMAL && (normal < 0 || normal >= normalCount)) {
+                    throw new IOException("A face references normal " + (normal + 1) + " but there are " + normalCount);
+                }
+            }
+        }
+
+        if (weldTolerance >= 0) {
+            triangles = dropCollapsed(triangles, weld(vertices, weldTolerance));
+            triangleCount = triangles.length / TRIANGLE_INTS;
+        }
+        double[] positions = poolPositions(vertices, triangles);
+        double[] normals = poolNormals(triangles, positions, fileNormals);
+        int[] positionIndices = new int[triangleCount * 3];
+        int[] normalIndices = new int[triangleCount * 3];
+        for (int t = 0; t < triangleCount; t++) {
+            System.arraycopy(triangles, t * TRIANGLE_INTS, positionIndices, t * 3, 3);
+            System.arraycopy(triangles, t * TRIANGLE_INTS + 3, normalIndices, t * 3, 3);
+        }
+        return new TriangleMesh(positions, normals, positionIndices, normalIndices);
+    }
+
+    /**
+     * Welds every vertex into the first vertex of the file that lies within the tolerance of it. The vertices are
+     * hashed into a grid of cells as large as the tolerance, so only the 27 cells around a vertex are searched.
+     *
+     * @return The vertex every vertex is welded into.
+     */
+    private static int[] weld(double[] vertices, double tolerance) {
+        int vertexCount = vertices.length / 3;
+        int[] welded = new int[vertexCount];
+        int[] next = new int[vertexCount];
+        int[] buckets = new int[Integer.highestOneBit(Math.max(vertexCount, 1) * 2 - 1) * 2];
+        Arrays.fill(buckets, -1);
+        int mask = buckets.length - 1;
+        int reach = tolerance > 0 ? 1 : 0;
+        double squaredTolerance = tolerance * tolerance;
+        long[] cell = new long[3];
+
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            for (int axis = 0; axis < 3; axis++) {
+                double value = vertices[vertex * 3 + axis] + 0.0;  // -0.0 and 0.0 share a cell
+                cell[axis] = tolerance > 0 ? (long) Math.floor(value / tolerance) : Double.doubleToLongBits(value);
+            }
+
+            int target = vertex;
+            for (int dx = -reach; dx <= reach; dx++) {
+                for (int dy = -reach; dy <= reach; dy++) {
+                    for (int dz = -reach; dz <= reach; dz++) {
+                        int bucket = cellHash(cell[0] + dx, cell[1] + dy, cell[2] + dz) & mask;
+                        for (int other = buckets[bucket]; other >= 0; other = next[other]) {
+                            if (other < target && squaredDistance(vertices, vertex, other) <= squaredTolerance) {
+                                target = other;
+                            }
+                        }
+                    }
+                }
+            }
+            welded[vertex] = target;
+            if (target == vertex) {
+                int bucket = cellHash(cell[0], cell[1], cell[2]) & mask;
+                next[vertex] = buckets[bucket];
+                buckets[bucket] = vertex;
+            }
+        }
+        return welded;
+    }
+
+    /**
+     * Points the triangle records at the vertices they are welded into, dropping the triangles in which two corners
+     * were welded together.
+     */
+    private static int[] dropCollapsed(int[] triangles, int[] welded) {
+        int kept = 0;
+        for (int t = 0; t < triangles.length; t += TRIANGLE_INTS) {
+            int a = welded[triangles[t]], b = welded[triangles[t + 1]], c = welded[triangles[t + 2]];
+            if (a != b && b != c && a != c) {
+                System.arraycopy(triangles, t, triangles, kept, TRIANGLE_INTS);
+                triangles[kept] = a;
+                triangles[kept + 1] = b;
+                triangles[kept + 2] = c;
+                kept += TRIANGLE_INTS;
+            }
+        }
+        return kept == triangles.length ? triangles : Arrays.copyOf(triangles, kept);
+    }
+
+    private static int cellHash(long x, long y, long z) {
+        long hash = x * 0x9E3779B97F4A7C15L ^ y * 0xC2B2AE3D27D4EB4FL ^ z * 0x165667B19E3779F9L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static double squaredDistance(double[] vertices, int a, int b) {
+        double dx = vertices[a * 3] - vertices[b * 3];
+        double dy = vertices[a * 3 + 1] - vertices[b * 3 + 1];
+        double dz = vertices[a * 3 + 2] - vertices[b * 3 + 2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Builds the position pool from the vertices referenced by the faces, in the order they are first referenced, and
+     * rewrites the vertex indices of the triangle records to it.
+     */
+    private static double[] poolPositions(double[] vertices, int[] triangles) {
+        int[] ids = new int[vertices.length / 3];
+        Arrays.fill(ids, -1);
+        DoubleList positions = new DoubleList();
+        for (int t = 0; t < triangles.length; t += TRIANGLE_INTS) {
+            for (int corner = t; corner < t + 3; corner++) {
+                int vertex = triangles[corner];
+                if (ids[vertex] < 0) {
+                    ids[vertex] = positions.size / 3;
+                    positions.add(vertices, vertex * 3);
+                }
+                triangles[corner] = ids[vertex];
+            }
+        }
+        return positions.toArray();
+    }
+
+    /**
+     * Builds the normal pool and rewrites the normal indices of the triangle records to it. Faces outside smoothing
+     * groups reference the normals of the file, or one flat normal per face; faces in a smoothing group reference
+     * one averaged normal per vertex of the group.
+     */
+    private static double[] poolNormals(int[] triangles, double[] positions, double[] fileNormals) {
+        int[] ids = new int[fileNormals.length / 3];
+        Arrays.fill(ids, -1);
+        DoubleList normals = new DoubleList();
+        Map<Integer, IntList> smoothingGroups = new HashMap<>();
+        double[] flat = new double[3];
+
+        for (int t = 0; t < triangles.length; t += TRIANGLE_INTS) {
+            int group = triangles[t + 6];
+            if (group != NO_SMOOTHING) {
+                smoothingGroups.computeIfAbsent(group, key -> new IntList()).add(t);
+            } else if (triangles[t + 3] == NO_NORMAL) {
+                flatNormal(positions, triangles, t, flat);
+                Arrays.fill(triangles, t + 3, t + 6, normals.size / 3);
+                normals.add(flat, 0);
+            } else {
+                for (int corner = t + 3; corner < t + 6; corner++) {
+                    int normal = triangles[corner];
+                    if (ids[normal] < 0) {
+                        ids[normal] = normals.size / 3;
+                        normals.add(fileNormals, normal * 3);
+                    }
+                    triangles[corner] = ids[normal];
+                }
+            }
+        }
+
+        smooth(smoothingGroups, triangles, positions, fileNormals, normals);
+        return normals.toArray();
+    }
+
+    /**
+     * Calculates the flat normal of a triangle record as {@code Triangle.getNormal} does.
+     */
+    private static void flatNormal(double[] positions, int[] triangles, int record, double[] normal) {
+        int a = triangles[record] * 3, b = triangles[record + 1] * 3, c = triangles[record + 2] * 3;
+        double vx = positions[b] - positions[a];
+        double vy = positions[b + 1] - positions[a + 1];
+        double vz = positions[b + 2] - positions[a + 2];
+        double wx = positions[a] - positions[c];
+        double wy = positions[a + 1] - positions[c + 1];
+        double wz = positions[a + 2] - positions[c + 2];
+        double nx = (vy * wz) - (vz * wy);
+        double ny = (vz * wx) - (vx * wz);
+        double nz = (vx * wy) - (vy * wx);
+        double magnitude = Vector3D.magnitude(nx, ny, nz);
+        normal[0] = nx / magnitude;
+        normal[1] = ny / magnitude;
+        normal[2] = nz / magnitude;
+    }
+
+    /**
+     * Gives every vertex of a smoothing group the average of its corner normals in the group, adding them in file
+     * order, and points the corners of the group at it. Each group is a single pass over its triangles to add the
+     * normals and another to assign them.
+     */
+    private static void smooth(Map<Integer, IntList> smoothingGroups, int[] triangles, double[] positions,
+                               double[] fileNormals, DoubleList normals) {
+        if (smoothingGroups.isEmpty()) {
+            return;
+        }
+        int vertexCount = positions.length / 3;
+        double[] sums = new double[vertexCount * 3];
+        int[] counts = new int[vertexCount];
+        int[] ids = new int[vertexCount];
+        Arrays.fill(ids, -1);
+        IntList touched = new IntList();
+        double[] flat = new double[3];
+
+        for (IntList group : smoothingGroups.values()) {
+            for (int i = 0; i < group.size; i++) {
+                int t = group.values[i];
+                boolean flatNormals = triangles[t + 3] == NO_NORMAL;
+                if (flatNormals) {
+                    flatNormal(positions, triangles, t, flat);
+                }
+                for (int corner = 0; corner < 3; corner++) {
+                    int vertex = triangles[t + corner];
+                    if (counts[vertex]++ == 0) {
+                        touched.add(vertex);
+                    }
+                    double[] source = flatNormals ? flat : fileNormals;
+                    int offset = flatNormals ? 0 : triangles[t + 3 + corner] * 3;
+                    for (int axis = 0; axis < 3; axis++) {
+                        sums[vertex * 3 + axis] += source[offset + axis];
+                    }
+                }
+            }
+            for (int i = 0; i < group.size; i++) {
+                int t = group.values[i];
+                for (int corner = 0; corner < 3; corner++) {
+                    int vertex = triangles[t + corner];
+                    if (ids[vertex] < 0) {
+                        ids[vertex] = normals.size / 3;
+                        double scale = 1.0 / (double) counts[vertex];
+                        for (int axis = 0; axis < 3; axis++) {
+                            normals.add(sums[vertex * 3 + axis] * scale);
+                        }
+                    }
+                    triangles[t + 3 + corner] = ids[vertex];
+                }
+            }
+            for (int i = 0; i < touched.size; i++) {
+                int vertex = touched.values[i];
+                counts[vertex] = 0;
+                ids[vertex] = -1;
+                Arrays.fill(sums, vertex * 3, vertex * 3 + 3, 0);
+            }
+            touched.size = 0;
+        }
+    }
+
+    /**
+     * The vertices, normals and triangles of a chunk of the file. Indices written as absolute numbers are stored
+     * 0-based; relative ones are stored relative to the chunk and fixed once the sizes of the previous chunks are
+     * known.
+     */
+    private static class Chunk {
+        private final ByteBuffer buffer;
+        private final DoubleList vertices = new DoubleList();
+        private final DoubleList normals = new DoubleList();
+        private final IntList triangles = new IntList();
+        private final IntList relativeVertices = new IntList();
+        private final IntList relativeNormals = new IntList();
+        private final IntList faceVertices = new IntList();
+        private final IntList faceNormals = new IntList();
+        private final IntList faceVertexRelative = new IntList();
+        private final IntList faceNormalRelative = new IntList();
+        private final int[] tokens = new int[6];
+        private int smoothingGroup = INHERITED_SMOOTHING;
+        // The triangle ints written before the first normal of the chunk
+        private int trianglesBeforeNormals = -1;
+
+        private Chunk(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private static Chunk parse(ByteBuffer buffer) {
+            Chunk chunk = new Chunk(buffer);
+            chunk.parseLines();
+            return chunk;
+        }
+
+        private void parseLines() {
+            int end = buffer.limit();
+            int start = 0;
+            while (start < end) {
+                int lineEnd = start;
+                while (lineEnd < end && buffer.get(lineEnd) != '\n' && buffer.get(lineEnd) != '\r') {
+                    lineEnd++;
+                }
+                if (lineEnd - start >= 2) {
+                    parseLine(start, lineEnd);
+                }
+                start = lineEnd + 1;
+            }
+            if (trianglesBeforeNormals < 0) {
+                trianglesBeforeNormals = triangles.size;
+            }
+        }
+
+        private void parseLine(int start, int end) {
+            byte first = buffer.get(start);
+            byte second = buffer.get(start + 1);
+            if (first == 'v' && second == ' ') {
+                parseVector(start + 1, end, vertices);
+            } else if (first == 'v' && second == 'n' && end - start >= 3 && buffer.get(start + 2) == ' ') {
+                parseVector(start + 2, end, normals);
+                if (trianglesBeforeNormals < 0 && normals.size > 0) {
+                    trianglesBeforeNormals = triangles.size;
+                }
+            } else if (first == 'f' && second == ' ') {
+                parseFace(start + 1, end);
+            } else if (first == 's' && second == ' ') {
+                parseSmoothingGroup(start + 1, end);
+            }
+        }
+
+        /**
+         * Adds the first three numbers of the line, or nothing if it has less than three.
+         */
+        private void parseVector(int position, int end, DoubleList target) {
+            for (int i = 0; i < 3; i++) {
+                position = skipSpaces(buffer, position, end);
+                if (position == end) {
+                    return;
+                }
+                tokens[i * 2] = position;
+                position = tokenEnd(buffer, position, end);
+                tokens[i * 2 + 1] = position;
+            }
+            for (int i = 0; i < 3; i++) {
+                target.add(parseDouble(buffer, tokens[i * 2], tokens[i * 2 + 1]));
+            }
+        }
+
+        private void parseFace(int position, int end) {
+            faceVertices.size = 0;
+            faceNormals.size = 0;
+            faceVertexRelative.size = 0;
+            faceNormalRelative.size = 0;
+            while ((position = skipSpaces(buffer, position, end)) < end) {
+                int tokenEnd = tokenEnd(buffer, position, end);
+                parseFaceVertex(position, tokenEnd);
+                position = tokenEnd;
+            }
+
+            if (faceVertices.size >= 3) {
+                addTriangle(1, 0, 2);
+                if (faceVertices.size == 4) {
+                    addTriangle(2, 0, 3);
+                }
+            }
+        }
+
+        /**
+         * Reads a v, v/vt, v//vn or v/vt/vn entry. As with String.split, trailing empty fields do not count, so the
+         * normal is only read if there is something from the third field on.
+         */
+        private void parseFaceVertex(int start, int end) {
+            int field = 0, fieldStart = start, lastNonEmpty = -1;
+            int normalStart = end, normalEnd = end, vertexEnd = end;
+            for (int i = start; i <= end; i++) {
+                if (i == end || buffer.get(i) == '/') {
+                    if (i > fieldStart) {
+                        lastNonEmpty = field;
+                    }
+                    if (field == 0) {
+                        vertexEnd = i;
+                    } else if (field == 2) {
+                        normalStart = fieldStart;
+                        normalEnd = i;
+                    }
+                    field++;
+                    fieldStart = i + 1;
+                }
+            }
+
+            if (lastNonEmpty >= 0) {
+                addIndex(parseInt(buffer, start, vertexEnd), vertices.size / 3, faceVertices, faceVertexRelative);
+            }
+            if (lastNonEmpty >= 2) {
+                addIndex(parseInt(buffer, normalStart, normalEnd), normals.size / 3, faceNormals, faceNormalRelative);
+            }
+        }
+
+        /**
+         * Adds a 1-based index, or a negative one counted back from the last element read so far.
+         */
+        private static void addIndex(int index, int count, IntList indices, IntList relative) {
+            if (index == 0) {
+                throw new UncheckedIOException(new IOException("A face references index 0"));
+            }
+            indices.add(index > 0 ? index - 1 : count + index);
+            relative.add(index > 0 ? 0 : 1);
+        }
+
+        private void addTriangle(int a, int b, int c) {
+            int record = triangles.size;
+            addVertex(a, record);
+            addVertex(b, record + 1);
+            addVertex(c, record + 2);
+            if (faceNormals.size > Math.max(a, Math.max(b, c))) {
+                addNormal(a, record + 3);
+                addNormal(b, record + 4);
+                addNormal(c, record + 5);
+            } else {
+                int normal = faceNormals.size > 0 ? MISSING_NORMAL : NO_NORMAL;
+                triangles.add(normal);
+                triangles.add(normal);
+                triangles.add(normal);
+            }
+            triangles.add(smoothingGroup);
+        }
+
+        private void addVertex(int corner, int slot) {
+            triangles.add(faceVertices.values[corner]);
+            if (faceVertexRelative.values[corner] != 0) {
+                relativeVertices.add(slot);
+            }
+        }
+
+        private void addNormal(int corner, int slot) {
+            triangles.add(faceNormals.values[corner]);
+            if (faceNormalRelative.values[corner] != 0) {
+                relativeNormals.add(slot);
+            }
+        }
+
+        private void parseSmoothingGroup(int position, int end) {
+            position = skipSpaces(buffer, position, end);
+            if (position == end) {
+                return;
+            }
+            String group = new String(bytes(buffer, position, tokenEnd(buffer, position, end)), StandardCharsets.UTF_8);
+            if (group.equals("off")) {
+                smoothingGroup = NO_SMOOTHING;
+            } else {
+                try {
+                    smoothingGroup = Integer.parseInt(group);
+                } catch (NumberFormatException nfe) {
+                    smoothingGroup = NO_SMOOTHING;
+                }
+            }
+        }
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == 0x0B || b == '\f';
+    }
+
+    private static int skipSpaces(ByteBuffer buffer, int position, int end) {
+        while (position < end && isSpace(buffer.get(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int tokenEnd(ByteBuffer buffer, int position, int end) {
+        while (position < end && !isSpace(buffer.get(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return bytes;
+    }
+
+    /**
+     * Parses a decimal number such as -12.5e-3. Values whose digits fit in 53 bits and whose decimal exponent is
+     * within the exact powers of ten are converted with a single rounding, which gives the same double as
+     * Double.parseDouble; anything else is handed to Double.parseDouble.
+     */
+    static double parseDouble(ByteBuffer buffer, int start, int end) {
+        int position = start;
+        boolean negative = false;
+        if (position < end && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+            negative = buffer.get(position) == '-';
+            position++;
+        }
+
+        long mantissa = 0;
+        int exponent = 0, digits = 0;
+        boolean exact = true;
+        while (position < end && isDigit(buffer.get(position))) {
+            if (mantissa < MAX_EXACT_MANTISSA / 10) {
+                mantissa = mantissa * 10 + (buffer.get(position) - '0');
+            } else {
+                exact = false;
+            }
+            position++;
+            digits++;
+        }
+        if (position < end && buffer.get(position) == '.') {
+            position++;
+            while (position < end && isDigit(buffer.get(position))) {
+                if (mantissa < MAX_EXACT_MANTISSA / 10) {
+                    mantissa = mantissa * 10 + (buffer.get(position) - '0');
+                    exponent--;
+                } else {
+                    exact = false;
+                }
+                position++;
+                digits++;
+            }
+        }
+        if (digits > 0 && position < end && (buffer.get(position) == 'e' || buffer.get(position) == 'E')) {
+            position++;
+            boolean negativeExponent = false;
+            if (position < end && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+                negativeExponent = buffer.get(position) == '-';
+                position++;
+            }
+            int exponentDigits = 0, value = 0;
+            while (position < end && isDigit(buffer.get(position)) && exponentDigits < 4) {
+                value = value * 10 + (buffer.get(position) - '0');
+                position++;
+                exponentDigits++;
+            }
+            exact &= exponentDigits > 0;
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (!exact || digits == 0 || position != end || Math.abs(exponent) >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(new String(bytes(buffer, start, end), StandardCharsets.ISO_8859_1));
+        }
+        double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a decimal integer, handing anything longer than nine digits or malformed to Integer.parseInt.
+     */
+    static int parseInt(ByteBuffer buffer, int start, int end) {
+        int position = start;
+        boolean negative = false;
+        if (position < end && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+            negative = buffer.get(position) == '-';
+            position++;
+        }
+        int value = 0;
+        int digits = 0;
+        while (position < end && isDigit(buffer.get(position)) && digits < 9) {
+            value = value * 10 + (buffer.get(position) - '0');
+            position++;
+            digits++;
+        }
+        if (digits == 0 || position != end) {
+            return Integer.parseInt(new String(bytes(buffer, start, end), StandardCharsets.ISO_8859_1));
+        }
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * A growable array of doubles.
+     */
+    private static class DoubleList {
+        private double[] values = new double[1024];
+        private int size;
+
+        private void add(double value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private void add(double[] source, int offset) {
+            add(source[offset]);
+            add(source[offset + 1]);
+            add(source[offset + 2]);
+        }
+
+        private double[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * A growable array of ints.
+     */
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -7,14 +7,17 @@ package edu.up.isgc.cg.raytracer.tools;
 import edu.up.isgc.cg.raytracer.Vector3D;
 import edu.up.isgc.cg.raytracer.objects.Model3D;
 import edu.up.isgc.cg.raytracer.objects.Triangle;
+import edu.up.isgc.cg.raytracer.objects.TriangleMesh;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The OBJReader class provides functionality to read and parse .obj files to create Model3D objects.
@@ -22,9 +25,13 @@ import java.util.Map;
  * @author Jafet Rodriguez
  */
 public abstract class OBJReader {
+    private static boolean meshCacheEnabled = true;
+    private static double weldTolerance = OBJParser.NO_WELDING;
 
     /**
      * Reads a .obj file from the specified path and creates a Model3D object with the given origin and material.
+     * The mesh is taken from the {@link MeshLibrary}, so a file used by several models is only loaded once and every
+     * model shares it, each with its own transformation.
      *
      * @param path The path to the .obj file.
      * @param origin The origin position of the model.
@@ -33,140 +40,246 @@ public abstract class OBJReader {
      */
     public static Model3D getModel3D(String path, Vector3D origin, Material material) {
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(path));
-
-            List<Triangle> triangles = new ArrayList<>();
-            List<Vector3D> vertices = new ArrayList<>();
-            List<Vector3D> normals = new ArrayList<>();
-            String line;
-            int defaultSmoothingGroup = -1;
-            int smoothingGroup = defaultSmoothingGroup;
-            Map<Integer, List<Triangle>> smoothingMap = new HashMap<>();
-
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("v ") || line.startsWith("vn ")) {
-                    String[] vertexComponents = line.split("(\\s)+");
-                    if (vertexComponents.length >= 4) {
-                        double x = Double.parseDouble(vertexComponents[1]);
-                        double y = Double.parseDouble(vertexComponents[2]);
-                        double z = Double.parseDouble(vertexComponents[3]);
-                        Vector3D vec = new Vector3D(x, y, z);
-                        if (line.startsWith("v ")) {
-                            vertices.add(vec);
-                        } else {
-                            normals.add(vec);
-                        }
+            return new Model3D(origin, MeshLibrary.getMesh(path), material);
+        } catch (IOException e) {
+            System.err.println(e.toString());
+        }
+        return null;
+    }
+
+    /**
+     * Loads the mesh of a .obj file. The file is parsed by {@link OBJParser} into an indexed mesh, welding its
+     * vertices if a weld tolerance is given, and the parsed mesh is kept in a {@link MeshCache} file next to the
+     * .obj file, which is loaded instead of parsing the text again while the .obj file does not change.
+     *
+     * @param path The path to the .obj file.
+     * @param weldTolerance The weld tolerance, or {@link OBJParser#NO_WELDING}.
+     * @return The mesh of the file.
+     * @throws IOException If the file cannot be read or parsed.
+     */
+    public static TriangleMesh loadMesh(String path, double weldTolerance) throws IOException {
+        Path source = Path.of(path);
+        TriangleMesh mesh = loadCachedMesh(source, weldTolerance);
+        if (mesh == null) {
+            mesh = OBJParser.parse(source, ForkJoinPool.getCommonPoolParallelism(), weldTolerance);
+            storeCachedMesh(source, weldTolerance, mesh);
+        }
+        return mesh;
+    }
+
+    /**
+     * Loads the {@link MeshCache} file of a .obj file if the mesh cache is enabled.
+     *
+     * @param source The path to the .obj file.
+     * @param weldTolerance The weld tolerance the mesh must have been parsed with.
+     * @return The cached mesh, or null if the cache is disabled, missing or stale.
+     * @throws IOException If the cache file cannot be read.
+     */
+    static TriangleMesh loadCachedMesh(Path source, double weldTolerance) throws IOException {
+        return meshCacheEnabled ? MeshCache.load(source, weldTolerance) : null;
+    }
+
+    /**
+     * Writes the {@link MeshCache} file of a parsed .obj file if the mesh cache is enabled. A failure is only
+     * reported, as the mesh is still usable.
+     *
+     * @param source The path to the .obj file.
+     * @param weldTolerance The weld tolerance the mesh was parsed with.
+     * @param mesh The parsed mesh.
+     */
+    static void storeCachedMesh(Path source, double weldTolerance, TriangleMesh mesh) {
+        if (meshCacheEnabled) {
+            try {
+                MeshCache.store(source, weldTolerance, mesh);
+            } catch (IOException e) {
+                // The model is still usable, it will be parsed again next time
+                System.err.println("Could not cache " + source + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Checks if parsed meshes are cached next to their .obj files.
+     *
+     * @return True if the mesh cache is used.
+     */
+    public static boolean isMeshCacheEnabled() {
+        return meshCacheEnabled;
+    }
+
+    /**
+     * Enables or disables the mesh cache. When disabled every .obj file is parsed and no cache file is written.
+     *
+     * @param enabled True to use the mesh cache, false to always parse the text.
+     */
+    public static void setMeshCacheEnabled(boolean enabled) {
+        meshCacheEnabled = enabled;
+    }
+
+    /**
+     * Gets the distance within which the vertices of the loaded models are welded.
+     *
+     * @return The weld tolerance, or {@link OBJParser#NO_WELDING}.
+     */
+    public static double getWeldTolerance() {
+        return weldTolerance;
+    }
+
+    /**
+     * Sets the distance within which the vertices of the models loaded from now on are welded. Welding joins the
+     * faces that an exporter split into separate vertices, so they share their vertices and are smoothed together.
+     *
+     * @param tolerance The weld tolerance, 0 to weld only vertices at the same position, or
+     *                  {@link OBJParser#NO_WELDING} to keep every vertex of the file.
+     * @throws IllegalArgumentException If the tolerance is not finite.
+     */
+    public static void setWeldTolerance(double tolerance) {
+        if (Double.isNaN(tolerance) || Double.isInfinite(tolerance)) {
+            throw new IllegalArgumentException("The weld tolerance must be finite");
+        }
+        weldTolerance = tolerance;
+    }
+
+    /**
+     * Reads the triangles of a .obj file line by line, splitting quads and averaging the normals of every smoothing
+     * group. Models are loaded with the faster {@link OBJParser}, which gives the same mesh; this reader is kept as
+     * its reference.
+     *
+     * @param path The path to the .obj file.
+     * @return The triangles of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    public static List<Triangle> readTriangles(String path) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(path));
+
+        List<Triangle> triangles = new ArrayList<>();
+        List<Vector3D> vertices = new ArrayList<>();
+        List<Vector3D> normals = new ArrayList<>();
+        String line;
+        int defaultSmoothingGroup = -1;
+        int smoothingGroup = defaultSmoothingGroup;
+        Map<Integer, List<Triangle>> smoothingMap = new HashMap<>();
+
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("v ") || line.startsWith("vn ")) {
+                String[] vertexComponents = line.split("(\\s)+");
+                if (vertexComponents.length >= 4) {
+                    double x = Double.parseDouble(vertexComponents[1]);
+                    double y = Double.parseDouble(vertexComponents[2]);
+                    double z = Double.parseDouble(vertexComponents[3]);
+                    Vector3D vec = new Vector3D(x, y, z);
+                    if (line.startsWith("v ")) {
+                        vertices.add(vec);
+                    } else {
+                        normals.add(vec);
                     }
-                } else if (line.startsWith("f ")) {
-                    String[] faceComponents = line.split("(\\s)+");
-                    List<Integer> faceVertex = new ArrayList<>();
-                    List<Integer> faceNormals = new ArrayList<>();
-
-                    for (int i = 1; i < faceComponents.length; i++) {
-                        String[] infoVertex = faceComponents[i].split("/");
-                        if (infoVertex.length >= 1) {
-                            int vertexIndex = Integer.parseInt(infoVertex[0]);
-                            faceVertex.add(vertexIndex);
-                        }
-                        if (infoVertex.length >= 3) {
-                            int normalIndex = Integer.parseInt(infoVertex[2]);
-                            faceNormals.add(normalIndex);
-                        }
+                }
+            } else if (line.startsWith("f ")) {
+                String[] faceComponents = line.split("(\\s)+");
+                List<Integer> faceVertex = new ArrayList<>();
+                List<Integer> faceNormals = new ArrayList<>();
+
+                for (int i = 1; i < faceComponents.length; i++) {
+                    String[] infoVertex = faceComponents[i].split("/");
+                    if (infoVertex.length >= 1) {
+                        int vertexIndex = Integer.parseInt(infoVertex[0]);
+                        faceVertex.add(vertexIndex);
+                    }
+                    if (infoVertex.length >= 3) {
+                        int normalIndex = Integer.parseInt(infoVertex[2]);
+                        faceNormals.add(normalIndex);
                     }
+                }
 
-                    if (faceVertex.size() >= 3) {
-                        Vector3D[] triangleVertices = new Vector3D[faceVertex.size()];
-                        Vector3D[] triangleNormals = new Vector3D[faceNormals.size()];
+                if (faceVertex.size() >= 3) {
+                    Vector3D[] triangleVertices = new Vector3D[faceVertex.size()];
+                    Vector3D[] triangleNormals = new Vector3D[faceNormals.size()];
 
-                        for (int i = 0; i < faceVertex.size(); i++) {
-                            triangleVertices[i] = vertices.get(faceVertex.get(i) - 1);
-                        }
+                    for (int i = 0; i < faceVertex.size(); i++) {
+                        triangleVertices[i] = vertices.get(faceVertex.get(i) - 1);
+                    }
 
-                        Vector3D[] arrangedTriangleVertices = null;
-                        Vector3D[] arrangedTriangleNormals = null;
-                        if (normals.size() > 0 && !faceNormals.isEmpty()) {
-                            for (int i = 0; i < faceNormals.size(); i++) {
-                                triangleNormals[i] = normals.get(faceNormals.get(i) - 1);
-                            }
-                            arrangedTriangleNormals = new Vector3D[]{triangleNormals[1], triangleNormals[0], triangleNormals[2]};
+                    Vector3D[] arrangedTriangleVertices = null;
+                    Vector3D[] arrangedTriangleNormals = null;
+                    if (normals.size() > 0 && !faceNormals.isEmpty()) {
+                        for (int i = 0; i < faceNormals.size(); i++) {
+                            triangleNormals[i] = normals.get(faceNormals.get(i) - 1);
                         }
-                        arrangedTriangleVertices = new Vector3D[]{triangleVertices[1], triangleVertices[0], triangleVertices[2]};
+                        arrangedTriangleNormals = new Vector3D[]{triangleNormals[1], triangleNormals[0], triangleNormals[2]};
+                    }
+                    arrangedTriangleVertices = new Vector3D[]{triangleVertices[1], triangleVertices[0], triangleVertices[2]};
 
-                        Triangle tmpTriangle = new Triangle(arrangedTriangleVertices, arrangedTriangleNormals);
-                        triangles.add(tmpTriangle);
+                    Triangle tmpTriangle = new Triangle(arrangedTriangleVertices, arrangedTriangleNormals);
+                    triangles.add(tmpTriangle);
 
-                        List<Triangle> trianglesInMap = smoothingMap.get(smoothingGroup);
-                        if (trianglesInMap == null) {
-                            trianglesInMap = new ArrayList<>();
-                        }
-                        trianglesInMap.add(tmpTriangle);
+                    List<Triangle> trianglesInMap = smoothingMap.get(smoothingGroup);
+                    if (trianglesInMap == null) {
+                        trianglesInMap = new ArrayList<>();
+                    }
+                    trianglesInMap.add(tmpTriangle);
 
-                        if (faceVertex.size() == 4) {
-                            arrangedTriangleVertices = new Vector3D[]{triangleVertices[2], triangleVertices[0], triangleVertices[3]};
-                            if (arrangedTriangleNormals != null) {
-                                arrangedTriangleNormals = new Vector3D[]{triangleNormals[2], triangleNormals[0], triangleNormals[3]};
-                            }
-                            tmpTriangle = new Triangle(arrangedTriangleVertices, arrangedTriangleNormals);
-                            triangles.add(tmpTriangle);
-                            trianglesInMap.add(tmpTriangle);
+                    if (faceVertex.size() == 4) {
+                        arrangedTriangleVertices = new Vector3D[]{triangleVertices[2], triangleVertices[0], triangleVertices[3]};
+                        if (arrangedTriangleNormals != null) {
+                            arrangedTriangleNormals = new Vector3D[]{triangleNormals[2], triangleNormals[0], triangleNormals[3]};
                         }
+                        tmpTriangle = new Triangle(arrangedTriangleVertices, arrangedTriangleNormals);
+                        triangles.add(tmpTriangle);
+                        trianglesInMap.add(tmpTriangle);
+                    }
 
-                        if (smoothingGroup != defaultSmoothingGroup) {
-                            smoothingMap.put(smoothingGroup, trianglesInMap);
-                        }
+                    if (smoothingGroup != defaultSmoothingGroup) {
+                        smoothingMap.put(smoothingGroup, trianglesInMap);
                     }
-                } else if (line.startsWith("s ")) {
-                    String[] smoothingComponents = line.split("(\\s)+");
-                    if (smoothingComponents.length > 1) {
-                        if (smoothingComponents[1].equals("off")) {
+                }
+            } else if (line.startsWith("s ")) {
+                String[] smoothingComponents = line.split("(\\s)+");
+                if (smoothingComponents.length > 1) {
+                    if (smoothingComponents[1].equals("off")) {
+                        smoothingGroup = defaultSmoothingGroup;
+                    } else {
+                        try {
+                            smoothingGroup = Integer.parseInt(smoothingComponents[1]);
+                        } catch (NumberFormatException nfe) {
                             smoothingGroup = defaultSmoothingGroup;
-                        } else {
-                            try {
-                                smoothingGroup = Integer.parseInt(smoothingComponents[1]);
-                            } catch (NumberFormatException nfe) {
-                                smoothingGroup = defaultSmoothingGroup;
-                            }
                         }
                     }
                 }
             }
-            reader.close();
-
-            // Smooth vertices normals
-            for (Integer key : smoothingMap.keySet()) {
-                Map<Vector3D, NormalPair> vertexMap = new HashMap<>();
-                List<Triangle> trianglesInMap = smoothingMap.get(key);
-                for (Triangle triangle : trianglesInMap) {
-                    Vector3D[] triangleVertices = triangle.getVertices();
-                    Vector3D[] triangleNormals = triangle.getNormals();
-                    for (int i = 0; i < triangleVertices.length; i++) {
-                        NormalPair normalsVertex = vertexMap.get(triangleVertices[i]);
-                        if (normalsVertex == null) {
-                            normalsVertex = new NormalPair();
-                        }
-                        if (triangleNormals.length > 0 && i < triangleNormals.length) {
-                            normalsVertex.normal = Vector3D.add(normalsVertex.normal, triangleNormals[i]);
-                            normalsVertex.count++;
-                        }
-                        vertexMap.put(triangleVertices[i], normalsVertex);
+        }
+        reader.close();
+
+        // Smooth vertices normals
+        for (Integer key : smoothingMap.keySet()) {
+            Map<Vector3D, NormalPair> vertexMap = new HashMap<>();
+            List<Triangle> trianglesInMap = smoothingMap.get(key);
+            for (Triangle triangle : trianglesInMap) {
+                Vector3D[] triangleVertices = triangle.getVertices();
+                Vector3D[] triangleNormals = triangle.getNormals();
+                for (int i = 0; i < triangleVertices.length; i++) {
+                    NormalPair normalsVertex = vertexMap.get(triangleVertices[i]);
+                    if (normalsVertex == null) {
+                        normalsVertex = new NormalPair();
                     }
-                }
-                for (Triangle triangle : trianglesInMap) {
-                    Vector3D[] triangleVertices = triangle.getVertices();
-                    Vector3D[] triangleNormals = triangle.getNormals();
-                    for (int i = 0; i < triangleVertices.length; i++) {
-                        NormalPair normalsVertex = vertexMap.get(triangleVertices[i]);
-                        triangleNormals[i] = Vector3D.scalarMultiplication(normalsVertex.normal, 1.0 / (double) normalsVertex.count);
+                    if (triangleNormals.length > 0 && i < triangleNormals.length) {
+                        normalsVertex.normal = Vector3D.add(normalsVertex.normal, triangleNormals[i]);
+                        normalsVertex.count++;
                     }
-                    triangle.setNormals(triangleNormals[0], triangleNormals[1], triangleNormals[2]);
+                    vertexMap.put(triangleVertices[i], normalsVertex);
                 }
             }
-
-            return new Model3D(origin, triangles.toArray(new Triangle[triangles.size()]), material);
-        } catch (IOException e) {
-            System.err.println(e.toString());
+            for (Triangle triangle : trianglesInMap) {
+                Vector3D[] triangleVertices = triangle.getVertices();
+                Vector3D[] triangleNormals = triangle.getNormals();
+                for (int i = 0; i < triangleVertices.length; i++) {
+                    NormalPair normalsVertex = vertexMap.get(triangleVertices[i]);
+                    triangleNormals[i] = Vector3D.scalarMultiplication(normalsVertex.normal, 1.0 / (double) normalsVertex.count);
+                }
+                triangle.setNormals(triangleNormals[0], triangleNormals[1], triangleNormals[2]);
+            }
         }
-        return null;
+
+        return triangles;
     }
 }
 
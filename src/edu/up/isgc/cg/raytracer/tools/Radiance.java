@@ -0,0 +1,162 @@
+package edu.up.isgc.cg.raytracer.tools;
+
+import java.awt.*;
+
+/**
+ * The Radiance class is a mutable linear RGB accumulator used while shading. Its operations update the
+ * instance in place and keep full double precision, so values are neither clamped nor quantized until the
+ * final pixel is written with {@link #toRGB()}.
+ *
+ * @author Jafet Rodriguez, José Salcedo
+ */
+public class Radiance {
+    private double red, green, blue;
+
+    /**
+     * Constructs a new black Radiance.
+     */
+    public Radiance() {
+    }
+
+    /**
+     * Constructs a new Radiance with the specified channels.
+     *
+     * @param red The red channel.
+     * @param green The green channel.
+     * @param blue The blue channel.
+     */
+    public Radiance(double red, double green, double blue) {
+        set(red, green, blue);
+    }
+
+    /**
+     * Creates a Radiance from a color, mapping every 8-bit channel to the range [0, 1].
+     *
+     * @param color The color to convert.
+     * @return The radiance of the color.
+     */
+    public static Radiance fromColor(Color color) {
+        return new Radiance(color.getRed() / 255.0, color.getGreen() / 255.0, color.getBlue() / 255.0);
+    }
+
+    /**
+     * Gets the red channel.
+     *
+     * @return The red channel.
+     */
+    public double getRed() {
+        return red;
+    }
+
+    /**
+     * Gets the green channel.
+     *
+     * @return The green channel.
+     */
+    public double getGreen() {
+        return green;
+    }
+
+    /**
+     * Gets the blue channel.
+     *
+     * @return The blue channel.
+     */
+    public double getBlue() {
+        return blue;
+    }
+
+    /**
+     * Sets all the channels.
+     *
+     * @param red The new red channel.
+     * @param green The new green channel.
+     * @param blue The new blue channel.
+     */
+    public void set(double red, double green, double blue) {
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+    }
+
+    /**
+     * Adds another radiance to this one.
+     *
+     * @param other The radiance to add.
+     */
+    public void add(Radiance other) {
+        red += other.red;
+        green += other.green;
+        blue += other.blue;
+    }
+
+    /**
+     * Adds another radiance multiplied by a factor to this one.
+     *
+     * @param other The radiance to add.
+     * @param scale The factor applied to the added radiance.
+     */
+    public void addScaled(Radiance other, double scale) {
+        red += other.red * scale;
+        green += other.green * scale;
+        blue += other.blue * scale;
+    }
+
+    /**
+     * Adds the channel by channel product of two radiances, multiplied by a factor, to this one.
+     *
+     * @param a The first radiance of the product.
+     * @param b The second radiance of the product.
+     * @param scale The factor applied to the product.
+     */
+    public void addProduct(Radiance a, Radiance b, double scale) {
+        red += a.red * b.red * scale;
+        green += a.green * b.green * scale;
+        blue += a.blue * b.blue * scale;
+    }
+
+    /**
+     * Multiplies this radiance by a factor.
+     *
+     * @param scale The factor.
+     */
+    public void scale(double scale) {
+        red *= scale;
+        green *= scale;
+        blue *= scale;
+    }
+
+    /**
+     * Moves this radiance towards another one: this * (1 - weight) + other * weight.
+     *
+     * @param other The radiance to move towards.
+     * @param weight The weight of the other radiance (0-1).
+     */
+    public void lerp(Radiance other, double weight) {
+        red += (other.red - red) * weight;
+        green += (other.green - green) * weight;
+        blue += (other.blue - blue) * weight;
+    }
+
+    /**
+     * Converts the radiance to a packed RGB pixel, clamping every channel to [0, 1] and rounding it to 8 bits.
+     *
+     * @return The packed 0xRRGGBB value.
+     */
+    public int toRGB() {
+        return (toChannel(red) << 16) | (toChannel(green) << 8) | toChannel(blue);
+    }
+
+    private static int toChannel(double value) {
+        return (int) (Math.clamp(value, 0.0, 1.0) * 255 + 0.5);
+    }
+
+    @Override
+    public String toString() {
+        return "Radiance{" +
+                "red=" + red +
+                ", green=" + green +
+                ", blue=" + blue +
+                '}';
+    }
+}